@@ -0,0 +1,199 @@
+package xyz.fabianpineda.desarrollomovil.transqa.db;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Benchmark instrumentado de los perfiles de durabilidad de SQLite (ver SQLite.PERFIL_DURABILIDAD_*).
+ *
+ * Para cada perfil se mide:
+ *
+ *      * Rendimiento de inserción, en capturas por segundo, insertando con BufferGeolocalizacionSQLite
+ *        en lotes y también con una transacción por captura (capacidad 1).
+ *      * Ventana de pérdida de datos ante la muerte del proceso. La muerte es simulada copiando los
+ *        archivos de la base de datos (incluyendo journal o WAL) en un punto aleatorio de la
+ *        captura, sin cerrar la conexión ni vaciar el buffer; la copia es abierta como lo haría la
+ *        aplicación al reiniciar, y se cuentan las capturas que sobrevivieron.
+ *
+ * Los resultados son escritos en el log con la etiqueta ETIQUETA_LOG (ver "adb logcat").
+ *
+ * Nota: un corte de energía no puede ser simulado dentro del proceso. La diferencia entre niveles
+ * de "synchronous" sólo aparece en ese caso; ante la muerte del proceso, todas las transacciones
+ * confirmadas sobreviven en todos los perfiles y se pierde, a lo sumo, el contenido del buffer.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BenchmarkDurabilidadSQLiteTest {
+    private static final String ETIQUETA_LOG = "BenchmarkDurabilidad";
+
+    private static final String NOMBRE_ARCHIVO = "benchmark_durabilidad.db";
+    private static final String NOMBRE_ARCHIVO_COPIA = "benchmark_durabilidad_copia.db";
+    private static final String[] SUFIJOS_ARCHIVOS = { "", "-journal", "-wal" };
+
+    private static final int[] PERFILES = {
+        SQLite.PERFIL_DURABILIDAD_SEGURO,
+        SQLite.PERFIL_DURABILIDAD_BALANCEADO,
+        SQLite.PERFIL_DURABILIDAD_RENDIMIENTO
+    };
+    private static final String[] NOMBRES_PERFILES = { "seguro", "balanceado", "rendimiento" };
+
+    private static final int CAPTURAS_LOTES = 4000;
+    private static final int CAPTURAS_INDIVIDUALES = 500;
+    private static final int REPETICIONES_MUERTE = 8;
+    private static final long INTERVALO_CAPTURAS = 5000L;   // Igual al intervalo mínimo de ServicioGeolocalizacion.
+
+    private final Context contexto = InstrumentationRegistry.getTargetContext();
+    private final Random aleatorio = new Random(17);
+
+    @Test
+    public void perfilesDeDurabilidad() throws Exception {
+        for (int i = 0; i < PERFILES.length; i++) {
+            double lotes = capturasPorSegundo(PERFILES[i], CAPTURAS_LOTES, BufferGeolocalizacionSQLite.BUFFER_CAPACIDAD_DEFAULT);
+            double individuales = capturasPorSegundo(PERFILES[i], CAPTURAS_INDIVIDUALES, 1);
+
+            int maximoPerdidas = 0;
+            int totalPerdidas = 0;
+
+            for (int r = 0; r < REPETICIONES_MUERTE; r++) {
+                int perdidas = capturasPerdidasAlMorir(PERFILES[i], 1 + aleatorio.nextInt(CAPTURAS_LOTES / 4));
+
+                assertTrue(perdidas >= 0);
+                assertTrue(perdidas < BufferGeolocalizacionSQLite.BUFFER_CAPACIDAD_DEFAULT);
+
+                maximoPerdidas = Math.max(maximoPerdidas, perdidas);
+                totalPerdidas += perdidas;
+            }
+
+            Log.i(ETIQUETA_LOG, String.format(
+                "perfil=%s lotes=%.0f capturas/s individual=%.0f capturas/s perdidas_max=%d (%d ms) perdidas_promedio=%.1f (%.0f ms)",
+                NOMBRES_PERFILES[i],
+                lotes,
+                individuales,
+                maximoPerdidas, maximoPerdidas * INTERVALO_CAPTURAS,
+                totalPerdidas / (double) REPETICIONES_MUERTE, totalPerdidas * INTERVALO_CAPTURAS / (double) REPETICIONES_MUERTE
+            ));
+        }
+    }
+
+    /**
+     * Inserta "capturas" capturas en una base de datos nueva y mide el tiempo total, incluyendo el
+     * vaciado final del buffer.
+     */
+    private double capturasPorSegundo(int perfil, int capturas, int capacidadBuffer) {
+        contexto.deleteDatabase(NOMBRE_ARCHIVO);
+
+        SQLite ayudante = new SQLite(contexto, NOMBRE_ARCHIVO, perfil);
+        SQLiteDatabase db = ayudante.getWritableDatabase();
+
+        try {
+            long sesion = nuevaSesion(db);
+            BufferGeolocalizacionSQLite buffer = new BufferGeolocalizacionSQLite(db, capacidadBuffer, Long.MAX_VALUE);
+
+            long inicio = System.nanoTime();
+            for (int i = 0; i < capturas; i++) {
+                buffer.agregar(sesion, 10.96 + i * 1e-6, -74.78 - i * 1e-6, i * INTERVALO_CAPTURAS);
+            }
+            buffer.cerrar();
+            long duracion = System.nanoTime() - inicio;
+
+            assertEquals(capturas, GeolocalizacionSQLite.contarCoordenadas(db, sesion));
+
+            return capturas * 1e9 / duracion;
+        } finally {
+            SesionSQLite.liberarSentencias(db);
+            ayudante.close();
+            contexto.deleteDatabase(NOMBRE_ARCHIVO);
+        }
+    }
+
+    /**
+     * Entrega "capturas" capturas al buffer y luego simula la muerte del proceso copiando los
+     * archivos de la base de datos tal como están en disco.
+     *
+     * @return Número de capturas entregadas que no están en la copia.
+     */
+    private int capturasPerdidasAlMorir(int perfil, int capturas) throws IOException {
+        contexto.deleteDatabase(NOMBRE_ARCHIVO);
+        contexto.deleteDatabase(NOMBRE_ARCHIVO_COPIA);
+
+        SQLite ayudante = new SQLite(contexto, NOMBRE_ARCHIVO, perfil);
+        SQLiteDatabase db = ayudante.getWritableDatabase();
+        long sesion;
+
+        try {
+            sesion = nuevaSesion(db);
+            BufferGeolocalizacionSQLite buffer = new BufferGeolocalizacionSQLite(db);
+
+            for (int i = 0; i < capturas; i++) {
+                buffer.agregar(sesion, 10.96, -74.78, i * INTERVALO_CAPTURAS);
+            }
+
+            for (String sufijo : SUFIJOS_ARCHIVOS) {
+                copiar(contexto.getDatabasePath(NOMBRE_ARCHIVO + sufijo), contexto.getDatabasePath(NOMBRE_ARCHIVO_COPIA + sufijo));
+            }
+
+            // Sólo para liberar el statement compilado; lo insertado aquí ya no forma parte de la copia.
+            buffer.cerrar();
+        } finally {
+            SesionSQLite.liberarSentencias(db);
+            ayudante.close();
+            contexto.deleteDatabase(NOMBRE_ARCHIVO);
+        }
+
+        // Como al reiniciar: SQLite recupera el journal o WAL al abrir la copia.
+        SQLiteDatabase copia = SQLiteDatabase.openDatabase(contexto.getDatabasePath(NOMBRE_ARCHIVO_COPIA).getPath(), null, SQLiteDatabase.OPEN_READWRITE);
+
+        try {
+            return capturas - (int) GeolocalizacionSQLite.contarCoordenadas(copia, sesion);
+        } finally {
+            copia.close();
+            contexto.deleteDatabase(NOMBRE_ARCHIVO_COPIA);
+        }
+    }
+
+    private static long nuevaSesion(SQLiteDatabase db) {
+        Cursor sesion = SesionSQLite.iniciarSesion(db, "benchmark");
+
+        try {
+            return sesion.getLong(Sesion.TABLA_SESION_ID_INDICE);
+        } finally {
+            sesion.close();
+        }
+    }
+
+    private static void copiar(File origen, File destino) throws IOException {
+        if (!origen.exists()) {
+            return;
+        }
+
+        InputStream entrada = new FileInputStream(origen);
+        OutputStream salida = new FileOutputStream(destino);
+        byte[] bloque = new byte[8192];
+        int n;
+
+        try {
+            while ((n = entrada.read(bloque)) > 0) {
+                salida.write(bloque, 0, n);
+            }
+        } finally {
+            entrada.close();
+            salida.close();
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package xyz.fabianpineda.desarrollomovil.transqa.db;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Pruebas instrumentadas de CompactacionSQLite: reducción de resolución reanudable por lotes,
+ * ajustes a rutas de las capturas eliminadas, sesiones en progreso intactas y purga de sesiones más antiguas que la retención.
+ */
+@RunWith(AndroidJUnit4.class)
+public class CompactacionSQLiteTest {
+    private static final long DIA = 24L * 60 * 60 * 1000;
+
+    private static final AlmacenCapturas.LectorAjustes NINGUN_AJUSTE = new AlmacenCapturas.LectorAjustes() {
+        @Override
+        public void ajusteLeido(long secuencia, String ruta, int tramo, double recorrido) {
+        }
+    };
+
+    private SQLiteDatabase db;
+
+    @Before
+    public void crearBaseDeDatos() throws Exception {
+        db = SQLiteDatabase.create(null);
+        db.setForeignKeyConstraintsEnabled(true);
+        new SQLite(InstrumentationRegistry.getTargetContext()).onCreate(db);
+    }
+
+    @After
+    public void cerrarBaseDeDatos() throws Exception {
+        SesionSQLite.liberarSentencias(db);
+        db.close();
+    }
+
+    private long iniciarSesion() {
+        Cursor sesion = SesionSQLite.iniciarSesion(db, "compactacion");
+
+        try {
+            return sesion.getLong(Sesion.TABLA_SESION_ID_INDICE);
+        } finally {
+            sesion.close();
+        }
+    }
+
+    /**
+     * Agrega "cantidad" capturas, una por segundo, a una sesión, cada una ajustada a una ruta.
+     */
+    private void agregarCapturas(long sesion, int cantidad) {
+        BufferGeolocalizacionSQLite buffer = new BufferGeolocalizacionSQLite(db, 64, 60000L);
+
+        for (int i = 0; i < cantidad; i++) {
+            buffer.agregar(sesion, 10.9685 + i * 0.00001, -74.7813, 1000000L + i * 1000L);
+            buffer.ajustar(sesion, buffer.ultimaSecuencia(), "R1", 0, i);
+        }
+
+        buffer.cerrar();
+    }
+
+    private List<Long> fechas(long sesion) {
+        List<Long> fechas = new ArrayList<>();
+        Cursor c = GeolocalizacionSQLite.seleccionarCoordenadas(db, sesion);
+
+        try {
+            while (c.moveToNext()) {
+                fechas.add(c.getLong(GeolocalizacionSQLite.CONSULTA_FECHA_INDICE));
+            }
+        } finally {
+            c.close();
+        }
+
+        return fechas;
+    }
+
+    @Test
+    public void reduceResolucionPorLotes() throws Exception {
+        long terminada = iniciarSesion();
+        int cantidad = CompactacionSQLite.COMPACTACION_CAPTURAS_POR_LOTE * 2 + 7;
+
+        agregarCapturas(terminada, cantidad);
+        SesionSQLite.terminarSesion(db, terminada).close();
+
+        long enProgreso = iniciarSesion();
+        agregarCapturas(enProgreso, 100);
+
+        // Resolución de 10 segundos; la sesión terminó "hace" 2 días.
+        CompactacionSQLite compactacion = new CompactacionSQLite(DIA, 10000L, 30 * DIA);
+        long ahora = System.currentTimeMillis() + 2 * DIA;
+        int lotes = 0;
+
+        while (compactacion.lote(db, ahora)) {
+            lotes++;
+            assertTrue(lotes < 10);
+        }
+
+        // Purga del mapa de calor y tres lotes de la sesión terminada.
+        assertEquals(4, lotes);
+
+        List<Long> conservadas = fechas(terminada);
+        assertEquals(Long.valueOf(1000000L), conservadas.get(0));
+        assertEquals(Long.valueOf(1000000L + (cantidad - 1) * 1000L), conservadas.get(conservadas.size() - 1));
+
+        for (int i = 1; i < conservadas.size() - 1; i++) {
+            assertEquals(10000L, conservadas.get(i) - conservadas.get(i - 1));
+        }
+
+        assertEquals(cantidad / 10 + 2, conservadas.size());
+        assertEquals(100, fechas(enProgreso).size());
+
+        // Los ajustes de las capturas eliminadas son eliminados con ellas.
+        assertEquals(conservadas.size(), AjusteRutaSQLite.seleccionarAjustes(db, terminada, NINGUN_AJUSTE));
+        assertEquals(100, AjusteRutaSQLite.seleccionarAjustes(db, enProgreso, NINGUN_AJUSTE));
+
+        // El resumen sigue describiendo las capturas originales.
+        assertEquals(cantidad, ResumenSesionSQLite.seleccionarResumen(db, terminada).capturas());
+    }
+
+    @Test
+    public void purgaSesionesAntiguas() throws Exception {
+        long sesion = iniciarSesion();
+
+        agregarCapturas(sesion, CompactacionSQLite.COMPACTACION_CAPTURAS_POR_LOTE + 1);
+        SesionSQLite.terminarSesion(db, sesion).close();
+
+        CompactacionSQLite compactacion = new CompactacionSQLite(DIA, 10000L, 30 * DIA);
+
+        // Antes de la retención sólo se reduce la resolución.
+        assertFalse(compactacion.compactar(db, System.currentTimeMillis() + 2 * DIA, 60000L));
+        assertNotNull(ResumenSesionSQLite.seleccionarResumen(db, sesion));
+
+        assertFalse(compactacion.compactar(db, System.currentTimeMillis() + 31 * DIA, 60000L));
+        assertEquals(0, GeolocalizacionSQLite.contarCoordenadas(db, sesion));
+        assertNull(SesionSQLite.seleccionarSesion(db, sesion));
+        assertNull(ResumenSesionSQLite.seleccionarResumen(db, sesion));
+        assertEquals(0, AjusteRutaSQLite.seleccionarAjustes(db, sesion, NINGUN_AJUSTE));
+    }
+}
@@ -0,0 +1,130 @@
+package xyz.fabianpineda.desarrollomovil.transqa.db;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Pruebas instrumentadas de ConsultaEspacialSQLite: capturas en bordes de celda, radio exacto,
+ * k más cercanas en orden, y uso del índice de celdas.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ConsultaEspacialSQLiteTest {
+    private SQLiteDatabase db;
+
+    @Before
+    public void crearBaseDeDatos() throws Exception {
+        db = SQLiteDatabase.create(null);
+        db.setForeignKeyConstraintsEnabled(true);
+        new SQLite(InstrumentationRegistry.getTargetContext()).onCreate(db);
+    }
+
+    @After
+    public void cerrarBaseDeDatos() throws Exception {
+        SesionSQLite.liberarSentencias(db);
+        db.close();
+    }
+
+    private long iniciarSesion() {
+        Cursor sesion = SesionSQLite.iniciarSesion(db, "espacial");
+
+        try {
+            return sesion.getLong(Sesion.TABLA_SESION_ID_INDICE);
+        } finally {
+            sesion.close();
+        }
+    }
+
+    private static final class Recolector implements ConsultaEspacialSQLite.LectorCapturasEspaciales {
+        final List<double[]> capturas = new ArrayList<>();
+
+        @Override
+        public void capturaEncontrada(long idSesion, long secuencia, double latitud, double longitud, long fecha) {
+            capturas.add(new double[] { latitud, longitud });
+        }
+    }
+
+    @Test
+    public void rectanguloIncluyeCapturasEnBordesDeCelda() throws Exception {
+        long sesion = iniciarSesion();
+
+        // Longitudes justo antes, en y después de un borde de columna.
+        int borde = (int) (CeldasGeograficas.CELDA_UNIDADES * 32000L - CeldasGeograficas.DESPLAZAMIENTO_LONGITUD);
+        double[] longitudes = {
+            CodificacionCoordenadas.decodificar(borde - 1),
+            CodificacionCoordenadas.decodificar(borde),
+            CodificacionCoordenadas.decodificar(borde + 1)
+        };
+
+        for (double longitud : longitudes) {
+            GeolocalizacionSQLite.agregarCoordenadas(db, sesion, 10.9685, longitud, 1000L);
+        }
+
+        GeolocalizacionSQLite.agregarCoordenadas(db, sesion, 10.9685, longitudes[2] + 1.0, 1000L);
+
+        Recolector recolector = new Recolector();
+        int encontradas = ConsultaEspacialSQLite.seleccionarEnRectangulo(db, 10.9, longitudes[0], 11.0, longitudes[2], recolector);
+
+        assertEquals(3, encontradas);
+        assertEquals(3, recolector.capturas.size());
+
+        // Rectángulo que termina exactamente en el borde: la captura posterior queda fuera.
+        assertEquals(2, ConsultaEspacialSQLite.seleccionarEnRectangulo(db, 10.9, longitudes[0], 11.0, longitudes[1], new Recolector()));
+    }
+
+    @Test
+    public void radioYCercanas() throws Exception {
+        long sesionCerca = iniciarSesion();
+        long sesionLejos = iniciarSesion();
+
+        // Capturas cada 0.001 grados de latitud (aprox. 111 m) hacia el norte del centro.
+        for (int i = 0; i < 20; i++) {
+            GeolocalizacionSQLite.agregarCoordenadas(db, sesionCerca, 10.9685 + i * 0.001, -74.7813, 1000L + i);
+        }
+
+        GeolocalizacionSQLite.agregarCoordenadas(db, sesionLejos, 11.5, -74.7813, 1000L);
+
+        // 500 m: capturas 0 a 4 (i * 111 m <= 500).
+        assertEquals(5, ConsultaEspacialSQLite.seleccionarEnRadio(db, 10.9685, -74.7813, 500, new Recolector()));
+        assertArrayEquals(new long[] { sesionCerca }, ConsultaEspacialSQLite.sesionesEnRadio(db, 10.9685, -74.7813, 500));
+        assertArrayEquals(new long[] { sesionCerca, sesionLejos }, ConsultaEspacialSQLite.sesionesEnRadio(db, 10.9685, -74.7813, 100000));
+
+        Recolector cercanas = new Recolector();
+        assertEquals(3, ConsultaEspacialSQLite.seleccionarCercanas(db, 10.9685 + 0.0101, -74.7813, 3, cercanas));
+        assertEquals(10.9785, cercanas.capturas.get(0)[0], 1e-6);
+        assertEquals(10.9795, cercanas.capturas.get(1)[0], 1e-6);
+        assertEquals(10.9775, cercanas.capturas.get(2)[0], 1e-6);
+
+        // Más de las que hay: todas, con la más lejana al final.
+        Recolector todas = new Recolector();
+        assertEquals(21, ConsultaEspacialSQLite.seleccionarCercanas(db, 10.9685, -74.7813, 50, todas));
+        assertEquals(11.5, todas.capturas.get(20)[0], 1e-6);
+    }
+
+    @Test
+    public void consultaUsaIndiceDeCeldas() throws Exception {
+        Cursor plan = db.rawQuery("EXPLAIN QUERY PLAN " + ConsultaEspacialSQLite.SQL_SELECCIONAR_COORDENADAS_CELDAS, new String[] { "0", "0", "0", "0", "0", "0" });
+        StringBuilder detalle = new StringBuilder();
+
+        try {
+            while (plan.moveToNext()) {
+                detalle.append(plan.getString(3));
+            }
+        } finally {
+            plan.close();
+        }
+
+        assertTrue(detalle.toString(), detalle.toString().contains(GeolocalizacionSQLite.INDICE_GEOLOCALIZACION_CELDA));
+    }
+}
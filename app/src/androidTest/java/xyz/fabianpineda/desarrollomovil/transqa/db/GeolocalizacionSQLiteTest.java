@@ -0,0 +1,153 @@
+package xyz.fabianpineda.desarrollomovil.transqa.db;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+/**
+ * Pruebas instrumentadas del esquema de Geolocalizacion.
+ *
+ * Verifican con EXPLAIN QUERY PLAN que las consultas por sesión son búsquedas en índice (SEARCH)
+ * y nunca recorridos de la tabla completa (SCAN), y que no requieren ordenar resultados en una
+ * tabla temporal.
+ */
+@RunWith(AndroidJUnit4.class)
+public class GeolocalizacionSQLiteTest {
+    private SQLiteDatabase db;
+
+    @Before
+    public void crearBaseDeDatos() throws Exception {
+        db = SQLiteDatabase.create(null);
+        db.setForeignKeyConstraintsEnabled(true);
+        new SQLite(InstrumentationRegistry.getTargetContext()).onCreate(db);
+    }
+
+    @After
+    public void cerrarBaseDeDatos() throws Exception {
+        SesionSQLite.liberarSentencias(db);
+        db.close();
+    }
+
+    /**
+     * @return Todas las líneas del plan de ejecución de "sql", separadas por saltos de línea.
+     */
+    private String planDeConsulta(String sql, String... argumentos) {
+        StringBuilder plan = new StringBuilder();
+        Cursor c = db.rawQuery("EXPLAIN QUERY PLAN " + sql, argumentos);
+
+        try {
+            int detalle = c.getColumnIndexOrThrow("detail");
+
+            while (c.moveToNext()) {
+                plan.append(c.getString(detalle)).append('\n');
+            }
+        } finally {
+            c.close();
+        }
+
+        return plan.toString();
+    }
+
+    private void verificarBusquedaEnIndice(String plan) {
+        assertTrue(plan, plan.contains("SEARCH"));
+        assertTrue(plan, plan.contains("USING INDEX") || plan.contains("USING COVERING INDEX") || plan.contains("USING PRIMARY KEY"));
+        assertFalse(plan, plan.contains("SCAN"));
+        assertFalse(plan, plan.contains("TEMP B-TREE"));
+    }
+
+    @Test
+    public void coordenadasDeSesionSonBusquedaEnIndice() throws Exception {
+        verificarBusquedaEnIndice(planDeConsulta(GeolocalizacionSQLite.SQL_SELECCIONAR_COORDENADAS_SESION, "1"));
+    }
+
+    @Test
+    public void rangoDeFechasDeSesionEsBusquedaEnIndice() throws Exception {
+        verificarBusquedaEnIndice(planDeConsulta(GeolocalizacionSQLite.SQL_SELECCIONAR_COORDENADAS_SESION_FECHAS, "1", "1451606400000", "1451692800000"));
+    }
+
+    @Test
+    public void conteoYSecuenciaDeSesionSonBusquedaEnIndice() throws Exception {
+        verificarBusquedaEnIndice(planDeConsulta(GeolocalizacionSQLite.SQL_CONTAR_COORDENADAS_SESION, "1"));
+        verificarBusquedaEnIndice(planDeConsulta(GeolocalizacionSQLite.SQL_SIGUIENTE_SECUENCIA, "1"));
+    }
+
+    @Test
+    public void ajustesDeSesionSonBusquedaEnIndice() throws Exception {
+        verificarBusquedaEnIndice(planDeConsulta(AjusteRutaSQLite.SQL_SELECCIONAR_AJUSTES, "1"));
+    }
+
+    @Test
+    public void ajustesSeEscribenConLasCapturas() throws Exception {
+        Cursor a = SesionSQLite.iniciarSesion(db, "a");
+        long id = a.getLong(Sesion.TABLA_SESION_ID_INDICE);
+        a.close();
+
+        BufferGeolocalizacionSQLite buffer = new BufferGeolocalizacionSQLite(db, 4, 60000L);
+        // Dos capturas con la misma fecha: cada una tiene su propio ajuste.
+        buffer.agregar(id, 1, 1, 1000L);
+        assertEquals(1, buffer.ultimaSecuencia());
+        buffer.agregar(id, 2, 2, 1000L);
+        assertEquals(2, buffer.ultimaSecuencia());
+        buffer.ajustar(id, 2, "R1", 1, 150.0);
+        buffer.ajustar(id, 1, "R1", 0, 40.0);
+        buffer.ajustar(id, 2, "R2", 3, 160.0);
+
+        final StringBuilder leidos = new StringBuilder();
+        AlmacenCapturas.LectorAjustes lector = new AlmacenCapturas.LectorAjustes() {
+            @Override
+            public void ajusteLeido(long secuencia, String ruta, int tramo, double recorrido) {
+                leidos.append(secuencia).append(' ').append(ruta).append(' ').append(tramo).append(';');
+            }
+        };
+
+        // Los ajustes pendientes no son visibles; son escritos con las capturas.
+        assertEquals(0, buffer.leerAjustes(id, lector));
+        assertEquals(3, buffer.cantidadAjustes());
+        assertEquals(2, buffer.vaciar());
+        assertEquals(0, buffer.cantidadAjustes());
+
+        assertEquals(2, buffer.leerAjustes(id, lector));
+        assertEquals("1 R1 0;2 R2 3;", leidos.toString());
+        buffer.cerrar();
+    }
+
+    @Test
+    public void secuenciaEsCrecientePorSesion() throws Exception {
+        Cursor a = SesionSQLite.iniciarSesion(db, "a");
+        Cursor b = SesionSQLite.iniciarSesion(db, "b");
+        long idA = a.getLong(Sesion.TABLA_SESION_ID_INDICE);
+        long idB = b.getLong(Sesion.TABLA_SESION_ID_INDICE);
+        a.close();
+        b.close();
+
+        BufferGeolocalizacionSQLite buffer = new BufferGeolocalizacionSQLite(db, 4, 60000L);
+        buffer.agregar(idA, 1, 1, 1000L);
+        buffer.agregar(idA, 2, 2, 2000L);
+        buffer.agregar(idB, 3, 3, 3000L);
+        buffer.agregar(idA, 4, 4, 4000L);
+        buffer.cerrar();
+
+        assertEquals(3, GeolocalizacionSQLite.contarCoordenadas(db, idA));
+        assertEquals(1, GeolocalizacionSQLite.contarCoordenadas(db, idB));
+        assertEquals(4, GeolocalizacionSQLite.siguienteSecuencia(db, idA));
+
+        Cursor c = GeolocalizacionSQLite.seleccionarCoordenadas(db, idA);
+        try {
+            long anterior = 0;
+            while (c.moveToNext()) {
+                assertTrue(c.getLong(GeolocalizacionSQLite.CONSULTA_SECUENCIA_INDICE) > anterior);
+                anterior = c.getLong(GeolocalizacionSQLite.CONSULTA_SECUENCIA_INDICE);
+            }
+        } finally {
+            c.close();
+        }
+    }
+}
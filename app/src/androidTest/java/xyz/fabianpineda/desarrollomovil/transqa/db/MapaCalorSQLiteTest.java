@@ -0,0 +1,120 @@
+package xyz.fabianpineda.desarrollomovil.transqa.db;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Pruebas instrumentadas de MapaCalorSQLite: los agregados mantenidos al escribir capturas deben
+ * ser iguales a los reconstruidos, y las consultas deben respetar rectángulo y rango de fechas.
+ */
+@RunWith(AndroidJUnit4.class)
+public class MapaCalorSQLiteTest {
+    private SQLiteDatabase db;
+
+    @Before
+    public void crearBaseDeDatos() throws Exception {
+        db = SQLiteDatabase.create(null);
+        db.setForeignKeyConstraintsEnabled(true);
+        new SQLite(InstrumentationRegistry.getTargetContext()).onCreate(db);
+    }
+
+    @After
+    public void cerrarBaseDeDatos() throws Exception {
+        SesionSQLite.liberarSentencias(db);
+        db.close();
+    }
+
+    private long iniciarSesion() {
+        Cursor sesion = SesionSQLite.iniciarSesion(db, "mapa de calor");
+
+        try {
+            return sesion.getLong(Sesion.TABLA_SESION_ID_INDICE);
+        } finally {
+            sesion.close();
+        }
+    }
+
+    private List<RegistroMapaCalor> mapaCalor(double latitudMinima, double longitudMinima, double latitudMaxima, double longitudMaxima, long desde, long hasta) {
+        final List<RegistroMapaCalor> celdas = new ArrayList<>();
+
+        MapaCalorSQLite.seleccionarMapaCalor(db, latitudMinima, longitudMinima, latitudMaxima, longitudMaxima, desde, hasta, new MapaCalorSQLite.LectorMapaCalor() {
+            @Override
+            public void celdaLeida(RegistroMapaCalor celda) {
+                celdas.add(celda);
+            }
+        });
+
+        return celdas;
+    }
+
+    @Test
+    public void agregadoIncrementalIgualAlReconstruido() throws Exception {
+        long sesion = iniciarSesion();
+        BufferGeolocalizacionSQLite buffer = new BufferGeolocalizacionSQLite(db, 7, 60000L);
+
+        // Recorrido hacia el este, una captura cada 10 segundos, durante más de un periodo.
+        for (int i = 0; i < 120; i++) {
+            buffer.agregar(sesion, 10.9685, -74.80 + i * 0.0005, i * 10000L);
+        }
+
+        buffer.cerrar();
+        GeolocalizacionSQLite.agregarCoordenadas(db, sesion, 10.9685, -74.80 + 120 * 0.0005, 1200000L);
+
+        List<RegistroMapaCalor> incremental = mapaCalor(10.9, -74.9, 11.0, -74.7, 0, 1200000L);
+
+        assertEquals(121, MapaCalorSQLite.reconstruirMapaCalor(db));
+
+        List<RegistroMapaCalor> reconstruido = mapaCalor(10.9, -74.9, 11.0, -74.7, 0, 1200000L);
+        long capturas = 0;
+
+        assertEquals(reconstruido.size(), incremental.size());
+
+        for (int i = 0; i < incremental.size(); i++) {
+            assertEquals(reconstruido.get(i).celda(), incremental.get(i).celda());
+            assertEquals(reconstruido.get(i).capturas(), incremental.get(i).capturas());
+            assertEquals(reconstruido.get(i).muestrasVelocidad(), incremental.get(i).muestrasVelocidad());
+            assertEquals(reconstruido.get(i).velocidadPromedio(), incremental.get(i).velocidadPromedio(), 1e-9);
+            assertEquals(reconstruido.get(i).velocidadMaxima(), incremental.get(i).velocidadMaxima(), 1e-9);
+            capturas += incremental.get(i).capturas();
+        }
+
+        assertEquals(121, capturas);
+
+        // Aprox. 55 m cada 10 segundos.
+        assertEquals(5.46, incremental.get(0).velocidadPromedio(), 0.05);
+    }
+
+    @Test
+    public void consultaRespetaRectanguloYFechas() throws Exception {
+        long sesion = iniciarSesion();
+
+        GeolocalizacionSQLite.agregarCoordenadas(db, sesion, 10.9685, -74.7813, 0);
+        GeolocalizacionSQLite.agregarCoordenadas(db, sesion, 10.9685, -74.7813, RegistroMapaCalor.PERIODO_DURACION * 4);
+        GeolocalizacionSQLite.agregarCoordenadas(db, sesion, 11.5, -74.7813, RegistroMapaCalor.PERIODO_DURACION * 4 + 60000L);
+
+        List<RegistroMapaCalor> todo = mapaCalor(10.0, -75.0, 12.0, -74.0, 0, RegistroMapaCalor.PERIODO_DURACION * 5);
+        assertEquals(2, todo.size());
+        assertEquals(2, todo.get(0).capturas());
+        assertEquals(1, todo.get(1).capturas());
+
+        List<RegistroMapaCalor> primerPeriodo = mapaCalor(10.0, -75.0, 12.0, -74.0, 0, 1000L);
+        assertEquals(1, primerPeriodo.size());
+        assertEquals(1, primerPeriodo.get(0).capturas());
+
+        List<RegistroMapaCalor> sur = mapaCalor(10.9, -74.8, 11.0, -74.7, 0, RegistroMapaCalor.PERIODO_DURACION * 5);
+        assertEquals(1, sur.size());
+        assertEquals(2, sur.get(0).capturas());
+    }
+}
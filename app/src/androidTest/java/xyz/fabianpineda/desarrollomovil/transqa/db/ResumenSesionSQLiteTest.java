@@ -0,0 +1,106 @@
+package xyz.fabianpineda.desarrollomovil.transqa.db;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+/**
+ * Pruebas instrumentadas de ResumenSesion: el resumen mantenido por BufferGeolocalizacionSQLite
+ * debe ser igual al reconstruido a partir de las capturas, y debe quedar terminado con la sesión.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ResumenSesionSQLiteTest {
+    private SQLiteDatabase db;
+
+    @Before
+    public void crearBaseDeDatos() throws Exception {
+        db = SQLiteDatabase.create(null);
+        db.setForeignKeyConstraintsEnabled(true);
+        new SQLite(InstrumentationRegistry.getTargetContext()).onCreate(db);
+    }
+
+    @After
+    public void cerrarBaseDeDatos() throws Exception {
+        SesionSQLite.liberarSentencias(db);
+        db.close();
+    }
+
+    private long iniciarSesion() {
+        Cursor sesion = SesionSQLite.iniciarSesion(db, "resumen");
+
+        try {
+            return sesion.getLong(Sesion.TABLA_SESION_ID_INDICE);
+        } finally {
+            sesion.close();
+        }
+    }
+
+    private static void verificarIguales(RegistroResumen esperado, RegistroResumen resumen) {
+        assertEquals(esperado.capturas(), resumen.capturas());
+        assertEquals(esperado.fechaPrimera(), resumen.fechaPrimera());
+        assertEquals(esperado.fechaUltima(), resumen.fechaUltima());
+        assertEquals(esperado.distancia(), resumen.distancia(), 1e-6);
+        assertEquals(esperado.velocidadMaxima(), resumen.velocidadMaxima(), 1e-9);
+        assertEquals(esperado.latitudMinima(), resumen.latitudMinima(), 0);
+        assertEquals(esperado.latitudMaxima(), resumen.latitudMaxima(), 0);
+        assertEquals(esperado.longitudMinima(), resumen.longitudMinima(), 0);
+        assertEquals(esperado.longitudMaxima(), resumen.longitudMaxima(), 0);
+        assertEquals(esperado.terminada(), resumen.terminada());
+    }
+
+    @Test
+    public void resumenIncrementalIgualAlReconstruido() throws Exception {
+        long sesion = iniciarSesion();
+        BufferGeolocalizacionSQLite buffer = new BufferGeolocalizacionSQLite(db, 7, 60000L);
+
+        for (int i = 0; i < 100; i++) {
+            buffer.agregar(sesion, 10.9685 + i * 0.0001, -74.7813 + (i % 5) * 0.0002, 1000L + i * 3000L);
+        }
+
+        buffer.cerrar();
+
+        // Una captura más sin buffer, que también actualiza el resumen.
+        GeolocalizacionSQLite.agregarCoordenadas(db, sesion, 10.98, -74.78, 400000L);
+
+        RegistroResumen incremental = ResumenSesionSQLite.seleccionarResumen(db, sesion);
+
+        assertEquals(101, incremental.capturas());
+        assertFalse(incremental.terminada());
+        verificarIguales(ResumenSesionSQLite.calcularResumen(db, sesion), incremental);
+
+        assertEquals(1, ResumenSesionSQLite.reconstruirResumenes(db));
+        verificarIguales(incremental, ResumenSesionSQLite.seleccionarResumen(db, sesion));
+    }
+
+    @Test
+    public void terminarSesionTerminaResumen() throws Exception {
+        long sesion = iniciarSesion();
+        long vacia = iniciarSesion();
+
+        GeolocalizacionSQLite.agregarCoordenadas(db, sesion, 10.9685, -74.7813, 1000L);
+        GeolocalizacionSQLite.agregarCoordenadas(db, sesion, 10.9695, -74.7813, 11000L);
+
+        // Un resumen que no coincide con las capturas es reconstruido al terminar.
+        db.execSQL("DELETE FROM " + ResumenSesion.TABLA_RESUMEN + ";");
+
+        SesionSQLite.terminarSesion(db, sesion).close();
+        SesionSQLite.terminarSesion(db, vacia).close();
+
+        RegistroResumen resumen = ResumenSesionSQLite.seleccionarResumen(db, sesion);
+
+        assertTrue(resumen.terminada());
+        assertEquals(2, resumen.capturas());
+        assertEquals(RegistroResumen.distancia(10.9685, -74.7813, 10.9695, -74.7813), resumen.distancia(), 1e-6);
+
+        assertTrue(ResumenSesionSQLite.seleccionarResumen(db, vacia).terminada());
+        assertEquals(0, ResumenSesionSQLite.seleccionarResumen(db, vacia).capturas());
+    }
+}
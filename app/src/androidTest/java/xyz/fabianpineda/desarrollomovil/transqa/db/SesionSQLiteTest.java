@@ -0,0 +1,192 @@
+package xyz.fabianpineda.desarrollomovil.transqa.db;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Pruebas instrumentadas de SesionSQLite: los Cursor creados a partir de valores recién escritos
+ * deben coincidir con el registro almacenado, y el listado por páginas ("keyset") debe recorrer
+ * todas las sesiones en orden usando el índice por fecha de inicio.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SesionSQLiteTest {
+    private SQLiteDatabase db;
+
+    @Before
+    public void crearBaseDeDatos() throws Exception {
+        db = SQLiteDatabase.create(null);
+        db.setForeignKeyConstraintsEnabled(true);
+        new SQLite(InstrumentationRegistry.getTargetContext()).onCreate(db);
+    }
+
+    @After
+    public void cerrarBaseDeDatos() throws Exception {
+        SesionSQLite.liberarSentencias(db);
+        db.close();
+    }
+
+    private static void verificarIgual(Cursor esperado, Cursor obtenido) {
+        assertEquals(esperado.getLong(Sesion.TABLA_SESION_ID_INDICE), obtenido.getLong(Sesion.TABLA_SESION_ID_INDICE));
+        assertEquals(esperado.getString(Sesion.TABLA_SESION_NOMBRE_INDICE), obtenido.getString(Sesion.TABLA_SESION_NOMBRE_INDICE));
+        assertEquals(esperado.getLong(Sesion.TABLA_SESION_FECHA_INICIO_INDICE), obtenido.getLong(Sesion.TABLA_SESION_FECHA_INICIO_INDICE));
+        assertEquals(esperado.isNull(Sesion.TABLA_SESION_FECHA_FIN_INDICE), obtenido.isNull(Sesion.TABLA_SESION_FECHA_FIN_INDICE));
+        assertEquals(esperado.getLong(Sesion.TABLA_SESION_FECHA_FIN_INDICE), obtenido.getLong(Sesion.TABLA_SESION_FECHA_FIN_INDICE));
+    }
+
+    @Test
+    public void iniciarYTerminarRegresanRegistroAlmacenado() throws Exception {
+        Cursor iniciada = SesionSQLite.iniciarSesion(db, "  turno  ");
+        long id = iniciada.getLong(Sesion.TABLA_SESION_ID_INDICE);
+        Cursor almacenada = SesionSQLite.seleccionarSesion(db, id);
+
+        assertEquals("turno", iniciada.getString(Sesion.TABLA_SESION_NOMBRE_INDICE));
+        assertTrue(iniciada.isNull(Sesion.TABLA_SESION_FECHA_FIN_INDICE));
+        verificarIgual(almacenada, iniciada);
+        iniciada.close();
+        almacenada.close();
+
+        Cursor terminada = SesionSQLite.terminarSesion(db, id);
+        almacenada = SesionSQLite.seleccionarSesion(db, id);
+
+        assertFalse(terminada.isNull(Sesion.TABLA_SESION_FECHA_FIN_INDICE));
+        verificarIgual(almacenada, terminada);
+        terminada.close();
+        almacenada.close();
+    }
+
+    @Test
+    public void terminarSesionTerminadaOInexistenteRegresaNull() throws Exception {
+        Cursor iniciada = SesionSQLite.iniciarSesion(db, null);
+        long id = iniciada.getLong(Sesion.TABLA_SESION_ID_INDICE);
+        iniciada.close();
+
+        SesionSQLite.terminarSesion(db, id).close();
+
+        assertNull(SesionSQLite.terminarSesion(db, id));
+        assertNull(SesionSQLite.terminarSesion(db, id + 1));
+        assertNull(SesionSQLite.terminarSesion(db, 0));
+    }
+
+    @Test
+    public void terminarSesionGuardaLatencias() throws Exception {
+        Cursor iniciada = SesionSQLite.iniciarSesion(db, null);
+        long id = iniciada.getLong(Sesion.TABLA_SESION_ID_INDICE);
+        iniciada.close();
+
+        RegistroLatencias latencias = new RegistroLatencias(id);
+        latencias.establecer(RegistroLatencias.LATENCIA_ETAPA_COLA, 10, 100, 250, 500, 420);
+        latencias.establecer(RegistroLatencias.LATENCIA_ETAPA_TOTAL, 8, 1000000, 2500000, 5000000, 3100000);
+
+        assertNull(LatenciaSesionSQLite.seleccionarLatencias(db, id));
+
+        SesionSQLite.terminarSesion(db, id, latencias).close();
+        RegistroLatencias guardadas = LatenciaSesionSQLite.seleccionarLatencias(db, id);
+
+        assertEquals(id, guardadas.idSesion());
+        assertEquals(10, guardadas.capturas(RegistroLatencias.LATENCIA_ETAPA_COLA));
+        assertEquals(420, guardadas.maximo(RegistroLatencias.LATENCIA_ETAPA_COLA));
+        assertEquals(2500000, guardadas.percentil90(RegistroLatencias.LATENCIA_ETAPA_TOTAL));
+        assertEquals(0, guardadas.capturas(RegistroLatencias.LATENCIA_ETAPA_ENTREGA));
+
+        // Una sesión ya terminada no es terminada de nuevo, ni sus latencias reemplazadas.
+        assertNull(SesionSQLite.terminarSesion(db, id, new RegistroLatencias(id)));
+        assertEquals(10, LatenciaSesionSQLite.seleccionarLatencias(db, id).capturas(RegistroLatencias.LATENCIA_ETAPA_COLA));
+    }
+
+    private long insertarSesion(String nombre, long fechaInicio) {
+        ContentValues valores = new ContentValues();
+        valores.put(Sesion.TABLA_SESION_NOMBRE, nombre);
+        valores.put(Sesion.TABLA_SESION_FECHA_INICIO, fechaInicio);
+
+        return db.insertOrThrow(Sesion.TABLA_SESION, null, valores);
+    }
+
+    /**
+     * Recorre el listado completo página por página, como lo hace AlmacenSQLite.listarSesiones.
+     *
+     * @return IDs de las sesiones listadas, en orden.
+     */
+    private List<Long> listarTodas(String nombre, long desde, long hasta, int limite) {
+        List<Long> ids = new ArrayList<>();
+        long fechaAnterior = Long.MAX_VALUE;
+        long idAnterior = Long.MAX_VALUE;
+        int leidas;
+
+        do {
+            Cursor pagina = SesionSQLite.listarSesiones(db, nombre, desde, hasta, fechaAnterior, idAnterior, limite);
+            leidas = 0;
+
+            try {
+                while (pagina.moveToNext()) {
+                    idAnterior = pagina.getLong(Sesion.TABLA_SESION_ID_INDICE);
+                    fechaAnterior = pagina.getLong(Sesion.TABLA_SESION_FECHA_INICIO_INDICE);
+                    ids.add(idAnterior);
+                    leidas++;
+                }
+            } finally {
+                pagina.close();
+            }
+        } while (leidas == limite);
+
+        return ids;
+    }
+
+    @Test
+    public void listarSesionesRecorrePaginasEnOrden() throws Exception {
+        // Fechas repetidas e IDs fuera del orden de fechas.
+        long a = insertarSesion("ruta 1", 3000L);
+        long b = insertarSesion("ruta 2", 1000L);
+        long c = insertarSesion("Ruta 10%", 3000L);
+        long d = insertarSesion("", 2000L);
+        long e = insertarSesion("ruta_3", 3000L);
+
+        List<Long> esperadas = new ArrayList<>();
+        esperadas.add(e);
+        esperadas.add(c);
+        esperadas.add(a);
+        esperadas.add(d);
+        esperadas.add(b);
+
+        for (int limite = 1; limite <= 6; limite++) {
+            assertEquals(esperadas, listarTodas(null, Long.MIN_VALUE, Long.MAX_VALUE, limite));
+        }
+
+        // Rango de fechas inclusivo.
+        assertEquals(esperadas.subList(3, 4), listarTodas("", 2000L, 2999L, 2));
+        assertEquals(esperadas.subList(0, 4), listarTodas(null, 2000L, 3000L, 2));
+
+        // Sin distinguir mayúsculas; "%" y "_" son literales.
+        assertEquals(esperadas.subList(1, 3), listarTodas("RUTA 1", Long.MIN_VALUE, Long.MAX_VALUE, 1));
+        assertEquals(esperadas.subList(1, 2), listarTodas("10%", Long.MIN_VALUE, Long.MAX_VALUE, 1));
+        assertEquals(esperadas.subList(0, 1), listarTodas("_", Long.MIN_VALUE, Long.MAX_VALUE, 1));
+    }
+
+    @Test
+    public void listarSesionesUsaIndiceFechaInicio() throws Exception {
+        Cursor plan = db.rawQuery("EXPLAIN QUERY PLAN " + SesionSQLite.SQL_LISTAR_SESIONES, new String[] { "0", "0", "0", "0", "%", "10" });
+        StringBuilder detalle = new StringBuilder();
+
+        try {
+            while (plan.moveToNext()) {
+                detalle.append(plan.getString(3));
+            }
+        } finally {
+            plan.close();
+        }
+
+        assertTrue(detalle.toString(), detalle.toString().contains(SesionSQLite.INDICE_SESION_FECHA_INICIO));
+    }
+}
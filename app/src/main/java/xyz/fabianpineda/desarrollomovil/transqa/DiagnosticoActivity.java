@@ -0,0 +1,75 @@
+package xyz.fabianpineda.desarrollomovil.transqa;
+
+import android.os.Bundle;
+import android.os.Handler;
+import android.support.v7.app.AppCompatActivity;
+import android.widget.TextView;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+import xyz.fabianpineda.desarrollomovil.transqa.metricas.RegistroMetricas;
+
+/**
+ * Pantalla de diagnóstico: muestra las métricas de ejecución del proceso (ver RegistroMetricas),
+ * actualizadas cada INTERVALO_ACTUALIZACION mientras la Activity es visible.
+ *
+ * Muestra el mismo contenido que "adb shell dumpsys activity service ServicioGeolocalizacion",
+ * sin el estado del servicio. Las métricas pertenecen al proceso; si ServicioGeolocalizacion no
+ * ha sido creado en este proceso, la lista está vacía o incompleta.
+ */
+public class DiagnosticoActivity extends AppCompatActivity {
+    /** Tiempo, en milisegundos, entre dos actualizaciones de la pantalla. */
+    static final long INTERVALO_ACTUALIZACION = 1000L;
+
+    private TextView metricas;              // Muestra las métricas, una por línea.
+    private final Handler temporizador = new Handler();
+
+    private final Runnable actualizar = new Runnable() {
+        @Override
+        public void run() {
+            mostrarMetricas();
+            temporizador.postDelayed(this, INTERVALO_ACTUALIZACION);
+        }
+    };
+
+    /**
+     * Vuelca RegistroMetricas en "metricas."
+     */
+    private void mostrarMetricas() {
+        StringWriter texto = new StringWriter();
+        RegistroMetricas.obtener().volcar(new PrintWriter(texto));
+        metricas.setText(texto.toString());
+    }
+
+    /**
+     * Carga la interfaz de usuario.
+     *
+     * @param savedInstanceState No usado.
+     */
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_diagnostico);
+
+        metricas = (TextView) findViewById(R.id.metricas);
+    }
+
+    /**
+     * Muestra las métricas y empieza a actualizarlas periódicamente.
+     */
+    @Override
+    protected void onResume() {
+        super.onResume();
+        temporizador.post(actualizar);
+    }
+
+    /**
+     * Deja de actualizar las métricas mientras la Activity no es visible.
+     */
+    @Override
+    protected void onPause() {
+        temporizador.removeCallbacks(actualizar);
+        super.onPause();
+    }
+}
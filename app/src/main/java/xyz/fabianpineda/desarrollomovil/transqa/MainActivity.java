@@ -1,27 +1,38 @@
 package xyz.fabianpineda.desarrollomovil.transqa;
 
 import android.Manifest;
-import android.content.BroadcastReceiver;
-import android.content.Context;
+import android.content.ComponentName;
 import android.content.DialogInterface;
 import android.content.Intent;
-import android.content.IntentFilter;
+import android.content.ServiceConnection;
 import android.content.SharedPreferences;
 import android.preference.PreferenceManager;
 import android.support.annotation.NonNull;
-import android.support.v4.content.LocalBroadcastManager;
+import android.support.v4.content.FileProvider;
 import android.support.v7.app.AlertDialog;
 import android.support.v7.app.AppCompatActivity;
+import android.os.AsyncTask;
 import android.os.Bundle;
+import android.os.IBinder;
+import android.view.Menu;
+import android.view.MenuItem;
 import android.view.View;
+import android.widget.AdapterView;
+import android.widget.ArrayAdapter;
 import android.widget.Button;
+import android.widget.ListView;
+import android.widget.Spinner;
 import android.widget.TextView;
 import android.widget.Toast;
 
-import java.io.Serializable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.Locale;
 
 import permissions.dispatcher.NeedsPermission;
 import permissions.dispatcher.OnNeverAskAgain;
@@ -29,7 +40,22 @@ import permissions.dispatcher.OnPermissionDenied;
 import permissions.dispatcher.OnShowRationale;
 import permissions.dispatcher.PermissionRequest;
 import permissions.dispatcher.RuntimePermissions;
+import xyz.fabianpineda.desarrollomovil.transqa.bitacora.ArchivoBitacora;
+import xyz.fabianpineda.desarrollomovil.transqa.bitacora.Bitacora;
+import xyz.fabianpineda.desarrollomovil.transqa.bitacora.BitacoraFiltrada;
+import xyz.fabianpineda.desarrollomovil.transqa.bitacora.EntradaBitacora;
+import xyz.fabianpineda.desarrollomovil.transqa.db.AlmacenCapturas;
+import xyz.fabianpineda.desarrollomovil.transqa.db.AlmacenSQLite;
+import xyz.fabianpineda.desarrollomovil.transqa.db.RegistroSesion;
+import xyz.fabianpineda.desarrollomovil.transqa.exportacion.ExportadorSesion;
+import xyz.fabianpineda.desarrollomovil.transqa.geolocalizacion.CanalEventos;
+import xyz.fabianpineda.desarrollomovil.transqa.geolocalizacion.DifusorEnVivo;
+import xyz.fabianpineda.desarrollomovil.transqa.geolocalizacion.EstadoEnVivo;
+import xyz.fabianpineda.desarrollomovil.transqa.geolocalizacion.EventoMuestreo;
+import xyz.fabianpineda.desarrollomovil.transqa.geolocalizacion.EventoServicio;
 import xyz.fabianpineda.desarrollomovil.transqa.geolocalizacion.ServicioGeolocalizacion;
+import xyz.fabianpineda.desarrollomovil.transqa.widgets.AdaptadorBitacora;
+import xyz.fabianpineda.desarrollomovil.transqa.widgets.AdaptadorHistorialSesiones;
 import xyz.fabianpineda.desarrollomovil.transqa.widgets.DialogoNuevaSesion;
 
 /**
@@ -37,50 +63,52 @@ import xyz.fabianpineda.desarrollomovil.transqa.widgets.DialogoNuevaSesion;
  * ServicioGeolocalizacion.
  *
  * Permite al usuario iniciar o terminar el servicio, y iniciar y terminar
- * sesiones de geolocalización.
+ * sesiones de geolocalización. También muestra el historial de sesiones, cargado por páginas a
+ * medida que el usuario se desplaza. Ver: AdaptadorHistorialSesiones. Una pulsación larga sobre
+ * una sesión del historial la exporta y comparte. Ver: exportarSesion
  *
- * La clase simplemente enumera todas las posibles respuestas (acciones) de ServicioGeolocalizacion
- * que desea "manejar" y ejecuta una función distinta para cada tipo de acción.
+ * La clase recibe los eventos del servicio por medio de CanalEventos, simplemente enumera todas
+ * las posibles respuestas (acciones) de ServicioGeolocalizacion que desea "manejar" y ejecuta una
+ * función distinta para cada tipo de acción.
  *
- * Si a futuro se desea manejar más acciones del servicio, entonces se deben modificar las
- * propiedades "filtroAccionesServicio" y intentServicioGeolocalizacionRecibido.
+ * Si a futuro se desea manejar más acciones del servicio, entonces se debe modificar
+ * eventoServicioRecibido.
+ *
+ * Mientras es visible, la Activity se enlaza al servicio para mostrar la última captura y
+ * estadísticas de la sesión (ver ServicioGeolocalizacion.Enlace), a lo sumo una vez por
+ * INTERVALO_EN_VIVO.
  */
 @RuntimePermissions
 public class MainActivity extends AppCompatActivity {
+    /** Formato para fechas de inicio y fin de sesión, en hora local. */
+    static final DateFormat formatoFechasSesion = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+
+    /** Tiempo mínimo, en milisegundos, entre dos actualizaciones de infoEnVivo. */
+    static final long INTERVALO_EN_VIVO = DifusorEnVivo.DIFUSOR_INTERVALO_DEFAULT;
+
+    /** Texto mostrado en lugar de una fecha de sesión que no existe. */
+    static final String FECHA_SESION_NINGUNA = "/";
+
     /**
-     * Filtro de intents "mensaje" aceptados por esta Activity.
-     *
-     * Cada entrada en este filtro debe corresponder a una posible respuesta de ServicioGeolocalizacion
-     * que se desea manejar en esta Activity. Eliminar una entrada en este objeto causará que la
-     * Activity deje de responder a la acción especificada por la entrada.
-     *
-     * Por cada entrada agregada en este filtro, debe haber una código para manejar este tipo de
-     * acción definida en intentServicioGeolocalizacionRecibido.
-     *
-     * TODO: mover este "intent filter" al AndroidManifest.xml?
+     * True para escribir también la bitácora de eventos en archivos con rotación, en el
+     * directorio DIRECTORIO_BITACORA. Ver: ArchivoBitacora
      */
-    private static final IntentFilter filtroAccionesServicio;
-    static {
-        filtroAccionesServicio = new IntentFilter();
+    static final boolean REGISTRO_ARCHIVO_BITACORA = true;
 
-        filtroAccionesServicio.addAction(ServicioGeolocalizacion.SERVICIO_ACCION_DESCONOCIDA);
-        filtroAccionesServicio.addAction(ServicioGeolocalizacion.SERVICIO_ACCION_NINGUNA);
-        filtroAccionesServicio.addAction(ServicioGeolocalizacion.SERVICIO_ACCION_SERVICIO_REINICIADO);
-        filtroAccionesServicio.addAction(ServicioGeolocalizacion.SERVICIO_ACCION_TERMINAR_SERVICIO);
-        filtroAccionesServicio.addAction(ServicioGeolocalizacion.SERVICIO_ACCION_INICIAR_SERVICIO);
-        filtroAccionesServicio.addAction(ServicioGeolocalizacion.SERVICIO_ACCION_TERMINAR_SESION);
-        filtroAccionesServicio.addAction(ServicioGeolocalizacion.SERVICIO_ACCION_INICIAR_SESION);
-        filtroAccionesServicio.addAction(ServicioGeolocalizacion.SERVICIO_ACCION_GPS_INICIADO);
-        filtroAccionesServicio.addAction(ServicioGeolocalizacion.SERVICIO_ACCION_GPS_TERMINADO);
-        filtroAccionesServicio.addAction(ServicioGeolocalizacion.SERVICIO_ACCION_GPS_DESACTIVADO);
-        filtroAccionesServicio.addAction(ServicioGeolocalizacion.SERVICIO_ACCION_DISPOSITIVO_APAGADO);
-    }
+    /** Directorio de los archivos de la bitácora, dentro de los archivos de la aplicación. */
+    static final String DIRECTORIO_BITACORA = "bitacora";
+
+    /**
+     * Directorio de las sesiones exportadas, dentro del cache de la aplicación. Compartido con
+     * otras aplicaciones sólo por medio de FileProvider (ver res/xml/exportaciones.xml).
+     */
+    static final String DIRECTORIO_EXPORTACIONES = "exportaciones";
 
-    /** Formato para horas y/o fechas mostradas antes de cada mensaje en mensajesServicio */
-    static final DateFormat formatoFechas = new SimpleDateFormat("HH:mm:ss");
+    /** Sufijo del nombre del paquete que forma la autoridad del FileProvider de exportaciones. */
+    static final String SUFIJO_AUTORIDAD_EXPORTACIONES = ".exportaciones";
 
-    /** Formato para cada mensaje en mensajesServicio. Actualmente es una fecha seguida por un mensaje. */
-    static final String formatoMensajesNotificacion = "%s - %s.\n";
+    /** Severidad mínima de las entradas de la bitácora mostradas inicialmente. */
+    static final int SEVERIDAD_BITACORA_DEFAULT = EntradaBitacora.BITACORA_SEVERIDAD_INFORMACION;
 
     /*
      * Constantes que identifican las acciones que realiza el boton "toggle" de la Activity la
@@ -114,13 +142,21 @@ public class MainActivity extends AppCompatActivity {
     private SharedPreferences preferencias;
 
     /**
-     * Recibe mensajes de acciones realizadas por ServicioGeolocalizacion.
+     * Recibe eventos de acciones realizadas por ServicioGeolocalizacion, registrado en
+     * CanalEventos mientras la Activity existe.
      *
-     * Por cada *tipo* de mensaje enviado desde ServicioGeolocalizacion a esta Activity, debe haber
-     * una entrada correspondiente a la acción (mensaje) en filtroAccionesServicio y en
-     * intentServicioGeolocalizacionRecibido
+     * Por cada *tipo* de evento enviado desde ServicioGeolocalizacion a esta Activity, debe haber
+     * una entrada correspondiente a la acción en eventoServicioRecibido.
      */
-    private LocalBroadcastManager receptor;
+    private CanalEventos.ReceptorEventos receptor;
+
+    /**
+     * Conexión con ServicioGeolocalizacion mientras la Activity es visible (entre onStart y
+     * onStop). "enlace" es null mientras no está conectada.
+     */
+    private ServiceConnection conexion;
+    private ServicioGeolocalizacion.Enlace enlace;
+    private DifusorEnVivo.ReceptorEnVivo receptorEnVivo;    // Actualiza infoEnVivo.
 
     // ID de la sesión actual o de la última sesión terminada. Es 0 si no se cumple lo anterior.
     private long sesionID;
@@ -132,7 +168,13 @@ public class MainActivity extends AppCompatActivity {
     private TextView infoEstadoSesion;      // Muestra si hay sesión en progreso o si ha termindo
     private TextView infoFechaInicioSesion; // Muestra fecha inicio sesión actual o anterior terminada
     private TextView infoFechaFinSesion;    // Muestra fecha fin de última sesión, si existe.
-    private TextView mensajesServicio;      // Muestra información detallada al usuario, con fecha.
+    private TextView infoEnVivo;            // Muestra la última captura y estadísticas de la sesión.
+    private ListView mensajesServicio;      // Muestra la bitácora de eventos al usuario, con fecha.
+    private AdaptadorBitacora adaptadorBitacora;    // Bitácora acotada de "mensajesServicio".
+    private Spinner filtroBitacora;         // Elige la severidad mínima de los mensajes mostrados.
+
+    private ListView historialSesiones;     // Sesiones anteriores, de la más reciente a la más antigua.
+    private AdaptadorHistorialSesiones adaptadorHistorial;  // Carga "historialSesiones" por páginas.
 
     private DialogoNuevaSesion dialogoNombreSesion;    // Solicita nombre de sesión. Diálogo cancelable.
 
@@ -145,19 +187,39 @@ public class MainActivity extends AppCompatActivity {
     private int accion;
 
     /**
-     * Obtiene una representación textual de la fecha actual.
+     * Obtiene una representación textual, en hora local, de una fecha de sesión.
      *
-     * @return la fecha actual como String en el formato de la propiedad "formatoFechas"
+     * @param fecha Fecha en milisegundos desde epoch (UTC), como es almacenada por el servicio.
+     * @return la fecha en el formato de "formatoFechasSesion", o FECHA_SESION_NINGUNA si fecha es
+     * ServicioGeolocalizacion.SERVICIO_PREFERENCIA_FECHA_DEFAULT.
      */
-    static String fechaLocalAhora() {
-        return formatoFechas.format(new Date());
+    static String fechaSesionLocal(long fecha) {
+        if (fecha == ServicioGeolocalizacion.SERVICIO_PREFERENCIA_FECHA_DEFAULT) {
+            return FECHA_SESION_NINGUNA;
+        }
+
+        return formatoFechasSesion.format(new Date(fecha));
     }
 
     /**
-     * Imprime una nueva "linea" en el TextView "mensajesServicio" de la Activity.
+     * Agrega una nueva entrada, con la fecha actual, a la bitácora mostrada en "mensajesServicio."
+     * La entrada sólo es visible si su severidad no es menor a la elegida en "filtroBitacora."
      *
-     * Todos los mensajes sigue el formato especificado en "formatoMensajesNotificacion" que
-     * idealmente debe contener una fecha seguida por el mensaje.
+     * Ver: notificarUsuario(String), notificarUsuario(int) y notificarError(int).
+     *
+     * @param severidad Alguna de las constantes EntradaBitacora.BITACORA_SEVERIDAD_*.
+     * @param mensaje String del mensaje a mostrar al usuario.
+     */
+    private void notificarUsuario(int severidad, String mensaje) {
+        if (mensaje == null || mensaje.trim().compareTo("") == 0) {
+            return;
+        }
+
+        adaptadorBitacora.agregar(severidad, mensaje);
+    }
+
+    /**
+     * Agrega un mensaje informativo a la bitácora mostrada en "mensajesServicio."
      *
      * Este método acepta como entrada un String.
      * Ver: notificarUsuario(int).
@@ -165,11 +227,27 @@ public class MainActivity extends AppCompatActivity {
      * @param mensaje String del mensaje a mostrar al usuario.
      */
     private void notificarUsuario(String mensaje) {
-        if (mensaje == null || mensaje.trim().compareTo("") == 0) {
-            return;
-        }
+        notificarUsuario(EntradaBitacora.BITACORA_SEVERIDAD_INFORMACION, mensaje);
+    }
 
-        mensajesServicio.append(String.format(formatoMensajesNotificacion, fechaLocalAhora(), mensaje));
+    /**
+     * Agrega un mensaje de error a la bitácora mostrada en "mensajesServicio."
+     *
+     * Ver: notificarError(int).
+     *
+     * @param mensaje String del mensaje a mostrar al usuario.
+     */
+    private void notificarError(String mensaje) {
+        notificarUsuario(EntradaBitacora.BITACORA_SEVERIDAD_ERROR, mensaje);
+    }
+
+    /**
+     * Agrega un mensaje de error a la bitácora mostrada en "mensajesServicio."
+     *
+     * @param recursoMensaje Recurso String del mensaje a mostrar al usuario.
+     */
+    private void notificarError(int recursoMensaje) {
+        notificarError(getString(recursoMensaje));
     }
 
     /**
@@ -283,7 +361,7 @@ public class MainActivity extends AppCompatActivity {
      */
     @OnPermissionDenied(Manifest.permission.ACCESS_FINE_LOCATION)
     void permisosGPSDenegados() {
-        notificarUsuario(R.string.error_permisos_gps_denegados);
+        notificarError(R.string.error_permisos_gps_denegados);
 
         if (accion == BOTON_ACCION_SESION_INICIAR && !botonToggleServicio.isEnabled()) {
             botonToggleServicio.setEnabled(true);
@@ -297,7 +375,7 @@ public class MainActivity extends AppCompatActivity {
      */
     @OnNeverAskAgain(Manifest.permission.ACCESS_FINE_LOCATION)
     void permisosGPSDenegadosPermanentemente() {
-        notificarUsuario(R.string.error_permisos_gps_denegados_permanentemente);
+        notificarError(R.string.error_permisos_gps_denegados_permanentemente);
 
         if (accion == BOTON_ACCION_SESION_INICIAR && !botonToggleServicio.isEnabled()) {
             botonToggleServicio.setEnabled(true);
@@ -319,10 +397,7 @@ public class MainActivity extends AppCompatActivity {
     }
 
     /**
-     * Imprime una nueva "linea" en el TextView "mensajesServicio" de la Activity.
-     *
-     * Todos los mensajes sigue el formato especificado en "formatoMensajesNotificacion" que
-     * idealmente debe contener una fecha seguida por el mensaje.
+     * Agrega un mensaje informativo a la bitácora mostrada en "mensajesServicio."
      *
      * Este método acepta como entrada un int correspondiente a un recurso String en R.string.*
      * Ver: notificarUsuario(String)
@@ -384,11 +459,10 @@ public class MainActivity extends AppCompatActivity {
     }
 
     /**
-     * Posible respuesta en intentServicioGeolocalizacionRecibido.
+     * Posible respuesta en eventoServicioRecibido.
      *
-     * Ocurre si se recibe una acción que está en "filtroAccionesServicio", pero que no está siendo
-     * manejada en intentServicioGeolocalizacionRecibido. Ocurre también si se especificó
-     * explícitamente la acción SERVICIO_ACCION_DESCONOCIDA.
+     * Ocurre si se recibe una acción que no está siendo manejada en eventoServicioRecibido.
+     * Ocurre también si se especificó explícitamente la acción SERVICIO_ACCION_DESCONOCIDA.
      *
      * Se recomienda ignorar este tipo de mensajes y se recomienda no hacer una solicitud de este
      * tipo de acción a ServicioGeolocalizacion explícitamente. No hará nada más que iniciar el
@@ -400,14 +474,14 @@ public class MainActivity extends AppCompatActivity {
      * de este método.
      *
      * @param tipoRespuesta Código de respuesta. Fue exitosa la operación o no? Ver: ServicioGeolocalizacion.SERVICIO_RESPUESTA_*
-     * @param datos Datos adicionales recibidos con la respuesta.
+     * @param evento El evento recibido. Ver: EventoServicio
      */
-    private void accionDesconocida(int tipoRespuesta, Serializable datos) {
+    private void accionDesconocida(int tipoRespuesta, EventoServicio evento) {
         android.util.Log.d(MainActivity.class.getCanonicalName(), ServicioGeolocalizacion.SERVICIO_ACCION_DESCONOCIDA + ": respuesta tipo " + tipoRespuesta);
     }
 
     /**
-     * Posible respuesta en intentServicioGeolocalizacionRecibido.
+     * Posible respuesta en eventoServicioRecibido.
      *
      * Ocurre si se recibe una respuesta de tipo SERVICIO_ACCION_NINGUNA de ServicioGeolocalizacion.
      *
@@ -421,14 +495,14 @@ public class MainActivity extends AppCompatActivity {
      * de este método.
      *
      * @param tipoRespuesta Código de respuesta. Fue exitosa la operación o no? Ver: ServicioGeolocalizacion.SERVICIO_RESPUESTA_*
-     * @param datos Datos adicionales recibidos con la respuesta.
+     * @param evento El evento recibido. Ver: EventoServicio
      */
-    private void accionNinguna(int tipoRespuesta, Serializable datos) {
+    private void accionNinguna(int tipoRespuesta, EventoServicio evento) {
         android.util.Log.d(MainActivity.class.getCanonicalName(), ServicioGeolocalizacion.SERVICIO_ACCION_NINGUNA + ": respuesta tipo " + tipoRespuesta);
     }
 
     /**
-     * Posible respuesta en intentServicioGeolocalizacionRecibido.
+     * Posible respuesta en eventoServicioRecibido.
      *
      * Ocurre si se recibe una respuesta de tipo SERVICIO_ACCION_SERVICIO_REINICIADO de ServicioGeolocalizacion.
      *
@@ -439,14 +513,14 @@ public class MainActivity extends AppCompatActivity {
      * Puede ser mostrado al usuario o usarse únicamente para depurar.
      *
      * @param tipoRespuesta Código de respuesta. Fue exitosa la operación o no? Ver: ServicioGeolocalizacion.SERVICIO_RESPUESTA_*
-     * @param datos Datos adicionales recibidos con la respuesta.
+     * @param evento El evento recibido. Ver: EventoServicio
      */
-    private void accionServicioReiniciado(int tipoRespuesta, Serializable datos) {
+    private void accionServicioReiniciado(int tipoRespuesta, EventoServicio evento) {
         android.util.Log.d(MainActivity.class.getCanonicalName(), ServicioGeolocalizacion.SERVICIO_ACCION_SERVICIO_REINICIADO + ": respuesta tipo " + tipoRespuesta);
     }
 
     /**
-     * Posible respuesta en intentServicioGeolocalizacionRecibido.
+     * Posible respuesta en eventoServicioRecibido.
      *
      * Ocurre si se recibe una respuesta de tipo SERVICIO_ACCION_INICIAR_SERVICIO de ServicioGeolocalizacion.
      *
@@ -456,9 +530,9 @@ public class MainActivity extends AppCompatActivity {
      * progreso, entonces el botón cambia su acción y texto a "terminar sesión"
      *
      * @param tipoRespuesta Código de respuesta. Fue exitosa la operación o no? Ver: ServicioGeolocalizacion.SERVICIO_RESPUESTA_*
-     * @param datos Datos adicionales recibidos con la respuesta.
+     * @param evento El evento recibido. Ver: EventoServicio
      */
-    private void accionIniciarServicio(int tipoRespuesta, Serializable datos) {
+    private void accionIniciarServicio(int tipoRespuesta, EventoServicio evento) {
         android.util.Log.d(MainActivity.class.getCanonicalName(), ServicioGeolocalizacion.SERVICIO_ACCION_INICIAR_SERVICIO + ": respuesta tipo " + tipoRespuesta);
 
         if (tipoRespuesta == ServicioGeolocalizacion.SERVICIO_RESPUESTA_OK || tipoRespuesta == ServicioGeolocalizacion.SERVICIO_RESPUESTA_NO_CAMBIOS) {
@@ -472,7 +546,7 @@ public class MainActivity extends AppCompatActivity {
     }
 
     /**
-     * Posible respuesta en intentServicioGeolocalizacionRecibido.
+     * Posible respuesta en eventoServicioRecibido.
      *
      * Ocurre si se recibe una respuesta de tipo SERVICIO_ACCION_TERMINAR_SERVICIO de ServicioGeolocalizacion.
      *
@@ -487,9 +561,9 @@ public class MainActivity extends AppCompatActivity {
      * por si mismo o por Android, entonces no se hace nada ya que se reiniciará a si mismo.
      *
      * @param tipoRespuesta Código de respuesta. Fue exitosa la operación o no? Ver: ServicioGeolocalizacion.SERVICIO_RESPUESTA_*
-     * @param datos Datos adicionales recibidos con la respuesta.
+     * @param evento El evento recibido. Ver: EventoServicio
      */
-    private void accionTerminarServicio(int tipoRespuesta, Serializable datos) {
+    private void accionTerminarServicio(int tipoRespuesta, EventoServicio evento) {
         android.util.Log.d(MainActivity.class.getCanonicalName(), ServicioGeolocalizacion.SERVICIO_ACCION_TERMINAR_SERVICIO + ": respuesta tipo " + tipoRespuesta);
 
         if (tipoRespuesta == ServicioGeolocalizacion.SERVICIO_RESPUESTA_OK) {
@@ -512,7 +586,7 @@ public class MainActivity extends AppCompatActivity {
     }
 
     /**
-     * Posible respuesta en intentServicioGeolocalizacionRecibido.
+     * Posible respuesta en eventoServicioRecibido.
      *
      * Ocurre si se recibe una respuesta de tipo SERVICIO_ACCION_INICIAR_SESION de ServicioGeolocalizacion.
      *
@@ -522,21 +596,22 @@ public class MainActivity extends AppCompatActivity {
      * botón o se reinicia el servicio, cual sea necesario.
      *
      * @param tipoRespuesta Código de respuesta. Fue exitosa la operación o no? Ver: ServicioGeolocalizacion.SERVICIO_RESPUESTA_*
-     * @param datos Datos adicionales recibidos con la respuesta.
+     * @param evento El evento recibido. Ver: EventoServicio
      */
-    private void accionIniciarSesion(int tipoRespuesta, Serializable datos) {
+    private void accionIniciarSesion(int tipoRespuesta, EventoServicio evento) {
         android.util.Log.d(MainActivity.class.getCanonicalName(), ServicioGeolocalizacion.SERVICIO_ACCION_INICIAR_SESION + ": respuesta tipo " + tipoRespuesta);
 
         if (tipoRespuesta == ServicioGeolocalizacion.SERVICIO_RESPUESTA_OK) {
             // Sesión creada exitosamente. Se informa usuario y se actualiza el botón.
             notificarUsuario(R.string.anuncio_sesion_iniciada);
             actualizarBotonServicio(true, BOTON_ACCION_SESION_TERMINAR, TEXTO_BOTON_ACCION_SESION_TERMINAR);
+            adaptadorHistorial.recargar();
         } else {
             // Si no se pudo crear una nueva sesión, entonces primero se informa al usuario
-            if (datos == null) {
-                notificarUsuario(R.string.error_creando_sesion);
+            if (evento.mensaje == null) {
+                notificarError(R.string.error_creando_sesion);
             } else {
-                notificarUsuario(datos.toString());
+                notificarError(evento.mensaje);
             }
 
             if (ServicioGeolocalizacion.operando()) {
@@ -563,7 +638,7 @@ public class MainActivity extends AppCompatActivity {
     }
 
     /**
-     * Posible respuesta en intentServicioGeolocalizacionRecibido.
+     * Posible respuesta en eventoServicioRecibido.
      *
      * Ocurre si se recibe una respuesta de tipo SERVICIO_ACCION_TERMINAR_SESION de ServicioGeolocalizacion.
      *
@@ -576,21 +651,22 @@ public class MainActivity extends AppCompatActivity {
      * sesión en progreso.
      *
      * @param tipoRespuesta Código de respuesta. Fue exitosa la operación o no? Ver: ServicioGeolocalizacion.SERVICIO_RESPUESTA_*
-     * @param datos Datos adicionales recibidos con la respuesta.
+     * @param evento El evento recibido. Ver: EventoServicio
      */
-    private void accionTerminarSesion(int tipoRespuesta, Serializable datos) {
+    private void accionTerminarSesion(int tipoRespuesta, EventoServicio evento) {
         android.util.Log.d(MainActivity.class.getCanonicalName(), ServicioGeolocalizacion.SERVICIO_ACCION_TERMINAR_SESION + ": respuesta tipo " + tipoRespuesta);
 
         if (tipoRespuesta == ServicioGeolocalizacion.SERVICIO_RESPUESTA_OK) {
             // Si la sesión fue cerrada exitosamente, el botón cambia a "iniciar nueva sesión"
             notificarUsuario(R.string.anuncio_sesion_terminada);
             actualizarBotonServicio(true, BOTON_ACCION_SESION_INICIAR, TEXTO_BOTON_ACCION_SESION_INICIAR);
+            adaptadorHistorial.recargar();
         } else {
             // Si no se pudo cerrar la sesión, primero se informa al usuario
-            if (datos == null) {
-                notificarUsuario(R.string.error_terminando_sesion);
+            if (evento.mensaje == null) {
+                notificarError(R.string.error_terminando_sesion);
             } else {
-                notificarUsuario(datos.toString());
+                notificarError(evento.mensaje);
             }
 
             if (ServicioGeolocalizacion.operando()) {
@@ -614,7 +690,7 @@ public class MainActivity extends AppCompatActivity {
     }
 
     /**
-     * Posible respuesta en intentServicioGeolocalizacionRecibido.
+     * Posible respuesta en eventoServicioRecibido.
      *
      * Ocurre si se recibe una respuesta de tipo SERVICIO_ACCION_GPS_INICIADO de ServicioGeolocalizacion.
      *
@@ -627,15 +703,15 @@ public class MainActivity extends AppCompatActivity {
      * respectivamente.
      *
      * @param tipoRespuesta Código de respuesta. Fue exitosa la operación o no? Ver: ServicioGeolocalizacion.SERVICIO_RESPUESTA_*
-     * @param datos Datos adicionales recibidos con la respuesta.
+     * @param evento El evento recibido. Ver: EventoServicio
      */
-    private void accionGPSIniciado(int tipoRespuesta, Serializable datos) {
+    private void accionGPSIniciado(int tipoRespuesta, EventoServicio evento) {
         android.util.Log.d(MainActivity.class.getCanonicalName(), ServicioGeolocalizacion.SERVICIO_ACCION_GPS_INICIADO + ": respuesta tipo " + tipoRespuesta);
         notificarUsuario(R.string.anuncio_gps_iniciado);
     }
 
     /**
-     * Posible respuesta en intentServicioGeolocalizacionRecibido.
+     * Posible respuesta en eventoServicioRecibido.
      *
      * Ocurre si se recibe una respuesta de tipo SERVICIO_ACCION_GPS_TERMINADO de ServicioGeolocalizacion.
      *
@@ -650,15 +726,38 @@ public class MainActivity extends AppCompatActivity {
      * No confundir con SERVICIO_ACCION_GPS_DESACTIVADO o accionGPSDesactivado()
      *
      * @param tipoRespuesta Código de respuesta. Fue exitosa la operación o no? Ver: ServicioGeolocalizacion.SERVICIO_RESPUESTA_*
-     * @param datos Datos adicionales recibidos con la respuesta.
+     * @param evento El evento recibido. Ver: EventoServicio
      */
-    private void accionGPSTerminado(int tipoRespuesta, Serializable datos) {
+    private void accionGPSTerminado(int tipoRespuesta, EventoServicio evento) {
         android.util.Log.d(MainActivity.class.getCanonicalName(), ServicioGeolocalizacion.SERVICIO_ACCION_GPS_TERMINADO + ": respuesta tipo " + tipoRespuesta);
         notificarUsuario(R.string.anuncio_gps_terminado);
     }
 
     /**
-     * Posible respuesta en intentServicioGeolocalizacionRecibido.
+     * Posible respuesta en eventoServicioRecibido.
+     *
+     * Ocurre si se recibe una respuesta de tipo SERVICIO_ACCION_MUESTREO_CAMBIADO de ServicioGeolocalizacion.
+     *
+     * Llamado cada vez que el servicio cambia el intervalo entre capturas de acuerdo a la velocidad
+     * y giros del vehículo. Sólo se informa al usuario el nuevo intervalo.
+     *
+     * No se deben hacer solicitudes de tipo SERVICIO_ACCION_MUESTREO_CAMBIADO a ServicioGeolocalizacion.
+     *
+     * @param tipoRespuesta Código de respuesta. Fue exitosa la operación o no? Ver: ServicioGeolocalizacion.SERVICIO_RESPUESTA_*
+     * @param evento El evento recibido. Un EventoMuestreo con modo, intervalo y distancia.
+     */
+    private void accionMuestreoCambiado(int tipoRespuesta, EventoServicio evento) {
+        android.util.Log.d(MainActivity.class.getCanonicalName(), ServicioGeolocalizacion.SERVICIO_ACCION_MUESTREO_CAMBIADO + ": respuesta tipo " + tipoRespuesta);
+
+        if (tipoRespuesta != ServicioGeolocalizacion.SERVICIO_RESPUESTA_OK || !(evento instanceof EventoMuestreo)) {
+            return;
+        }
+
+        notificarUsuario(EntradaBitacora.BITACORA_SEVERIDAD_DETALLE, String.format(getString(R.string.anuncio_muestreo_cambiado_formato), ((EventoMuestreo) evento).intervalo / 1000.0));
+    }
+
+    /**
+     * Posible respuesta en eventoServicioRecibido.
      *
      * Ocurre si se recibe una respuesta de tipo SERVICIO_ACCION_GPS_DESACTIVADO de ServicioGeolocalizacion.
      *
@@ -675,15 +774,15 @@ public class MainActivity extends AppCompatActivity {
      * No confundir con SERVICIO_ACCION_GPS_TERMINADO o accionGPSTerminado()
      *
      * @param tipoRespuesta Código de respuesta. Fue exitosa la operación o no? Ver: ServicioGeolocalizacion.SERVICIO_RESPUESTA_*
-     * @param datos Datos adicionales recibidos con la respuesta.
+     * @param evento El evento recibido. Ver: EventoServicio
      */
-    private void accionGPSDesactivado(int tipoRespuesta, Serializable datos) {
+    private void accionGPSDesactivado(int tipoRespuesta, EventoServicio evento) {
         android.util.Log.d(MainActivity.class.getCanonicalName(), ServicioGeolocalizacion.SERVICIO_ACCION_GPS_DESACTIVADO + ": respuesta tipo " + tipoRespuesta);
-        notificarUsuario(R.string.error_geolocalizacion_desactivado);
+        notificarError(R.string.error_geolocalizacion_desactivado);
     }
 
     /**
-     * Posible respuesta en intentServicioGeolocalizacionRecibido.
+     * Posible respuesta en eventoServicioRecibido.
      *
      * Ocurre si se recibe una respuesta de tipo SERVICIO_ACCION_DISPOSITIVO_APAGADO de ServicioGeolocalizacion.
      *
@@ -692,37 +791,30 @@ public class MainActivity extends AppCompatActivity {
      * depuración.
      *
      * @param tipoRespuesta Código de respuesta. Fue exitosa la operación o no? Ver: ServicioGeolocalizacion.SERVICIO_RESPUESTA_*
-     * @param datos Datos adicionales recibidos con la respuesta.
+     * @param evento El evento recibido. Ver: EventoServicio
      */
-    private void accionServicioDispositivoApagado(int tipoRespuesta, Serializable datos) {
+    private void accionServicioDispositivoApagado(int tipoRespuesta, EventoServicio evento) {
         android.util.Log.d(MainActivity.class.getCanonicalName(), ServicioGeolocalizacion.SERVICIO_ACCION_DISPOSITIVO_APAGADO + ": respuesta tipo " + tipoRespuesta);
     }
 
     /**
-     * Extrae información del mensaje (intent) recibido de ServicioGeolocalizacion y toma
-     * decisiones basándose en su contenido. En especial, basñandose en su "acción."
+     * Recibe un evento de ServicioGeolocalizacion (ver CanalEventos) y toma decisiones basándose
+     * en su contenido. En especial, basándose en su "acción."
      *
      * La "accion" debe coincidir con alguno de los valores de
      * ServicioGeolocalizacion.SERVICIO_ACCION_* para que este método haga algo. Si accion
      * coincide, entonces el flujo de ejecución es despachado por este método a un método
      * accion*() de esta Activity que corresponda a la acción; el código de esta función
-     * accion*() debe manejar adecuadamente la respuesta recibida.
+     * accion*() debe manejar adecuadamente la respuesta recibida. Acciones no enumeradas son
+     * tratadas como SERVICIO_ACCION_DESCONOCIDA.
      *
-     * Tenga en cuenta que a este receptor sólo llegarán mensajes que están definidos en la
-     * propiedad "filtroAccionesServicio."
-     *
-     * @param intent Datos recibidos. Contiene una "acción" y opcionalmente "datos" adicionales.
+     * @param evento Evento recibido. Contiene una "acción", un tipo de respuesta y opcionalmente datos adicionales.
      */
-    private void intentServicioGeolocalizacionRecibido(Intent intent) {
-        if (intent == null) {
-            // TODO: error! manejar? Por ahora se ignora silenciosamente.
-            return;
-        }
-
+    private void eventoServicioRecibido(EventoServicio evento) {
         /*
-         * Se determina acción, tipo de respuesta y datos.
+         * Se determina acción y tipo de respuesta.
          *
-         * Mientras que los datos son opcionales, tipoRespuesta puede indicar si la operación
+         * Mientras que los datos adicionales son opcionales, tipoRespuesta puede indicar si la operación
          * (de la respuesta recibida) fue exitosa o no. Ver: SERVICIO_RESPUESTA_*
          *
          * Por ejemplo, si accion es SERVICIO_ACCION_INICIAR_SESION y tipoRespuesta
@@ -730,45 +822,47 @@ public class MainActivity extends AppCompatActivity {
          * de inicio de sesión fracasó. Si esto ocurre, la Activity debe mostrarle al usuario
          * que no se pudo iniciar una nueva sesión y se debe arreglar el error.
          */
-        String accion = intent.getAction();
-        int tipoRespuesta = intent.getIntExtra(ServicioGeolocalizacion.SERVICIO_RESPUESTA_PROPIEDAD_TIPO, ServicioGeolocalizacion.SERVICIO_RESPUESTA_VACIA);
-        Serializable datos = intent.getSerializableExtra(ServicioGeolocalizacion.SERVICIO_RESPUESTA_PROPIEDAD_DATOS);
+        String accion = evento.accion;
+        int tipoRespuesta = evento.tipoRespuesta;
 
         // Despachando a handler de respuesta adecuado:
         switch (accion) {
             case ServicioGeolocalizacion.SERVICIO_ACCION_GPS_INICIADO:
-                accionGPSIniciado(tipoRespuesta, datos);
+                accionGPSIniciado(tipoRespuesta, evento);
                 break;
             case ServicioGeolocalizacion.SERVICIO_ACCION_GPS_TERMINADO:
-                accionGPSTerminado(tipoRespuesta, datos);
+                accionGPSTerminado(tipoRespuesta, evento);
                 break;
             case ServicioGeolocalizacion.SERVICIO_ACCION_GPS_DESACTIVADO:
-                accionGPSDesactivado(tipoRespuesta, datos);
+                accionGPSDesactivado(tipoRespuesta, evento);
+                break;
+            case ServicioGeolocalizacion.SERVICIO_ACCION_MUESTREO_CAMBIADO:
+                accionMuestreoCambiado(tipoRespuesta, evento);
                 break;
             case ServicioGeolocalizacion.SERVICIO_ACCION_INICIAR_SESION:
-                accionIniciarSesion(tipoRespuesta, datos);
+                accionIniciarSesion(tipoRespuesta, evento);
                 break;
             case ServicioGeolocalizacion.SERVICIO_ACCION_TERMINAR_SESION:
-                accionTerminarSesion(tipoRespuesta, datos);
+                accionTerminarSesion(tipoRespuesta, evento);
                 break;
             case ServicioGeolocalizacion.SERVICIO_ACCION_INICIAR_SERVICIO:
-                accionIniciarServicio(tipoRespuesta, datos);
+                accionIniciarServicio(tipoRespuesta, evento);
                 break;
             case ServicioGeolocalizacion.SERVICIO_ACCION_TERMINAR_SERVICIO:
-                accionTerminarServicio(tipoRespuesta, datos);
+                accionTerminarServicio(tipoRespuesta, evento);
                 break;
             case ServicioGeolocalizacion.SERVICIO_ACCION_SERVICIO_REINICIADO:
-                accionServicioReiniciado(tipoRespuesta, datos);
+                accionServicioReiniciado(tipoRespuesta, evento);
                 break;
             case ServicioGeolocalizacion.SERVICIO_ACCION_DISPOSITIVO_APAGADO:
-                accionServicioDispositivoApagado(tipoRespuesta, datos);
+                accionServicioDispositivoApagado(tipoRespuesta, evento);
                 break;
             case ServicioGeolocalizacion.SERVICIO_ACCION_NINGUNA:
-                accionNinguna(tipoRespuesta, datos);
+                accionNinguna(tipoRespuesta, evento);
                 break;
             case ServicioGeolocalizacion.SERVICIO_ACCION_DESCONOCIDA:
             default:
-                accionDesconocida(tipoRespuesta, datos);
+                accionDesconocida(tipoRespuesta, evento);
                 break;
         }
 
@@ -799,8 +893,8 @@ public class MainActivity extends AppCompatActivity {
     private void actualizarVistasInformacion() {
         sesionID = preferencias.getLong(ServicioGeolocalizacion.SERVICIO_PREFERENCIA_ID_SESION_A_MOSTRAR, ServicioGeolocalizacion.SERVICIO_PREFERENCIA_ID_DEFAULT );
         sesionNombre = preferencias.getString(ServicioGeolocalizacion.SERVICIO_PREFERENCIA_NOMBRE_SESION, ServicioGeolocalizacion.SERVICIO_PREFERENCIA_NOMBRE_SESION_DEFAULT).trim();
-        sesionFechaInicio = preferencias.getString(ServicioGeolocalizacion.SERVICIO_PREFERENCIA_FECHA_INICIO_SESION, ServicioGeolocalizacion.SERVICIO_PREFERENCIA_FECHA_DEFAULT);
-        sesionFechaFin = preferencias.getString(ServicioGeolocalizacion.SERVICIO_PREFERENCIA_FECHA_FIN_SESION, ServicioGeolocalizacion.SERVICIO_PREFERENCIA_FECHA_DEFAULT);
+        sesionFechaInicio = fechaSesionLocal(preferencias.getLong(ServicioGeolocalizacion.SERVICIO_PREFERENCIA_FECHA_INICIO_SESION, ServicioGeolocalizacion.SERVICIO_PREFERENCIA_FECHA_DEFAULT));
+        sesionFechaFin = fechaSesionLocal(preferencias.getLong(ServicioGeolocalizacion.SERVICIO_PREFERENCIA_FECHA_FIN_SESION, ServicioGeolocalizacion.SERVICIO_PREFERENCIA_FECHA_DEFAULT));
 
         if (sesionNombre.compareTo("") == 0) {
             sesionNombre = getString(R.string.sesion_nombre_ninguno);
@@ -817,6 +911,193 @@ public class MainActivity extends AppCompatActivity {
         infoFechaFinSesion.setText(String.format(getString(R.string.info_sesion_fecha_fin_formato), sesionFechaFin));
     }
 
+    /**
+     * Muestra un estado en vivo del servicio en infoEnVivo.
+     *
+     * @param estado El estado a mostrar, o null si el servicio aún no tiene capturas.
+     */
+    private void mostrarEstadoEnVivo(EstadoEnVivo estado) {
+        if (estado == null) {
+            infoEnVivo.setText(R.string.info_en_vivo_ninguno);
+            return;
+        }
+
+        String velocidad = Float.isNaN(estado.velocidad)
+                ? getString(R.string.info_en_vivo_velocidad_ninguna)
+                : String.format(getString(R.string.info_en_vivo_velocidad_formato), estado.velocidad * 3.6);
+
+        infoEnVivo.setText(String.format(
+                getString(R.string.info_en_vivo_formato),
+                estado.latitud,
+                estado.longitud,
+                velocidad,
+                estado.capturas,
+                estado.distancia / 1000.0
+        ));
+    }
+
+    /**
+     * Exporta una sesión del historial a un archivo en DIRECTORIO_EXPORTACIONES y lo comparte con
+     * la aplicación que elija el usuario.
+     *
+     * La sesión es leída y escrita fuera del hilo principal, con una conexión propia de sólo
+     * lectura (ver AlmacenSQLite.abrirLectura y ExportadorSesion). Se usa el ejecutor en paralelo
+     * de AsyncTask para no retrasar la carga de páginas de "historialSesiones", que usa el serial.
+     */
+    private final class ExportacionSesion extends AsyncTask<Void, Void, File> {
+        private final long idSesion;
+        private final int formato;
+        private final File directorio;
+
+        ExportacionSesion(long idSesion, int formato) {
+            this.idSesion = idSesion;
+            this.formato = formato;
+            this.directorio = new File(getCacheDir(), DIRECTORIO_EXPORTACIONES);
+        }
+
+        /**
+         * @return El archivo exportado, o null si hubo un error.
+         */
+        @Override
+        protected File doInBackground(Void... parametros) {
+            File archivo = new File(directorio, String.format(Locale.US, "sesion-%d.%s", idSesion, ExportadorSesion.extension(formato)));
+            AlmacenSQLite almacen = null;
+            AlmacenCapturas capturas = null;
+            boolean exito = false;
+
+            try {
+                almacen = AlmacenSQLite.abrirLectura(getApplicationContext());
+
+                if (almacen == null || (!directorio.isDirectory() && !directorio.mkdirs())) {
+                    return null;
+                }
+
+                capturas = almacen.abrirCapturas();
+                OutputStream salida = new FileOutputStream(archivo);
+
+                try {
+                    new ExportadorSesion(almacen.sesiones(), capturas).exportar(idSesion, formato, salida, null);
+                } finally {
+                    salida.close();
+                }
+
+                exito = true;
+                return archivo;
+            } catch (IOException | RuntimeException e) {
+                android.util.Log.e(MainActivity.class.getCanonicalName(), "Error exportando sesión " + idSesion, e);
+                return null;
+            } finally {
+                if (capturas != null) {
+                    capturas.cerrar();
+                }
+
+                if (almacen != null) {
+                    almacen.cerrar();
+                }
+
+                if (!exito) {
+                    archivo.delete();
+                }
+            }
+        }
+
+        @Override
+        protected void onPostExecute(File archivo) {
+            if (isFinishing()) {
+                return;
+            }
+
+            if (archivo == null) {
+                notificarError(String.format(getString(R.string.error_exportando_sesion_formato), idSesion));
+                return;
+            }
+
+            Intent compartir = new Intent(Intent.ACTION_SEND);
+            compartir.setType(ExportadorSesion.tipoMime(formato));
+            compartir.putExtra(Intent.EXTRA_STREAM, FileProvider.getUriForFile(MainActivity.this, getPackageName() + SUFIJO_AUTORIDAD_EXPORTACIONES, archivo));
+            compartir.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+
+            startActivity(Intent.createChooser(compartir, getString(R.string.dialogo_exportar_sesion_compartir)));
+        }
+    }
+
+    /**
+     * Pregunta al usuario el formato en que desea exportar una sesión del historial y la exporta
+     * (ver ExportacionSesion). Las posiciones de R.array.exportacion_formatos corresponden a las
+     * constantes ExportadorSesion.FORMATO_*.
+     *
+     * @param sesion Sesión elegida en "historialSesiones".
+     */
+    private void exportarSesion(final RegistroSesion sesion) {
+        new AlertDialog.Builder(this)
+                .setTitle(String.format(getString(R.string.dialogo_exportar_sesion_titulo_formato), sesion.id))
+                .setItems(R.array.exportacion_formatos, new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialogo, int formato) {
+                        notificarUsuario(R.string.anuncio_sesion_exportando);
+                        new ExportacionSesion(sesion.id, formato).executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+                    }
+                })
+                .show();
+    }
+
+    /**
+     * Agrega al menú de la Activity la entrada de la pantalla de diagnóstico.
+     *
+     * @param menu Menú de opciones de la Activity.
+     * @return true, para mostrar el menú.
+     */
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.menu_main, menu);
+        return true;
+    }
+
+    /**
+     * Abre DiagnosticoActivity si se eligió su entrada del menú.
+     *
+     * @param item Entrada elegida.
+     * @return true si la entrada fue manejada.
+     */
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        if (item.getItemId() == R.id.menuDiagnostico) {
+            startActivity(new Intent(this, DiagnosticoActivity.class));
+            return true;
+        }
+
+        return super.onOptionsItemSelected(item);
+    }
+
+    /**
+     * Se enlaza a ServicioGeolocalizacion para recibir estados en vivo mientras la Activity es
+     * visible.
+     *
+     * No se usa BIND_AUTO_CREATE: el servicio es iniciado con startService en onCreate, y un
+     * enlace con BIND_AUTO_CREATE impediría que termine con SERVICIO_ACCION_TERMINAR_SERVICIO
+     * mientras la Activity es visible. Si el servicio no existe, la conexión ocurre cuando sea
+     * iniciado.
+     */
+    @Override
+    protected void onStart() {
+        super.onStart();
+        bindService(new Intent(this, ServicioGeolocalizacion.class), conexion, 0);
+    }
+
+    /**
+     * Anula la suscripción a estados en vivo y se desenlaza del servicio.
+     */
+    @Override
+    protected void onStop() {
+        if (enlace != null) {
+            enlace.anularSuscripcion(receptorEnVivo);
+            enlace = null;
+        }
+
+        unbindService(conexion);
+        super.onStop();
+    }
+
     /**
      * Ejecutado cada vez que la Activity se hace visible cuando antes no lo estaba.
      *
@@ -848,9 +1129,55 @@ public class MainActivity extends AppCompatActivity {
         infoEstadoSesion = (TextView) findViewById(R.id.infoEstadoSesion);
         infoFechaInicioSesion = (TextView) findViewById(R.id.infoFechaInicioSesion);
         infoFechaFinSesion = (TextView) findViewById(R.id.infoFechaFinSesion);
+        infoEnVivo = (TextView) findViewById(R.id.infoEnVivo);
+        mostrarEstadoEnVivo(null);
+
+        ArchivoBitacora archivoBitacora = null;
+
+        if (REGISTRO_ARCHIVO_BITACORA) {
+            archivoBitacora = new ArchivoBitacora(
+                    new File(getFilesDir(), DIRECTORIO_BITACORA),
+                    ArchivoBitacora.ARCHIVO_BITACORA_TAMANO_DEFAULT,
+                    ArchivoBitacora.ARCHIVO_BITACORA_ARCHIVOS_DEFAULT,
+                    AsyncTask.SERIAL_EXECUTOR
+            );
+        }
+
+        adaptadorBitacora = new AdaptadorBitacora(this, new BitacoraFiltrada(new Bitacora(Bitacora.BITACORA_CAPACIDAD_DEFAULT, archivoBitacora), SEVERIDAD_BITACORA_DEFAULT));
+        mensajesServicio = (ListView) findViewById(R.id.mensajesServicio);
+        mensajesServicio.setAdapter(adaptadorBitacora);
+        notificarUsuario(R.string.anuncio_binevenido);
+
+        // Las posiciones de R.array.bitacora_filtros corresponden a las severidades.
+        ArrayAdapter<CharSequence> filtros = ArrayAdapter.createFromResource(this, R.array.bitacora_filtros, android.R.layout.simple_spinner_item);
+        filtros.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+        filtroBitacora = (Spinner) findViewById(R.id.filtroBitacora);
+        filtroBitacora.setAdapter(filtros);
+        filtroBitacora.setSelection(SEVERIDAD_BITACORA_DEFAULT);
+        filtroBitacora.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
+            @Override
+            public void onItemSelected(AdapterView<?> padre, View vista, int posicion, long id) {
+                adaptadorBitacora.filtrar(posicion);
+            }
+
+            @Override
+            public void onNothingSelected(AdapterView<?> padre) {
+                // Nada.
+            }
+        });
 
-        mensajesServicio = (TextView) findViewById(R.id.mensajesServicio);
-        mensajesServicio.append(String.format(formatoMensajesNotificacion, fechaLocalAhora(), getString(R.string.anuncio_binevenido)));
+        adaptadorHistorial = new AdaptadorHistorialSesiones(this);
+        historialSesiones = (ListView) findViewById(R.id.historialSesiones);
+        historialSesiones.setAdapter(adaptadorHistorial);
+        historialSesiones.setOnScrollListener(adaptadorHistorial);
+        historialSesiones.setOnItemLongClickListener(new AdapterView.OnItemLongClickListener() {
+            @Override
+            public boolean onItemLongClick(AdapterView<?> padre, View vista, int posicion, long id) {
+                exportarSesion(adaptadorHistorial.getItem(posicion));
+                return true;
+            }
+        });
+        adaptadorHistorial.recargar();
 
         dialogoNombreSesion = null;
 
@@ -862,14 +1189,45 @@ public class MainActivity extends AppCompatActivity {
             }
         });
 
-        receptor = LocalBroadcastManager.getInstance(this);
-        receptor.registerReceiver(new BroadcastReceiver() {
+        receptor = new CanalEventos.ReceptorEventos() {
             @Override
-            public void onReceive(Context context, Intent intent) {
-                intentServicioGeolocalizacionRecibido(intent);
+            public void eventoRecibido(EventoServicio evento) {
+                eventoServicioRecibido(evento);
             }
-        }, filtroAccionesServicio);
+        };
+        CanalEventos.obtener().registrar(receptor);
+
+        receptorEnVivo = new DifusorEnVivo.ReceptorEnVivo() {
+            @Override
+            public void estadoRecibido(EstadoEnVivo estado) {
+                mostrarEstadoEnVivo(estado);
+            }
+        };
+
+        conexion = new ServiceConnection() {
+            @Override
+            public void onServiceConnected(ComponentName nombre, IBinder servicio) {
+                enlace = (ServicioGeolocalizacion.Enlace) servicio;
+                enlace.suscribir(receptorEnVivo, INTERVALO_EN_VIVO);
+            }
+
+            @Override
+            public void onServiceDisconnected(ComponentName nombre) {
+                enlace = null;
+            }
+        };
 
         startService(new Intent(ServicioGeolocalizacion.SERVICIO_ACCION_INICIAR_SERVICIO, null, this, ServicioGeolocalizacion.class));
     }
+
+    /**
+     * Deja de recibir eventos de ServicioGeolocalizacion y cierra la conexión de sólo lectura
+     * usada por el historial de sesiones.
+     */
+    @Override
+    protected void onDestroy() {
+        CanalEventos.obtener().anularRegistro(receptor);
+        adaptadorHistorial.cerrar();
+        super.onDestroy();
+    }
 }
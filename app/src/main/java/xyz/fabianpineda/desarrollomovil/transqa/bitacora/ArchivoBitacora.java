@@ -0,0 +1,163 @@
+package xyz.fabianpineda.desarrollomovil.transqa.bitacora;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Archivo de texto, con rotación, donde se escriben las entradas de una Bitacora para conservar
+ * más historia de la que cabe en memoria.
+ *
+ * Las entradas se escriben en ARCHIVO_BITACORA_NOMBRE, una por línea. Cuando el archivo supera
+ * "tamanoMaximo" bytes, es renombrado a ARCHIVO_BITACORA_NOMBRE + ".1" (el ".1" anterior pasa a
+ * ".2", etc.) y se empieza uno nuevo; se conservan a lo sumo "archivos" archivos anteriores. Así,
+ * el espacio usado en disco es acotado.
+ *
+ * escribir() nunca toca el disco: las entradas se acumulan y son escritas en lote por el
+ * ejecutor, fuera del hilo principal. Errores de escritura sólo se registran en el log; la
+ * bitácora en memoria no depende del archivo.
+ */
+public final class ArchivoBitacora {
+    private static final String ETIQUETA = ArchivoBitacora.class.getSimpleName();
+
+    public static final String ARCHIVO_BITACORA_NOMBRE = "bitacora.log";
+    public static final long ARCHIVO_BITACORA_TAMANO_DEFAULT = 256 * 1024;     // Bytes por archivo.
+    public static final int ARCHIVO_BITACORA_ARCHIVOS_DEFAULT = 3;             // Archivos anteriores conservados.
+
+    private static final String[] NOMBRES_SEVERIDAD = { "DETALLE", "INFO", "ERROR" };
+
+    private final File directorio;
+    private final long tamanoMaximo;
+    private final int archivos;
+    private final Executor ejecutor;
+
+    private final DateFormat formatoFechas = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");  // Sólo usado por el ejecutor.
+
+    private final Object bloqueo = new Object();
+    private List<EntradaBitacora> pendientes = new ArrayList<>();     // Protegido por "bloqueo".
+    private boolean escrituraProgramada;                                // Protegido por "bloqueo".
+
+    private final Runnable escribirPendientes = new Runnable() {
+        @Override
+        public void run() {
+            List<EntradaBitacora> lote;
+
+            synchronized (bloqueo) {
+                lote = pendientes;
+                pendientes = new ArrayList<>();
+                escrituraProgramada = false;
+            }
+
+            try {
+                escribirLote(lote);
+            } catch (IOException e) {
+                Log.e(ETIQUETA, "Error escribiendo bitácora", e);
+            }
+        }
+    };
+
+    /**
+     * @param directorio Directorio de los archivos. Es creado si no existe.
+     * @param tamanoMaximo Bytes a partir de los cuales se rota el archivo.
+     * @param archivos Número de archivos anteriores a conservar; 0 para sólo truncar al rotar.
+     * @param ejecutor Ejecuta las escrituras. Debe ejecutar las tareas en orden, una a la vez.
+     */
+    public ArchivoBitacora(File directorio, long tamanoMaximo, int archivos, Executor ejecutor) {
+        this.directorio = directorio;
+        this.tamanoMaximo = tamanoMaximo;
+        this.archivos = archivos;
+        this.ejecutor = ejecutor;
+    }
+
+    /**
+     * Programa la escritura de una entrada. Puede ser llamado desde cualquier hilo.
+     */
+    public void escribir(EntradaBitacora entrada) {
+        boolean programar;
+
+        synchronized (bloqueo) {
+            pendientes.add(entrada);
+
+            programar = !escrituraProgramada;
+            escrituraProgramada = true;
+        }
+
+        if (programar) {
+            ejecutor.execute(escribirPendientes);
+        }
+    }
+
+    /**
+     * @return El archivo actual, donde se escriben las entradas nuevas.
+     */
+    public File archivo() {
+        return new File(directorio, ARCHIVO_BITACORA_NOMBRE);
+    }
+
+    private void escribirLote(List<EntradaBitacora> lote) throws IOException {
+        if (lote.isEmpty()) {
+            return;
+        }
+
+        if (!directorio.isDirectory() && !directorio.mkdirs()) {
+            throw new IOException("No se pudo crear " + directorio);
+        }
+
+        File archivo = archivo();
+        Writer escritor = new OutputStreamWriter(new FileOutputStream(archivo, true), "UTF-8");
+
+        try {
+            for (EntradaBitacora entrada : lote) {
+                escritor.write(linea(entrada));
+            }
+        } finally {
+            escritor.close();
+        }
+
+        if (archivo.length() > tamanoMaximo) {
+            rotar(archivo);
+        }
+    }
+
+    private String linea(EntradaBitacora entrada) {
+        String severidad = entrada.severidad >= 0 && entrada.severidad < NOMBRES_SEVERIDAD.length
+                ? NOMBRES_SEVERIDAD[entrada.severidad]
+                : String.valueOf(entrada.severidad);
+
+        // Una entrada por línea, aunque el mensaje tenga saltos de línea.
+        String mensaje = entrada.mensaje == null ? "" : entrada.mensaje.replace('\n', ' ').replace('\r', ' ');
+
+        return formatoFechas.format(new Date(entrada.fecha)) + " " + severidad + " " + mensaje + "\n";
+    }
+
+    private void rotar(File archivo) {
+        String nombre = archivo.getPath();
+
+        if (archivos < 1) {
+            archivo.delete();
+            return;
+        }
+
+        new File(nombre + "." + archivos).delete();
+
+        for (int i = archivos - 1; i >= 1; i--) {
+            File anterior = new File(nombre + "." + i);
+
+            if (anterior.exists()) {
+                anterior.renameTo(new File(nombre + "." + (i + 1)));
+            }
+        }
+
+        archivo.renameTo(new File(nombre + ".1"));
+    }
+}
@@ -0,0 +1,133 @@
+package xyz.fabianpineda.desarrollomovil.transqa.bitacora;
+
+/**
+ * Bitácora de eventos en memoria, acotada: un búfer circular de las últimas "capacidad" entradas,
+ * de la más antigua a la más reciente. Al llenarse, cada entrada nueva reemplaza la más antigua,
+ * así que la memoria usada no crece con el tiempo que la aplicación permanece abierta.
+ *
+ * Agregar y leer cualquier entrada por posición son operaciones de tiempo constante; la bitácora
+ * puede respaldar directamente un adaptador de ListView.
+ *
+ * Opcionalmente, cada entrada agregada es también escrita en un ArchivoBitacora, que conserva
+ * más historia en disco.
+ *
+ * No es segura para uso desde varios hilos; normalmente es usada sólo desde el hilo principal.
+ */
+public final class Bitacora {
+    public static final int BITACORA_CAPACIDAD_DEFAULT = 500;
+
+    private final EntradaBitacora[] entradas;
+    private final ArchivoBitacora archivo;
+
+    private int inicio;                     // Posición de la entrada más antigua en "entradas".
+    private int tamano;
+
+    /**
+     * @param capacidad Número máximo de entradas en memoria.
+     * @param archivo Archivo donde escribir las entradas agregadas, o null para no escribirlas.
+     */
+    public Bitacora(int capacidad, ArchivoBitacora archivo) {
+        if (capacidad < 1) {
+            throw new IllegalArgumentException("capacidad < 1");
+        }
+
+        this.entradas = new EntradaBitacora[capacidad];
+        this.archivo = archivo;
+    }
+
+    /**
+     * Agrega una entrada con la fecha actual.
+     *
+     * @return La entrada descartada para hacerle espacio, o null si no se descartó ninguna.
+     */
+    public EntradaBitacora agregar(int severidad, String mensaje) {
+        return agregar(new EntradaBitacora(System.currentTimeMillis(), severidad, mensaje));
+    }
+
+    /**
+     * Agrega una entrada al final de la bitácora.
+     *
+     * @return La entrada descartada para hacerle espacio, o null si no se descartó ninguna.
+     */
+    public EntradaBitacora agregar(EntradaBitacora entrada) {
+        if (archivo != null) {
+            archivo.escribir(entrada);
+        }
+
+        return agregarEnMemoria(entrada);
+    }
+
+    /**
+     * Agrega una entrada sólo en memoria. Usado para copias filtradas de una bitácora.
+     */
+    EntradaBitacora agregarEnMemoria(EntradaBitacora entrada) {
+        EntradaBitacora descartada = null;
+
+        if (tamano < entradas.length) {
+            entradas[(inicio + tamano) % entradas.length] = entrada;
+            tamano++;
+        } else {
+            descartada = entradas[inicio];
+            entradas[inicio] = entrada;
+            inicio = (inicio + 1) % entradas.length;
+        }
+
+        return descartada;
+    }
+
+    /**
+     * Descarta la entrada más antigua.
+     *
+     * @return La entrada descartada, o null si la bitácora está vacía.
+     */
+    EntradaBitacora descartarPrimera() {
+        if (tamano == 0) {
+            return null;
+        }
+
+        EntradaBitacora descartada = entradas[inicio];
+        entradas[inicio] = null;
+        inicio = (inicio + 1) % entradas.length;
+        tamano--;
+
+        return descartada;
+    }
+
+    /**
+     * Descarta todas las entradas en memoria. No afecta el archivo.
+     */
+    public void limpiar() {
+        for (int i = 0; i < entradas.length; i++) {
+            entradas[i] = null;
+        }
+
+        inicio = 0;
+        tamano = 0;
+    }
+
+    /**
+     * @param posicion Posición de la entrada, de 0 (la más antigua) a tamano() - 1 (la más reciente).
+     */
+    public EntradaBitacora obtener(int posicion) {
+        if (posicion < 0 || posicion >= tamano) {
+            throw new IndexOutOfBoundsException(String.valueOf(posicion));
+        }
+
+        return entradas[(inicio + posicion) % entradas.length];
+    }
+
+    /**
+     * @return La entrada más antigua, o null si la bitácora está vacía.
+     */
+    public EntradaBitacora primera() {
+        return tamano == 0 ? null : entradas[inicio];
+    }
+
+    public int tamano() {
+        return tamano;
+    }
+
+    public int capacidad() {
+        return entradas.length;
+    }
+}
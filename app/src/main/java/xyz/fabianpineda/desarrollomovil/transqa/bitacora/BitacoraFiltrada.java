@@ -0,0 +1,89 @@
+package xyz.fabianpineda.desarrollomovil.transqa.bitacora;
+
+/**
+ * Una Bitacora junto con la vista de sus entradas con severidad mayor o igual a una severidad
+ * mínima. Es lo que respalda el adaptador de la bitácora (ver widgets.AdaptadorBitacora).
+ *
+ * La vista es otro búfer circular, de la misma capacidad, mantenido incrementalmente: agregar una
+ * entrada sólo la agrega a la vista si pasa el filtro, y si la bitácora descartó su entrada más
+ * antigua, ésta sólo puede ser también la más antigua de la vista. Sólo cambiar el filtro
+ * recorre la bitácora completa.
+ *
+ * No es segura para uso desde varios hilos; normalmente es usada sólo desde el hilo principal.
+ */
+public final class BitacoraFiltrada {
+    private final Bitacora bitacora;
+    private final Bitacora visibles;
+    private int severidadMinima;
+
+    /**
+     * @param bitacora Bitácora de todas las entradas. Sólo debe recibir entradas por medio de esta vista.
+     * @param severidadMinima Alguna de las constantes EntradaBitacora.BITACORA_SEVERIDAD_*.
+     */
+    public BitacoraFiltrada(Bitacora bitacora, int severidadMinima) {
+        this.bitacora = bitacora;
+        this.visibles = new Bitacora(bitacora.capacidad(), null);
+
+        filtrar(severidadMinima);
+    }
+
+    /**
+     * Agrega una entrada con la fecha actual a la bitácora (y a su archivo, si tiene uno).
+     *
+     * @return true si la vista cambió: la entrada es visible, o se descartó una entrada visible.
+     */
+    public boolean agregar(int severidad, String mensaje) {
+        EntradaBitacora entrada = new EntradaBitacora(System.currentTimeMillis(), severidad, mensaje);
+        EntradaBitacora descartada = bitacora.agregar(entrada);
+        boolean cambio = false;
+
+        if (descartada != null && visibles.primera() == descartada) {
+            visibles.descartarPrimera();
+            cambio = true;
+        }
+
+        if (entrada.severidad >= severidadMinima) {
+            visibles.agregarEnMemoria(entrada);
+            cambio = true;
+        }
+
+        return cambio;
+    }
+
+    /**
+     * Cambia la severidad mínima de las entradas visibles.
+     *
+     * @param severidadMinima Alguna de las constantes EntradaBitacora.BITACORA_SEVERIDAD_*.
+     */
+    public void filtrar(int severidadMinima) {
+        this.severidadMinima = severidadMinima;
+
+        visibles.limpiar();
+
+        for (int i = 0; i < bitacora.tamano(); i++) {
+            EntradaBitacora entrada = bitacora.obtener(i);
+
+            if (entrada.severidad >= severidadMinima) {
+                visibles.agregarEnMemoria(entrada);
+            }
+        }
+    }
+
+    public int severidadMinima() {
+        return severidadMinima;
+    }
+
+    /**
+     * @return Número de entradas visibles.
+     */
+    public int tamano() {
+        return visibles.tamano();
+    }
+
+    /**
+     * @param posicion Posición entre las entradas visibles, de 0 (la más antigua) a tamano() - 1.
+     */
+    public EntradaBitacora obtener(int posicion) {
+        return visibles.obtener(posicion);
+    }
+}
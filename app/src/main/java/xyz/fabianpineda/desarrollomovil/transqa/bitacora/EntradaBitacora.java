@@ -0,0 +1,29 @@
+package xyz.fabianpineda.desarrollomovil.transqa.bitacora;
+
+/**
+ * Una entrada (mensaje) de la bitácora de eventos mostrada al usuario. Inmutable.
+ */
+public final class EntradaBitacora {
+    /*
+     * Severidades, de menor a mayor. Un filtro por severidad muestra las entradas con severidad
+     * mayor o igual a la elegida.
+     */
+    public static final int BITACORA_SEVERIDAD_DETALLE = 0;        // Eventos frecuentes de estado; ej. cambios de muestreo.
+    public static final int BITACORA_SEVERIDAD_INFORMACION = 1;    // Acciones del usuario y del servicio.
+    public static final int BITACORA_SEVERIDAD_ERROR = 2;
+
+    public final long fecha;                // Milisegundos desde la época.
+    public final int severidad;             // Alguna de las constantes BITACORA_SEVERIDAD_*.
+    public final String mensaje;
+
+    public EntradaBitacora(long fecha, int severidad, String mensaje) {
+        this.fecha = fecha;
+        this.severidad = severidad;
+        this.mensaje = mensaje;
+    }
+
+    @Override
+    public String toString() {
+        return fecha + " " + severidad + " " + mensaje;
+    }
+}
@@ -0,0 +1,32 @@
+package xyz.fabianpineda.desarrollomovil.transqa.db;
+
+/**
+ * Define la tabla/entidad AjusteRuta en una base de datos relacional cualquiera.
+ *
+ * Cada entrada asocia una captura "Geolocalizacion" de una Sesion a la ruta de transporte en la
+ * que fue tomada (ver rutas.AjustadorRutas): la ruta, el tramo de su forma y el recorrido, en
+ * metros desde el inicio de la forma, del punto de la ruta más cercano a la captura. Es
+ * identificada por la ID de la sesión y el número de secuencia de la captura (ver
+ * Geolocalizacion). Las capturas tomadas fuera de toda ruta no tienen entrada.
+ *
+ * No se debe incluir información en este objeto que esté dirigida a una DB/(R)DBMS específica.
+ */
+final class AjusteRuta {
+    static final String TABLA_AJUSTE = "AjusteRuta";
+
+    static final String TABLA_AJUSTE_ID_SESION = "id_sesion";
+    static final String TABLA_AJUSTE_SECUENCIA = "secuencia";
+    static final String TABLA_AJUSTE_RUTA = "ruta";
+    static final String TABLA_AJUSTE_TRAMO = "tramo";
+    static final String TABLA_AJUSTE_RECORRIDO = "recorrido";
+
+    /*
+     * Índices de cada campo. Por favor actualizar si se altera el orden de los campos o si se
+     * agregan o eliminan campos.
+     */
+    static final int TABLA_AJUSTE_ID_SESION_INDICE = 0;
+    static final int TABLA_AJUSTE_SECUENCIA_INDICE = 1;
+    static final int TABLA_AJUSTE_RUTA_INDICE = 2;
+    static final int TABLA_AJUSTE_TRAMO_INDICE = 3;
+    static final int TABLA_AJUSTE_RECORRIDO_INDICE = 4;
+}
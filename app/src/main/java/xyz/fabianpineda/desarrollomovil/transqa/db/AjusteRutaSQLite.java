@@ -0,0 +1,154 @@
+package xyz.fabianpineda.desarrollomovil.transqa.db;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * Información de tabla AjusteRuta en SQLite.
+ *
+ * Usado para crear y operar con la tabla "AjusteRuta" en SQLite3 en la base de datos "DB".
+ *
+ * Los ajustes de una sesión son producidos por el servicio mientras escribe sus capturas, con
+ * unas capturas de retraso (ver rutas.AjustadorRutas), y son escritos por
+ * BufferGeolocalizacionSQLite en la misma transacción que las capturas pendientes. Un ajuste
+ * repetido para la misma captura reemplaza al anterior.
+ *
+ * La llave primaria es (id_sesion, secuencia), la misma de Geolocalizacion: cada captura tiene a
+ * lo sumo un ajuste aunque varias capturas tengan la misma fecha, y leer los ajustes de una
+ * sesión, en orden de secuencia, es un recorrido en índice sin ordenar resultados. El ajuste de
+ * una captura eliminada al compactar una sesión (ver CompactacionSQLite) es eliminado con ella;
+ * los ajustes de una sesión son eliminados junto con la sesión.
+ */
+public final class AjusteRutaSQLite {
+    /**
+     * Estructura de tabla AjusteRuta. Esquema.
+     */
+    static final String SQL_CREAR_TABLA_AJUSTE = String.format(
+        "CREATE TABLE %s (" +
+            "%s INTEGER NOT NULL," +
+            "%s INTEGER NOT NULL," +
+            "%s TEXT NOT NULL," +
+            "%s INTEGER NOT NULL," +
+            "%s REAL NOT NULL," +
+
+            "PRIMARY KEY (%s, %s)," +
+            "FOREIGN KEY (%s) REFERENCES %s(%s)" +
+        ")%s;",
+        AjusteRuta.TABLA_AJUSTE,
+        AjusteRuta.TABLA_AJUSTE_ID_SESION,
+        AjusteRuta.TABLA_AJUSTE_SECUENCIA,
+        AjusteRuta.TABLA_AJUSTE_RUTA,
+        AjusteRuta.TABLA_AJUSTE_TRAMO,
+        AjusteRuta.TABLA_AJUSTE_RECORRIDO,
+        AjusteRuta.TABLA_AJUSTE_ID_SESION, AjusteRuta.TABLA_AJUSTE_SECUENCIA,
+        AjusteRuta.TABLA_AJUSTE_ID_SESION, Sesion.TABLA_SESION, Sesion.TABLA_SESION_ID,
+        GeolocalizacionSQLite.SQL_OPCIONES_TABLA_GEOLOCALIZACION
+    );
+
+    /**
+     * SQL de SQLite3 para eliminar tabla AjusteRuta.
+     */
+    static final String SQL_DESTRUIR_TABLA_AJUSTE = String.format(
+        "DROP TABLE IF EXISTS %s;",
+        AjusteRuta.TABLA_AJUSTE
+    );
+
+    /**
+     * Estructura de tabla AjusteRuta en la versión 10 de "DB". Sólo usada por migrarVersion10.
+     */
+    private static final String SQL_CREAR_TABLA_AJUSTE_V10 =
+        "CREATE TABLE AjusteRuta (" +
+            "id_sesion INTEGER NOT NULL," +
+            "secuencia INTEGER NOT NULL," +
+            "ruta TEXT NOT NULL," +
+            "tramo INTEGER NOT NULL," +
+            "recorrido REAL NOT NULL," +
+            "PRIMARY KEY (id_sesion, secuencia)," +
+            "FOREIGN KEY (id_sesion) REFERENCES Sesion(id)" +
+        ")" + GeolocalizacionSQLite.SQL_OPCIONES_TABLA_GEOLOCALIZACION + ";";
+
+    /**
+     * Guarda el ajuste de una captura, reemplazando el anterior si existe.
+     *
+     * Parámetros: id_sesion, secuencia, ruta, tramo y recorrido.
+     */
+    static final String SQL_GUARDAR_AJUSTE = String.format(
+        "INSERT OR REPLACE INTO %s (%s, %s, %s, %s, %s) VALUES (?, ?, ?, ?, ?);",
+        AjusteRuta.TABLA_AJUSTE,
+        AjusteRuta.TABLA_AJUSTE_ID_SESION,
+        AjusteRuta.TABLA_AJUSTE_SECUENCIA,
+        AjusteRuta.TABLA_AJUSTE_RUTA,
+        AjusteRuta.TABLA_AJUSTE_TRAMO,
+        AjusteRuta.TABLA_AJUSTE_RECORRIDO
+    );
+
+    /**
+     * Elimina el ajuste de una captura, si existe. Es una búsqueda en la llave primaria.
+     * Parámetros: id_sesion y secuencia.
+     */
+    static final String SQL_ELIMINAR_AJUSTE = String.format(
+        "DELETE FROM %s WHERE %s = ? AND %s = ?;",
+        AjusteRuta.TABLA_AJUSTE,
+        AjusteRuta.TABLA_AJUSTE_ID_SESION,
+        AjusteRuta.TABLA_AJUSTE_SECUENCIA
+    );
+
+    /**
+     * Selecciona los ajustes de una sesión en orden de secuencia. Las columnas están en el orden
+     * AjusteRuta.TABLA_AJUSTE_*_INDICE.
+     */
+    static final String SQL_SELECCIONAR_AJUSTES = String.format(
+        "SELECT %s, %s, %s, %s, %s FROM %s WHERE %s = ? ORDER BY %s;",
+        AjusteRuta.TABLA_AJUSTE_ID_SESION,
+        AjusteRuta.TABLA_AJUSTE_SECUENCIA,
+        AjusteRuta.TABLA_AJUSTE_RUTA,
+        AjusteRuta.TABLA_AJUSTE_TRAMO,
+        AjusteRuta.TABLA_AJUSTE_RECORRIDO,
+        AjusteRuta.TABLA_AJUSTE,
+        AjusteRuta.TABLA_AJUSTE_ID_SESION,
+        AjusteRuta.TABLA_AJUSTE_SECUENCIA
+    );
+
+    private AjusteRutaSQLite() {
+    }
+
+    /**
+     * Crea la tabla AjusteRuta de la versión 10 de "DB". Las capturas existentes no tienen
+     * ajustes. Debe ser ejecutado dentro de la transacción de SQLiteOpenHelper.onUpgrade.
+     *
+     * @param db La base de datos SQLite3 en versión 9.
+     */
+    static void migrarVersion10(SQLiteDatabase db) {
+        db.execSQL(SQL_CREAR_TABLA_AJUSTE_V10);
+    }
+
+    /**
+     * Lee los ajustes de una sesión, en orden de secuencia.
+     *
+     * @param db Objeto SQLiteDatabase con una conexión abierta a la base de datos "DB".
+     * @param id_sesion ID de la sesión.
+     * @param lector Recibe cada ajuste leído.
+     *
+     * @return Número de ajustes leídos.
+     */
+    public static final int seleccionarAjustes(SQLiteDatabase db, long id_sesion, AlmacenCapturas.LectorAjustes lector) {
+        Cursor c = db.rawQuery(SQL_SELECCIONAR_AJUSTES, new String[] { String.valueOf(id_sesion) });
+        int leidos = 0;
+
+        try {
+            while (c.moveToNext()) {
+                lector.ajusteLeido(
+                    c.getLong(AjusteRuta.TABLA_AJUSTE_SECUENCIA_INDICE),
+                    c.getString(AjusteRuta.TABLA_AJUSTE_RUTA_INDICE),
+                    c.getInt(AjusteRuta.TABLA_AJUSTE_TRAMO_INDICE),
+                    c.getDouble(AjusteRuta.TABLA_AJUSTE_RECORRIDO_INDICE)
+                );
+                leidos++;
+            }
+        } finally {
+            c.close();
+        }
+
+        return leidos;
+    }
+}
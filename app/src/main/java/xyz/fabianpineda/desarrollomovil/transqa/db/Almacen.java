@@ -0,0 +1,31 @@
+package xyz.fabianpineda.desarrollomovil.transqa.db;
+
+/**
+ * Almacenamiento de sesiones y capturas de coordenadas, independiente del motor usado.
+ *
+ * Un Almacen representa una conexión abierta a un motor de almacenamiento (por ejemplo, la base de
+ * datos "DB" en SQLite; ver AlmacenSQLite) y da acceso a sus sesiones (AlmacenSesiones) y
+ * capturas (AlmacenCapturas). Quien use un Almacen no necesita conocer el motor; así el motor
+ * puede ser reemplazado, o probado y medido fuera de Android (ver AlmacenMemoria).
+ *
+ * Todo AlmacenCapturas abierto con abrirCapturas() debe ser cerrado antes de llamar cerrar().
+ *
+ * No se debe incluir en esta interfaz código específico de Android ni de un motor en particular.
+ */
+public interface Almacen {
+    /**
+     * @return Las sesiones de este almacén. Pueden ser usadas desde cualquier hilo.
+     */
+    AlmacenSesiones sesiones();
+
+    /**
+     * Abre un nuevo AlmacenCapturas para escribir y leer capturas. Cada AlmacenCapturas debe ser
+     * usado para escribir por un solo hilo, y cerrado con su método cerrar().
+     */
+    AlmacenCapturas abrirCapturas();
+
+    /**
+     * Cierra la conexión con el motor de almacenamiento. El almacén no debe ser usado después.
+     */
+    void cerrar();
+}
@@ -0,0 +1,139 @@
+package xyz.fabianpineda.desarrollomovil.transqa.db;
+
+/**
+ * Escritura y lectura de capturas de coordenadas de un Almacen, independiente del motor usado.
+ *
+ * La escritura puede ser diferida: agregar() puede acumular capturas en memoria y escribirlas en
+ * lotes. Sólo las capturas escritas (después de vaciar(), o cuando agregar() regresa true) son
+ * visibles para contarCapturas() y leerCapturas(), y sólo ellas sobreviven a la muerte del
+ * proceso. Cada captura recibe un número de secuencia creciente dentro de su sesión.
+ *
+ * agregar(), ultimaSecuencia(), ajustar(), vaciar() y cerrar() deben ser llamados por un solo
+ * hilo. contarCapturas() y leerCapturas() pueden ser llamados desde cualquier hilo.
+ *
+ * Las capturas pueden ser asociadas a la ruta de transporte en la que fueron tomadas con
+ * ajustar(). Los ajustes siguen las mismas reglas de escritura diferida que las capturas, y son
+ * escritos junto con ellas.
+ *
+ * Errores del motor de almacenamiento son propagados como RuntimeException. Si una escritura
+ * falla, las capturas y ajustes pendientes no se pierden y son escritos en el siguiente intento.
+ * agregar() y ajustar() sólo lanzan una excepción si no aceptaron su captura o ajuste; si la
+ * escritura que provocan después de aceptarlo falla, lo aceptado queda pendiente, el error no es
+ * propagado y tiempoParaVencer() regresa 0 para que quien escribe lo reintente con vaciar().
+ */
+public interface AlmacenCapturas {
+    /**
+     * Recibe las capturas leídas por leerCapturas().
+     */
+    interface LectorCapturas {
+        void capturaLeida(long secuencia, double latitud, double longitud, long fecha);
+    }
+
+    /**
+     * Recibe los ajustes leídos por leerAjustes().
+     */
+    interface LectorAjustes {
+        void ajusteLeido(long secuencia, String ruta, int tramo, double recorrido);
+    }
+
+    /**
+     * Agrega una captura a una sesión existente.
+     *
+     * @param idSesion ID de la sesión a la que la captura pertenece.
+     * @param latitud Coordenada. Latitud, en grados.
+     * @param longitud Coordenada. Longitud, en grados.
+     * @param fecha Fecha de captura en milisegundos desde epoch (UTC).
+     *
+     * @return true si las capturas pendientes, incluyendo esta, fueron escritas como consecuencia de esta llamada.
+     *
+     * @throws RuntimeException Si la captura no fue aceptada; no será escrita.
+     */
+    boolean agregar(long idSesion, double latitud, double longitud, long fecha);
+
+    /**
+     * @return Número de secuencia asignado a la captura del último llamado a agregar(). 0 si
+     * agregar() no ha sido llamado.
+     */
+    long ultimaSecuencia();
+
+    /**
+     * Asocia una captura de una sesión existente a una ruta de transporte. Ver: rutas.AjustadorRutas
+     *
+     * El ajuste es escrito junto con las capturas pendientes (nunca provoca una escritura por sí
+     * solo, a menos que los ajustes pendientes llenen su espacio). Reemplaza cualquier ajuste
+     * anterior de la misma captura. La captura es identificada por su número de secuencia (ver
+     * ultimaSecuencia()), no por su fecha: varias capturas pueden tener la misma fecha.
+     *
+     * @param idSesion ID de la sesión a la que la captura pertenece.
+     * @param secuencia Número de secuencia de la captura.
+     * @param ruta Identificador de la ruta.
+     * @param tramo Número del tramo de la forma de la ruta más cercano a la captura.
+     * @param recorrido Recorrido, en metros desde el inicio de la forma, del punto de la ruta más cercano a la captura.
+     */
+    void ajustar(long idSesion, long secuencia, String ruta, int tramo, double recorrido);
+
+    /**
+     * Escribe todas las capturas y ajustes pendientes.
+     *
+     * @return Número de capturas escritas. 0 si no había capturas pendientes.
+     */
+    int vaciar();
+
+    /**
+     * @return Milisegundos que faltan para que las capturas pendientes deban ser escritas con
+     * vaciar(). 0 si ya deben ser escritas, o Long.MAX_VALUE si no hay capturas pendientes o si
+     * no tienen edad máxima.
+     */
+    long tiempoParaVencer();
+
+    /**
+     * @return Número de capturas escritas de la sesión "idSesion".
+     */
+    long contarCapturas(long idSesion);
+
+    /**
+     * Lee las capturas escritas de una sesión cuya fecha está en el rango [desde, hasta], en orden
+     * de fecha.
+     *
+     * @param idSesion ID de la sesión.
+     * @param desde Fecha inicial, inclusiva, en milisegundos desde epoch (UTC).
+     * @param hasta Fecha final, inclusiva, en milisegundos desde epoch (UTC).
+     * @param lector Recibe cada captura leída.
+     *
+     * @return Número de capturas leídas.
+     */
+    int leerCapturas(long idSesion, long desde, long hasta, LectorCapturas lector);
+
+    /**
+     * Lee una página de capturas escritas de una sesión, en orden de secuencia: hasta "limite"
+     * capturas cuyo número de secuencia es mayor que "despuesDe" (paginación por llave, "keyset").
+     * La página siguiente empieza después de la secuencia de la última captura leída.
+     *
+     * A diferencia de leerCapturas(), la memoria y el tiempo usados por cada llamado dependen del
+     * tamaño de la página y no del de la sesión, así que sesiones de cualquier tamaño pueden ser
+     * recorridas completas.
+     *
+     * @param idSesion ID de la sesión.
+     * @param despuesDe Número de secuencia; 0 para empezar desde la primera captura.
+     * @param limite Máximo de capturas leídas. Debe ser mayor que 0.
+     * @param lector Recibe cada captura leída.
+     *
+     * @return Número de capturas leídas. Menor que "limite" sólo si no hay más capturas.
+     */
+    int leerPagina(long idSesion, long despuesDe, int limite, LectorCapturas lector);
+
+    /**
+     * Lee los ajustes escritos de una sesión, en orden de secuencia de captura.
+     *
+     * @param idSesion ID de la sesión.
+     * @param lector Recibe cada ajuste leído.
+     *
+     * @return Número de ajustes leídos.
+     */
+    int leerAjustes(long idSesion, LectorAjustes lector);
+
+    /**
+     * Escribe las capturas y ajustes pendientes y libera los recursos usados. No debe ser usado después.
+     */
+    void cerrar();
+}
@@ -0,0 +1,410 @@
+package xyz.fabianpineda.desarrollomovil.transqa.db;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Almacen en memoria. Los datos se pierden al cerrarlo o al terminar el proceso.
+ *
+ * Pensado para pruebas locales (sin dispositivo) de código que usa un Almacen, y como referencia
+ * para medir otros motores. Reproduce el comportamiento de AlmacenSQLite: IDs de sesión y números
+ * de secuencia empiezan en 1, las coordenadas son almacenadas codificadas (ver
+ * CodificacionCoordenadas) y agregar capturas o ajustes a una sesión inexistente es un error.
+ *
+ * Las capturas y ajustes son escritos inmediatamente; sus AlmacenCapturas nunca tienen capturas
+ * pendientes.
+ *
+ * Es seguro usar este objeto desde varios hilos.
+ *
+ * No se debe incluir en este objeto código específico de Android, para poder probarlo localmente.
+ */
+public final class AlmacenMemoria implements Almacen, AlmacenSesiones {
+    private static final int CAPACIDAD_INICIAL_SESION = 64;
+
+    /**
+     * Ajuste de una captura a una ruta. Ver: AlmacenCapturas.ajustar
+     */
+    private static final class AjusteMemoria {
+        final long secuencia;
+        final String ruta;
+        final int tramo;
+        final double recorrido;
+
+        AjusteMemoria(long secuencia, String ruta, int tramo, double recorrido) {
+            this.secuencia = secuencia;
+            this.ruta = ruta;
+            this.tramo = tramo;
+            this.recorrido = recorrido;
+        }
+    }
+
+    /**
+     * Una sesión y sus capturas. Las capturas sólo son agregadas al final; los arreglos son
+     * reemplazados (nunca modificados) al crecer, así que las capturas i < cantidad de un arreglo
+     * pueden ser leídas sin bloqueo después de obtenerlo con el bloqueo del almacén.
+     */
+    private static final class SesionMemoria {
+        final long id;
+        final String nombre;
+        final long fechaInicio;
+        long fechaFin = RegistroSesion.SESION_SIN_FECHA_FIN;
+
+        long[] secuencias = new long[CAPACIDAD_INICIAL_SESION];
+        int[] latitudes = new int[CAPACIDAD_INICIAL_SESION];
+        int[] longitudes = new int[CAPACIDAD_INICIAL_SESION];
+        long[] fechas = new long[CAPACIDAD_INICIAL_SESION];
+        int cantidad;
+        boolean ordenadaPorFecha = true;
+
+        // Ajustes por secuencia de captura; un ajuste reemplaza al anterior de la misma captura.
+        final TreeMap<Long, AjusteMemoria> ajustes = new TreeMap<>();
+
+        final RegistroResumen resumen;
+        RegistroLatencias latencias;            // Guardadas al terminar la sesión. Puede ser null.
+
+        SesionMemoria(long id, String nombre, long fechaInicio) {
+            this.id = id;
+            this.nombre = nombre;
+            this.fechaInicio = fechaInicio;
+            this.resumen = new RegistroResumen(id);
+        }
+
+        RegistroSesion registro() {
+            return new RegistroSesion(id, nombre, fechaInicio, fechaFin);
+        }
+
+        /**
+         * @return Número de secuencia asignado a la captura.
+         */
+        long agregar(int latitud, int longitud, long fecha) {
+            if (cantidad == secuencias.length) {
+                int capacidad = cantidad * 2;
+                secuencias = Arrays.copyOf(secuencias, capacidad);
+                latitudes = Arrays.copyOf(latitudes, capacidad);
+                longitudes = Arrays.copyOf(longitudes, capacidad);
+                fechas = Arrays.copyOf(fechas, capacidad);
+            }
+
+            if (cantidad > 0 && fecha < fechas[cantidad - 1]) {
+                ordenadaPorFecha = false;
+            }
+
+            secuencias[cantidad] = cantidad == 0 ? 1 : secuencias[cantidad - 1] + 1;
+            latitudes[cantidad] = latitud;
+            longitudes[cantidad] = longitud;
+            fechas[cantidad] = fecha;
+            cantidad++;
+
+            resumen.agregar(latitud, longitud, fecha);
+
+            return secuencias[cantidad - 1];
+        }
+    }
+
+    /**
+     * AlmacenCapturas de este almacén. Escribe cada captura inmediatamente.
+     */
+    private final class CapturasMemoria implements AlmacenCapturas {
+        private long ultimaSecuencia;   // Sólo usado por el hilo escritor.
+
+        @Override
+        public boolean agregar(long idSesion, double latitud, double longitud, long fecha) {
+            int lat = CodificacionCoordenadas.codificar(latitud);
+            int lon = CodificacionCoordenadas.codificar(longitud);
+
+            synchronized (AlmacenMemoria.this) {
+                ultimaSecuencia = sesionExistente(idSesion).agregar(lat, lon, fecha);
+            }
+
+            return true;
+        }
+
+        @Override
+        public long ultimaSecuencia() {
+            return ultimaSecuencia;
+        }
+
+        @Override
+        public void ajustar(long idSesion, long secuencia, String ruta, int tramo, double recorrido) {
+            AjusteMemoria ajuste = new AjusteMemoria(secuencia, ruta, tramo, recorrido);
+
+            synchronized (AlmacenMemoria.this) {
+                sesionExistente(idSesion).ajustes.put(secuencia, ajuste);
+            }
+        }
+
+        @Override
+        public int vaciar() {
+            return 0;
+        }
+
+        @Override
+        public long tiempoParaVencer() {
+            return Long.MAX_VALUE;
+        }
+
+        @Override
+        public long contarCapturas(long idSesion) {
+            synchronized (AlmacenMemoria.this) {
+                SesionMemoria sesion = sesiones.get(idSesion);
+                return sesion != null ? sesion.cantidad : 0L;
+            }
+        }
+
+        @Override
+        public int leerCapturas(long idSesion, long desde, long hasta, LectorCapturas lector) {
+            long[] secuencias;
+            int[] latitudes;
+            int[] longitudes;
+            final long[] fechas;
+            int cantidad;
+            boolean ordenadaPorFecha;
+
+            synchronized (AlmacenMemoria.this) {
+                SesionMemoria sesion = sesiones.get(idSesion);
+
+                if (sesion == null) {
+                    return 0;
+                }
+
+                secuencias = sesion.secuencias;
+                latitudes = sesion.latitudes;
+                longitudes = sesion.longitudes;
+                fechas = sesion.fechas;
+                cantidad = sesion.cantidad;
+                ordenadaPorFecha = sesion.ordenadaPorFecha;
+            }
+
+            // El lector es llamado sin bloqueo, así que puede usar este almacén.
+            Integer[] orden = null;
+
+            if (!ordenadaPorFecha) {
+                orden = new Integer[cantidad];
+
+                for (int i = 0; i < cantidad; i++) {
+                    orden[i] = i;
+                }
+
+                // Ordenamiento estable: capturas con la misma fecha quedan en orden de secuencia.
+                Arrays.sort(orden, new Comparator<Integer>() {
+                    @Override
+                    public int compare(Integer a, Integer b) {
+                        return fechas[a] < fechas[b] ? -1 : (fechas[a] > fechas[b] ? 1 : 0);
+                    }
+                });
+            }
+
+            int leidas = 0;
+
+            for (int k = 0; k < cantidad; k++) {
+                int i = orden != null ? orden[k] : k;
+
+                if (fechas[i] < desde || fechas[i] > hasta) {
+                    continue;
+                }
+
+                lector.capturaLeida(secuencias[i], CodificacionCoordenadas.decodificar(latitudes[i]), CodificacionCoordenadas.decodificar(longitudes[i]), fechas[i]);
+                leidas++;
+            }
+
+            return leidas;
+        }
+
+        @Override
+        public int leerPagina(long idSesion, long despuesDe, int limite, LectorCapturas lector) {
+            long[] secuencias;
+            int[] latitudes;
+            int[] longitudes;
+            long[] fechas;
+            int cantidad;
+
+            synchronized (AlmacenMemoria.this) {
+                SesionMemoria sesion = sesiones.get(idSesion);
+
+                if (sesion == null) {
+                    return 0;
+                }
+
+                secuencias = sesion.secuencias;
+                latitudes = sesion.latitudes;
+                longitudes = sesion.longitudes;
+                fechas = sesion.fechas;
+                cantidad = sesion.cantidad;
+            }
+
+            // Las secuencias son crecientes: la página empieza en la primera mayor que "despuesDe".
+            int inicio = Arrays.binarySearch(secuencias, 0, cantidad, despuesDe);
+            inicio = inicio >= 0 ? inicio + 1 : -inicio - 1;
+
+            int fin = (int) Math.min(cantidad, (long) inicio + limite);
+
+            for (int i = inicio; i < fin; i++) {
+                lector.capturaLeida(secuencias[i], CodificacionCoordenadas.decodificar(latitudes[i]), CodificacionCoordenadas.decodificar(longitudes[i]), fechas[i]);
+            }
+
+            return fin - inicio;
+        }
+
+        @Override
+        public int leerAjustes(long idSesion, LectorAjustes lector) {
+            List<AjusteMemoria> ajustes;
+
+            synchronized (AlmacenMemoria.this) {
+                SesionMemoria sesion = sesiones.get(idSesion);
+
+                if (sesion == null) {
+                    return 0;
+                }
+
+                ajustes = new ArrayList<>(sesion.ajustes.values());
+            }
+
+            // El lector es llamado sin bloqueo, así que puede usar este almacén.
+            for (AjusteMemoria ajuste : ajustes) {
+                lector.ajusteLeido(ajuste.secuencia, ajuste.ruta, ajuste.tramo, ajuste.recorrido);
+            }
+
+            return ajustes.size();
+        }
+
+        @Override
+        public void cerrar() {
+        }
+    }
+
+    // Protegidos por el bloqueo de este objeto.
+    private final Map<Long, SesionMemoria> sesiones = new HashMap<>();
+    private long siguienteId = 1;
+
+    @Override
+    public AlmacenSesiones sesiones() {
+        return this;
+    }
+
+    @Override
+    public AlmacenCapturas abrirCapturas() {
+        return new CapturasMemoria();
+    }
+
+    /**
+     * Descarta todas las sesiones y capturas.
+     */
+    @Override
+    public synchronized void cerrar() {
+        sesiones.clear();
+    }
+
+    @Override
+    public synchronized RegistroSesion iniciarSesion(String nombre) {
+        SesionMemoria sesion = new SesionMemoria(siguienteId++, nombre != null ? nombre.trim() : "", System.currentTimeMillis());
+        sesiones.put(sesion.id, sesion);
+
+        return sesion.registro();
+    }
+
+    @Override
+    public synchronized RegistroSesion terminarSesion(long id) {
+        return terminarSesion(id, null);
+    }
+
+    @Override
+    public synchronized RegistroSesion terminarSesion(long id, RegistroLatencias latencias) {
+        SesionMemoria sesion = sesiones.get(id);
+
+        if (sesion == null || sesion.fechaFin != RegistroSesion.SESION_SIN_FECHA_FIN) {
+            return null;
+        }
+
+        sesion.fechaFin = System.currentTimeMillis();
+        sesion.resumen.terminar();
+
+        if (latencias != null && latencias.idSesion == id) {
+            sesion.latencias = latencias.copia();
+        }
+
+        return sesion.registro();
+    }
+
+    @Override
+    public synchronized RegistroSesion seleccionarSesion(long id) {
+        SesionMemoria sesion = sesiones.get(id);
+        return sesion != null ? sesion.registro() : null;
+    }
+
+    /**
+     * Orden del listado de sesiones: fecha de inicio e ID, descendente.
+     */
+    private static final Comparator<RegistroSesion> ORDEN_LISTADO = new Comparator<RegistroSesion>() {
+        @Override
+        public int compare(RegistroSesion a, RegistroSesion b) {
+            if (a.fechaInicio != b.fechaInicio) {
+                return a.fechaInicio > b.fechaInicio ? -1 : 1;
+            }
+
+            return a.id > b.id ? -1 : (a.id == b.id ? 0 : 1);
+        }
+    };
+
+    /**
+     * Recorre todas las sesiones en cada página; suficiente para pruebas y como referencia.
+     */
+    @Override
+    public synchronized List<RegistroSesion> listarSesiones(String nombre, long desde, long hasta, RegistroSesion anterior, int limite) {
+        String texto = nombre != null ? nombre.trim().toLowerCase(Locale.ROOT) : "";
+        List<RegistroSesion> candidatas = new ArrayList<>();
+
+        for (SesionMemoria sesion : sesiones.values()) {
+            RegistroSesion registro = sesion.registro();
+
+            if (registro.fechaInicio < desde || registro.fechaInicio > hasta) {
+                continue;
+            }
+
+            if (anterior != null && ORDEN_LISTADO.compare(registro, anterior) <= 0) {
+                continue;
+            }
+
+            if (!registro.nombre.toLowerCase(Locale.ROOT).contains(texto)) {
+                continue;
+            }
+
+            candidatas.add(registro);
+        }
+
+        Collections.sort(candidatas, ORDEN_LISTADO);
+
+        return new ArrayList<>(candidatas.subList(0, Math.min(limite, candidatas.size())));
+    }
+
+    @Override
+    public synchronized RegistroResumen resumenSesion(long id) {
+        SesionMemoria sesion = sesiones.get(id);
+        return sesion != null ? sesion.resumen.copia() : null;
+    }
+
+    @Override
+    public synchronized RegistroLatencias latenciasSesion(long id) {
+        SesionMemoria sesion = sesiones.get(id);
+        return sesion != null && sesion.latencias != null ? sesion.latencias.copia() : null;
+    }
+
+    /**
+     * @throws IllegalArgumentException Si la sesión no existe; como la llave foránea en SQLite.
+     */
+    private SesionMemoria sesionExistente(long id) {
+        SesionMemoria sesion = sesiones.get(id);
+
+        if (sesion == null) {
+            throw new IllegalArgumentException("Sesión no existe: " + id);
+        }
+
+        return sesion;
+    }
+}
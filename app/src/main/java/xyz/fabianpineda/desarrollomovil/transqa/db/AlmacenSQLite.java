@@ -0,0 +1,246 @@
+package xyz.fabianpineda.desarrollomovil.transqa.db;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Almacen sobre la base de datos "DB" en SQLite3.
+ *
+ * Abre una conexión con permisos de lectura y escritura usando SQLite (y por lo tanto crea o
+ * actualiza la base de datos si es necesario). Las sesiones son operadas con SesionSQLite y las
+ * capturas con BufferGeolocalizacionSQLite, que es el AlmacenCapturas regresado por
+ * abrirCapturas().
+ *
+ * Para sólo consultar sesiones mientras otro componente escribe, ver abrirLectura().
+ */
+public final class AlmacenSQLite implements Almacen, AlmacenSesiones {
+    private final SQLite ayudante;              // null si fue abierto con abrirLectura().
+    private final SQLiteDatabase db;
+
+    /**
+     * Abre la base de datos "DB".
+     *
+     * @param contexto Contexto de la aplicación o componente.
+     * @param perfilDurabilidad Alguna de las constantes SQLite.PERFIL_DURABILIDAD_*.
+     *
+     * @throws SQLiteException Si no se pudo abrir la base de datos con permisos de escritura.
+     */
+    public AlmacenSQLite(Context contexto, int perfilDurabilidad) {
+        this(new SQLite(contexto, perfilDurabilidad));
+    }
+
+    /**
+     * Igual que AlmacenSQLite(contexto, perfilDurabilidad), pero con un nombre de archivo
+     * arbitrario. Usado por pruebas.
+     */
+    AlmacenSQLite(Context contexto, String nombreArchivo, int perfilDurabilidad) {
+        this(new SQLite(contexto, nombreArchivo, perfilDurabilidad));
+    }
+
+    private AlmacenSQLite(SQLite ayudante) {
+        this.ayudante = ayudante;
+        this.db = ayudante.getWritableDatabase();
+
+        if (db == null || !db.isOpen() || db.isReadOnly()) {
+            ayudante.close();
+            throw new SQLiteException("No se pudo abrir la base de datos con permisos de escritura.");
+        }
+    }
+
+    private AlmacenSQLite(SQLiteDatabase db) {
+        this.ayudante = null;
+        this.db = db;
+    }
+
+    /**
+     * Abre la base de datos "DB" existente sólo para lectura, sin crearla, actualizarla ni cambiar
+     * su configuración (por ejemplo, el modo de journal del perfil de durabilidad de quien la
+     * escribe). Pensado para consultar sesiones desde la interfaz de usuario, con una conexión
+     * propia, mientras ServicioGeolocalizacion escribe con la suya.
+     *
+     * Las operaciones de escritura del almacén regresado lanzan SQLiteException.
+     *
+     * @param contexto Contexto de la aplicación o componente.
+     *
+     * @return El almacén abierto, o null si la base de datos aún no existe.
+     *
+     * @throws SQLiteException Si la base de datos existe pero no se pudo abrir.
+     */
+    public static AlmacenSQLite abrirLectura(Context contexto) {
+        File archivo = archivoBaseDatos(contexto);
+
+        if (!archivo.exists()) {
+            return null;
+        }
+
+        return new AlmacenSQLite(SQLiteDatabase.openDatabase(archivo.getPath(), null, SQLiteDatabase.OPEN_READONLY));
+    }
+
+    /**
+     * @param contexto Contexto de la aplicación o componente.
+     * @return Archivo principal de la base de datos "DB", exista o no. Con journal WAL, el journal es el mismo nombre seguido por "-wal".
+     */
+    public static File archivoBaseDatos(Context contexto) {
+        return contexto.getDatabasePath(DB.DB_NOMBRE + SQLite.SQLITE_SUFIJO_NOMBRE_ARCHIVO_DB);
+    }
+
+    @Override
+    public AlmacenSesiones sesiones() {
+        return this;
+    }
+
+    @Override
+    public AlmacenCapturas abrirCapturas() {
+        return new BufferGeolocalizacionSQLite(db);
+    }
+
+    /**
+     * Ejecuta lotes de compactación (retención, reducción de resolución y vacío incremental) hasta
+     * agotar un presupuesto de tiempo. Puede ser llamado desde un hilo distinto al que escribe
+     * capturas; cada lote usa su propia transacción corta. Ver: CompactacionSQLite
+     *
+     * @param compactacion Configuración y estado de la compactación. Usado sólo por un hilo.
+     * @param presupuesto Milisegundos disponibles.
+     *
+     * @return true si aún queda trabajo por hacer.
+     */
+    public boolean compactar(CompactacionSQLite compactacion, long presupuesto) {
+        return compactacion.compactar(db, System.currentTimeMillis(), presupuesto);
+    }
+
+    /**
+     * Libera los statements compilados de SesionSQLite y cierra la conexión.
+     */
+    @Override
+    public void cerrar() {
+        if (db.isOpen()) {
+            SesionSQLite.liberarSentencias(db);
+        }
+
+        if (ayudante != null) {
+            ayudante.close();
+        } else {
+            db.close();
+        }
+    }
+
+    @Override
+    public RegistroSesion iniciarSesion(String nombre) {
+        return registroSesion(SesionSQLite.iniciarSesion(db, nombre));
+    }
+
+    @Override
+    public RegistroSesion terminarSesion(long id) {
+        return registroSesion(SesionSQLite.terminarSesion(db, id));
+    }
+
+    @Override
+    public RegistroSesion terminarSesion(long id, RegistroLatencias latencias) {
+        return registroSesion(SesionSQLite.terminarSesion(db, id, latencias));
+    }
+
+    @Override
+    public RegistroSesion seleccionarSesion(long id) {
+        return registroSesion(SesionSQLite.seleccionarSesion(db, id));
+    }
+
+    /**
+     * Ver: SesionSQLite.listarSesiones. Cada página es una sola consulta sobre el índice de Sesion
+     * por fecha de inicio.
+     */
+    @Override
+    public List<RegistroSesion> listarSesiones(String nombre, long desde, long hasta, RegistroSesion anterior, int limite) {
+        List<RegistroSesion> sesiones = new ArrayList<>(limite);
+        Cursor pagina = SesionSQLite.listarSesiones(
+            db,
+            nombre,
+            desde,
+            hasta,
+            anterior != null ? anterior.fechaInicio : Long.MAX_VALUE,
+            anterior != null ? anterior.id : Long.MAX_VALUE,
+            limite
+        );
+
+        try {
+            while (pagina.moveToNext()) {
+                sesiones.add(leerSesion(pagina));
+            }
+        } finally {
+            pagina.close();
+        }
+
+        return sesiones;
+    }
+
+    /**
+     * Ver: ResumenSesionSQLite. Sólo si la sesión no tiene resumen guardado (aún no tiene capturas
+     * escritas) se consulta la tabla Sesion.
+     */
+    @Override
+    public RegistroResumen resumenSesion(long id) {
+        RegistroResumen resumen = ResumenSesionSQLite.seleccionarResumen(db, id);
+
+        if (resumen != null) {
+            return resumen;
+        }
+
+        RegistroSesion sesion = seleccionarSesion(id);
+
+        if (sesion == null) {
+            return null;
+        }
+
+        resumen = new RegistroResumen(id);
+
+        if (sesion.terminada()) {
+            resumen.terminar();
+        }
+
+        return resumen;
+    }
+
+    /**
+     * Ver: LatenciaSesionSQLite.
+     */
+    @Override
+    public RegistroLatencias latenciasSesion(long id) {
+        return LatenciaSesionSQLite.seleccionarLatencias(db, id);
+    }
+
+    /**
+     * @param sesion Cursor posicionado en una fila de la tabla Sesion, o null. Es cerrado.
+     *
+     * @return Los datos de la fila, o null si "sesion" es null.
+     */
+    private static RegistroSesion registroSesion(Cursor sesion) {
+        if (sesion == null) {
+            return null;
+        }
+
+        try {
+            return leerSesion(sesion);
+        } finally {
+            sesion.close();
+        }
+    }
+
+    /**
+     * @param sesion Cursor posicionado en una fila con columnas en el orden Sesion.TABLA_SESION_*_INDICE.
+     *
+     * @return Los datos de la fila actual.
+     */
+    private static RegistroSesion leerSesion(Cursor sesion) {
+        return new RegistroSesion(
+            sesion.getLong(Sesion.TABLA_SESION_ID_INDICE),
+            sesion.getString(Sesion.TABLA_SESION_NOMBRE_INDICE),
+            sesion.getLong(Sesion.TABLA_SESION_FECHA_INICIO_INDICE),
+            sesion.isNull(Sesion.TABLA_SESION_FECHA_FIN_INDICE) ? RegistroSesion.SESION_SIN_FECHA_FIN : sesion.getLong(Sesion.TABLA_SESION_FECHA_FIN_INDICE)
+        );
+    }
+}
@@ -0,0 +1,413 @@
+package xyz.fabianpineda.desarrollomovil.transqa.db;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Almacen que escribe las capturas en un RegistroSegmentos y usa otro Almacen ("índice", por
+ * ejemplo AlmacenSQLite) para las sesiones y para las capturas de sesiones terminadas.
+ *
+ * Mientras una sesión está abierta, sus capturas sólo son agregadas al registro de segmentos. Al
+ * terminar la sesión, sus capturas son copiadas ("indexadas") al índice, y los segmentos cuyas
+ * sesiones ya fueron indexadas son eliminados. La copia es reanudable: sólo se copian las
+ * capturas que el índice aún no tiene, así que si el proceso muere durante la copia, ésta
+ * continúa al abrir de nuevo el almacén (toda sesión terminada con capturas en el registro es
+ * indexada al abrirlo).
+ *
+ * Las lecturas de capturas usan el índice si la sesión ya fue indexada o no tiene capturas en el
+ * registro, o el registro en otro caso.
+ *
+ * Los ajustes a rutas (ver AlmacenCapturas.ajustar) no pasan por el registro: son escritos
+ * directamente en el índice, con su propia escritura diferida, y leídos siempre del índice. Los
+ * números de secuencia del registro y del índice coinciden: el índice asigna a cada captura
+ * copiada la siguiente secuencia de su sesión, y la copia empieza después de las capturas que
+ * el índice ya tiene.
+ *
+ * Sólo se puede abrir un AlmacenCapturas a la vez (el registro tiene un solo hilo escritor).
+ * Agregar capturas a una sesión inexistente no es detectado hasta indexarla.
+ *
+ * Errores de entrada/salida son propagados como RuntimeException.
+ *
+ * No se debe incluir en este objeto código específico de Android, para poder probarlo localmente.
+ */
+public final class AlmacenSegmentos implements Almacen, AlmacenSesiones {
+    private final Almacen indice;
+    private final RegistroSegmentos registro;
+
+    // Sesiones terminadas cuyas capturas ya están en el índice. Protegido por el bloqueo de este objeto.
+    private final Set<Long> indexadas = new HashSet<>();
+
+    // AlmacenCapturas del índice usado para indexar. Protegido por el bloqueo de este objeto.
+    private AlmacenCapturas capturasIndice;
+
+    private boolean capturasAbiertas;
+
+    /**
+     * AlmacenCapturas de este almacén.
+     */
+    private final class CapturasSegmentos implements AlmacenCapturas {
+        private long ultimaSecuencia;   // Sólo usado por el hilo escritor.
+
+        @Override
+        public boolean agregar(long idSesion, double latitud, double longitud, long fecha) {
+            boolean escritas;
+            long anteriores = registro.contar(idSesion);
+
+            try {
+                escritas = registro.agregar(idSesion, CodificacionCoordenadas.codificar(latitud), CodificacionCoordenadas.codificar(longitud), fecha);
+            } catch (IOException e) {
+                // Sólo es un error si la captura no fue agregada; si falló la sincronización
+                // posterior, queda pendiente y tiempoParaVencer() lo indica (ver AlmacenCapturas).
+                if (registro.contar(idSesion) == anteriores) {
+                    throw new RuntimeException(e);
+                }
+
+                escritas = false;
+            }
+
+            // La secuencia de un registro es su posición en la sesión (ver RegistroSegmentos).
+            ultimaSecuencia = registro.contar(idSesion);
+
+            return escritas;
+        }
+
+        @Override
+        public long ultimaSecuencia() {
+            return ultimaSecuencia;
+        }
+
+        @Override
+        public void ajustar(long idSesion, long secuencia, String ruta, int tramo, double recorrido) {
+            synchronized (AlmacenSegmentos.this) {
+                indice().ajustar(idSesion, secuencia, ruta, tramo, recorrido);
+            }
+        }
+
+        @Override
+        public int vaciar() {
+            synchronized (AlmacenSegmentos.this) {
+                if (capturasIndice != null) {
+                    capturasIndice.vaciar();
+                }
+            }
+
+            return registro.sincronizar();
+        }
+
+        @Override
+        public long tiempoParaVencer() {
+            synchronized (AlmacenSegmentos.this) {
+                if (capturasIndice != null) {
+                    return Math.min(registro.tiempoParaSincronizar(), capturasIndice.tiempoParaVencer());
+                }
+            }
+
+            return registro.tiempoParaSincronizar();
+        }
+
+        @Override
+        public long contarCapturas(long idSesion) {
+            if (enIndice(idSesion)) {
+                return indice().contarCapturas(idSesion);
+            }
+
+            return registro.contar(idSesion);
+        }
+
+        @Override
+        public int leerCapturas(long idSesion, long desde, long hasta, LectorCapturas lector) {
+            if (enIndice(idSesion)) {
+                return indice().leerCapturas(idSesion, desde, hasta, lector);
+            }
+
+            return leerRegistro(idSesion, desde, hasta, lector);
+        }
+
+        @Override
+        public int leerPagina(long idSesion, long despuesDe, int limite, final LectorCapturas lector) {
+            if (enIndice(idSesion)) {
+                return indice().leerPagina(idSesion, despuesDe, limite, lector);
+            }
+
+            try {
+                return registro.leer(idSesion, despuesDe, limite, new RegistroSegmentos.LectorRegistros() {
+                    @Override
+                    public void registroLeido(long secuencia, int latitud, int longitud, long fecha) {
+                        lector.capturaLeida(secuencia, CodificacionCoordenadas.decodificar(latitud), CodificacionCoordenadas.decodificar(longitud), fecha);
+                    }
+                });
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        @Override
+        public int leerAjustes(long idSesion, LectorAjustes lector) {
+            return indice().leerAjustes(idSesion, lector);
+        }
+
+        @Override
+        public void cerrar() {
+            vaciar();
+
+            synchronized (AlmacenSegmentos.this) {
+                capturasAbiertas = false;
+            }
+        }
+    }
+
+    /**
+     * Abre el registro de segmentos e indexa las sesiones terminadas que aún tienen capturas en él.
+     *
+     * @param indice Almacén de sesiones y de capturas de sesiones terminadas. Pasa a ser usado exclusivamente por este objeto, y es cerrado con él.
+     * @param registro Registro de segmentos abierto. Pasa a ser usado exclusivamente por este objeto, y es cerrado con él.
+     */
+    public AlmacenSegmentos(Almacen indice, RegistroSegmentos registro) {
+        this.indice = indice;
+        this.registro = registro;
+
+        for (long id : registro.sesiones()) {
+            RegistroSesion sesion = indice.sesiones().seleccionarSesion(id);
+
+            if (sesion != null && sesion.terminada()) {
+                indexar(id);
+            }
+        }
+    }
+
+    /**
+     * Igual que AlmacenSegmentos(indice, new RegistroSegmentos(directorio)).
+     */
+    public AlmacenSegmentos(Almacen indice, File directorio) throws IOException {
+        this(indice, new RegistroSegmentos(directorio));
+    }
+
+    /**
+     * @return Registro de segmentos de este almacén. Para consultar sus contadores.
+     */
+    public RegistroSegmentos registro() {
+        return registro;
+    }
+
+    @Override
+    public AlmacenSesiones sesiones() {
+        return this;
+    }
+
+    /**
+     * @throws IllegalStateException Si ya hay un AlmacenCapturas abierto.
+     */
+    @Override
+    public synchronized AlmacenCapturas abrirCapturas() {
+        if (capturasAbiertas) {
+            throw new IllegalStateException("Ya hay un AlmacenCapturas abierto.");
+        }
+
+        capturasAbiertas = true;
+        return new CapturasSegmentos();
+    }
+
+    @Override
+    public synchronized void cerrar() {
+        try {
+            registro.cerrar();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            if (capturasIndice != null) {
+                capturasIndice.cerrar();
+                capturasIndice = null;
+            }
+
+            indice.cerrar();
+        }
+    }
+
+    @Override
+    public RegistroSesion iniciarSesion(String nombre) {
+        return indice.sesiones().iniciarSesion(nombre);
+    }
+
+    /**
+     * Termina la sesión en el índice y copia sus capturas al índice. Quien agrega capturas debe
+     * haberlas escrito todas (ver AlmacenCapturas.vaciar()) antes de este llamado.
+     */
+    @Override
+    public RegistroSesion terminarSesion(long id) {
+        return terminarSesion(id, null);
+    }
+
+    /**
+     * Igual que terminarSesion(id); las latencias son guardadas en el índice.
+     */
+    @Override
+    public RegistroSesion terminarSesion(long id, RegistroLatencias latencias) {
+        RegistroSesion sesion = indice.sesiones().terminarSesion(id, latencias);
+
+        if (sesion != null) {
+            indexar(id);
+        }
+
+        return sesion;
+    }
+
+    @Override
+    public RegistroSesion seleccionarSesion(long id) {
+        return indice.sesiones().seleccionarSesion(id);
+    }
+
+    @Override
+    public List<RegistroSesion> listarSesiones(String nombre, long desde, long hasta, RegistroSesion anterior, int limite) {
+        return indice.sesiones().listarSesiones(nombre, desde, hasta, anterior, limite);
+    }
+
+    /**
+     * Si la sesión ya fue indexada, es el resumen del índice. En otro caso (sesión abierta) el
+     * resumen es calculado leyendo sus capturas del registro, así que su costo es proporcional al
+     * número de capturas.
+     */
+    @Override
+    public RegistroResumen resumenSesion(long id) {
+        if (enIndice(id)) {
+            return indice.sesiones().resumenSesion(id);
+        }
+
+        RegistroSesion sesion = indice.sesiones().seleccionarSesion(id);
+
+        if (sesion == null) {
+            return null;
+        }
+
+        final RegistroResumen resumen = new RegistroResumen(id);
+
+        try {
+            registro.leer(id, 0, new RegistroSegmentos.LectorRegistros() {
+                @Override
+                public void registroLeido(long secuencia, int latitud, int longitud, long fecha) {
+                    resumen.agregar(latitud, longitud, fecha);
+                }
+            });
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        if (sesion.terminada()) {
+            resumen.terminar();
+        }
+
+        return resumen;
+    }
+
+    @Override
+    public RegistroLatencias latenciasSesion(long id) {
+        return indice.sesiones().latenciasSesion(id);
+    }
+
+    /**
+     * Copia al índice las capturas de la sesión "id" que aún no tiene, y elimina los segmentos
+     * cuyas sesiones ya fueron todas indexadas.
+     */
+    private synchronized void indexar(final long id) {
+        final AlmacenCapturas destino = indice();
+
+        try {
+            registro.leer(id, destino.contarCapturas(id), new RegistroSegmentos.LectorRegistros() {
+                @Override
+                public void registroLeido(long secuencia, int latitud, int longitud, long fecha) {
+                    destino.agregar(id, CodificacionCoordenadas.decodificar(latitud), CodificacionCoordenadas.decodificar(longitud), fecha);
+                }
+            });
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        destino.vaciar();
+
+        indexadas.add(id);
+        registro.eliminarSegmentos(indexadas);
+
+        // Las sesiones sin capturas en el registro ya no necesitan ser recordadas.
+        for (Long indexada : indexadas.toArray(new Long[indexadas.size()])) {
+            if (registro.contar(indexada) == 0) {
+                indexadas.remove(indexada);
+            }
+        }
+    }
+
+    /**
+     * @return true si las capturas de la sesión deben ser leídas del índice: fue indexada (y
+     * algunos de sus segmentos pueden haber sido eliminados) o no tiene capturas en el registro.
+     */
+    private synchronized boolean enIndice(long id) {
+        return indexadas.contains(id) || registro.contar(id) == 0;
+    }
+
+    private synchronized AlmacenCapturas indice() {
+        if (capturasIndice == null) {
+            capturasIndice = indice.abrirCapturas();
+        }
+
+        return capturasIndice;
+    }
+
+    /**
+     * Lee del registro las capturas de una sesión en el rango de fechas [desde, hasta], en orden
+     * de fecha.
+     */
+    private int leerRegistro(long idSesion, final long desde, final long hasta, AlmacenCapturas.LectorCapturas lector) {
+        final long[][] capturas = { new long[64], new long[64], new long[64], new long[64] };
+        final int[] cantidad = { 0 };
+
+        try {
+            registro.leer(idSesion, 0, new RegistroSegmentos.LectorRegistros() {
+                @Override
+                public void registroLeido(long secuencia, int latitud, int longitud, long fecha) {
+                    if (fecha < desde || fecha > hasta) {
+                        return;
+                    }
+
+                    int i = cantidad[0]++;
+
+                    if (i == capturas[0].length) {
+                        for (int k = 0; k < capturas.length; k++) {
+                            capturas[k] = Arrays.copyOf(capturas[k], i * 2);
+                        }
+                    }
+
+                    capturas[0][i] = secuencia;
+                    capturas[1][i] = latitud;
+                    capturas[2][i] = longitud;
+                    capturas[3][i] = fecha;
+                }
+            });
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        final long[] fechas = capturas[3];
+        Integer[] orden = new Integer[cantidad[0]];
+
+        for (int i = 0; i < orden.length; i++) {
+            orden[i] = i;
+        }
+
+        // Ordenamiento estable: capturas con la misma fecha quedan en orden de secuencia.
+        Arrays.sort(orden, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return fechas[a] < fechas[b] ? -1 : (fechas[a] > fechas[b] ? 1 : 0);
+            }
+        });
+
+        for (int i : orden) {
+            lector.capturaLeida(capturas[0][i], CodificacionCoordenadas.decodificar((int) capturas[1][i]), CodificacionCoordenadas.decodificar((int) capturas[2][i]), fechas[i]);
+        }
+
+        return orden.length;
+    }
+}
@@ -0,0 +1,83 @@
+package xyz.fabianpineda.desarrollomovil.transqa.db;
+
+import java.util.List;
+
+/**
+ * Operaciones sobre sesiones de un Almacen, independientes del motor usado.
+ *
+ * Las fechas son milisegundos desde epoch (UTC). Los métodos de esta interfaz pueden ser llamados
+ * desde cualquier hilo. Errores del motor de almacenamiento son propagados como RuntimeException.
+ */
+public interface AlmacenSesiones {
+    /**
+     * Inicia una nueva sesión con la fecha actual como fecha de inicio.
+     *
+     * @param nombre Nombre o comentario de sesión. Puede ser null. Null será tratado como una String vacía; otros nombres son recortados (trim).
+     *
+     * @return La sesión creada, o null si no se pudo crear.
+     */
+    RegistroSesion iniciarSesion(String nombre);
+
+    /**
+     * Termina una sesión abierta con la fecha actual como fecha de terminación.
+     *
+     * @param id ID de la sesión abierta que se desea terminar.
+     *
+     * @return La sesión terminada. null si la sesión no existe o si ya estaba terminada; en este último caso queda intacta.
+     */
+    RegistroSesion terminarSesion(long id);
+
+    /**
+     * Igual que terminarSesion(id), pero además guarda junto con la sesión las latencias de
+     * escritura de sus capturas. Las latencias sólo son guardadas si la sesión es terminada.
+     *
+     * @param id ID de la sesión abierta que se desea terminar.
+     * @param latencias Latencias medidas de la sesión "id", o null si no fueron medidas.
+     *
+     * @return La sesión terminada, o null. Ver: terminarSesion(long)
+     */
+    RegistroSesion terminarSesion(long id, RegistroLatencias latencias);
+
+    /**
+     * @param id ID de la sesión buscada.
+     *
+     * @return La sesión cuya ID es "id", o null si no existe.
+     */
+    RegistroSesion seleccionarSesion(long id);
+
+    /**
+     * Lista una página de sesiones, de la más reciente a la más antigua: orden por fecha de inicio
+     * e ID, descendente.
+     *
+     * La página siguiente se obtiene pasando como "anterior" la última sesión de la página actual
+     * (paginación "keyset"); así, obtener una página no requiere recorrer las páginas anteriores,
+     * y sesiones iniciadas mientras se recorre el listado no desplazan las páginas siguientes.
+     *
+     * @param nombre Texto que debe contener el nombre de las sesiones, sin distinguir mayúsculas. null o vacío para no filtrar por nombre.
+     * @param desde Fecha de inicio mínima, inclusiva. Long.MIN_VALUE para no limitar.
+     * @param hasta Fecha de inicio máxima, inclusiva. Long.MAX_VALUE para no limitar.
+     * @param anterior Última sesión de la página anterior, o null para la primera página.
+     * @param limite Máximo de sesiones listadas. Debe ser mayor que 0.
+     *
+     * @return Las sesiones de la página, en orden. Si hay menos de "limite", no hay más páginas.
+     */
+    List<RegistroSesion> listarSesiones(String nombre, long desde, long hasta, RegistroSesion anterior, int limite);
+
+    /**
+     * Resumen de las capturas escritas de una sesión: número de capturas, fechas, distancia,
+     * velocidades y rectángulo que las contiene. Los almacenes mantienen el resumen al escribir
+     * capturas, así que en general consultarlo no depende del número de capturas.
+     *
+     * @param id ID de la sesión.
+     *
+     * @return El resumen de la sesión (sin capturas si aún no tiene), o null si la sesión no existe.
+     */
+    RegistroResumen resumenSesion(long id);
+
+    /**
+     * @param id ID de la sesión.
+     *
+     * @return Las latencias de escritura guardadas al terminar la sesión, o null si la sesión no existe, no ha terminado o fue terminada sin latencias.
+     */
+    RegistroLatencias latenciasSesion(long id);
+}
@@ -0,0 +1,416 @@
+package xyz.fabianpineda.desarrollomovil.transqa.db;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.SystemClock;
+
+/**
+ * Buffer de escritura diferida ("write-behind") para la tabla Geolocalizacion en SQLite.
+ *
+ * En lugar de insertar cada captura de coordenadas en su propia transacción (ver
+ * GeolocalizacionSQLite.agregarCoordenadas), las capturas son acumuladas en memoria y luego
+ * insertadas todas juntas en una sola transacción usando un statement SQL compilado. De esta
+ * manera, el costo de sincronizar el journal de SQLite al disco se paga una vez por lote y no una
+ * vez por captura.
+ *
+ * El buffer es vaciado (insertado en la base de datos) automáticamente cuando se alcanza su
+ * capacidad, o cuando la captura más antigua en el buffer supera una edad máxima. Quien use el
+ * buffer debe vaciarlo explícitamente usando vaciar() antes de terminar una sesión, y usando
+ * cerrar() antes de cerrar la conexión con la base de datos.
+ *
+ * Los datos son almacenados en arreglos de tipos primitivos para no crear objetos por cada captura.
+ * Las coordenadas son codificadas al agregarlas (ver CodificacionCoordenadas), así que el buffer
+ * guarda exactamente los valores que serán insertados.
+ *
+ * El buffer asigna el número de secuencia de cada captura. Cuando llega la primera captura de una
+ * sesión distinta a la anterior, el buffer es vaciado y la siguiente secuencia de la nueva sesión
+ * es leída de la base de datos (ver GeolocalizacionSQLite.siguienteSecuencia); esto permite
+ * continuar una sesión después de que el servicio es reiniciado. También se lee el resumen de la
+ * sesión (ver ResumenSesionSQLite), que es mantenido en memoria y guardado con cada lote, en la
+ * misma transacción, junto con los agregados del mapa de calor (ver MapaCalorSQLite).
+ *
+ * Los ajustes a rutas (ver AlmacenCapturas.ajustar) también son acumulados, en sus propios
+ * arreglos de la misma capacidad, e insertados en la misma transacción que las capturas (ver
+ * AjusteRutaSQLite). No cuentan para el número de capturas escritas.
+ *
+ * Es el AlmacenCapturas de AlmacenSQLite. Las lecturas (contarCapturas, leerCapturas, leerPagina) consultan
+ * directamente la base de datos y no ven las capturas pendientes.
+ *
+ * Esta clase no es segura para ser usada desde varios hilos al mismo tiempo, excepto por las
+ * lecturas.
+ */
+public final class BufferGeolocalizacionSQLite implements AlmacenCapturas {
+    // Valores por defecto. Capacidad en número de capturas, edad máxima en milisegundos.
+    public static final int BUFFER_CAPACIDAD_DEFAULT = 32;
+    public static final long BUFFER_EDAD_MAXIMA_DEFAULT = 60000L;
+
+    private final SQLiteDatabase db;
+    private final SQLiteStatement insercion;    // Compilado una sola vez; reutilizado por cada fila.
+    private final SQLiteStatement actualizacionResumen;
+    private final SQLiteStatement insercionResumen;
+    private final SQLiteStatement insercionAjuste;
+    private final MapaCalorSQLite.Acumulador mapaCalor;
+
+    private final int capacidad;
+    private final long edadMaxima;
+
+    // Capturas pendientes. Cada índice i < cantidad corresponde a una captura.
+    private final long[] sesiones;
+    private final long[] secuencias;
+    private final int[] latitudes;
+    private final int[] longitudes;
+    private final long[] fechas;
+
+    private int cantidad;
+
+    // Ajustes pendientes. Cada índice i < cantidadAjustes corresponde a un ajuste.
+    private final long[] sesionesAjustes;
+    private final long[] secuenciasAjustes;
+    private final String[] rutasAjustes;
+    private final int[] tramosAjustes;
+    private final double[] recorridosAjustes;
+
+    private int cantidadAjustes;
+
+    // SystemClock.elapsedRealtime() de la captura o ajuste pendiente más antiguo.
+    private long tiempoPrimeraCaptura;
+
+    // Sesión de la última captura recibida, siguiente número de secuencia para esa sesión y su
+    // resumen con las capturas ya insertadas.
+    private long sesionActual;
+    private long siguienteSecuencia;
+    private RegistroResumen resumen;
+
+    /**
+     * Crea un nuevo buffer con capacidad y edad máxima por defecto.
+     *
+     * @param db Conexión abierta a la base de datos "DB", con permisos de lectura y escritura.
+     */
+    public BufferGeolocalizacionSQLite(SQLiteDatabase db) {
+        this(db, BUFFER_CAPACIDAD_DEFAULT, BUFFER_EDAD_MAXIMA_DEFAULT);
+    }
+
+    /**
+     * Crea un nuevo buffer.
+     *
+     * @param db Conexión abierta a la base de datos "DB", con permisos de lectura y escritura.
+     * @param capacidad Número de capturas que, al ser alcanzado, causa que el buffer sea vaciado. Debe ser mayor que 0.
+     * @param edadMaxima Edad máxima en milisegundos de la captura más antigua antes de vaciar el buffer.
+     */
+    public BufferGeolocalizacionSQLite(SQLiteDatabase db, int capacidad, long edadMaxima) {
+        if (capacidad < 1) {
+            throw new IllegalArgumentException("capacidad < 1");
+        }
+
+        this.db = db;
+        this.insercion = db.compileStatement(GeolocalizacionSQLite.SQL_INSERTAR_COORDENADAS);
+        this.actualizacionResumen = db.compileStatement(ResumenSesionSQLite.SQL_ACTUALIZAR_RESUMEN);
+        this.insercionResumen = db.compileStatement(ResumenSesionSQLite.SQL_INSERTAR_RESUMEN);
+        this.insercionAjuste = db.compileStatement(AjusteRutaSQLite.SQL_GUARDAR_AJUSTE);
+        this.mapaCalor = new MapaCalorSQLite.Acumulador(db);
+
+        this.capacidad = capacidad;
+        this.edadMaxima = edadMaxima;
+
+        sesiones = new long[capacidad];
+        secuencias = new long[capacidad];
+        latitudes = new int[capacidad];
+        longitudes = new int[capacidad];
+        fechas = new long[capacidad];
+
+        sesionesAjustes = new long[capacidad];
+        secuenciasAjustes = new long[capacidad];
+        rutasAjustes = new String[capacidad];
+        tramosAjustes = new int[capacidad];
+        recorridosAjustes = new double[capacidad];
+
+        cantidad = 0;
+        cantidadAjustes = 0;
+        sesionActual = 0;
+    }
+
+    /**
+     * @return Número de capturas pendientes; aún no insertadas en la base de datos.
+     */
+    public int cantidad() {
+        return cantidad;
+    }
+
+    /**
+     * @return Número de ajustes pendientes; aún no insertados en la base de datos.
+     */
+    public int cantidadAjustes() {
+        return cantidadAjustes;
+    }
+
+    /**
+     * @return Edad máxima configurada, en milisegundos.
+     */
+    public long edadMaxima() {
+        return edadMaxima;
+    }
+
+    /**
+     * @return Milisegundos que faltan para que la captura o ajuste más antiguo alcance la edad
+     * máxima. 0 si ya la alcanzó, o Long.MAX_VALUE si el buffer está vacío.
+     */
+    @Override
+    public long tiempoParaVencer() {
+        if (cantidad == 0 && cantidadAjustes == 0) {
+            return Long.MAX_VALUE;
+        }
+
+        // Un vaciado después de aceptar una captura o ajuste falló (ver vaciarAceptados).
+        if (cantidad >= capacidad || cantidadAjustes >= capacidad) {
+            return 0L;
+        }
+
+        return Math.max(0L, edadMaxima - (SystemClock.elapsedRealtime() - tiempoPrimeraCaptura));
+    }
+
+    /**
+     * Agrega una captura al buffer. Si después de agregarla el buffer está lleno o su captura más
+     * antigua es demasiado vieja, el buffer es vaciado inmediatamente (ver vaciarAceptados).
+     *
+     * Antes de aceptarla, el buffer es vaciado si cambió la sesión o si un vaciado anterior falló
+     * y el buffer está lleno. Si ese vaciado falla, la captura no es aceptada y la excepción es
+     * propagada; las capturas pendientes se conservan.
+     *
+     * @param id_sesion ID de la sesión a la que esta entrada pertenece.
+     * @param latitud Coordenada. Latitud, en grados.
+     * @param longitud Coordenada. Longitud, en grados.
+     * @param fecha Fecha de captura en milisegundos desde epoch (UTC).
+     *
+     * @return true si el buffer fue vaciado como consecuencia de esta llamada.
+     */
+    @Override
+    public boolean agregar(long id_sesion, double latitud, double longitud, long fecha) {
+        long ahora = SystemClock.elapsedRealtime();
+
+        // Sólo ocurre si un vaciado anterior falló. Se reintenta antes de aceptar más capturas.
+        if (cantidad >= capacidad) {
+            vaciar();
+        }
+
+        if (id_sesion != sesionActual) {
+            vaciar();
+            siguienteSecuencia = GeolocalizacionSQLite.siguienteSecuencia(db, id_sesion);
+            resumen = ResumenSesionSQLite.seleccionarOCalcularResumen(db, id_sesion);
+            sesionActual = id_sesion;
+        }
+
+        if (cantidad == 0 && cantidadAjustes == 0) {
+            tiempoPrimeraCaptura = ahora;
+        }
+
+        sesiones[cantidad] = id_sesion;
+        secuencias[cantidad] = siguienteSecuencia++;
+        latitudes[cantidad] = CodificacionCoordenadas.codificar(latitud);
+        longitudes[cantidad] = CodificacionCoordenadas.codificar(longitud);
+        fechas[cantidad] = fecha;
+        cantidad++;
+
+        if (cantidad >= capacidad || ahora - tiempoPrimeraCaptura >= edadMaxima) {
+            return vaciarAceptados();
+        }
+
+        return false;
+    }
+
+    /**
+     * @return Número de secuencia asignado a la última captura agregada. 0 si no se ha agregado
+     * ninguna.
+     */
+    @Override
+    public long ultimaSecuencia() {
+        return sesionActual != 0 ? siguienteSecuencia - 1 : 0;
+    }
+
+    /**
+     * Agrega un ajuste al buffer. Es insertado junto con las capturas pendientes; si después de
+     * agregarlo el buffer de ajustes está lleno, el buffer es vaciado inmediatamente (ver
+     * vaciarAceptados).
+     *
+     * Ver: AlmacenCapturas.ajustar
+     */
+    @Override
+    public void ajustar(long idSesion, long secuencia, String ruta, int tramo, double recorrido) {
+        // Sólo ocurre si un vaciado anterior falló. Se reintenta antes de aceptar más ajustes.
+        if (cantidadAjustes >= capacidad) {
+            vaciar();
+        }
+
+        if (cantidad == 0 && cantidadAjustes == 0) {
+            tiempoPrimeraCaptura = SystemClock.elapsedRealtime();
+        }
+
+        sesionesAjustes[cantidadAjustes] = idSesion;
+        secuenciasAjustes[cantidadAjustes] = secuencia;
+        rutasAjustes[cantidadAjustes] = ruta;
+        tramosAjustes[cantidadAjustes] = tramo;
+        recorridosAjustes[cantidadAjustes] = recorrido;
+        cantidadAjustes++;
+
+        if (cantidadAjustes >= capacidad) {
+            vaciarAceptados();
+        }
+    }
+
+    /**
+     * Vacía el buffer después de aceptar una captura o ajuste. Si falla, todo lo aceptado queda
+     * pendiente y el error no es propagado: quien llamó no debe creer que su captura o ajuste se
+     * perdió. tiempoParaVencer() regresa 0 mientras el buffer siga lleno o vencido, así que quien
+     * escribe lo reintenta con vaciar(), que sí propaga el error.
+     *
+     * @return true si el buffer fue vaciado.
+     */
+    private boolean vaciarAceptados() {
+        try {
+            vaciar();
+            return true;
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Inserta todas las capturas pendientes en la tabla Geolocalizacion y actualiza el resumen de
+     * su sesión (ver ResumenSesionSQLite) y el mapa de calor (ver MapaCalorSQLite), e inserta los
+     * ajustes pendientes en la tabla AjusteRuta, en una sola transacción.
+     *
+     * Si la transacción falla, las capturas y ajustes permanecen en el buffer, el resumen en
+     * memoria queda intacto y la excepción es propagada.
+     *
+     * @return Número de capturas insertadas. 0 si no había capturas pendientes.
+     */
+    @Override
+    public int vaciar() {
+        if (cantidad == 0 && cantidadAjustes == 0) {
+            return 0;
+        }
+
+        // Todas las capturas pendientes son de la sesión actual: el buffer es vaciado al cambiar de sesión.
+        RegistroResumen actualizado = cantidad > 0 ? resumen.copia() : resumen;
+        boolean exito = false;
+
+        db.beginTransaction();
+        try {
+            for (int i = 0; i < cantidad; i++) {
+                insercion.bindLong(1, sesiones[i]);
+                insercion.bindLong(2, secuencias[i]);
+                insercion.bindLong(3, latitudes[i]);
+                insercion.bindLong(4, longitudes[i]);
+                insercion.bindLong(5, fechas[i]);
+                insercion.bindLong(6, CeldasGeograficas.celda(latitudes[i], longitudes[i]));
+                insercion.executeInsert();
+
+                mapaCalor.agregar(latitudes[i], longitudes[i], fechas[i], actualizado.agregar(latitudes[i], longitudes[i], fechas[i]));
+            }
+
+            if (cantidad > 0) {
+                ResumenSesionSQLite.guardarResumen(actualizacionResumen, insercionResumen, actualizado);
+                mapaCalor.guardar();
+            }
+
+            for (int i = 0; i < cantidadAjustes; i++) {
+                insercionAjuste.bindLong(1, sesionesAjustes[i]);
+                insercionAjuste.bindLong(2, secuenciasAjustes[i]);
+                insercionAjuste.bindString(3, rutasAjustes[i]);
+                insercionAjuste.bindLong(4, tramosAjustes[i]);
+                insercionAjuste.bindDouble(5, recorridosAjustes[i]);
+                insercionAjuste.executeInsert();
+            }
+
+            db.setTransactionSuccessful();
+            exito = true;
+        } finally {
+            insercion.clearBindings();
+            insercionAjuste.clearBindings();
+            mapaCalor.descartar();
+            db.endTransaction();
+        }
+
+        if (exito) {
+            resumen = actualizado;
+        }
+
+        int insertadas = cantidad;
+        cantidad = 0;
+        cantidadAjustes = 0;
+
+        return insertadas;
+    }
+
+    /**
+     * @return Número de capturas de la sesión en la base de datos. No incluye capturas pendientes.
+     */
+    @Override
+    public long contarCapturas(long idSesion) {
+        return GeolocalizacionSQLite.contarCoordenadas(db, idSesion);
+    }
+
+    /**
+     * Ver: GeolocalizacionSQLite.seleccionarCoordenadas(SQLiteDatabase, long, long, long). No
+     * incluye capturas pendientes.
+     */
+    @Override
+    public int leerCapturas(long idSesion, long desde, long hasta, LectorCapturas lector) {
+        return leer(GeolocalizacionSQLite.seleccionarCoordenadas(db, idSesion, desde, hasta), lector);
+    }
+
+    /**
+     * Ver: GeolocalizacionSQLite.seleccionarPagina. No incluye capturas pendientes.
+     */
+    @Override
+    public int leerPagina(long idSesion, long despuesDe, int limite, LectorCapturas lector) {
+        return leer(GeolocalizacionSQLite.seleccionarPagina(db, idSesion, despuesDe, limite), lector);
+    }
+
+    /**
+     * Ver: AjusteRutaSQLite.seleccionarAjustes. No incluye ajustes pendientes.
+     */
+    @Override
+    public int leerAjustes(long idSesion, LectorAjustes lector) {
+        return AjusteRutaSQLite.seleccionarAjustes(db, idSesion, lector);
+    }
+
+    /**
+     * Entrega a "lector" cada fila de "capturas", y lo cierra.
+     */
+    private static int leer(Cursor capturas, LectorCapturas lector) {
+        int leidas = 0;
+
+        try {
+            while (capturas.moveToNext()) {
+                lector.capturaLeida(
+                    capturas.getLong(GeolocalizacionSQLite.CONSULTA_SECUENCIA_INDICE),
+                    CodificacionCoordenadas.decodificar(capturas.getInt(GeolocalizacionSQLite.CONSULTA_LATITUD_INDICE)),
+                    CodificacionCoordenadas.decodificar(capturas.getInt(GeolocalizacionSQLite.CONSULTA_LONGITUD_INDICE)),
+                    capturas.getLong(GeolocalizacionSQLite.CONSULTA_FECHA_INDICE)
+                );
+                leidas++;
+            }
+        } finally {
+            capturas.close();
+        }
+
+        return leidas;
+    }
+
+    /**
+     * Vacía el buffer y libera los statements compilados. El buffer no debe ser usado después.
+     */
+    @Override
+    public void cerrar() {
+        try {
+            vaciar();
+        } finally {
+            insercion.close();
+            actualizacionResumen.close();
+            insercionResumen.close();
+            insercionAjuste.close();
+            mapaCalor.cerrar();
+        }
+    }
+}
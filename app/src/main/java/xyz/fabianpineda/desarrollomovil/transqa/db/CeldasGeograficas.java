@@ -0,0 +1,129 @@
+package xyz.fabianpineda.desarrollomovil.transqa.db;
+
+/**
+ * Cuadrícula geográfica usada como índice espacial de las capturas (columna "celda" de
+ * Geolocalizacion).
+ *
+ * Cada coordenada codificada (ver CodificacionCoordenadas) es asignada a una celda de
+ * CELDA_UNIDADES x CELDA_UNIDADES unidades (2^15 * 1e-7 grados, aprox. 364 m de latitud). El número
+ * de celda ordena las celdas por filas: (fila << CELDA_BITS_COLUMNA) | columna, donde fila y
+ * columna son la latitud y la longitud desplazadas a valores no negativos y divididas por el tamaño
+ * de celda. Así, las celdas de una misma fila que cubren un rango de longitudes tienen números
+ * consecutivos, y un rectángulo es cubierto por un rango de celdas por cada fila que toca.
+ *
+ * Las celdas sólo descartan capturas lejanas: toda consulta debe comparar después las coordenadas
+ * exactas, así que capturas en el borde de una celda nunca son omitidas ni duplicadas.
+ *
+ * Los rectángulos no pueden cruzar el antimeridiano (longitud 180); ver rectanguloRadio().
+ *
+ * No se debe incluir información en este objeto que esté dirigida a una DB/(R)DBMS específica.
+ */
+public final class CeldasGeograficas {
+    /**
+     * Tamaño de celda en bits de unidades codificadas: 2^15 unidades de 1e-7 grados.
+     */
+    public static final int CELDA_BITS = 15;
+    public static final int CELDA_UNIDADES = 1 << CELDA_BITS;
+
+    /**
+     * Bits de la columna dentro del número de celda. 360 grados son 3.6e9 unidades, menos de 2^32,
+     * así que hay a lo sumo 2^17 columnas.
+     */
+    public static final int CELDA_BITS_COLUMNA = 32 - CELDA_BITS;
+
+    // Desplazamientos que convierten latitud y longitud codificadas en valores no negativos.
+    static final long DESPLAZAMIENTO_LATITUD = 900000000L;
+    static final long DESPLAZAMIENTO_LONGITUD = 1800000000L;
+
+    /**
+     * Metros por grado de latitud, usando el radio medio de la Tierra.
+     */
+    public static final double METROS_POR_GRADO = 6371008.8 * Math.PI / 180.0;
+
+    private CeldasGeograficas() {
+    }
+
+    /**
+     * @return Fila de celdas de una latitud codificada.
+     */
+    public static long fila(int latitud) {
+        return (latitud + DESPLAZAMIENTO_LATITUD) >> CELDA_BITS;
+    }
+
+    /**
+     * @return Columna de celdas de una longitud codificada.
+     */
+    public static long columna(int longitud) {
+        return (longitud + DESPLAZAMIENTO_LONGITUD) >> CELDA_BITS;
+    }
+
+    /**
+     * @return Número de celda de una fila y columna.
+     */
+    public static long celda(long fila, long columna) {
+        return (fila << CELDA_BITS_COLUMNA) | columna;
+    }
+
+    /**
+     * @param latitud Latitud codificada.
+     * @param longitud Longitud codificada.
+     *
+     * @return Número de la celda que contiene la coordenada.
+     */
+    public static long celda(int latitud, int longitud) {
+        return celda(fila(latitud), columna(longitud));
+    }
+
+    /**
+     * @return Latitud del centro de una celda, en grados.
+     */
+    public static double latitudCentro(long celda) {
+        long fila = celda >>> CELDA_BITS_COLUMNA;
+        return CodificacionCoordenadas.decodificar((int) ((fila << CELDA_BITS) + CELDA_UNIDADES / 2 - DESPLAZAMIENTO_LATITUD));
+    }
+
+    /**
+     * @return Longitud del centro de una celda, en grados.
+     */
+    public static double longitudCentro(long celda) {
+        long columna = celda & ((1L << CELDA_BITS_COLUMNA) - 1);
+        return CodificacionCoordenadas.decodificar((int) ((columna << CELDA_BITS) + CELDA_UNIDADES / 2 - DESPLAZAMIENTO_LONGITUD));
+    }
+
+    /**
+     * Calcula el rectángulo, en coordenadas codificadas, que contiene el círculo de "metros" de
+     * radio alrededor de una coordenada. El rectángulo es recortado a latitudes [-90, 90] y
+     * longitudes [-180, 180]: cerca de los polos o del antimeridiano cubre toda la franja de
+     * longitudes en lugar de cruzarlo.
+     *
+     * @param latitud Latitud del centro, en grados.
+     * @param longitud Longitud del centro, en grados.
+     * @param metros Radio, en metros.
+     *
+     * @return { latitudMinima, longitudMinima, latitudMaxima, longitudMaxima }, codificadas.
+     */
+    public static int[] rectanguloRadio(double latitud, double longitud, double metros) {
+        double gradosLatitud = metros / METROS_POR_GRADO;
+        double latitudMinima = Math.max(-90.0, latitud - gradosLatitud);
+        double latitudMaxima = Math.min(90.0, latitud + gradosLatitud);
+
+        // La longitud se estrecha hacia los polos: se usa la latitud del rectángulo más cercana a un polo.
+        double coseno = Math.cos(Math.toRadians(Math.max(Math.abs(latitudMinima), Math.abs(latitudMaxima))));
+        double gradosLongitud = coseno > 0 ? gradosLatitud / coseno : 360.0;
+
+        double longitudMinima = longitud - gradosLongitud;
+        double longitudMaxima = longitud + gradosLongitud;
+
+        if (longitudMinima < -180.0 || longitudMaxima > 180.0) {
+            longitudMinima = -180.0;
+            longitudMaxima = 180.0;
+        }
+
+        return new int[] {
+            CodificacionCoordenadas.codificar(latitudMinima),
+            CodificacionCoordenadas.codificar(longitudMinima),
+            CodificacionCoordenadas.codificar(latitudMaxima),
+            CodificacionCoordenadas.codificar(longitudMaxima)
+        };
+    }
+}
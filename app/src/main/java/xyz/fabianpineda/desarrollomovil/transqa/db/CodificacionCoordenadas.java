@@ -0,0 +1,37 @@
+package xyz.fabianpineda.desarrollomovil.transqa.db;
+
+/**
+ * Codificación numérica compacta de coordenadas usada para almacenarlas en la base de datos "DB".
+ *
+ * Latitud y longitud son almacenadas como enteros en unidades de 1e-7 grados (aprox. 1.1 cm en el
+ * ecuador), que caben en un int de 32 bits para todo el rango [-180, 180]. Las fechas son
+ * almacenadas como enteros: milisegundos desde epoch (UTC), sin zona horaria. La conversión a hora
+ * local sólo debe hacerse al mostrar o exportar datos.
+ *
+ * No se debe incluir información en este objeto que esté dirigida a una DB/(R)DBMS específica.
+ */
+public final class CodificacionCoordenadas {
+    /**
+     * Número de unidades almacenadas por grado.
+     */
+    public static final double UNIDADES_POR_GRADO = 1e7;
+
+    private CodificacionCoordenadas() {
+    }
+
+    /**
+     * @param grados Latitud o longitud en grados decimales.
+     * @return La coordenada en unidades de 1e-7 grados, redondeada al entero más cercano.
+     */
+    public static int codificar(double grados) {
+        return (int) Math.round(grados * UNIDADES_POR_GRADO);
+    }
+
+    /**
+     * @param unidades Latitud o longitud en unidades de 1e-7 grados.
+     * @return La coordenada en grados decimales.
+     */
+    public static double decodificar(int unidades) {
+        return unidades / UNIDADES_POR_GRADO;
+    }
+}
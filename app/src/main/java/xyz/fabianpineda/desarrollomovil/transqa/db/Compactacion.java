@@ -0,0 +1,32 @@
+package xyz.fabianpineda.desarrollomovil.transqa.db;
+
+/**
+ * Define la tabla/entidad Compactacion en una base de datos relacional cualquiera.
+ *
+ * Cada entrada registra el progreso de la reducción de resolución ("downsampling") de las capturas
+ * de una Sesion terminada, y es identificada por la ID de la sesión: resolución aplicada en
+ * milisegundos, número de secuencia de la última captura procesada, fecha de la última captura
+ * conservada y si la sesión ya fue procesada completamente. Así, la compactación puede ser
+ * interrumpida y reanudada en cualquier lote.
+ *
+ * No se debe incluir información en este objeto que esté dirigida a una DB/(R)DBMS específica.
+ */
+final class Compactacion {
+    static final String TABLA_COMPACTACION = "Compactacion";
+
+    static final String TABLA_COMPACTACION_ID_SESION = "id_sesion";
+    static final String TABLA_COMPACTACION_RESOLUCION = "resolucion";
+    static final String TABLA_COMPACTACION_ULTIMA_SECUENCIA = "ultima_secuencia";
+    static final String TABLA_COMPACTACION_FECHA_CONSERVADA = "fecha_conservada";
+    static final String TABLA_COMPACTACION_TERMINADA = "terminada";
+
+    /*
+     * Índices de cada campo. Por favor actualizar si se altera el orden de los campos o si se
+     * agregan o eliminan campos.
+     */
+    static final int TABLA_COMPACTACION_ID_SESION_INDICE = 0;
+    static final int TABLA_COMPACTACION_RESOLUCION_INDICE = 1;
+    static final int TABLA_COMPACTACION_ULTIMA_SECUENCIA_INDICE = 2;
+    static final int TABLA_COMPACTACION_FECHA_CONSERVADA_INDICE = 3;
+    static final int TABLA_COMPACTACION_TERMINADA_INDICE = 4;
+}
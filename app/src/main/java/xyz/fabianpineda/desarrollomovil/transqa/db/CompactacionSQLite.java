@@ -0,0 +1,426 @@
+package xyz.fabianpineda.desarrollomovil.transqa.db;
+
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.SystemClock;
+
+/**
+ * Compactación de la base de datos "DB": retención y reducción de resolución de sesiones antiguas.
+ *
+ * Cada llamado a compactar() trabaja en lotes pequeños, cada uno en su propia transacción corta,
+ * hasta agotar un presupuesto de tiempo; así nunca bloquea por mucho tiempo al hilo que escribe
+ * capturas. En orden de prioridad, cada lote:
+ *
+ *      * Purga: elimina hasta COMPACTACION_CAPTURAS_POR_LOTE capturas de una sesión terminada
+ *        hace más de "retencion" milisegundos. Al eliminar la última, también elimina la sesión,
+ *        su resumen, sus latencias, sus ajustes a rutas y su registro de compactación. Los
+ *        agregados del mapa de calor (ver MapaCalorSQLite) de periodos anteriores a la retención
+ *        son eliminados una vez por periodo.
+ *      * Reducción de resolución: procesa hasta COMPACTACION_CAPTURAS_POR_LOTE capturas de una
+ *        sesión terminada hace más de "edad" milisegundos, conservando sólo capturas separadas
+ *        por al menos "resolucion" milisegundos, además de la primera y la última de la sesión.
+ *        Los ajustes a rutas de las capturas eliminadas también son eliminados (ver
+ *        AjusteRutaSQLite). El progreso es guardado en la tabla Compactacion en la misma
+ *        transacción, así que el trabajo continúa donde quedó. Si la resolución configurada
+ *        aumenta, las sesiones ya compactadas son procesadas de nuevo.
+ *      * Vacío incremental: devuelve al sistema de archivos hasta COMPACTACION_PAGINAS_POR_LOTE
+ *        páginas libres, si la base de datos usa auto_vacuum INCREMENTAL. Sólo las bases de
+ *        datos creadas con SQLite.onConfigure lo usan; las creadas por versiones anteriores no son
+ *        convertidas, porque requeriría un VACUUM completo: reescribe todo el archivo sin límite
+ *        de tiempo, bloquea al hilo que escribe capturas y necesita espacio libre del tamaño de
+ *        la base de datos. En ellas las páginas liberadas son reutilizadas por SQLite, sin
+ *        reducir el archivo.
+ *
+ * Sólo se procesan sesiones terminadas, a las que ya no se agregan capturas. Los resúmenes de
+ * sesión (ver ResumenSesionSQLite) y el mapa de calor no cambian al reducir la resolución: siguen
+ * describiendo las capturas originales.
+ *
+ * Esta clase no es segura para ser usada desde varios hilos al mismo tiempo.
+ */
+public final class CompactacionSQLite {
+    // Valores por defecto, en milisegundos.
+    public static final long COMPACTACION_EDAD_DEFAULT = 30L * 24 * 60 * 60 * 1000;         // 30 días.
+    public static final long COMPACTACION_RESOLUCION_DEFAULT = 30000L;                      // Una captura cada 30 segundos.
+    public static final long COMPACTACION_RETENCION_DEFAULT = 365L * 24 * 60 * 60 * 1000;   // Un año.
+
+    /**
+     * Máximo de capturas procesadas o eliminadas por lote (por transacción).
+     */
+    static final int COMPACTACION_CAPTURAS_POR_LOTE = 500;
+
+    /**
+     * Máximo de páginas devueltas al sistema de archivos por lote de vacío incremental.
+     */
+    static final int COMPACTACION_PAGINAS_POR_LOTE = 128;
+
+    /**
+     * Valor de "PRAGMA auto_vacuum" en modo INCREMENTAL.
+     */
+    private static final int AUTO_VACUUM_INCREMENTAL = 2;
+
+    // Fecha conservada cuando aún no se ha conservado ninguna captura de la sesión.
+    private static final long SIN_FECHA = Long.MIN_VALUE;
+
+    /**
+     * Estructura de tabla Compactacion. Esquema.
+     */
+    static final String SQL_CREAR_TABLA_COMPACTACION = String.format(
+        "CREATE TABLE %s (" +
+            "%s INTEGER NOT NULL PRIMARY KEY," +
+            "%s INTEGER NOT NULL DEFAULT 0," +
+            "%s INTEGER NOT NULL DEFAULT 0," +
+            "%s INTEGER NOT NULL DEFAULT 0," +
+            "%s INTEGER NOT NULL DEFAULT 0," +
+
+            "FOREIGN KEY (%s) REFERENCES %s(%s)" +
+        ");",
+        Compactacion.TABLA_COMPACTACION,
+        Compactacion.TABLA_COMPACTACION_ID_SESION,
+        Compactacion.TABLA_COMPACTACION_RESOLUCION,
+        Compactacion.TABLA_COMPACTACION_ULTIMA_SECUENCIA,
+        Compactacion.TABLA_COMPACTACION_FECHA_CONSERVADA,
+        Compactacion.TABLA_COMPACTACION_TERMINADA,
+        Compactacion.TABLA_COMPACTACION_ID_SESION, Sesion.TABLA_SESION, Sesion.TABLA_SESION_ID
+    );
+
+    /**
+     * SQL de SQLite3 para eliminar tabla Compactacion.
+     */
+    static final String SQL_DESTRUIR_TABLA_COMPACTACION = String.format(
+        "DROP TABLE IF EXISTS %s;",
+        Compactacion.TABLA_COMPACTACION
+    );
+
+    /**
+     * Estructura de tabla Compactacion en la versión 7 de "DB". Sólo usada por migrarVersion7.
+     */
+    private static final String SQL_CREAR_TABLA_COMPACTACION_V7 =
+        "CREATE TABLE Compactacion (" +
+            "id_sesion INTEGER NOT NULL PRIMARY KEY," +
+            "resolucion INTEGER NOT NULL DEFAULT 0," +
+            "ultima_secuencia INTEGER NOT NULL DEFAULT 0," +
+            "fecha_conservada INTEGER NOT NULL DEFAULT 0," +
+            "terminada INTEGER NOT NULL DEFAULT 0," +
+            "FOREIGN KEY (id_sesion) REFERENCES Sesion(id)" +
+        ");";
+
+    /**
+     * Primera sesión terminada antes de una fecha. Parámetro: fecha límite.
+     */
+    private static final String SQL_SELECCIONAR_SESION_A_PURGAR = String.format(
+        "SELECT %s FROM %s WHERE %s IS NOT NULL AND %s < ? ORDER BY %s LIMIT 1;",
+        Sesion.TABLA_SESION_ID,
+        Sesion.TABLA_SESION,
+        Sesion.TABLA_SESION_FECHA_FIN,
+        Sesion.TABLA_SESION_FECHA_FIN,
+        Sesion.TABLA_SESION_ID
+    );
+
+    /**
+     * Primera sesión terminada antes de una fecha que no ha sido compactada completamente con una
+     * resolución. Parámetros: fecha límite y resolución.
+     */
+    private static final String SQL_SELECCIONAR_SESION_A_COMPACTAR = String.format(
+        "SELECT s.%s FROM %s s LEFT JOIN %s c ON c.%s = s.%s " +
+        "WHERE s.%s IS NOT NULL AND s.%s < ? AND (c.%s IS NULL OR c.%s = 0 OR c.%s < ?) ORDER BY s.%s LIMIT 1;",
+        Sesion.TABLA_SESION_ID,
+        Sesion.TABLA_SESION,
+        Compactacion.TABLA_COMPACTACION,
+        Compactacion.TABLA_COMPACTACION_ID_SESION, Sesion.TABLA_SESION_ID,
+        Sesion.TABLA_SESION_FECHA_FIN,
+        Sesion.TABLA_SESION_FECHA_FIN,
+        Compactacion.TABLA_COMPACTACION_ID_SESION,
+        Compactacion.TABLA_COMPACTACION_TERMINADA,
+        Compactacion.TABLA_COMPACTACION_RESOLUCION,
+        Sesion.TABLA_SESION_ID
+    );
+
+    /**
+     * Progreso de compactación de una sesión. Las columnas están en el orden
+     * Compactacion.TABLA_COMPACTACION_*_INDICE.
+     */
+    private static final String SQL_SELECCIONAR_COMPACTACION = String.format(
+        "SELECT %s, %s, %s, %s, %s FROM %s WHERE %s = ? LIMIT 1;",
+        Compactacion.TABLA_COMPACTACION_ID_SESION,
+        Compactacion.TABLA_COMPACTACION_RESOLUCION,
+        Compactacion.TABLA_COMPACTACION_ULTIMA_SECUENCIA,
+        Compactacion.TABLA_COMPACTACION_FECHA_CONSERVADA,
+        Compactacion.TABLA_COMPACTACION_TERMINADA,
+        Compactacion.TABLA_COMPACTACION,
+        Compactacion.TABLA_COMPACTACION_ID_SESION
+    );
+
+    /**
+     * Guarda el progreso de compactación de una sesión. Parámetros: id_sesion, resolucion,
+     * ultima_secuencia, fecha_conservada y terminada.
+     */
+    private static final String SQL_GUARDAR_COMPACTACION = String.format(
+        "INSERT OR REPLACE INTO %s (%s, %s, %s, %s, %s) VALUES (?, ?, ?, ?, ?);",
+        Compactacion.TABLA_COMPACTACION,
+        Compactacion.TABLA_COMPACTACION_ID_SESION,
+        Compactacion.TABLA_COMPACTACION_RESOLUCION,
+        Compactacion.TABLA_COMPACTACION_ULTIMA_SECUENCIA,
+        Compactacion.TABLA_COMPACTACION_FECHA_CONSERVADA,
+        Compactacion.TABLA_COMPACTACION_TERMINADA
+    );
+
+    /**
+     * Elimina una captura. Es una búsqueda en la llave primaria. Parámetros: id_sesion y secuencia.
+     */
+    private static final String SQL_ELIMINAR_CAPTURA = String.format(
+        "DELETE FROM %s WHERE %s = ? AND %s = ?;",
+        Geolocalizacion.TABLA_GEOLOCALIZACION,
+        Geolocalizacion.TABLA_GEOLOCALIZACION_ID_SESION,
+        Geolocalizacion.TABLA_GEOLOCALIZACION_SECUENCIA
+    );
+
+    /**
+     * Elimina las primeras capturas de una sesión. Parámetros: id_sesion, id_sesion y máximo de
+     * capturas eliminadas.
+     */
+    private static final String SQL_ELIMINAR_CAPTURAS_LOTE = String.format(
+        "DELETE FROM %s WHERE %s = ? AND %s IN (SELECT %s FROM %s WHERE %s = ? ORDER BY %s LIMIT ?);",
+        Geolocalizacion.TABLA_GEOLOCALIZACION,
+        Geolocalizacion.TABLA_GEOLOCALIZACION_ID_SESION,
+        Geolocalizacion.TABLA_GEOLOCALIZACION_SECUENCIA,
+        Geolocalizacion.TABLA_GEOLOCALIZACION_SECUENCIA,
+        Geolocalizacion.TABLA_GEOLOCALIZACION,
+        Geolocalizacion.TABLA_GEOLOCALIZACION_ID_SESION,
+        Geolocalizacion.TABLA_GEOLOCALIZACION_SECUENCIA
+    );
+
+    private final long edad;
+    private final long resolucion;
+    private final long retencion;
+
+    // Periodo del mapa de calor a partir del cual ya se eliminaron los agregados antiguos.
+    private long periodoPurgado = Long.MIN_VALUE;
+
+    /**
+     * Crea una compactación con edad, resolución y retención por defecto.
+     */
+    public CompactacionSQLite() {
+        this(COMPACTACION_EDAD_DEFAULT, COMPACTACION_RESOLUCION_DEFAULT, COMPACTACION_RETENCION_DEFAULT);
+    }
+
+    /**
+     * @param edad Milisegundos desde el fin de una sesión a partir de los cuales su resolución es reducida.
+     * @param resolucion Milisegundos mínimos entre capturas conservadas. Debe ser mayor que 0.
+     * @param retencion Milisegundos desde el fin de una sesión a partir de los cuales es eliminada. Debe ser mayor o igual a "edad".
+     */
+    public CompactacionSQLite(long edad, long resolucion, long retencion) {
+        if (resolucion < 1) {
+            throw new IllegalArgumentException("resolucion < 1");
+        }
+
+        if (retencion < edad) {
+            throw new IllegalArgumentException("retencion < edad");
+        }
+
+        this.edad = edad;
+        this.resolucion = resolucion;
+        this.retencion = retencion;
+    }
+
+    /**
+     * Crea la tabla Compactacion de la versión 7 de "DB". Debe ser ejecutado dentro de la
+     * transacción de SQLiteOpenHelper.onUpgrade.
+     *
+     * @param db La base de datos SQLite3 en versión 6.
+     */
+    static void migrarVersion7(SQLiteDatabase db) {
+        db.execSQL(SQL_CREAR_TABLA_COMPACTACION_V7);
+    }
+
+    /**
+     * Ejecuta lotes de compactación hasta que no quede trabajo o se agote el presupuesto. Siempre
+     * ejecuta al menos un lote; un lote puede exceder el presupuesto.
+     *
+     * @param db Objeto SQLiteDatabase con una conexión abierta a la base de datos "DB", permisos de lectura y escritura
+     * @param ahora Fecha actual en milisegundos desde epoch (UTC).
+     * @param presupuesto Milisegundos disponibles.
+     *
+     * @return true si aún queda trabajo por hacer.
+     */
+    public boolean compactar(SQLiteDatabase db, long ahora, long presupuesto) {
+        long limite = SystemClock.elapsedRealtime() + presupuesto;
+
+        do {
+            if (!lote(db, ahora)) {
+                return false;
+            }
+        } while (SystemClock.elapsedRealtime() < limite);
+
+        return true;
+    }
+
+    /**
+     * Ejecuta un lote de compactación.
+     *
+     * @return false si no había trabajo por hacer.
+     */
+    boolean lote(SQLiteDatabase db, long ahora) {
+        long sesion = seleccionarSesion(db, SQL_SELECCIONAR_SESION_A_PURGAR, String.valueOf(ahora - retencion));
+
+        if (sesion > 0) {
+            purgarLote(db, sesion);
+            return true;
+        }
+
+        long periodo = RegistroMapaCalor.periodo(Math.max(0, ahora - retencion));
+
+        if (periodo > periodoPurgado) {
+            db.delete(MapaCalor.TABLA_MAPA_CALOR, MapaCalor.TABLA_MAPA_CALOR_PERIODO + " < ?", new String[] { String.valueOf(periodo) });
+            periodoPurgado = periodo;
+            return true;
+        }
+
+        sesion = seleccionarSesion(db, SQL_SELECCIONAR_SESION_A_COMPACTAR, String.valueOf(ahora - edad), String.valueOf(resolucion));
+
+        if (sesion > 0) {
+            compactarLote(db, sesion);
+            return true;
+        }
+
+        return vaciarLote(db);
+    }
+
+    private static long seleccionarSesion(SQLiteDatabase db, String sql, String... argumentos) {
+        Cursor c = db.rawQuery(sql, argumentos);
+
+        try {
+            return c.moveToFirst() ? c.getLong(0) : 0;
+        } finally {
+            c.close();
+        }
+    }
+
+    /**
+     * Elimina un lote de capturas de una sesión y, si ya no le quedan capturas, la sesión.
+     */
+    private static void purgarLote(SQLiteDatabase db, long idSesion) {
+        String id = String.valueOf(idSesion);
+        SQLiteStatement eliminacion = db.compileStatement(SQL_ELIMINAR_CAPTURAS_LOTE);
+
+        db.beginTransaction();
+        try {
+            eliminacion.bindLong(1, idSesion);
+            eliminacion.bindLong(2, idSesion);
+            eliminacion.bindLong(3, COMPACTACION_CAPTURAS_POR_LOTE);
+
+            if (eliminacion.executeUpdateDelete() < COMPACTACION_CAPTURAS_POR_LOTE) {
+                db.delete(Compactacion.TABLA_COMPACTACION, Compactacion.TABLA_COMPACTACION_ID_SESION + " = ?", new String[] { id });
+                db.delete(AjusteRuta.TABLA_AJUSTE, AjusteRuta.TABLA_AJUSTE_ID_SESION + " = ?", new String[] { id });
+                db.delete(LatenciaSesion.TABLA_LATENCIA, LatenciaSesion.TABLA_LATENCIA_ID_SESION + " = ?", new String[] { id });
+                db.delete(ResumenSesion.TABLA_RESUMEN, ResumenSesion.TABLA_RESUMEN_ID_SESION + " = ?", new String[] { id });
+                db.delete(Sesion.TABLA_SESION, Sesion.TABLA_SESION_ID + " = ?", new String[] { id });
+            }
+
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            eliminacion.close();
+        }
+    }
+
+    /**
+     * Reduce la resolución de un lote de capturas de una sesión y guarda el progreso.
+     */
+    private void compactarLote(SQLiteDatabase db, long idSesion) {
+        SQLiteStatement eliminacion = db.compileStatement(SQL_ELIMINAR_CAPTURA);
+        SQLiteStatement eliminacionAjuste = db.compileStatement(AjusteRutaSQLite.SQL_ELIMINAR_AJUSTE);
+        SQLiteStatement progreso = db.compileStatement(SQL_GUARDAR_COMPACTACION);
+
+        db.beginTransaction();
+        try {
+            long ultimaSecuencia = 0;
+            long fechaConservada = SIN_FECHA;
+            Cursor estado = db.rawQuery(SQL_SELECCIONAR_COMPACTACION, new String[] { String.valueOf(idSesion) });
+
+            try {
+                // Un registro con resolución menor a la actual es procesado desde el principio.
+                if (estado.moveToFirst() && estado.getLong(Compactacion.TABLA_COMPACTACION_RESOLUCION_INDICE) >= resolucion) {
+                    ultimaSecuencia = estado.getLong(Compactacion.TABLA_COMPACTACION_ULTIMA_SECUENCIA_INDICE);
+                    fechaConservada = estado.getLong(Compactacion.TABLA_COMPACTACION_FECHA_CONSERVADA_INDICE);
+                }
+            } finally {
+                estado.close();
+            }
+
+            // La última captura de la sesión siempre es conservada.
+            long secuenciaFinal = GeolocalizacionSQLite.siguienteSecuencia(db, idSesion) - 1;
+            Cursor pagina = GeolocalizacionSQLite.seleccionarPagina(db, idSesion, ultimaSecuencia, COMPACTACION_CAPTURAS_POR_LOTE);
+            int leidas = 0;
+
+            try {
+                while (pagina.moveToNext()) {
+                    long secuencia = pagina.getLong(GeolocalizacionSQLite.CONSULTA_SECUENCIA_INDICE);
+                    long fecha = pagina.getLong(GeolocalizacionSQLite.CONSULTA_FECHA_INDICE);
+
+                    if (fechaConservada == SIN_FECHA || fecha - fechaConservada >= resolucion || secuencia == secuenciaFinal) {
+                        fechaConservada = fecha;
+                    } else {
+                        eliminacion.bindLong(1, idSesion);
+                        eliminacion.bindLong(2, secuencia);
+                        eliminacion.executeUpdateDelete();
+
+                        eliminacionAjuste.bindLong(1, idSesion);
+                        eliminacionAjuste.bindLong(2, secuencia);
+                        eliminacionAjuste.executeUpdateDelete();
+                    }
+
+                    ultimaSecuencia = secuencia;
+                    leidas++;
+                }
+            } finally {
+                pagina.close();
+            }
+
+            progreso.bindLong(1, idSesion);
+            progreso.bindLong(2, resolucion);
+            progreso.bindLong(3, ultimaSecuencia);
+            progreso.bindLong(4, fechaConservada);
+            progreso.bindLong(5, leidas < COMPACTACION_CAPTURAS_POR_LOTE ? 1 : 0);
+            progreso.executeInsert();
+
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            eliminacion.close();
+            eliminacionAjuste.close();
+            progreso.close();
+        }
+    }
+
+    /**
+     * Devuelve al sistema de archivos un lote de páginas libres.
+     *
+     * "PRAGMA incremental_vacuum" libera una página por cada paso de su ejecución, así que es
+     * ejecutado con rawQuery y su cursor es recorrido completo; execSQL sólo liberaría una página.
+     *
+     * @return false si no hay páginas libres o la base de datos no usa auto_vacuum INCREMENTAL.
+     */
+    private static boolean vaciarLote(SQLiteDatabase db) {
+        if (DatabaseUtils.longForQuery(db, "PRAGMA auto_vacuum;", null) != AUTO_VACUUM_INCREMENTAL) {
+            return false;
+        }
+
+        if (DatabaseUtils.longForQuery(db, "PRAGMA freelist_count;", null) == 0) {
+            return false;
+        }
+
+        Cursor vacio = db.rawQuery(String.format("PRAGMA incremental_vacuum(%d);", COMPACTACION_PAGINAS_POR_LOTE), null);
+
+        try {
+            while (vacio.moveToNext()) {
+                // Cada fila es un paso.
+            }
+        } finally {
+            vacio.close();
+        }
+
+        return true;
+    }
+}
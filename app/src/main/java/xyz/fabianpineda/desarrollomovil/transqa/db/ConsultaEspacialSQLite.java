@@ -0,0 +1,274 @@
+package xyz.fabianpineda.desarrollomovil.transqa.db;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.TreeSet;
+
+/**
+ * Consultas espaciales sobre la tabla Geolocalizacion en SQLite: capturas dentro de un rectángulo,
+ * dentro de un radio, y las k capturas más cercanas a un punto.
+ *
+ * Usan el índice (celda, latitud, longitud) (ver CeldasGeograficas): un rectángulo es cubierto por
+ * un rango de celdas por cada fila de celdas que toca, y cada rango es una búsqueda en el índice
+ * que además filtra por coordenadas exactas sin leer la tabla. El costo depende del número de
+ * capturas en las celdas tocadas, no del total de capturas almacenadas.
+ *
+ * Las consultas por radio usan como filtro previo el rectángulo que contiene el círculo, y luego
+ * la distancia exacta (fórmula de haversine, ver RegistroResumen.distancia).
+ *
+ * Los resultados de una consulta no tienen un orden particular, excepto en seleccionarCercanas.
+ */
+public final class ConsultaEspacialSQLite {
+    /**
+     * Recibe las capturas encontradas por una consulta espacial.
+     */
+    public interface LectorCapturasEspaciales {
+        void capturaEncontrada(long idSesion, long secuencia, double latitud, double longitud, long fecha);
+    }
+
+    /**
+     * Radio, en metros, a partir del cual ninguna consulta puede encontrar más capturas: media
+     * circunferencia de la Tierra.
+     */
+    private static final double RADIO_MAXIMO = Math.PI * 6371008.8;
+
+    /**
+     * Capturas de un rango de celdas de una fila, filtradas por coordenadas exactas.
+     */
+    static final String SQL_SELECCIONAR_COORDENADAS_CELDAS = String.format(
+        "SELECT %s, %s, %s, %s, %s FROM %s WHERE %s BETWEEN ? AND ? AND %s BETWEEN ? AND ? AND %s BETWEEN ? AND ?;",
+        Geolocalizacion.TABLA_GEOLOCALIZACION_ID_SESION,
+        Geolocalizacion.TABLA_GEOLOCALIZACION_SECUENCIA,
+        Geolocalizacion.TABLA_GEOLOCALIZACION_LATITUD,
+        Geolocalizacion.TABLA_GEOLOCALIZACION_LONGITUD,
+        Geolocalizacion.TABLA_GEOLOCALIZACION_FECHA,
+        Geolocalizacion.TABLA_GEOLOCALIZACION,
+        Geolocalizacion.TABLA_GEOLOCALIZACION_CELDA,
+        Geolocalizacion.TABLA_GEOLOCALIZACION_LATITUD,
+        Geolocalizacion.TABLA_GEOLOCALIZACION_LONGITUD
+    );
+
+    private ConsultaEspacialSQLite() {
+    }
+
+    /**
+     * Selecciona las capturas cuyas coordenadas están dentro de un rectángulo, bordes incluidos.
+     * El rectángulo no puede cruzar el antimeridiano.
+     *
+     * @param db Objeto SQLiteDatabase con una conexión abierta a la base de datos "DB".
+     * @param latitudMinima Borde sur, en grados.
+     * @param longitudMinima Borde oeste, en grados.
+     * @param latitudMaxima Borde norte, en grados.
+     * @param longitudMaxima Borde este, en grados.
+     * @param lector Recibe cada captura encontrada.
+     *
+     * @return Número de capturas encontradas.
+     */
+    public static int seleccionarEnRectangulo(SQLiteDatabase db, double latitudMinima, double longitudMinima, double latitudMaxima, double longitudMaxima, LectorCapturasEspaciales lector) {
+        return seleccionarEnRectangulo(
+            db,
+            CodificacionCoordenadas.codificar(latitudMinima), CodificacionCoordenadas.codificar(longitudMinima),
+            CodificacionCoordenadas.codificar(latitudMaxima), CodificacionCoordenadas.codificar(longitudMaxima),
+            lector
+        );
+    }
+
+    /**
+     * Igual que seleccionarEnRectangulo, con coordenadas codificadas.
+     */
+    static int seleccionarEnRectangulo(SQLiteDatabase db, int latitudMinima, int longitudMinima, int latitudMaxima, int longitudMaxima, LectorCapturasEspaciales lector) {
+        if (latitudMinima > latitudMaxima || longitudMinima > longitudMaxima) {
+            return 0;
+        }
+
+        long filaMinima = CeldasGeograficas.fila(latitudMinima);
+        long filaMaxima = CeldasGeograficas.fila(latitudMaxima);
+        long columnaMinima = CeldasGeograficas.columna(longitudMinima);
+        long columnaMaxima = CeldasGeograficas.columna(longitudMaxima);
+
+        String[] argumentos = {
+            null, null,
+            String.valueOf(latitudMinima), String.valueOf(latitudMaxima),
+            String.valueOf(longitudMinima), String.valueOf(longitudMaxima)
+        };
+        int encontradas = 0;
+
+        for (long fila = filaMinima; fila <= filaMaxima; fila++) {
+            argumentos[0] = String.valueOf(CeldasGeograficas.celda(fila, columnaMinima));
+            argumentos[1] = String.valueOf(CeldasGeograficas.celda(fila, columnaMaxima));
+
+            Cursor c = db.rawQuery(SQL_SELECCIONAR_COORDENADAS_CELDAS, argumentos);
+
+            try {
+                while (c.moveToNext()) {
+                    lector.capturaEncontrada(
+                        c.getLong(0),
+                        c.getLong(1),
+                        CodificacionCoordenadas.decodificar(c.getInt(2)),
+                        CodificacionCoordenadas.decodificar(c.getInt(3)),
+                        c.getLong(4)
+                    );
+                    encontradas++;
+                }
+            } finally {
+                c.close();
+            }
+        }
+
+        return encontradas;
+    }
+
+    /**
+     * Selecciona las capturas a "metros" metros o menos de una coordenada.
+     *
+     * @param db Objeto SQLiteDatabase con una conexión abierta a la base de datos "DB".
+     * @param latitud Latitud del centro, en grados.
+     * @param longitud Longitud del centro, en grados.
+     * @param metros Radio, en metros.
+     * @param lector Recibe cada captura encontrada.
+     *
+     * @return Número de capturas encontradas.
+     */
+    public static int seleccionarEnRadio(SQLiteDatabase db, final double latitud, final double longitud, final double metros, final LectorCapturasEspaciales lector) {
+        final int[] encontradas = { 0 };
+        int[] rectangulo = CeldasGeograficas.rectanguloRadio(latitud, longitud, metros);
+
+        seleccionarEnRectangulo(db, rectangulo[0], rectangulo[1], rectangulo[2], rectangulo[3], new LectorCapturasEspaciales() {
+            @Override
+            public void capturaEncontrada(long idSesion, long secuencia, double latitudCaptura, double longitudCaptura, long fecha) {
+                if (RegistroResumen.distancia(latitud, longitud, latitudCaptura, longitudCaptura) <= metros) {
+                    lector.capturaEncontrada(idSesion, secuencia, latitudCaptura, longitudCaptura, fecha);
+                    encontradas[0]++;
+                }
+            }
+        });
+
+        return encontradas[0];
+    }
+
+    /**
+     * @return IDs, en orden ascendente, de las sesiones con al menos una captura a "metros" metros
+     * o menos de una coordenada.
+     */
+    public static long[] sesionesEnRadio(SQLiteDatabase db, double latitud, double longitud, double metros) {
+        final TreeSet<Long> sesiones = new TreeSet<>();
+
+        seleccionarEnRadio(db, latitud, longitud, metros, new LectorCapturasEspaciales() {
+            @Override
+            public void capturaEncontrada(long idSesion, long secuencia, double latitud, double longitud, long fecha) {
+                sesiones.add(idSesion);
+            }
+        });
+
+        long[] ids = new long[sesiones.size()];
+        int i = 0;
+
+        for (Long id : sesiones) {
+            ids[i++] = id;
+        }
+
+        return ids;
+    }
+
+    /**
+     * Una captura candidata de seleccionarCercanas y su distancia al punto buscado.
+     */
+    private static final class Candidata {
+        final long idSesion;
+        final long secuencia;
+        final double latitud;
+        final double longitud;
+        final long fecha;
+        final double distancia;
+
+        Candidata(long idSesion, long secuencia, double latitud, double longitud, long fecha, double distancia) {
+            this.idSesion = idSesion;
+            this.secuencia = secuencia;
+            this.latitud = latitud;
+            this.longitud = longitud;
+            this.fecha = fecha;
+            this.distancia = distancia;
+        }
+    }
+
+    /**
+     * Selecciona las "k" capturas más cercanas a una coordenada, de la más cercana a la más lejana.
+     *
+     * Busca en radios crecientes, empezando por el tamaño de una celda y multiplicándolo por 4
+     * hasta encontrar "k" capturas dentro del radio: cualquier captura fuera del radio está más
+     * lejos que todas las encontradas. Sólo se mantienen "k" candidatas en memoria.
+     *
+     * @param db Objeto SQLiteDatabase con una conexión abierta a la base de datos "DB".
+     * @param latitud Latitud del punto, en grados.
+     * @param longitud Longitud del punto, en grados.
+     * @param k Número de capturas buscadas. Debe ser mayor que 0.
+     * @param lector Recibe cada captura encontrada, en orden de distancia.
+     *
+     * @return Número de capturas encontradas. Menor que "k" sólo si no hay más capturas.
+     */
+    public static int seleccionarCercanas(SQLiteDatabase db, final double latitud, final double longitud, final int k, LectorCapturasEspaciales lector) {
+        if (k < 1) {
+            throw new IllegalArgumentException("k < 1");
+        }
+
+        // Montículo de máximos: la candidata más lejana queda en la cabeza y es la reemplazada.
+        final PriorityQueue<Candidata> candidatas = new PriorityQueue<>(k, new Comparator<Candidata>() {
+            @Override
+            public int compare(Candidata a, Candidata b) {
+                return Double.compare(b.distancia, a.distancia);
+            }
+        });
+
+        double radio = CeldasGeograficas.CELDA_UNIDADES / CodificacionCoordenadas.UNIDADES_POR_GRADO * CeldasGeograficas.METROS_POR_GRADO;
+
+        while (true) {
+            final double metros = radio;
+            candidatas.clear();
+
+            int[] rectangulo = CeldasGeograficas.rectanguloRadio(latitud, longitud, metros);
+
+            seleccionarEnRectangulo(db, rectangulo[0], rectangulo[1], rectangulo[2], rectangulo[3], new LectorCapturasEspaciales() {
+                @Override
+                public void capturaEncontrada(long idSesion, long secuencia, double latitudCaptura, double longitudCaptura, long fecha) {
+                    double distancia = RegistroResumen.distancia(latitud, longitud, latitudCaptura, longitudCaptura);
+
+                    if (distancia > metros) {
+                        return;
+                    }
+
+                    if (candidatas.size() < k) {
+                        candidatas.add(new Candidata(idSesion, secuencia, latitudCaptura, longitudCaptura, fecha, distancia));
+                    } else if (distancia < candidatas.peek().distancia) {
+                        candidatas.poll();
+                        candidatas.add(new Candidata(idSesion, secuencia, latitudCaptura, longitudCaptura, fecha, distancia));
+                    }
+                }
+            });
+
+            if (candidatas.size() >= k || radio >= RADIO_MAXIMO) {
+                break;
+            }
+
+            radio = Math.min(radio * 4, RADIO_MAXIMO);
+        }
+
+        Candidata[] ordenadas = candidatas.toArray(new Candidata[candidatas.size()]);
+
+        Arrays.sort(ordenadas, new Comparator<Candidata>() {
+            @Override
+            public int compare(Candidata a, Candidata b) {
+                return Double.compare(a.distancia, b.distancia);
+            }
+        });
+
+        for (Candidata c : ordenadas) {
+            lector.capturaEncontrada(c.idSesion, c.secuencia, c.latitud, c.longitud, c.fecha);
+        }
+
+        return ordenadas.length;
+    }
+}
@@ -7,5 +7,5 @@ package xyz.fabianpineda.desarrollomovil.transqa.db;
  */
 final class DB {
     static final String DB_NOMBRE = "TransQA";
-    static final int DB_VERSION = 1;
+    static final int DB_VERSION = 10;
 }
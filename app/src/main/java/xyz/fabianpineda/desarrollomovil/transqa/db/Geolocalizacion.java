@@ -6,13 +6,25 @@ package xyz.fabianpineda.desarrollomovil.transqa.db;
  * Cada entrada pertence a una Sesion y contiene un par de coordenadas (latitud y longitud) y fecha
  * de captura.
  *
+ * Las coordenadas son almacenadas como enteros en unidades de 1e-7 grados y la fecha de captura
+ * como milisegundos desde epoch (UTC). Ver: CodificacionCoordenadas
+ *
+ * Cada entrada es identificada por la ID de su sesión junto con un número de secuencia, el cual
+ * es creciente dentro de cada sesión en el orden en que las coordenadas fueron capturadas. Los
+ * números de secuencia no son necesariamente consecutivos.
+ *
+ * Cada entrada también guarda el número de la celda geográfica que contiene sus coordenadas, usado
+ * como índice espacial. Ver: CeldasGeograficas
+ *
  * No se debe incluir información en este objeto que esté dirigida a una DB/(R)DBMS específica.
  */
 final class Geolocalizacion {
     static final String TABLA_GEOLOCALIZACION = "Geolocalizacion";
 
     static final String TABLA_GEOLOCALIZACION_ID_SESION = "id_sesion";
+    static final String TABLA_GEOLOCALIZACION_SECUENCIA = "secuencia";
     static final String TABLA_GEOLOCALIZACION_LATITUD = "latitud";
     static final String TABLA_GEOLOCALIZACION_LONGITUD = "longitud";
     static final String TABLA_GEOLOCALIZACION_FECHA = "fecha";
+    static final String TABLA_GEOLOCALIZACION_CELDA = "celda";
 }
@@ -1,34 +1,98 @@
 package xyz.fabianpineda.desarrollomovil.transqa.db;
 
-import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Build;
 
 /**
  * Información de tabla Geolocalizacion en SQLite.
  *
  * Usado para crear y operar con la tabla "Geolocalizacion" en SQLite3 en la base de datos "DB".
  *
+ * La llave primaria es (id_sesion, secuencia). En Android 5.0 o superior (SQLite 3.8.2 o superior)
+ * la tabla es creada "WITHOUT ROWID", así que las filas son almacenadas físicamente en el orden de
+ * la llave primaria: todas las capturas de una sesión quedan juntas y en orden de captura. En
+ * versiones anteriores la llave primaria es un índice separado. En ambos casos, toda consulta por
+ * sesión es una búsqueda en índice y no un recorrido de toda la tabla.
+ *
+ * Adicionalmente existe un índice (id_sesion, fecha) para consultas por rango de fechas dentro de
+ * una sesión, y un índice (celda, latitud, longitud) para consultas espaciales (ver
+ * CeldasGeograficas y ConsultaEspacialSQLite).
+ *
+ * Todas las columnas son enteros: latitud y longitud en unidades de 1e-7 grados y fecha en
+ * milisegundos desde epoch (UTC). Ver: CodificacionCoordenadas
+ *
  * TODO: mover statements SQL dentro de métodos y hacerlos constantes, propiedades de clase.
  */
 final public class GeolocalizacionSQLite {
+    /**
+     * Índice usado para consultas por rango de fechas dentro de una sesión.
+     */
+    static final String INDICE_GEOLOCALIZACION_SESION_FECHA = "indice_geolocalizacion_sesion_fecha";
+
+    /**
+     * Índice usado para consultas espaciales.
+     */
+    static final String INDICE_GEOLOCALIZACION_CELDA = "indice_geolocalizacion_celda";
+
+    /**
+     * "WITHOUT ROWID" requiere SQLite 3.8.2, incluido desde Android 5.0 (API 21).
+     */
+    static final String SQL_OPCIONES_TABLA_GEOLOCALIZACION =
+        Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP ? " WITHOUT ROWID" : "";
+
     /**
      * Estructura de tabla Geolocalización. Esquema.
      */
     static final String SQL_CREAR_TABLA_GEOLOCALIZACION = String.format(
         "CREATE TABLE %s (" +
             "%s INTEGER NOT NULL," +
-            "%s REAL NOT NULL," +
-            "%s REAL NOT NULL," +
-            "%s DATETIME DEFAULT (datetime('now','localtime'))," +
+            "%s INTEGER NOT NULL," +
+            "%s INTEGER NOT NULL," +
+            "%s INTEGER NOT NULL," +
+            "%s INTEGER NOT NULL," +
+            "%s INTEGER NOT NULL DEFAULT 0," +
 
+            "PRIMARY KEY (%s, %s)," +
             "FOREIGN KEY (%s) REFERENCES Sesion(%s)" +
-        ");",
+        ")%s;",
         Geolocalizacion.TABLA_GEOLOCALIZACION,
         Geolocalizacion.TABLA_GEOLOCALIZACION_ID_SESION,
+        Geolocalizacion.TABLA_GEOLOCALIZACION_SECUENCIA,
         Geolocalizacion.TABLA_GEOLOCALIZACION_LATITUD,
         Geolocalizacion.TABLA_GEOLOCALIZACION_LONGITUD,
         Geolocalizacion.TABLA_GEOLOCALIZACION_FECHA,
-        Geolocalizacion.TABLA_GEOLOCALIZACION_ID_SESION, Sesion.TABLA_SESION_ID
+        Geolocalizacion.TABLA_GEOLOCALIZACION_CELDA,
+        Geolocalizacion.TABLA_GEOLOCALIZACION_ID_SESION, Geolocalizacion.TABLA_GEOLOCALIZACION_SECUENCIA,
+        Geolocalizacion.TABLA_GEOLOCALIZACION_ID_SESION, Sesion.TABLA_SESION_ID,
+        SQL_OPCIONES_TABLA_GEOLOCALIZACION
+    );
+
+    /**
+     * Índice para consultas por rango de fechas dentro de una sesión.
+     */
+    static final String SQL_CREAR_INDICE_GEOLOCALIZACION_SESION_FECHA = String.format(
+        "CREATE INDEX %s ON %s (%s, %s);",
+        INDICE_GEOLOCALIZACION_SESION_FECHA,
+        Geolocalizacion.TABLA_GEOLOCALIZACION,
+        Geolocalizacion.TABLA_GEOLOCALIZACION_ID_SESION,
+        Geolocalizacion.TABLA_GEOLOCALIZACION_FECHA
+    );
+
+    /**
+     * Índice para consultas espaciales: rangos de celdas y, dentro de ellos, coordenadas exactas.
+     * En tablas "WITHOUT ROWID" el índice incluye la llave primaria, así que filtrar por
+     * coordenadas y obtener sesión y secuencia no requiere leer la tabla.
+     */
+    static final String SQL_CREAR_INDICE_GEOLOCALIZACION_CELDA = String.format(
+        "CREATE INDEX %s ON %s (%s, %s, %s);",
+        INDICE_GEOLOCALIZACION_CELDA,
+        Geolocalizacion.TABLA_GEOLOCALIZACION,
+        Geolocalizacion.TABLA_GEOLOCALIZACION_CELDA,
+        Geolocalizacion.TABLA_GEOLOCALIZACION_LATITUD,
+        Geolocalizacion.TABLA_GEOLOCALIZACION_LONGITUD
     );
 
     /**
@@ -39,33 +103,290 @@ final public class GeolocalizacionSQLite {
         Geolocalizacion.TABLA_GEOLOCALIZACION
     );
 
+    /**
+     * SQL de SQLite3 para insertar un registro con todos sus campos. Usado como statement compilado
+     * por BufferGeolocalizacionSQLite.
+     */
+    static final String SQL_INSERTAR_COORDENADAS = String.format(
+        "INSERT INTO %s (%s, %s, %s, %s, %s, %s) VALUES (?, ?, ?, ?, ?, ?);",
+        Geolocalizacion.TABLA_GEOLOCALIZACION,
+        Geolocalizacion.TABLA_GEOLOCALIZACION_ID_SESION,
+        Geolocalizacion.TABLA_GEOLOCALIZACION_SECUENCIA,
+        Geolocalizacion.TABLA_GEOLOCALIZACION_LATITUD,
+        Geolocalizacion.TABLA_GEOLOCALIZACION_LONGITUD,
+        Geolocalizacion.TABLA_GEOLOCALIZACION_FECHA,
+        Geolocalizacion.TABLA_GEOLOCALIZACION_CELDA
+    );
+
+    /**
+     * Siguiente número de secuencia para una sesión. Es una búsqueda en la llave primaria.
+     */
+    static final String SQL_SIGUIENTE_SECUENCIA = String.format(
+        "SELECT COALESCE(MAX(%s), 0) + 1 FROM %s WHERE %s = ?;",
+        Geolocalizacion.TABLA_GEOLOCALIZACION_SECUENCIA,
+        Geolocalizacion.TABLA_GEOLOCALIZACION,
+        Geolocalizacion.TABLA_GEOLOCALIZACION_ID_SESION
+    );
+
+    /**
+     * Todas las capturas de una sesión, en orden de captura.
+     */
+    static final String SQL_SELECCIONAR_COORDENADAS_SESION = String.format(
+        "SELECT %s, %s, %s, %s FROM %s WHERE %s = ? ORDER BY %s;",
+        Geolocalizacion.TABLA_GEOLOCALIZACION_SECUENCIA,
+        Geolocalizacion.TABLA_GEOLOCALIZACION_LATITUD,
+        Geolocalizacion.TABLA_GEOLOCALIZACION_LONGITUD,
+        Geolocalizacion.TABLA_GEOLOCALIZACION_FECHA,
+        Geolocalizacion.TABLA_GEOLOCALIZACION,
+        Geolocalizacion.TABLA_GEOLOCALIZACION_ID_SESION,
+        Geolocalizacion.TABLA_GEOLOCALIZACION_SECUENCIA
+    );
+
+    /**
+     * Capturas de una sesión dentro de un rango de fechas [desde, hasta], en orden de fecha.
+     */
+    static final String SQL_SELECCIONAR_COORDENADAS_SESION_FECHAS = String.format(
+        "SELECT %s, %s, %s, %s FROM %s WHERE %s = ? AND %s BETWEEN ? AND ? ORDER BY %s;",
+        Geolocalizacion.TABLA_GEOLOCALIZACION_SECUENCIA,
+        Geolocalizacion.TABLA_GEOLOCALIZACION_LATITUD,
+        Geolocalizacion.TABLA_GEOLOCALIZACION_LONGITUD,
+        Geolocalizacion.TABLA_GEOLOCALIZACION_FECHA,
+        Geolocalizacion.TABLA_GEOLOCALIZACION,
+        Geolocalizacion.TABLA_GEOLOCALIZACION_ID_SESION,
+        Geolocalizacion.TABLA_GEOLOCALIZACION_FECHA,
+        Geolocalizacion.TABLA_GEOLOCALIZACION_FECHA
+    );
+
+    /**
+     * Página de capturas de una sesión: hasta "limite" capturas con secuencia mayor a una dada, en
+     * orden de captura. Es una búsqueda en la llave primaria seguida de un recorrido de "limite"
+     * filas, sin importar cuántas capturas anteriores tenga la sesión (a diferencia de OFFSET).
+     */
+    static final String SQL_SELECCIONAR_COORDENADAS_SESION_PAGINA = String.format(
+        "SELECT %s, %s, %s, %s FROM %s WHERE %s = ? AND %s > ? ORDER BY %s LIMIT ?;",
+        Geolocalizacion.TABLA_GEOLOCALIZACION_SECUENCIA,
+        Geolocalizacion.TABLA_GEOLOCALIZACION_LATITUD,
+        Geolocalizacion.TABLA_GEOLOCALIZACION_LONGITUD,
+        Geolocalizacion.TABLA_GEOLOCALIZACION_FECHA,
+        Geolocalizacion.TABLA_GEOLOCALIZACION,
+        Geolocalizacion.TABLA_GEOLOCALIZACION_ID_SESION,
+        Geolocalizacion.TABLA_GEOLOCALIZACION_SECUENCIA,
+        Geolocalizacion.TABLA_GEOLOCALIZACION_SECUENCIA
+    );
+
+    /**
+     * Número de capturas de una sesión.
+     */
+    static final String SQL_CONTAR_COORDENADAS_SESION = String.format(
+        "SELECT COUNT(*) FROM %s WHERE %s = ?;",
+        Geolocalizacion.TABLA_GEOLOCALIZACION,
+        Geolocalizacion.TABLA_GEOLOCALIZACION_ID_SESION
+    );
+
+    /**
+     * Estructura de tabla Geolocalizacion en la versión 2 de "DB". Sólo usada por migrarVersion2;
+     * las migraciones siguientes parten de esta estructura.
+     */
+    private static final String SQL_CREAR_TABLA_GEOLOCALIZACION_V2 =
+        "CREATE TABLE Geolocalizacion (" +
+            "id_sesion INTEGER NOT NULL," +
+            "secuencia INTEGER NOT NULL," +
+            "latitud REAL NOT NULL," +
+            "longitud REAL NOT NULL," +
+            "fecha DATETIME NOT NULL DEFAULT (datetime('now','localtime'))," +
+            "PRIMARY KEY (id_sesion, secuencia)," +
+            "FOREIGN KEY (id_sesion) REFERENCES Sesion(id)" +
+        ")" + SQL_OPCIONES_TABLA_GEOLOCALIZACION + ";";
+
+    /**
+     * Estructura de tabla Geolocalizacion en la versión 3 de "DB". Sólo usada por
+     * SQLite.migrarVersion3.
+     */
+    static final String SQL_CREAR_TABLA_GEOLOCALIZACION_V3 =
+        "CREATE TABLE Geolocalizacion (" +
+            "id_sesion INTEGER NOT NULL," +
+            "secuencia INTEGER NOT NULL," +
+            "latitud INTEGER NOT NULL," +
+            "longitud INTEGER NOT NULL," +
+            "fecha INTEGER NOT NULL," +
+            "PRIMARY KEY (id_sesion, secuencia)," +
+            "FOREIGN KEY (id_sesion) REFERENCES Sesion(id)" +
+        ")" + SQL_OPCIONES_TABLA_GEOLOCALIZACION + ";";
+
+    /**
+     * Migra la tabla Geolocalizacion de la versión 1 de "DB" (sin llave primaria ni índices) a la
+     * versión 2. Debe ser ejecutado dentro de la transacción de SQLiteOpenHelper.onUpgrade.
+     *
+     * Los registros existentes usan su rowid como número de secuencia: es único y creciente en
+     * orden de inserción. Registros sin fecha reciben la fecha actual.
+     *
+     * @param db La base de datos SQLite3 en versión 1.
+     */
+    static void migrarVersion2(SQLiteDatabase db) {
+        String tablaAnterior = Geolocalizacion.TABLA_GEOLOCALIZACION + "_v1";
+
+        db.execSQL(String.format("ALTER TABLE %s RENAME TO %s;", Geolocalizacion.TABLA_GEOLOCALIZACION, tablaAnterior));
+        db.execSQL(SQL_CREAR_TABLA_GEOLOCALIZACION_V2);
+        db.execSQL(String.format(
+            "INSERT INTO %s (%s, %s, %s, %s, %s) " +
+                "SELECT %s, rowid, %s, %s, COALESCE(%s, datetime('now','localtime')) FROM %s;",
+            Geolocalizacion.TABLA_GEOLOCALIZACION,
+            Geolocalizacion.TABLA_GEOLOCALIZACION_ID_SESION,
+            Geolocalizacion.TABLA_GEOLOCALIZACION_SECUENCIA,
+            Geolocalizacion.TABLA_GEOLOCALIZACION_LATITUD,
+            Geolocalizacion.TABLA_GEOLOCALIZACION_LONGITUD,
+            Geolocalizacion.TABLA_GEOLOCALIZACION_FECHA,
+            Geolocalizacion.TABLA_GEOLOCALIZACION_ID_SESION,
+            Geolocalizacion.TABLA_GEOLOCALIZACION_LATITUD,
+            Geolocalizacion.TABLA_GEOLOCALIZACION_LONGITUD,
+            Geolocalizacion.TABLA_GEOLOCALIZACION_FECHA,
+            tablaAnterior
+        ));
+        db.execSQL(String.format("DROP TABLE %s;", tablaAnterior));
+        db.execSQL(SQL_CREAR_INDICE_GEOLOCALIZACION_SESION_FECHA);
+    }
+
+    /**
+     * Migra la tabla Geolocalizacion de la versión 4 de "DB" a la versión 5: agrega la columna
+     * "celda", la calcula para los registros existentes (ver CeldasGeograficas; las celdas son de
+     * 2^15 unidades) y crea su índice. Debe ser ejecutado dentro de la transacción de
+     * SQLiteOpenHelper.onUpgrade.
+     *
+     * @param db La base de datos SQLite3 en versión 4.
+     */
+    static void migrarVersion5(SQLiteDatabase db) {
+        db.execSQL("ALTER TABLE Geolocalizacion ADD COLUMN celda INTEGER NOT NULL DEFAULT 0;");
+        db.execSQL("UPDATE Geolocalizacion SET celda = (((latitud + 900000000) >> 15) << 17) | ((longitud + 1800000000) >> 15);");
+        db.execSQL("CREATE INDEX indice_geolocalizacion_celda ON Geolocalizacion (celda, latitud, longitud);");
+    }
+
+    /*
+     * Índices de cada campo en los Cursor regresados por seleccionarCoordenadas. Por favor
+     * actualizar si se altera el orden de los campos en las consultas SQL_SELECCIONAR_*.
+     *
+     * Latitud y longitud deben ser leídas con getInt y decodificadas con CodificacionCoordenadas.
+     */
+    public static final int CONSULTA_SECUENCIA_INDICE = 0;
+    public static final int CONSULTA_LATITUD_INDICE = 1;
+    public static final int CONSULTA_LONGITUD_INDICE = 2;
+    public static final int CONSULTA_FECHA_INDICE = 3;
+
+    /**
+     * Obtiene el siguiente número de secuencia disponible para una sesión.
+     *
+     * @param db Objeto SQLiteDatabase con una conexión abierta a la base de datos "DB".
+     * @param id_sesion ID de la sesión.
+     *
+     * @return Número de secuencia mayor a todos los de la sesión. 1 si la sesión no tiene capturas.
+     */
+    public static final long siguienteSecuencia(SQLiteDatabase db, long id_sesion) {
+        return DatabaseUtils.longForQuery(db, SQL_SIGUIENTE_SECUENCIA, new String[] { String.valueOf(id_sesion) });
+    }
+
     /**
      * Crea un nuevo registro con latitud, longitud y fecha asociado a una Sesion por su ID.
      *
+     * Cada llamado usa su propia transacción, en la que también actualiza el resumen de la sesión
+     * (ver ResumenSesionSQLite) y el mapa de calor (ver MapaCalorSQLite). Para capturas
+     * frecuentes, considere usar BufferGeolocalizacionSQLite.
+     *
      * @param db Objeto SQLiteDatabase con una conexión abierta a la base de datos "DB", permisos de lectura y escritura
      *
      * @param id_sesion ID de la sesión a la que esta entrada pertenece.
-     * @param latitud Coordenada. Latitud.
-     * @param longitud Coordenada. Longitud.
+     * @param latitud Coordenada. Latitud, en grados.
+     * @param longitud Coordenada. Longitud, en grados.
+     * @param fecha Fecha de captura en milisegundos desde epoch (UTC).
      *
-     * @return rowid (ID de fila) del registro insertado en tabla Geolocalizacion. -1 en error.
+     * @return Número de secuencia del registro insertado en tabla Geolocalizacion. -1 en error.
      */
-    public static final long agregarCoordenadas(SQLiteDatabase db, long id_sesion, double latitud, double longitud) {
-        ContentValues valores = new ContentValues();
-        valores.put(Geolocalizacion.TABLA_GEOLOCALIZACION_ID_SESION, id_sesion);
-        valores.put(Geolocalizacion.TABLA_GEOLOCALIZACION_LATITUD, latitud);
-        valores.put(Geolocalizacion.TABLA_GEOLOCALIZACION_LONGITUD, longitud);
-
+    public static final long agregarCoordenadas(SQLiteDatabase db, long id_sesion, double latitud, double longitud, long fecha) {
+        SQLiteStatement insercion = db.compileStatement(SQL_INSERTAR_COORDENADAS);
+        MapaCalorSQLite.Acumulador mapaCalor = new MapaCalorSQLite.Acumulador(db);
         long resultado = -1;
 
         db.beginTransaction();
         try {
-            resultado = db.insert(Geolocalizacion.TABLA_GEOLOCALIZACION, null, valores);
+            long secuencia = siguienteSecuencia(db, id_sesion);
+            RegistroResumen resumen = ResumenSesionSQLite.seleccionarOCalcularResumen(db, id_sesion);
+
+            insercion.bindLong(1, id_sesion);
+            insercion.bindLong(2, secuencia);
+            insercion.bindLong(3, CodificacionCoordenadas.codificar(latitud));
+            insercion.bindLong(4, CodificacionCoordenadas.codificar(longitud));
+            insercion.bindLong(5, fecha);
+            insercion.bindLong(6, CeldasGeograficas.celda(CodificacionCoordenadas.codificar(latitud), CodificacionCoordenadas.codificar(longitud)));
+            insercion.executeInsert();
+
+            double velocidad = resumen.agregar(CodificacionCoordenadas.codificar(latitud), CodificacionCoordenadas.codificar(longitud), fecha);
+            ResumenSesionSQLite.guardarResumen(db, resumen);
+
+            mapaCalor.agregar(CodificacionCoordenadas.codificar(latitud), CodificacionCoordenadas.codificar(longitud), fecha, velocidad);
+            mapaCalor.guardar();
+
             db.setTransactionSuccessful();
+            resultado = secuencia;
         } finally {
+            mapaCalor.descartar();
             db.endTransaction();
+            insercion.close();
+            mapaCalor.cerrar();
         }
 
         return resultado;
     };
+
+    /**
+     * Selecciona todas las capturas de una sesión, en orden de captura.
+     *
+     * @param db Objeto SQLiteDatabase con una conexión abierta a la base de datos "DB".
+     * @param id_sesion ID de la sesión.
+     *
+     * @return Cursor con columnas en el orden CONSULTA_*_INDICE. Debe ser cerrado posteriormente usando su método close()
+     */
+    public static final Cursor seleccionarCoordenadas(SQLiteDatabase db, long id_sesion) {
+        return db.rawQuery(SQL_SELECCIONAR_COORDENADAS_SESION, new String[] { String.valueOf(id_sesion) });
+    }
+
+    /**
+     * Selecciona las capturas de una sesión cuya fecha está en el rango [desde, hasta], en orden
+     * de fecha.
+     *
+     * @param db Objeto SQLiteDatabase con una conexión abierta a la base de datos "DB".
+     * @param id_sesion ID de la sesión.
+     * @param desde Fecha inicial, inclusiva, en milisegundos desde epoch (UTC).
+     * @param hasta Fecha final, inclusiva, en milisegundos desde epoch (UTC).
+     *
+     * @return Cursor con columnas en el orden CONSULTA_*_INDICE. Debe ser cerrado posteriormente usando su método close()
+     */
+    public static final Cursor seleccionarCoordenadas(SQLiteDatabase db, long id_sesion, long desde, long hasta) {
+        return db.rawQuery(SQL_SELECCIONAR_COORDENADAS_SESION_FECHAS, new String[] { String.valueOf(id_sesion), String.valueOf(desde), String.valueOf(hasta) });
+    }
+
+    /**
+     * Selecciona una página de capturas de una sesión: hasta "limite" capturas con número de
+     * secuencia mayor a "despues_de", en orden de captura.
+     *
+     * Con páginas de unos pocos miles de capturas, todas las filas de la página caben en un solo
+     * CursorWindow; recorrer una sesión de cualquier tamaño página por página no llena la memoria.
+     *
+     * @param db Objeto SQLiteDatabase con una conexión abierta a la base de datos "DB".
+     * @param id_sesion ID de la sesión.
+     * @param despues_de Número de secuencia; 0 para empezar desde la primera captura.
+     * @param limite Máximo de capturas seleccionadas.
+     *
+     * @return Cursor con columnas en el orden CONSULTA_*_INDICE. Debe ser cerrado posteriormente usando su método close()
+     */
+    public static final Cursor seleccionarPagina(SQLiteDatabase db, long id_sesion, long despues_de, int limite) {
+        return db.rawQuery(SQL_SELECCIONAR_COORDENADAS_SESION_PAGINA, new String[] { String.valueOf(id_sesion), String.valueOf(despues_de), String.valueOf(limite) });
+    }
+
+    /**
+     * @param db Objeto SQLiteDatabase con una conexión abierta a la base de datos "DB".
+     * @param id_sesion ID de la sesión.
+     *
+     * @return Número de capturas de la sesión.
+     */
+    public static final long contarCoordenadas(SQLiteDatabase db, long id_sesion) {
+        return DatabaseUtils.longForQuery(db, SQL_CONTAR_COORDENADAS_SESION, new String[] { String.valueOf(id_sesion) });
+    }
 }
@@ -0,0 +1,36 @@
+package xyz.fabianpineda.desarrollomovil.transqa.db;
+
+/**
+ * Define la tabla/entidad LatenciaSesion en una base de datos relacional cualquiera.
+ *
+ * Cada entrada guarda las latencias de una etapa del camino de escritura de las capturas de una
+ * Sesion (ver RegistroLatencias) y es identificada por la ID de la sesión y la etapa (alguna de
+ * las constantes RegistroLatencias.LATENCIA_ETAPA_*). Es escrita una vez, al terminar la sesión.
+ *
+ * Latencias en microsegundos.
+ *
+ * No se debe incluir información en este objeto que esté dirigida a una DB/(R)DBMS específica.
+ */
+final class LatenciaSesion {
+    static final String TABLA_LATENCIA = "LatenciaSesion";
+
+    static final String TABLA_LATENCIA_ID_SESION = "id_sesion";
+    static final String TABLA_LATENCIA_ETAPA = "etapa";
+    static final String TABLA_LATENCIA_CAPTURAS = "capturas";
+    static final String TABLA_LATENCIA_PERCENTIL_50 = "percentil_50";
+    static final String TABLA_LATENCIA_PERCENTIL_90 = "percentil_90";
+    static final String TABLA_LATENCIA_PERCENTIL_99 = "percentil_99";
+    static final String TABLA_LATENCIA_MAXIMO = "maximo";
+
+    /*
+     * Índices de cada campo. Por favor actualizar si se altera el orden de los campos o si se
+     * agregan o eliminan campos.
+     */
+    static final int TABLA_LATENCIA_ID_SESION_INDICE = 0;
+    static final int TABLA_LATENCIA_ETAPA_INDICE = 1;
+    static final int TABLA_LATENCIA_CAPTURAS_INDICE = 2;
+    static final int TABLA_LATENCIA_PERCENTIL_50_INDICE = 3;
+    static final int TABLA_LATENCIA_PERCENTIL_90_INDICE = 4;
+    static final int TABLA_LATENCIA_PERCENTIL_99_INDICE = 5;
+    static final int TABLA_LATENCIA_MAXIMO_INDICE = 6;
+}
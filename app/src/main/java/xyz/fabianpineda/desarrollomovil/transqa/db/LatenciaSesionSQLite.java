@@ -0,0 +1,182 @@
+package xyz.fabianpineda.desarrollomovil.transqa.db;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+/**
+ * Información de tabla LatenciaSesion en SQLite.
+ *
+ * Usado para crear y operar con la tabla "LatenciaSesion" en SQLite3 en la base de datos "DB".
+ *
+ * Las latencias de una sesión son medidas por el servicio mientras escribe sus capturas y son
+ * guardadas al terminar la sesión, en la misma operación que la termina (ver
+ * SesionSQLite.terminarSesion(SQLiteDatabase, long, RegistroLatencias)). Una sesión terminada sin
+ * latencias medidas (por ejemplo, después de reiniciar el servicio) no tiene filas en esta tabla.
+ *
+ * La llave primaria es (id_sesion, etapa): consultar las latencias de una sesión es un recorrido
+ * de a lo sumo RegistroLatencias.LATENCIA_ETAPAS filas en índice.
+ */
+public final class LatenciaSesionSQLite {
+    /**
+     * Estructura de tabla LatenciaSesion. Esquema.
+     */
+    static final String SQL_CREAR_TABLA_LATENCIA = String.format(
+        "CREATE TABLE %s (" +
+            "%s INTEGER NOT NULL," +
+            "%s INTEGER NOT NULL," +
+            "%s INTEGER NOT NULL DEFAULT 0," +
+            "%s INTEGER NOT NULL DEFAULT 0," +
+            "%s INTEGER NOT NULL DEFAULT 0," +
+            "%s INTEGER NOT NULL DEFAULT 0," +
+            "%s INTEGER NOT NULL DEFAULT 0," +
+
+            "PRIMARY KEY (%s, %s)," +
+            "FOREIGN KEY (%s) REFERENCES %s(%s)" +
+        ");",
+        LatenciaSesion.TABLA_LATENCIA,
+        LatenciaSesion.TABLA_LATENCIA_ID_SESION,
+        LatenciaSesion.TABLA_LATENCIA_ETAPA,
+        LatenciaSesion.TABLA_LATENCIA_CAPTURAS,
+        LatenciaSesion.TABLA_LATENCIA_PERCENTIL_50,
+        LatenciaSesion.TABLA_LATENCIA_PERCENTIL_90,
+        LatenciaSesion.TABLA_LATENCIA_PERCENTIL_99,
+        LatenciaSesion.TABLA_LATENCIA_MAXIMO,
+        LatenciaSesion.TABLA_LATENCIA_ID_SESION, LatenciaSesion.TABLA_LATENCIA_ETAPA,
+        LatenciaSesion.TABLA_LATENCIA_ID_SESION, Sesion.TABLA_SESION, Sesion.TABLA_SESION_ID
+    );
+
+    /**
+     * SQL de SQLite3 para eliminar tabla LatenciaSesion.
+     */
+    static final String SQL_DESTRUIR_TABLA_LATENCIA = String.format(
+        "DROP TABLE IF EXISTS %s;",
+        LatenciaSesion.TABLA_LATENCIA
+    );
+
+    /**
+     * Estructura de tabla LatenciaSesion en la versión 9 de "DB". Sólo usada por migrarVersion9.
+     */
+    private static final String SQL_CREAR_TABLA_LATENCIA_V9 =
+        "CREATE TABLE LatenciaSesion (" +
+            "id_sesion INTEGER NOT NULL," +
+            "etapa INTEGER NOT NULL," +
+            "capturas INTEGER NOT NULL DEFAULT 0," +
+            "percentil_50 INTEGER NOT NULL DEFAULT 0," +
+            "percentil_90 INTEGER NOT NULL DEFAULT 0," +
+            "percentil_99 INTEGER NOT NULL DEFAULT 0," +
+            "maximo INTEGER NOT NULL DEFAULT 0," +
+            "PRIMARY KEY (id_sesion, etapa)," +
+            "FOREIGN KEY (id_sesion) REFERENCES Sesion(id)" +
+        ");";
+
+    /**
+     * Guarda las latencias de una etapa, reemplazando las anteriores si existen.
+     *
+     * Parámetros: id_sesion, etapa, capturas, percentil_50, percentil_90, percentil_99 y maximo.
+     */
+    static final String SQL_GUARDAR_LATENCIA = String.format(
+        "INSERT OR REPLACE INTO %s (%s, %s, %s, %s, %s, %s, %s) VALUES (?, ?, ?, ?, ?, ?, ?);",
+        LatenciaSesion.TABLA_LATENCIA,
+        LatenciaSesion.TABLA_LATENCIA_ID_SESION,
+        LatenciaSesion.TABLA_LATENCIA_ETAPA,
+        LatenciaSesion.TABLA_LATENCIA_CAPTURAS,
+        LatenciaSesion.TABLA_LATENCIA_PERCENTIL_50,
+        LatenciaSesion.TABLA_LATENCIA_PERCENTIL_90,
+        LatenciaSesion.TABLA_LATENCIA_PERCENTIL_99,
+        LatenciaSesion.TABLA_LATENCIA_MAXIMO
+    );
+
+    /**
+     * Selecciona las latencias de una sesión. Las columnas están en el orden LatenciaSesion.TABLA_LATENCIA_*_INDICE.
+     */
+    static final String SQL_SELECCIONAR_LATENCIAS = String.format(
+        "SELECT %s, %s, %s, %s, %s, %s, %s FROM %s WHERE %s = ?;",
+        LatenciaSesion.TABLA_LATENCIA_ID_SESION,
+        LatenciaSesion.TABLA_LATENCIA_ETAPA,
+        LatenciaSesion.TABLA_LATENCIA_CAPTURAS,
+        LatenciaSesion.TABLA_LATENCIA_PERCENTIL_50,
+        LatenciaSesion.TABLA_LATENCIA_PERCENTIL_90,
+        LatenciaSesion.TABLA_LATENCIA_PERCENTIL_99,
+        LatenciaSesion.TABLA_LATENCIA_MAXIMO,
+        LatenciaSesion.TABLA_LATENCIA,
+        LatenciaSesion.TABLA_LATENCIA_ID_SESION
+    );
+
+    /**
+     * Crea la tabla LatenciaSesion de la versión 9 de "DB". Las sesiones existentes no tienen
+     * latencias. Debe ser ejecutado dentro de la transacción de SQLiteOpenHelper.onUpgrade.
+     *
+     * @param db La base de datos SQLite3 en versión 8.
+     */
+    static void migrarVersion9(SQLiteDatabase db) {
+        db.execSQL(SQL_CREAR_TABLA_LATENCIA_V9);
+    }
+
+    /**
+     * Guarda las latencias de todas las etapas de una sesión en una transacción.
+     *
+     * @param db Objeto SQLiteDatabase con una conexión abierta a la base de datos "DB", permisos de lectura y escritura
+     * @param latencias Latencias de la sesión. La sesión debe existir.
+     */
+    public static final void guardarLatencias(SQLiteDatabase db, RegistroLatencias latencias) {
+        SQLiteStatement guardar = db.compileStatement(SQL_GUARDAR_LATENCIA);
+
+        db.beginTransaction();
+        try {
+            for (int etapa = 0; etapa < RegistroLatencias.LATENCIA_ETAPAS; etapa++) {
+                guardar.bindLong(1, latencias.idSesion);
+                guardar.bindLong(2, etapa);
+                guardar.bindLong(3, latencias.capturas[etapa]);
+                guardar.bindLong(4, latencias.percentil50[etapa]);
+                guardar.bindLong(5, latencias.percentil90[etapa]);
+                guardar.bindLong(6, latencias.percentil99[etapa]);
+                guardar.bindLong(7, latencias.maximo[etapa]);
+                guardar.executeInsert();
+            }
+
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            guardar.close();
+        }
+    }
+
+    /**
+     * @param db Objeto SQLiteDatabase con una conexión abierta a la base de datos "DB".
+     * @param id_sesion ID de la sesión.
+     *
+     * @return Las latencias guardadas de la sesión, o null si no tiene.
+     */
+    public static final RegistroLatencias seleccionarLatencias(SQLiteDatabase db, long id_sesion) {
+        Cursor c = db.rawQuery(SQL_SELECCIONAR_LATENCIAS, new String[] { String.valueOf(id_sesion) });
+        RegistroLatencias latencias = null;
+
+        try {
+            while (c.moveToNext()) {
+                int etapa = c.getInt(LatenciaSesion.TABLA_LATENCIA_ETAPA_INDICE);
+
+                if (etapa < 0 || etapa >= RegistroLatencias.LATENCIA_ETAPAS) {
+                    continue;
+                }
+
+                if (latencias == null) {
+                    latencias = new RegistroLatencias(c.getLong(LatenciaSesion.TABLA_LATENCIA_ID_SESION_INDICE));
+                }
+
+                latencias.establecer(
+                    etapa,
+                    c.getLong(LatenciaSesion.TABLA_LATENCIA_CAPTURAS_INDICE),
+                    c.getLong(LatenciaSesion.TABLA_LATENCIA_PERCENTIL_50_INDICE),
+                    c.getLong(LatenciaSesion.TABLA_LATENCIA_PERCENTIL_90_INDICE),
+                    c.getLong(LatenciaSesion.TABLA_LATENCIA_PERCENTIL_99_INDICE),
+                    c.getLong(LatenciaSesion.TABLA_LATENCIA_MAXIMO_INDICE)
+                );
+            }
+        } finally {
+            c.close();
+        }
+
+        return latencias;
+    }
+}
@@ -0,0 +1,37 @@
+package xyz.fabianpineda.desarrollomovil.transqa.db;
+
+/**
+ * Define la tabla/entidad MapaCalor en una base de datos relacional cualquiera.
+ *
+ * Cada entrada agrega las capturas "Geolocalizacion" de todas las sesiones que cayeron en una
+ * celda geográfica (ver CeldasGeograficas) durante un periodo de tiempo (ver RegistroMapaCalor),
+ * y es identificada por la celda y el periodo. Es actualizada cada vez que se escriben capturas,
+ * así que consultar un mapa de calor no requiere leer las capturas.
+ *
+ * Velocidades en metros por segundo; la suma de cuadrados permite calcular la desviación estándar.
+ *
+ * No se debe incluir información en este objeto que esté dirigida a una DB/(R)DBMS específica.
+ */
+final class MapaCalor {
+    static final String TABLA_MAPA_CALOR = "MapaCalor";
+
+    static final String TABLA_MAPA_CALOR_CELDA = "celda";
+    static final String TABLA_MAPA_CALOR_PERIODO = "periodo";
+    static final String TABLA_MAPA_CALOR_CAPTURAS = "capturas";
+    static final String TABLA_MAPA_CALOR_MUESTRAS_VELOCIDAD = "muestras_velocidad";
+    static final String TABLA_MAPA_CALOR_SUMA_VELOCIDAD = "suma_velocidad";
+    static final String TABLA_MAPA_CALOR_SUMA_CUADRADOS_VELOCIDAD = "suma_cuadrados_velocidad";
+    static final String TABLA_MAPA_CALOR_VELOCIDAD_MAXIMA = "velocidad_maxima";
+
+    /*
+     * Índices de cada campo. Por favor actualizar si se altera el orden de los campos o si se
+     * agregan o eliminan campos.
+     */
+    static final int TABLA_MAPA_CALOR_CELDA_INDICE = 0;
+    static final int TABLA_MAPA_CALOR_PERIODO_INDICE = 1;
+    static final int TABLA_MAPA_CALOR_CAPTURAS_INDICE = 2;
+    static final int TABLA_MAPA_CALOR_MUESTRAS_VELOCIDAD_INDICE = 3;
+    static final int TABLA_MAPA_CALOR_SUMA_VELOCIDAD_INDICE = 4;
+    static final int TABLA_MAPA_CALOR_SUMA_CUADRADOS_VELOCIDAD_INDICE = 5;
+    static final int TABLA_MAPA_CALOR_VELOCIDAD_MAXIMA_INDICE = 6;
+}
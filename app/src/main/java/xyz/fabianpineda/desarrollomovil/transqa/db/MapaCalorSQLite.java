@@ -0,0 +1,381 @@
+package xyz.fabianpineda.desarrollomovil.transqa.db;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+/**
+ * Información de tabla MapaCalor en SQLite: agregados de capturas por celda geográfica y periodo
+ * de tiempo, para mapas de calor de densidad y velocidad (ver RegistroMapaCalor).
+ *
+ * Los agregados son mantenidos por quien escribe capturas, en la misma transacción, como los
+ * resúmenes de sesión (ver ResumenSesionSQLite): BufferGeolocalizacionSQLite y
+ * GeolocalizacionSQLite.agregarCoordenadas usan un Acumulador, que agrupa capturas consecutivas de
+ * la misma celda y periodo y escribe una sola vez por grupo. La velocidad de cada captura sale del
+ * resumen de su sesión (ver RegistroResumen.agregar).
+ *
+ * La llave primaria es (celda, periodo): un mapa de calor para un rectángulo y un rango de fechas
+ * es una búsqueda en índice por cada fila de celdas que el rectángulo toca, y su costo depende del
+ * número de celdas y periodos, no del número de capturas.
+ *
+ * reconstruirMapaCalor() descarta todos los agregados y los vuelve a calcular a partir de las
+ * capturas; es usado al migrar a la versión 6 de "DB".
+ */
+public final class MapaCalorSQLite {
+    /**
+     * Recibe las celdas de un mapa de calor.
+     */
+    public interface LectorMapaCalor {
+        /**
+         * @param celda Agregado de la celda en todo el rango de fechas consultado. Su periodo es
+         *              el primero del rango con capturas en la celda.
+         */
+        void celdaLeida(RegistroMapaCalor celda);
+    }
+
+    /**
+     * Capturas leídas por página al reconstruir agregados. Ver: GeolocalizacionSQLite.seleccionarPagina
+     */
+    private static final int RECONSTRUCCION_CAPTURAS_POR_PAGINA = 1000;
+
+    /**
+     * Estructura de tabla MapaCalor. Esquema.
+     */
+    static final String SQL_CREAR_TABLA_MAPA_CALOR = String.format(
+        "CREATE TABLE %s (" +
+            "%s INTEGER NOT NULL," +
+            "%s INTEGER NOT NULL," +
+            "%s INTEGER NOT NULL DEFAULT 0," +
+            "%s INTEGER NOT NULL DEFAULT 0," +
+            "%s REAL NOT NULL DEFAULT 0," +
+            "%s REAL NOT NULL DEFAULT 0," +
+            "%s REAL NOT NULL DEFAULT 0," +
+
+            "PRIMARY KEY (%s, %s)" +
+        ")%s;",
+        MapaCalor.TABLA_MAPA_CALOR,
+        MapaCalor.TABLA_MAPA_CALOR_CELDA,
+        MapaCalor.TABLA_MAPA_CALOR_PERIODO,
+        MapaCalor.TABLA_MAPA_CALOR_CAPTURAS,
+        MapaCalor.TABLA_MAPA_CALOR_MUESTRAS_VELOCIDAD,
+        MapaCalor.TABLA_MAPA_CALOR_SUMA_VELOCIDAD,
+        MapaCalor.TABLA_MAPA_CALOR_SUMA_CUADRADOS_VELOCIDAD,
+        MapaCalor.TABLA_MAPA_CALOR_VELOCIDAD_MAXIMA,
+        MapaCalor.TABLA_MAPA_CALOR_CELDA, MapaCalor.TABLA_MAPA_CALOR_PERIODO,
+        GeolocalizacionSQLite.SQL_OPCIONES_TABLA_GEOLOCALIZACION
+    );
+
+    /**
+     * SQL de SQLite3 para eliminar tabla MapaCalor.
+     */
+    static final String SQL_DESTRUIR_TABLA_MAPA_CALOR = String.format(
+        "DROP TABLE IF EXISTS %s;",
+        MapaCalor.TABLA_MAPA_CALOR
+    );
+
+    /**
+     * Suma un agregado al de su celda y periodo.
+     *
+     * Parámetros: capturas, muestras_velocidad, suma_velocidad, suma_cuadrados_velocidad,
+     * velocidad_maxima, celda y periodo.
+     */
+    static final String SQL_ACTUALIZAR_MAPA_CALOR = String.format(
+        "UPDATE %s SET %s = %s + ?, %s = %s + ?, %s = %s + ?, %s = %s + ?, %s = MAX(%s, ?) WHERE %s = ? AND %s = ?;",
+        MapaCalor.TABLA_MAPA_CALOR,
+        MapaCalor.TABLA_MAPA_CALOR_CAPTURAS, MapaCalor.TABLA_MAPA_CALOR_CAPTURAS,
+        MapaCalor.TABLA_MAPA_CALOR_MUESTRAS_VELOCIDAD, MapaCalor.TABLA_MAPA_CALOR_MUESTRAS_VELOCIDAD,
+        MapaCalor.TABLA_MAPA_CALOR_SUMA_VELOCIDAD, MapaCalor.TABLA_MAPA_CALOR_SUMA_VELOCIDAD,
+        MapaCalor.TABLA_MAPA_CALOR_SUMA_CUADRADOS_VELOCIDAD, MapaCalor.TABLA_MAPA_CALOR_SUMA_CUADRADOS_VELOCIDAD,
+        MapaCalor.TABLA_MAPA_CALOR_VELOCIDAD_MAXIMA, MapaCalor.TABLA_MAPA_CALOR_VELOCIDAD_MAXIMA,
+        MapaCalor.TABLA_MAPA_CALOR_CELDA,
+        MapaCalor.TABLA_MAPA_CALOR_PERIODO
+    );
+
+    /**
+     * Inserta el agregado de una celda y periodo que aún no tiene uno. Mismos parámetros que
+     * SQL_ACTUALIZAR_MAPA_CALOR.
+     */
+    static final String SQL_INSERTAR_MAPA_CALOR = String.format(
+        "INSERT INTO %s (%s, %s, %s, %s, %s, %s, %s) VALUES (?, ?, ?, ?, ?, ?, ?);",
+        MapaCalor.TABLA_MAPA_CALOR,
+        MapaCalor.TABLA_MAPA_CALOR_CAPTURAS,
+        MapaCalor.TABLA_MAPA_CALOR_MUESTRAS_VELOCIDAD,
+        MapaCalor.TABLA_MAPA_CALOR_SUMA_VELOCIDAD,
+        MapaCalor.TABLA_MAPA_CALOR_SUMA_CUADRADOS_VELOCIDAD,
+        MapaCalor.TABLA_MAPA_CALOR_VELOCIDAD_MAXIMA,
+        MapaCalor.TABLA_MAPA_CALOR_CELDA,
+        MapaCalor.TABLA_MAPA_CALOR_PERIODO
+    );
+
+    /**
+     * Agregados de un rango de celdas de una fila en un rango de periodos, combinados por celda.
+     * Las columnas están en el orden MapaCalor.TABLA_MAPA_CALOR_*_INDICE.
+     */
+    static final String SQL_SELECCIONAR_MAPA_CALOR = String.format(
+        "SELECT %s, MIN(%s), SUM(%s), SUM(%s), SUM(%s), SUM(%s), MAX(%s) FROM %s WHERE %s BETWEEN ? AND ? AND %s BETWEEN ? AND ? GROUP BY %s;",
+        MapaCalor.TABLA_MAPA_CALOR_CELDA,
+        MapaCalor.TABLA_MAPA_CALOR_PERIODO,
+        MapaCalor.TABLA_MAPA_CALOR_CAPTURAS,
+        MapaCalor.TABLA_MAPA_CALOR_MUESTRAS_VELOCIDAD,
+        MapaCalor.TABLA_MAPA_CALOR_SUMA_VELOCIDAD,
+        MapaCalor.TABLA_MAPA_CALOR_SUMA_CUADRADOS_VELOCIDAD,
+        MapaCalor.TABLA_MAPA_CALOR_VELOCIDAD_MAXIMA,
+        MapaCalor.TABLA_MAPA_CALOR,
+        MapaCalor.TABLA_MAPA_CALOR_CELDA,
+        MapaCalor.TABLA_MAPA_CALOR_PERIODO,
+        MapaCalor.TABLA_MAPA_CALOR_CELDA
+    );
+
+    /**
+     * IDs de todas las sesiones, para reconstruir los agregados.
+     */
+    private static final String SQL_SELECCIONAR_ID_SESIONES = String.format(
+        "SELECT %s FROM %s ORDER BY %s;",
+        Sesion.TABLA_SESION_ID,
+        Sesion.TABLA_SESION,
+        Sesion.TABLA_SESION_ID
+    );
+
+    /**
+     * Estructura de tabla MapaCalor en la versión 6 de "DB". Sólo usada por migrarVersion6.
+     */
+    private static final String SQL_CREAR_TABLA_MAPA_CALOR_V6 =
+        "CREATE TABLE MapaCalor (" +
+            "celda INTEGER NOT NULL," +
+            "periodo INTEGER NOT NULL," +
+            "capturas INTEGER NOT NULL DEFAULT 0," +
+            "muestras_velocidad INTEGER NOT NULL DEFAULT 0," +
+            "suma_velocidad REAL NOT NULL DEFAULT 0," +
+            "suma_cuadrados_velocidad REAL NOT NULL DEFAULT 0," +
+            "velocidad_maxima REAL NOT NULL DEFAULT 0," +
+            "PRIMARY KEY (celda, periodo)" +
+        ")" + GeolocalizacionSQLite.SQL_OPCIONES_TABLA_GEOLOCALIZACION + ";";
+
+    private MapaCalorSQLite() {
+    }
+
+    /**
+     * Agrupa capturas consecutivas de la misma celda y periodo y suma cada grupo a la tabla
+     * MapaCalor usando statements compilados una sola vez.
+     *
+     * agregar() y guardar() deben ser ejecutados dentro de la transacción que inserta las
+     * capturas; si la transacción falla, descartar() olvida el grupo pendiente. cerrar() libera
+     * los statements.
+     *
+     * Esta clase no es segura para ser usada desde varios hilos al mismo tiempo.
+     */
+    static final class Acumulador {
+        private final SQLiteStatement actualizacion;
+        private final SQLiteStatement insercion;
+
+        private RegistroMapaCalor pendiente;
+
+        Acumulador(SQLiteDatabase db) {
+            actualizacion = db.compileStatement(SQL_ACTUALIZAR_MAPA_CALOR);
+            insercion = db.compileStatement(SQL_INSERTAR_MAPA_CALOR);
+        }
+
+        /**
+         * Agrega una captura. Si es de una celda o periodo distinto al de la captura anterior, el
+         * grupo anterior es guardado.
+         *
+         * @param latitud Latitud codificada.
+         * @param longitud Longitud codificada.
+         * @param fecha Fecha de captura en milisegundos desde epoch (UTC).
+         * @param velocidad Velocidad desde la captura anterior de la sesión, o -1. Ver RegistroResumen.agregar
+         */
+        void agregar(int latitud, int longitud, long fecha, double velocidad) {
+            long celda = CeldasGeograficas.celda(latitud, longitud);
+            long periodo = RegistroMapaCalor.periodo(fecha);
+
+            if (pendiente == null || !pendiente.es(celda, periodo)) {
+                guardar();
+                pendiente = new RegistroMapaCalor(celda, periodo);
+            }
+
+            pendiente.agregar(velocidad);
+        }
+
+        /**
+         * Guarda el grupo pendiente, si existe.
+         */
+        void guardar() {
+            if (pendiente == null) {
+                return;
+            }
+
+            try {
+                vincular(actualizacion, pendiente);
+
+                if (actualizacion.executeUpdateDelete() == 0) {
+                    vincular(insercion, pendiente);
+                    insercion.executeInsert();
+                }
+            } finally {
+                actualizacion.clearBindings();
+                insercion.clearBindings();
+            }
+
+            pendiente = null;
+        }
+
+        /**
+         * Olvida el grupo pendiente sin guardarlo.
+         */
+        void descartar() {
+            pendiente = null;
+        }
+
+        void cerrar() {
+            actualizacion.close();
+            insercion.close();
+        }
+    }
+
+    /**
+     * Crea la tabla MapaCalor de la versión 6 de "DB" y calcula los agregados de las capturas
+     * existentes. Debe ser ejecutado dentro de la transacción de SQLiteOpenHelper.onUpgrade.
+     *
+     * @param db La base de datos SQLite3 en versión 5.
+     */
+    static void migrarVersion6(SQLiteDatabase db) {
+        db.execSQL(SQL_CREAR_TABLA_MAPA_CALOR_V6);
+        reconstruirMapaCalor(db);
+    }
+
+    /**
+     * Selecciona el mapa de calor de un rectángulo y un rango de fechas: un agregado por cada
+     * celda con capturas, que combina todos los periodos del rango.
+     *
+     * Incluye las celdas que tocan el rectángulo, completas, y los periodos que tocan el rango de
+     * fechas, completos. El rectángulo no puede cruzar el antimeridiano.
+     *
+     * @param db Objeto SQLiteDatabase con una conexión abierta a la base de datos "DB".
+     * @param latitudMinima Borde sur, en grados.
+     * @param longitudMinima Borde oeste, en grados.
+     * @param latitudMaxima Borde norte, en grados.
+     * @param longitudMaxima Borde este, en grados.
+     * @param desde Fecha inicial, inclusiva, en milisegundos desde epoch (UTC).
+     * @param hasta Fecha final, inclusiva, en milisegundos desde epoch (UTC).
+     * @param lector Recibe cada celda, en orden de número de celda.
+     *
+     * @return Número de celdas leídas.
+     */
+    public static int seleccionarMapaCalor(SQLiteDatabase db, double latitudMinima, double longitudMinima, double latitudMaxima, double longitudMaxima, long desde, long hasta, LectorMapaCalor lector) {
+        if (latitudMinima > latitudMaxima || longitudMinima > longitudMaxima || desde > hasta) {
+            return 0;
+        }
+
+        long filaMinima = CeldasGeograficas.fila(CodificacionCoordenadas.codificar(latitudMinima));
+        long filaMaxima = CeldasGeograficas.fila(CodificacionCoordenadas.codificar(latitudMaxima));
+        long columnaMinima = CeldasGeograficas.columna(CodificacionCoordenadas.codificar(longitudMinima));
+        long columnaMaxima = CeldasGeograficas.columna(CodificacionCoordenadas.codificar(longitudMaxima));
+
+        String[] argumentos = {
+            null, null,
+            String.valueOf(RegistroMapaCalor.periodo(desde)), String.valueOf(RegistroMapaCalor.periodo(hasta))
+        };
+        int leidas = 0;
+
+        for (long fila = filaMinima; fila <= filaMaxima; fila++) {
+            argumentos[0] = String.valueOf(CeldasGeograficas.celda(fila, columnaMinima));
+            argumentos[1] = String.valueOf(CeldasGeograficas.celda(fila, columnaMaxima));
+
+            Cursor c = db.rawQuery(SQL_SELECCIONAR_MAPA_CALOR, argumentos);
+
+            try {
+                while (c.moveToNext()) {
+                    RegistroMapaCalor celda = new RegistroMapaCalor(
+                        c.getLong(MapaCalor.TABLA_MAPA_CALOR_CELDA_INDICE),
+                        c.getLong(MapaCalor.TABLA_MAPA_CALOR_PERIODO_INDICE)
+                    );
+
+                    celda.capturas = c.getLong(MapaCalor.TABLA_MAPA_CALOR_CAPTURAS_INDICE);
+                    celda.muestrasVelocidad = c.getLong(MapaCalor.TABLA_MAPA_CALOR_MUESTRAS_VELOCIDAD_INDICE);
+                    celda.sumaVelocidad = c.getDouble(MapaCalor.TABLA_MAPA_CALOR_SUMA_VELOCIDAD_INDICE);
+                    celda.sumaCuadradosVelocidad = c.getDouble(MapaCalor.TABLA_MAPA_CALOR_SUMA_CUADRADOS_VELOCIDAD_INDICE);
+                    celda.velocidadMaxima = c.getDouble(MapaCalor.TABLA_MAPA_CALOR_VELOCIDAD_MAXIMA_INDICE);
+
+                    lector.celdaLeida(celda);
+                    leidas++;
+                }
+            } finally {
+                c.close();
+            }
+        }
+
+        return leidas;
+    }
+
+    /**
+     * Descarta todos los agregados y los vuelve a calcular a partir de las capturas de cada
+     * sesión, en una sola transacción. Su costo es proporcional al total de capturas.
+     *
+     * @param db Objeto SQLiteDatabase con una conexión abierta a la base de datos "DB", permisos de lectura y escritura
+     *
+     * @return Número de capturas agregadas.
+     */
+    public static final long reconstruirMapaCalor(SQLiteDatabase db) {
+        Acumulador acumulador = new Acumulador(db);
+        long agregadas = 0;
+
+        db.beginTransaction();
+        try {
+            db.execSQL(String.format("DELETE FROM %s;", MapaCalor.TABLA_MAPA_CALOR));
+
+            Cursor sesiones = db.rawQuery(SQL_SELECCIONAR_ID_SESIONES, null);
+
+            try {
+                while (sesiones.moveToNext()) {
+                    long idSesion = sesiones.getLong(0);
+                    RegistroResumen resumen = new RegistroResumen(idSesion);
+                    long ultimaSecuencia = 0;
+                    int leidas;
+
+                    do {
+                        Cursor pagina = GeolocalizacionSQLite.seleccionarPagina(db, idSesion, ultimaSecuencia, RECONSTRUCCION_CAPTURAS_POR_PAGINA);
+                        leidas = 0;
+
+                        try {
+                            while (pagina.moveToNext()) {
+                                int latitud = pagina.getInt(GeolocalizacionSQLite.CONSULTA_LATITUD_INDICE);
+                                int longitud = pagina.getInt(GeolocalizacionSQLite.CONSULTA_LONGITUD_INDICE);
+                                long fecha = pagina.getLong(GeolocalizacionSQLite.CONSULTA_FECHA_INDICE);
+
+                                acumulador.agregar(latitud, longitud, fecha, resumen.agregar(latitud, longitud, fecha));
+                                ultimaSecuencia = pagina.getLong(GeolocalizacionSQLite.CONSULTA_SECUENCIA_INDICE);
+                                leidas++;
+                            }
+                        } finally {
+                            pagina.close();
+                        }
+
+                        agregadas += leidas;
+                    } while (leidas == RECONSTRUCCION_CAPTURAS_POR_PAGINA);
+
+                    acumulador.guardar();
+                }
+            } finally {
+                sesiones.close();
+            }
+
+            db.setTransactionSuccessful();
+        } finally {
+            acumulador.descartar();
+            db.endTransaction();
+            acumulador.cerrar();
+        }
+
+        return agregadas;
+    }
+
+    private static void vincular(SQLiteStatement sentencia, RegistroMapaCalor registro) {
+        sentencia.bindLong(1, registro.capturas);
+        sentencia.bindLong(2, registro.muestrasVelocidad);
+        sentencia.bindDouble(3, registro.sumaVelocidad);
+        sentencia.bindDouble(4, registro.sumaCuadradosVelocidad);
+        sentencia.bindDouble(5, registro.velocidadMaxima);
+        sentencia.bindLong(6, registro.celda);
+        sentencia.bindLong(7, registro.periodo);
+    }
+}
@@ -0,0 +1,105 @@
+package xyz.fabianpineda.desarrollomovil.transqa.db;
+
+/**
+ * Latencias de las capturas de una sesión, por etapa del camino de escritura, como son guardadas
+ * al terminar la sesión (ver AlmacenSesiones.terminarSesion(long, RegistroLatencias)).
+ *
+ * Cada captura es medida desde su fecha de captura en el receptor GNSS hasta que es escrita en el
+ * almacén, en cinco etapas (constantes LATENCIA_ETAPA_*):
+ *
+ *      * ENTREGA: desde la captura hasta que el servicio la recibe en onLocationChanged.
+ *      * COLA: desde la recepción hasta que el hilo de escritura la toma de la cola.
+ *      * FILTRADO: desde que es tomada de la cola hasta que el simplificador de trayectoria la
+ *        entrega al almacén. Sólo capturas conservadas.
+ *      * ESCRITURA: desde que es entregada al almacén hasta que la transacción que la incluye
+ *        termina. Sólo capturas conservadas.
+ *      * TOTAL: desde la captura hasta que la transacción que la incluye termina. Es lo que
+ *        demuestra que toda captura conservada fue escrita en a lo sumo maximo(LATENCIA_ETAPA_TOTAL).
+ *
+ * Por cada etapa se guarda el número de capturas medidas, los percentiles 50, 90 y 99 y el máximo,
+ * en microsegundos. Los percentiles son aproximados hacia arriba (límite superior de la cubeta
+ * de un histograma que los contiene); el máximo es exacto.
+ *
+ * No se debe incluir en este objeto código específico de Android, para poder probarlo localmente.
+ */
+public final class RegistroLatencias {
+    public static final int LATENCIA_ETAPA_ENTREGA = 0;
+    public static final int LATENCIA_ETAPA_COLA = 1;
+    public static final int LATENCIA_ETAPA_FILTRADO = 2;
+    public static final int LATENCIA_ETAPA_ESCRITURA = 3;
+    public static final int LATENCIA_ETAPA_TOTAL = 4;
+
+    /** Número de etapas; las constantes LATENCIA_ETAPA_* van de 0 a LATENCIA_ETAPAS - 1. */
+    public static final int LATENCIA_ETAPAS = 5;
+
+    final long idSesion;
+    final long[] capturas = new long[LATENCIA_ETAPAS];
+    final long[] percentil50 = new long[LATENCIA_ETAPAS];
+    final long[] percentil90 = new long[LATENCIA_ETAPAS];
+    final long[] percentil99 = new long[LATENCIA_ETAPAS];
+    final long[] maximo = new long[LATENCIA_ETAPAS];
+
+    /**
+     * Crea las latencias de una sesión sin capturas medidas.
+     *
+     * @param idSesion ID de la sesión.
+     */
+    public RegistroLatencias(long idSesion) {
+        this.idSesion = idSesion;
+    }
+
+    /**
+     * Establece las latencias de una etapa.
+     *
+     * @param etapa Alguna de las constantes LATENCIA_ETAPA_*.
+     * @param capturas Número de capturas medidas.
+     * @param percentil50 Microsegundos.
+     * @param percentil90 Microsegundos.
+     * @param percentil99 Microsegundos.
+     * @param maximo Microsegundos.
+     */
+    public void establecer(int etapa, long capturas, long percentil50, long percentil90, long percentil99, long maximo) {
+        this.capturas[etapa] = capturas;
+        this.percentil50[etapa] = percentil50;
+        this.percentil90[etapa] = percentil90;
+        this.percentil99[etapa] = percentil99;
+        this.maximo[etapa] = maximo;
+    }
+
+    /**
+     * @return Una copia de estas latencias.
+     */
+    public RegistroLatencias copia() {
+        RegistroLatencias copia = new RegistroLatencias(idSesion);
+
+        for (int etapa = 0; etapa < LATENCIA_ETAPAS; etapa++) {
+            copia.establecer(etapa, capturas[etapa], percentil50[etapa], percentil90[etapa], percentil99[etapa], maximo[etapa]);
+        }
+
+        return copia;
+    }
+
+    public long idSesion() {
+        return idSesion;
+    }
+
+    public long capturas(int etapa) {
+        return capturas[etapa];
+    }
+
+    public long percentil50(int etapa) {
+        return percentil50[etapa];
+    }
+
+    public long percentil90(int etapa) {
+        return percentil90[etapa];
+    }
+
+    public long percentil99(int etapa) {
+        return percentil99[etapa];
+    }
+
+    public long maximo(int etapa) {
+        return maximo[etapa];
+    }
+}
@@ -0,0 +1,148 @@
+package xyz.fabianpineda.desarrollomovil.transqa.db;
+
+/**
+ * Agregado de capturas de una celda geográfica (ver CeldasGeograficas) en un periodo de tiempo:
+ * número de capturas y estadísticas de velocidad. Es la unidad de los mapas de calor de densidad
+ * y velocidad (ver MapaCalorSQLite).
+ *
+ * Los periodos son intervalos de PERIODO_DURACION milisegundos desde epoch (UTC). La velocidad de
+ * una captura es la velocidad desde la captura anterior de la misma sesión (ver
+ * RegistroResumen.agregar), y es atribuida a la celda de la captura; capturas sin velocidad (la
+ * primera de una sesión, o muy cercanas en el tiempo a la anterior) sólo cuentan como capturas.
+ *
+ * Los agregados son sumas, así que varios agregados de una misma celda pueden combinarse (ver
+ * combinar()) sin volver a leer las capturas: un mapa de calor para un rango de periodos combina
+ * los agregados de cada periodo.
+ *
+ * Esta clase no es segura para ser usada desde varios hilos al mismo tiempo.
+ *
+ * No se debe incluir en este objeto código específico de Android, para poder probarlo localmente.
+ */
+public final class RegistroMapaCalor {
+    /**
+     * Duración de cada periodo en milisegundos: 15 minutos.
+     */
+    public static final long PERIODO_DURACION = 15 * 60 * 1000L;
+
+    final long celda;
+    final long periodo;
+    long capturas;
+    long muestrasVelocidad;
+    double sumaVelocidad;
+    double sumaCuadradosVelocidad;
+    double velocidadMaxima;
+
+    /**
+     * Crea un agregado vacío.
+     *
+     * @param celda Número de celda. Ver CeldasGeograficas.
+     * @param periodo Número de periodo. Ver periodo(long).
+     */
+    public RegistroMapaCalor(long celda, long periodo) {
+        this.celda = celda;
+        this.periodo = periodo;
+    }
+
+    /**
+     * @param fecha Milisegundos desde epoch (UTC). No negativo.
+     *
+     * @return Número del periodo que contiene la fecha.
+     */
+    public static long periodo(long fecha) {
+        return fecha / PERIODO_DURACION;
+    }
+
+    /**
+     * @return true si este agregado es de la celda y periodo especificados.
+     */
+    public boolean es(long celda, long periodo) {
+        return this.celda == celda && this.periodo == periodo;
+    }
+
+    /**
+     * Agrega una captura.
+     *
+     * @param velocidad Velocidad desde la captura anterior en metros por segundo, o un valor
+     *                  negativo si no tiene.
+     */
+    public void agregar(double velocidad) {
+        capturas++;
+
+        if (velocidad >= 0) {
+            muestrasVelocidad++;
+            sumaVelocidad += velocidad;
+            sumaCuadradosVelocidad += velocidad * velocidad;
+            velocidadMaxima = Math.max(velocidadMaxima, velocidad);
+        }
+    }
+
+    /**
+     * Suma a este agregado otro agregado de la misma celda.
+     */
+    public void combinar(RegistroMapaCalor otro) {
+        capturas += otro.capturas;
+        muestrasVelocidad += otro.muestrasVelocidad;
+        sumaVelocidad += otro.sumaVelocidad;
+        sumaCuadradosVelocidad += otro.sumaCuadradosVelocidad;
+        velocidadMaxima = Math.max(velocidadMaxima, otro.velocidadMaxima);
+    }
+
+    public long celda() {
+        return celda;
+    }
+
+    public long periodo() {
+        return periodo;
+    }
+
+    /**
+     * @return Latitud del centro de la celda, en grados.
+     */
+    public double latitud() {
+        return CeldasGeograficas.latitudCentro(celda);
+    }
+
+    /**
+     * @return Longitud del centro de la celda, en grados.
+     */
+    public double longitud() {
+        return CeldasGeograficas.longitudCentro(celda);
+    }
+
+    public long capturas() {
+        return capturas;
+    }
+
+    /**
+     * @return Número de capturas con velocidad.
+     */
+    public long muestrasVelocidad() {
+        return muestrasVelocidad;
+    }
+
+    /**
+     * @return Velocidad promedio en metros por segundo. 0 si no hay muestras de velocidad.
+     */
+    public double velocidadPromedio() {
+        return muestrasVelocidad > 0 ? sumaVelocidad / muestrasVelocidad : 0;
+    }
+
+    /**
+     * @return Desviación estándar de la velocidad en metros por segundo. 0 si no hay muestras de velocidad.
+     */
+    public double desviacionVelocidad() {
+        if (muestrasVelocidad == 0) {
+            return 0;
+        }
+
+        double promedio = velocidadPromedio();
+        return Math.sqrt(Math.max(0, sumaCuadradosVelocidad / muestrasVelocidad - promedio * promedio));
+    }
+
+    /**
+     * @return Velocidad máxima en metros por segundo.
+     */
+    public double velocidadMaxima() {
+        return velocidadMaxima;
+    }
+}
@@ -0,0 +1,220 @@
+package xyz.fabianpineda.desarrollomovil.transqa.db;
+
+/**
+ * Resumen de una sesión, como es regresado por AlmacenSesiones.resumenSesion: número de capturas,
+ * fechas de la primera y la última, distancia recorrida, velocidad máxima y rectángulo que contiene
+ * todas las capturas.
+ *
+ * Es mantenido incrementalmente: agregar() actualiza el resumen con una captura en tiempo
+ * constante, así que los almacenes lo actualizan al escribir cada captura y consultarlo no requiere
+ * leer las capturas de la sesión.
+ *
+ * La distancia es la suma de distancias (fórmula de haversine) entre capturas consecutivas, en
+ * orden de secuencia. La velocidad máxima sólo considera pares de capturas separados por al menos
+ * VELOCIDAD_INTERVALO_MINIMO milisegundos: entre capturas muy cercanas en el tiempo, el error del
+ * GPS produce velocidades irreales.
+ *
+ * Las coordenadas son almacenadas codificadas (ver CodificacionCoordenadas), como en la tabla
+ * Geolocalizacion. Las fechas son milisegundos desde epoch (UTC).
+ *
+ * Esta clase no es segura para ser usada desde varios hilos al mismo tiempo. Los almacenes
+ * regresan copias.
+ *
+ * No se debe incluir en este objeto código específico de Android, para poder probarlo localmente.
+ */
+public final class RegistroResumen {
+    public static final long VELOCIDAD_INTERVALO_MINIMO = 1000L;
+
+    // Radio medio de la Tierra, en metros.
+    private static final double RADIO_TIERRA = 6371008.8;
+
+    final long idSesion;
+    long capturas;
+    long fechaPrimera;
+    long fechaUltima;
+    double distancia;
+    double velocidadMaxima;
+    int latitudMinima;
+    int latitudMaxima;
+    int longitudMinima;
+    int longitudMaxima;
+    int latitudUltima;
+    int longitudUltima;
+    boolean terminada;
+
+    /**
+     * Crea el resumen de una sesión sin capturas.
+     *
+     * @param idSesion ID de la sesión.
+     */
+    public RegistroResumen(long idSesion) {
+        this.idSesion = idSesion;
+    }
+
+    /**
+     * @return Una copia de este resumen.
+     */
+    public RegistroResumen copia() {
+        RegistroResumen copia = new RegistroResumen(idSesion);
+
+        copia.capturas = capturas;
+        copia.fechaPrimera = fechaPrimera;
+        copia.fechaUltima = fechaUltima;
+        copia.distancia = distancia;
+        copia.velocidadMaxima = velocidadMaxima;
+        copia.latitudMinima = latitudMinima;
+        copia.latitudMaxima = latitudMaxima;
+        copia.longitudMinima = longitudMinima;
+        copia.longitudMaxima = longitudMaxima;
+        copia.latitudUltima = latitudUltima;
+        copia.longitudUltima = longitudUltima;
+        copia.terminada = terminada;
+
+        return copia;
+    }
+
+    /**
+     * Actualiza el resumen con la siguiente captura de la sesión, en orden de secuencia.
+     *
+     * @param latitud Latitud codificada. Ver CodificacionCoordenadas.
+     * @param longitud Longitud codificada. Ver CodificacionCoordenadas.
+     * @param fecha Fecha de captura en milisegundos desde epoch (UTC).
+     *
+     * @return Velocidad desde la captura anterior, en metros por segundo. -1 si es la primera
+     * captura o si el intervalo es menor a VELOCIDAD_INTERVALO_MINIMO.
+     */
+    public double agregar(int latitud, int longitud, long fecha) {
+        double velocidad = -1;
+
+        if (capturas == 0) {
+            fechaPrimera = fecha;
+            latitudMinima = latitudMaxima = latitud;
+            longitudMinima = longitudMaxima = longitud;
+        } else {
+            double tramo = distancia(
+                CodificacionCoordenadas.decodificar(latitudUltima), CodificacionCoordenadas.decodificar(longitudUltima),
+                CodificacionCoordenadas.decodificar(latitud), CodificacionCoordenadas.decodificar(longitud)
+            );
+            long intervalo = fecha - fechaUltima;
+
+            distancia += tramo;
+
+            if (intervalo >= VELOCIDAD_INTERVALO_MINIMO) {
+                velocidad = tramo * 1000.0 / intervalo;
+                velocidadMaxima = Math.max(velocidadMaxima, velocidad);
+            }
+
+            latitudMinima = Math.min(latitudMinima, latitud);
+            latitudMaxima = Math.max(latitudMaxima, latitud);
+            longitudMinima = Math.min(longitudMinima, longitud);
+            longitudMaxima = Math.max(longitudMaxima, longitud);
+        }
+
+        capturas++;
+        fechaUltima = fecha;
+        latitudUltima = latitud;
+        longitudUltima = longitud;
+
+        return velocidad;
+    }
+
+    /**
+     * Marca la sesión como terminada. Las capturas agregadas después (por ejemplo, escritas con
+     * retraso) siguen actualizando el resumen.
+     */
+    public void terminar() {
+        terminada = true;
+    }
+
+    public long idSesion() {
+        return idSesion;
+    }
+
+    /**
+     * @return true si la sesión fue terminada.
+     */
+    public boolean terminada() {
+        return terminada;
+    }
+
+    public long capturas() {
+        return capturas;
+    }
+
+    /**
+     * @return Fecha de la primera captura. 0 si no hay capturas.
+     */
+    public long fechaPrimera() {
+        return fechaPrimera;
+    }
+
+    /**
+     * @return Fecha de la última captura. 0 si no hay capturas.
+     */
+    public long fechaUltima() {
+        return fechaUltima;
+    }
+
+    /**
+     * @return Milisegundos entre la primera y la última captura.
+     */
+    public long duracion() {
+        return fechaUltima - fechaPrimera;
+    }
+
+    /**
+     * @return Distancia recorrida en metros.
+     */
+    public double distancia() {
+        return distancia;
+    }
+
+    /**
+     * @return Velocidad máxima entre dos capturas consecutivas, en metros por segundo.
+     */
+    public double velocidadMaxima() {
+        return velocidadMaxima;
+    }
+
+    /**
+     * @return Velocidad promedio en metros por segundo: distancia sobre duración. 0 si la duración es 0.
+     */
+    public double velocidadPromedio() {
+        long duracion = duracion();
+        return duracion > 0 ? distancia * 1000.0 / duracion : 0;
+    }
+
+    /*
+     * Rectángulo que contiene todas las capturas, en grados. 0 si no hay capturas.
+     */
+
+    public double latitudMinima() {
+        return CodificacionCoordenadas.decodificar(latitudMinima);
+    }
+
+    public double latitudMaxima() {
+        return CodificacionCoordenadas.decodificar(latitudMaxima);
+    }
+
+    public double longitudMinima() {
+        return CodificacionCoordenadas.decodificar(longitudMinima);
+    }
+
+    public double longitudMaxima() {
+        return CodificacionCoordenadas.decodificar(longitudMaxima);
+    }
+
+    /**
+     * @return Distancia en metros entre dos coordenadas sobre una esfera (fórmula de haversine).
+     */
+    public static double distancia(double latitud1, double longitud1, double latitud2, double longitud2) {
+        double dLatitud = Math.toRadians(latitud2 - latitud1);
+        double dLongitud = Math.toRadians(longitud2 - longitud1);
+        double senoLatitud = Math.sin(dLatitud / 2);
+        double senoLongitud = Math.sin(dLongitud / 2);
+
+        double a = senoLatitud * senoLatitud + Math.cos(Math.toRadians(latitud1)) * Math.cos(Math.toRadians(latitud2)) * senoLongitud * senoLongitud;
+
+        return 2 * RADIO_TIERRA * Math.asin(Math.min(1.0, Math.sqrt(a)));
+    }
+}
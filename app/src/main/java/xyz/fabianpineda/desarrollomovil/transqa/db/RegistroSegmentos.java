@@ -0,0 +1,614 @@
+package xyz.fabianpineda.desarrollomovil.transqa.db;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * Registro de capturas de sólo-agregar ("append-only") en archivos de segmento mapeados en memoria.
+ *
+ * Cada captura es un registro binario de tamaño fijo (REGISTRO_TAMANO bytes):
+ *
+ *      * 0: marca (REGISTRO_MARCA). 0 significa espacio aún no escrito.
+ *      * 4: CRC32 de los bytes 8 a 31.
+ *      * 8: ID de sesión (long).
+ *      * 16: fecha de captura, en milisegundos desde epoch (long).
+ *      * 24: latitud y longitud codificadas (int, int). Ver CodificacionCoordenadas.
+ *
+ * Los registros son escritos en orden en segmentos de tamaño fijo ("segmento-N.log", N creciente)
+ * mapeados en memoria, así que agregar un registro es copiar 32 bytes: no hay transacciones,
+ * índices ni páginas que reescribir. Un segmento lleno es sincronizado al disco antes de crear el
+ * siguiente.
+ *
+ * Sincronización al disco (fsync): lo escrito en un segmento mapeado sobrevive a la muerte del
+ * proceso, pero no necesariamente a un corte de energía hasta ser sincronizado. Los registros son
+ * sincronizados cada "capturasPorSincronizacion" registros, o cuando el registro no sincronizado
+ * más antiguo alcanza "intervaloSincronizacion" milisegundos (ver tiempoParaSincronizar()), o al
+ * llamar sincronizar().
+ *
+ * Recuperación: al abrir el registro, cada segmento es recorrido validando marca y CRC de cada
+ * registro. Al encontrar el primer registro inválido (escritura interrumpida, o páginas no
+ * sincronizadas escritas al disco fuera de orden) el registro es truncado en ese punto: el resto
+ * del segmento es borrado (escrito con ceros) y los segmentos siguientes son eliminados.
+ *
+ * El número de secuencia de un registro es su posición dentro de su sesión, empezando en 1.
+ *
+ * agregar(), sincronizar() y cerrar() deben ser llamados por un solo hilo (escritor). Las demás
+ * operaciones pueden ser llamadas desde cualquier hilo y sólo ven registros ya agregados.
+ *
+ * No se debe incluir en este objeto código específico de Android, para poder probarlo localmente.
+ */
+public final class RegistroSegmentos {
+    public static final int REGISTRO_TAMANO = 32;
+    public static final int REGISTRO_MARCA = 0x54514331;    // "TQC1"
+
+    // Valores por defecto. Segmentos de 1 MiB.
+    public static final int SEGMENTO_CAPTURAS_DEFAULT = 32768;
+    public static final int SINCRONIZACION_CAPTURAS_DEFAULT = 32;
+    public static final long SINCRONIZACION_INTERVALO_DEFAULT = 60000L;
+
+    private static final String SEGMENTO_PREFIJO = "segmento-";
+    private static final String SEGMENTO_SUFIJO = ".log";
+
+    // Registros leídos por cada lectura de un segmento, en leer().
+    private static final int LECTURA_REGISTROS = 256;
+
+    /**
+     * Recibe los registros leídos por leer().
+     */
+    public interface LectorRegistros {
+        void registroLeido(long secuencia, int latitud, int longitud, long fecha);
+    }
+
+    /**
+     * Un archivo de segmento. "cantidad" y "sesiones" son protegidos por el bloqueo de "segmentos".
+     */
+    private static final class Segmento {
+        final long numero;
+        final File archivo;
+        final Set<Long> sesiones = new HashSet<>();
+        int cantidad;
+
+        Segmento(long numero, File archivo) {
+            this.numero = numero;
+            this.archivo = archivo;
+        }
+    }
+
+    private final File directorio;
+    private final int capturasPorSegmento;
+    private final int capturasPorSincronizacion;
+    private final long intervaloSincronizacion;
+
+    // Segmentos existentes, en orden. El último es el segmento activo. Protegido por su bloqueo.
+    private final List<Segmento> segmentos = new ArrayList<>();
+
+    // Número de registros por sesión. Protegido por el bloqueo de "segmentos".
+    private final Map<Long, long[]> cantidades = new HashMap<>();
+
+    // Segmento activo y su archivo mapeado. Sólo usados por el hilo escritor.
+    private Segmento activo;
+    private RandomAccessFile archivoActivo;
+    private MappedByteBuffer mapa;
+    private long sesionAnterior;
+
+    // Sólo usados por el hilo escritor para calcular el CRC de cada registro.
+    private final CRC32 crc = new CRC32();
+    private final byte[] contenido = new byte[REGISTRO_TAMANO - 8];
+    private final ByteBuffer bufferContenido = ByteBuffer.wrap(contenido);
+
+    // Registros agregados aún no sincronizados, y System.nanoTime() del más antiguo.
+    private int pendientes;
+    private long tiempoPrimerPendiente;
+
+    private final long registrosDescartados;
+
+    /**
+     * Abre (o crea) un registro con valores por defecto.
+     *
+     * @param directorio Directorio de los segmentos. Es creado si no existe.
+     */
+    public RegistroSegmentos(File directorio) throws IOException {
+        this(directorio, SEGMENTO_CAPTURAS_DEFAULT, SINCRONIZACION_CAPTURAS_DEFAULT, SINCRONIZACION_INTERVALO_DEFAULT);
+    }
+
+    /**
+     * Abre (o crea) un registro, recuperando los segmentos existentes.
+     *
+     * @param directorio Directorio de los segmentos. Es creado si no existe.
+     * @param capturasPorSegmento Registros por segmento. Debe ser mayor que 0, y el mismo para un directorio existente.
+     * @param capturasPorSincronizacion Registros agregados antes de sincronizar al disco. 1 sincroniza cada registro. Debe ser mayor que 0.
+     * @param intervaloSincronizacion Edad máxima en milisegundos de un registro no sincronizado.
+     */
+    public RegistroSegmentos(File directorio, int capturasPorSegmento, int capturasPorSincronizacion, long intervaloSincronizacion) throws IOException {
+        if (capturasPorSegmento < 1) {
+            throw new IllegalArgumentException("capturasPorSegmento < 1");
+        }
+
+        if (capturasPorSincronizacion < 1) {
+            throw new IllegalArgumentException("capturasPorSincronizacion < 1");
+        }
+
+        if (!directorio.isDirectory() && !directorio.mkdirs()) {
+            throw new IOException("No se pudo crear el directorio " + directorio);
+        }
+
+        this.directorio = directorio;
+        this.capturasPorSegmento = capturasPorSegmento;
+        this.capturasPorSincronizacion = capturasPorSincronizacion;
+        this.intervaloSincronizacion = intervaloSincronizacion;
+
+        registrosDescartados = recuperar();
+
+        Segmento ultimo = segmentos.isEmpty() ? null : segmentos.get(segmentos.size() - 1);
+
+        if (ultimo != null && ultimo.cantidad < capturasPorSegmento) {
+            activar(ultimo);
+        } else {
+            activar(nuevoSegmento(ultimo != null ? ultimo.numero + 1 : 1));
+        }
+    }
+
+    /**
+     * @return Registros descartados al recuperar los segmentos existentes (ver recuperación).
+     */
+    public long registrosDescartados() {
+        return registrosDescartados;
+    }
+
+    /**
+     * @return Número de segmentos existentes, incluyendo el activo.
+     */
+    public int segmentos() {
+        synchronized (segmentos) {
+            return segmentos.size();
+        }
+    }
+
+    /**
+     * @return Número de registros agregados aún no sincronizados al disco.
+     */
+    public int pendientes() {
+        return pendientes;
+    }
+
+    /**
+     * Agrega un registro. Sólo debe ser llamado por el hilo escritor.
+     *
+     * @param idSesion ID de la sesión a la que la captura pertenece.
+     * @param latitud Latitud codificada. Ver CodificacionCoordenadas.
+     * @param longitud Longitud codificada. Ver CodificacionCoordenadas.
+     * @param fecha Fecha de captura en milisegundos desde epoch (UTC).
+     *
+     * @return true si los registros pendientes, incluyendo este, fueron sincronizados al disco.
+     */
+    public boolean agregar(long idSesion, int latitud, int longitud, long fecha) throws IOException {
+        if (activo.cantidad >= capturasPorSegmento) {
+            sincronizar();
+            activar(nuevoSegmento(activo.numero + 1));
+        }
+
+        bufferContenido.clear();
+        bufferContenido.putLong(idSesion).putLong(fecha).putInt(latitud).putInt(longitud);
+        crc.reset();
+        crc.update(contenido, 0, contenido.length);
+
+        // La marca es escrita al final; hasta entonces el espacio del registro sigue vacío.
+        int posicion = activo.cantidad * REGISTRO_TAMANO;
+        mapa.position(posicion + 8);
+        mapa.put(contenido);
+        mapa.putInt(posicion + 4, (int) crc.getValue());
+        mapa.putInt(posicion, REGISTRO_MARCA);
+
+        if (pendientes++ == 0) {
+            tiempoPrimerPendiente = System.nanoTime();
+        }
+
+        synchronized (segmentos) {
+            activo.cantidad++;
+
+            if (idSesion != sesionAnterior) {
+                activo.sesiones.add(idSesion);
+                sesionAnterior = idSesion;
+            }
+
+            long[] cantidad = cantidades.get(idSesion);
+            if (cantidad == null) {
+                cantidades.put(idSesion, cantidad = new long[1]);
+            }
+            cantidad[0]++;
+        }
+
+        if (pendientes >= capturasPorSincronizacion || tiempoParaSincronizar() == 0) {
+            sincronizar();
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * @return Milisegundos que faltan para que el registro no sincronizado más antiguo alcance la
+     * edad máxima. 0 si ya la alcanzó o si ya hay suficientes registros para sincronizar (una
+     * sincronización anterior falló), o Long.MAX_VALUE si no hay registros pendientes.
+     */
+    public long tiempoParaSincronizar() {
+        if (pendientes == 0) {
+            return Long.MAX_VALUE;
+        }
+
+        if (pendientes >= capturasPorSincronizacion) {
+            return 0L;
+        }
+
+        long edad = (System.nanoTime() - tiempoPrimerPendiente) / 1000000L;
+
+        return Math.max(0L, intervaloSincronizacion - edad);
+    }
+
+    /**
+     * Sincroniza al disco los registros pendientes del segmento activo. Sólo debe ser llamado por
+     * el hilo escritor.
+     *
+     * @return Número de registros sincronizados.
+     */
+    public int sincronizar() {
+        int sincronizados = pendientes;
+
+        if (sincronizados > 0) {
+            mapa.force();
+            pendientes = 0;
+        }
+
+        return sincronizados;
+    }
+
+    /**
+     * Sincroniza los registros pendientes y cierra el segmento activo. Sólo debe ser llamado por
+     * el hilo escritor. El registro no debe ser usado después.
+     */
+    public void cerrar() throws IOException {
+        sincronizar();
+        archivoActivo.close();
+        mapa = null;
+    }
+
+    /**
+     * @return Número de registros de la sesión "idSesion".
+     */
+    public long contar(long idSesion) {
+        synchronized (segmentos) {
+            long[] cantidad = cantidades.get(idSesion);
+            return cantidad != null ? cantidad[0] : 0L;
+        }
+    }
+
+    /**
+     * @return IDs de todas las sesiones con registros.
+     */
+    public long[] sesiones() {
+        synchronized (segmentos) {
+            long[] sesiones = new long[cantidades.size()];
+            int i = 0;
+
+            for (Long id : cantidades.keySet()) {
+                sesiones[i++] = id;
+            }
+
+            Arrays.sort(sesiones);
+            return sesiones;
+        }
+    }
+
+    /**
+     * Lee, en orden, los registros de una sesión cuyo número de secuencia es mayor que "despuesDe".
+     *
+     * @param idSesion ID de la sesión.
+     * @param despuesDe Número de secuencia; 0 para leer todos los registros.
+     * @param lector Recibe cada registro leído.
+     *
+     * @return Número de registros leídos.
+     */
+    public int leer(long idSesion, long despuesDe, LectorRegistros lector) throws IOException {
+        return leer(idSesion, despuesDe, Integer.MAX_VALUE, lector);
+    }
+
+    /**
+     * Lee, en orden, hasta "limite" registros de una sesión cuyo número de secuencia es mayor que
+     * "despuesDe".
+     *
+     * Los números de secuencia son la posición de cada registro dentro de su sesión, así que los
+     * registros anteriores a "despuesDe" también son recorridos (sin ser entregados): el costo de
+     * cada llamado crece con "despuesDe". Para sesiones largas es preferible leerlas después de
+     * copiarlas a otro almacén (ver AlmacenSegmentos).
+     *
+     * @param idSesion ID de la sesión.
+     * @param despuesDe Número de secuencia; 0 para leer desde el primer registro.
+     * @param limite Máximo de registros leídos.
+     * @param lector Recibe cada registro leído.
+     *
+     * @return Número de registros leídos.
+     */
+    public int leer(long idSesion, long despuesDe, int limite, LectorRegistros lector) throws IOException {
+        List<Segmento> conSesion = new ArrayList<>();
+        List<Integer> cantidadesSegmentos = new ArrayList<>();
+
+        synchronized (segmentos) {
+            for (Segmento segmento : segmentos) {
+                if (segmento.sesiones.contains(idSesion)) {
+                    conSesion.add(segmento);
+                    cantidadesSegmentos.add(segmento.cantidad);
+                }
+            }
+        }
+
+        ByteBuffer bloque = ByteBuffer.allocate(LECTURA_REGISTROS * REGISTRO_TAMANO);
+        long secuencia = 0;
+        int leidos = 0;
+
+        for (int s = 0; s < conSesion.size(); s++) {
+            RandomAccessFile archivo = new RandomAccessFile(conSesion.get(s).archivo, "r");
+
+            try {
+                FileChannel canal = archivo.getChannel();
+                long fin = (long) cantidadesSegmentos.get(s) * REGISTRO_TAMANO;
+
+                for (long posicion = 0; posicion < fin; posicion += bloque.capacity()) {
+                    bloque.clear();
+                    bloque.limit((int) Math.min(bloque.capacity(), fin - posicion));
+
+                    while (bloque.hasRemaining() && canal.read(bloque, posicion + bloque.position()) >= 0);
+                    bloque.flip();
+
+                    while (bloque.remaining() >= REGISTRO_TAMANO) {
+                        int inicio = bloque.position();
+
+                        if (bloque.getLong(inicio + 8) == idSesion && ++secuencia > despuesDe) {
+                            if (leidos == limite) {
+                                return leidos;
+                            }
+
+                            lector.registroLeido(secuencia, bloque.getInt(inicio + 24), bloque.getInt(inicio + 28), bloque.getLong(inicio + 16));
+                            leidos++;
+                        }
+
+                        bloque.position(inicio + REGISTRO_TAMANO);
+                    }
+                }
+            } finally {
+                archivo.close();
+            }
+        }
+
+        return leidos;
+    }
+
+    /**
+     * Elimina los segmentos, excepto el activo, cuyas sesiones están todas en "descartables"; por
+     * ejemplo, sesiones terminadas cuyos registros ya fueron copiados a otro almacén. Los registros
+     * de esas sesiones en otros segmentos no son eliminados.
+     *
+     * @return Número de segmentos eliminados.
+     */
+    public int eliminarSegmentos(Set<Long> descartables) {
+        int eliminados = 0;
+
+        synchronized (segmentos) {
+            for (int i = segmentos.size() - 2; i >= 0; i--) {
+                Segmento segmento = segmentos.get(i);
+
+                if (!descartables.containsAll(segmento.sesiones)) {
+                    continue;
+                }
+
+                for (Long id : segmento.sesiones) {
+                    long[] cantidad = cantidades.get(id);
+                    cantidad[0] -= contarEnSegmento(segmento, id);
+
+                    if (cantidad[0] <= 0) {
+                        cantidades.remove(id);
+                    }
+                }
+
+                segmentos.remove(i);
+                segmento.archivo.delete();
+                eliminados++;
+            }
+        }
+
+        return eliminados;
+    }
+
+    /**
+     * @return Registros de la sesión "id" en un segmento que no es el activo.
+     */
+    private long contarEnSegmento(Segmento segmento, long id) {
+        if (segmento.sesiones.size() == 1) {
+            return segmento.cantidad;
+        }
+
+        long cantidad = 0;
+
+        try {
+            RandomAccessFile archivo = new RandomAccessFile(segmento.archivo, "r");
+
+            try {
+                for (int i = 0; i < segmento.cantidad; i++) {
+                    archivo.seek((long) i * REGISTRO_TAMANO + 8);
+
+                    if (archivo.readLong() == id) {
+                        cantidad++;
+                    }
+                }
+            } finally {
+                archivo.close();
+            }
+        } catch (IOException e) {
+            // Sin poder leer el segmento se asume que todos sus registros son de la sesión; a lo
+            // sumo, contar() subestima la sesión hasta que sus demás segmentos sean eliminados.
+            return segmento.cantidad;
+        }
+
+        return cantidad;
+    }
+
+    /**
+     * Recorre los segmentos existentes, validando cada registro, y trunca el registro en el primer
+     * registro inválido.
+     *
+     * @return Número de registros descartados.
+     */
+    private long recuperar() throws IOException {
+        File[] archivos = directorio.listFiles();
+        List<Segmento> encontrados = new ArrayList<>();
+
+        if (archivos != null) {
+            for (File archivo : archivos) {
+                String nombre = archivo.getName();
+
+                if (nombre.startsWith(SEGMENTO_PREFIJO) && nombre.endsWith(SEGMENTO_SUFIJO)) {
+                    try {
+                        encontrados.add(new Segmento(Long.parseLong(nombre.substring(SEGMENTO_PREFIJO.length(), nombre.length() - SEGMENTO_SUFIJO.length())), archivo));
+                    } catch (NumberFormatException e) {
+                        // No es un segmento.
+                    }
+                }
+            }
+        }
+
+        Segmento[] ordenados = encontrados.toArray(new Segmento[encontrados.size()]);
+        Arrays.sort(ordenados, new Comparator<Segmento>() {
+            @Override
+            public int compare(Segmento a, Segmento b) {
+                return a.numero < b.numero ? -1 : (a.numero > b.numero ? 1 : 0);
+            }
+        });
+
+        long descartados = 0;
+        boolean truncado = false;
+
+        for (Segmento segmento : ordenados) {
+            if (truncado) {
+                descartados += segmento.archivo.length() / REGISTRO_TAMANO;
+                segmento.archivo.delete();
+                continue;
+            }
+
+            long[] resultado = recuperarSegmento(segmento);
+            descartados += resultado[0];
+            truncado = resultado[1] != 0;
+
+            segmentos.add(segmento);
+        }
+
+        return descartados;
+    }
+
+    /**
+     * Valida los registros de un segmento, actualizando sus contadores, y borra todo lo que sigue
+     * al primer registro inválido o vacío.
+     *
+     * @return { registros descartados, 1 si el segmento fue truncado antes de estar lleno }.
+     */
+    private long[] recuperarSegmento(Segmento segmento) throws IOException {
+        RandomAccessFile archivo = new RandomAccessFile(segmento.archivo, "rw");
+
+        try {
+            archivo.setLength((long) capturasPorSegmento * REGISTRO_TAMANO);
+            MappedByteBuffer datos = archivo.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, (long) capturasPorSegmento * REGISTRO_TAMANO);
+
+            int validos = 0;
+
+            for (; validos < capturasPorSegmento; validos++) {
+                int posicion = validos * REGISTRO_TAMANO;
+
+                if (datos.getInt(posicion) != REGISTRO_MARCA) {
+                    break;
+                }
+
+                datos.position(posicion + 8);
+                datos.get(contenido);
+                crc.reset();
+                crc.update(contenido, 0, contenido.length);
+
+                if (datos.getInt(posicion + 4) != (int) crc.getValue()) {
+                    break;
+                }
+
+                long id = bufferContenido.getLong(0);
+                segmento.sesiones.add(id);
+
+                long[] cantidad = cantidades.get(id);
+                if (cantidad == null) {
+                    cantidades.put(id, cantidad = new long[1]);
+                }
+                cantidad[0]++;
+            }
+
+            segmento.cantidad = validos;
+
+            // Borra el resto del segmento, contando los registros con marca (escritos en parte).
+            long descartados = 0;
+            boolean modificado = false;
+
+            for (int posicion = validos * REGISTRO_TAMANO; posicion < capturasPorSegmento * REGISTRO_TAMANO; posicion += 4) {
+                int valor = datos.getInt(posicion);
+
+                if (valor != 0) {
+                    if (posicion % REGISTRO_TAMANO == 0 && valor == REGISTRO_MARCA) {
+                        descartados++;
+                    }
+
+                    datos.putInt(posicion, 0);
+                    modificado = true;
+                }
+            }
+
+            if (modificado) {
+                datos.force();
+            }
+
+            return new long[] { descartados, validos < capturasPorSegmento ? 1 : 0 };
+        } finally {
+            archivo.close();
+        }
+    }
+
+    private Segmento nuevoSegmento(long numero) {
+        Segmento segmento = new Segmento(numero, new File(directorio, String.format("%s%016d%s", SEGMENTO_PREFIJO, numero, SEGMENTO_SUFIJO)));
+
+        synchronized (segmentos) {
+            segmentos.add(segmento);
+        }
+
+        return segmento;
+    }
+
+    /**
+     * Mapea "segmento" en memoria y lo convierte en el segmento activo.
+     */
+    private void activar(Segmento segmento) throws IOException {
+        if (archivoActivo != null) {
+            archivoActivo.close();
+        }
+
+        archivoActivo = new RandomAccessFile(segmento.archivo, "rw");
+        archivoActivo.setLength((long) capturasPorSegmento * REGISTRO_TAMANO);
+        mapa = archivoActivo.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, (long) capturasPorSegmento * REGISTRO_TAMANO);
+
+        activo = segmento;
+        sesionAnterior = 0;
+    }
+}
@@ -0,0 +1,30 @@
+package xyz.fabianpineda.desarrollomovil.transqa.db;
+
+/**
+ * Datos de una sesión, como son regresados por AlmacenSesiones. Inmutable.
+ *
+ * Las fechas son milisegundos desde epoch (UTC). Una sesión sin fecha de terminación aún no ha
+ * terminado; en ese caso "fechaFin" es SESION_SIN_FECHA_FIN.
+ */
+public final class RegistroSesion {
+    public static final long SESION_SIN_FECHA_FIN = 0L;
+
+    public final long id;
+    public final String nombre;
+    public final long fechaInicio;
+    public final long fechaFin;
+
+    public RegistroSesion(long id, String nombre, long fechaInicio, long fechaFin) {
+        this.id = id;
+        this.nombre = nombre;
+        this.fechaInicio = fechaInicio;
+        this.fechaFin = fechaFin;
+    }
+
+    /**
+     * @return true si la sesión tiene fecha de terminación.
+     */
+    public boolean terminada() {
+        return fechaFin != SESION_SIN_FECHA_FIN;
+    }
+}
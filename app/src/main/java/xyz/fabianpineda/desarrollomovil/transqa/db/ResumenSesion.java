@@ -0,0 +1,49 @@
+package xyz.fabianpineda.desarrollomovil.transqa.db;
+
+/**
+ * Define la tabla/entidad ResumenSesion en una base de datos relacional cualquiera.
+ *
+ * Cada entrada resume las capturas "Geolocalizacion" de una Sesion (ver RegistroResumen) y es
+ * identificada por la ID de la sesión. Es actualizada cada vez que se escriben capturas, así que
+ * consultar el resumen de una sesión no requiere leer sus capturas.
+ *
+ * Coordenadas en unidades de 1e-7 grados, fechas en milisegundos desde epoch (UTC), distancia en
+ * metros y velocidad en metros por segundo. Ver: CodificacionCoordenadas
+ *
+ * No se debe incluir información en este objeto que esté dirigida a una DB/(R)DBMS específica.
+ */
+final class ResumenSesion {
+    static final String TABLA_RESUMEN = "ResumenSesion";
+
+    static final String TABLA_RESUMEN_ID_SESION = "id_sesion";
+    static final String TABLA_RESUMEN_CAPTURAS = "capturas";
+    static final String TABLA_RESUMEN_FECHA_PRIMERA = "fecha_primera";
+    static final String TABLA_RESUMEN_FECHA_ULTIMA = "fecha_ultima";
+    static final String TABLA_RESUMEN_DISTANCIA = "distancia";
+    static final String TABLA_RESUMEN_VELOCIDAD_MAXIMA = "velocidad_maxima";
+    static final String TABLA_RESUMEN_LATITUD_MINIMA = "latitud_minima";
+    static final String TABLA_RESUMEN_LATITUD_MAXIMA = "latitud_maxima";
+    static final String TABLA_RESUMEN_LONGITUD_MINIMA = "longitud_minima";
+    static final String TABLA_RESUMEN_LONGITUD_MAXIMA = "longitud_maxima";
+    static final String TABLA_RESUMEN_LATITUD_ULTIMA = "latitud_ultima";
+    static final String TABLA_RESUMEN_LONGITUD_ULTIMA = "longitud_ultima";
+    static final String TABLA_RESUMEN_TERMINADA = "terminada";
+
+    /*
+     * Índices de cada campo. Por favor actualizar si se altera el orden de los campos o si se
+     * agregan o eliminan campos.
+     */
+    static final int TABLA_RESUMEN_ID_SESION_INDICE = 0;
+    static final int TABLA_RESUMEN_CAPTURAS_INDICE = 1;
+    static final int TABLA_RESUMEN_FECHA_PRIMERA_INDICE = 2;
+    static final int TABLA_RESUMEN_FECHA_ULTIMA_INDICE = 3;
+    static final int TABLA_RESUMEN_DISTANCIA_INDICE = 4;
+    static final int TABLA_RESUMEN_VELOCIDAD_MAXIMA_INDICE = 5;
+    static final int TABLA_RESUMEN_LATITUD_MINIMA_INDICE = 6;
+    static final int TABLA_RESUMEN_LATITUD_MAXIMA_INDICE = 7;
+    static final int TABLA_RESUMEN_LONGITUD_MINIMA_INDICE = 8;
+    static final int TABLA_RESUMEN_LONGITUD_MAXIMA_INDICE = 9;
+    static final int TABLA_RESUMEN_LATITUD_ULTIMA_INDICE = 10;
+    static final int TABLA_RESUMEN_LONGITUD_ULTIMA_INDICE = 11;
+    static final int TABLA_RESUMEN_TERMINADA_INDICE = 12;
+}
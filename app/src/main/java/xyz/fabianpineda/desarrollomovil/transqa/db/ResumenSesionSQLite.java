@@ -0,0 +1,392 @@
+package xyz.fabianpineda.desarrollomovil.transqa.db;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+/**
+ * Información de tabla ResumenSesion en SQLite.
+ *
+ * Usado para crear y operar con la tabla "ResumenSesion" en SQLite3 en la base de datos "DB".
+ *
+ * Los resúmenes son mantenidos por quien escribe capturas: BufferGeolocalizacionSQLite mantiene en
+ * memoria el resumen de la sesión actual, lo actualiza con cada captura y lo guarda en la misma
+ * transacción en que inserta las capturas; GeolocalizacionSQLite.agregarCoordenadas lee y guarda el
+ * resumen en su transacción. Así, un resumen nunca incluye capturas que no fueron escritas.
+ *
+ * Al terminar una sesión (ver SesionSQLite.terminarSesion) su resumen es marcado como terminado y
+ * verificado: si no coincide con el número de capturas de la sesión, es reconstruido a partir de
+ * ellas. reconstruirResumenes() reconstruye todos los resúmenes; es usado al migrar a la versión 4
+ * de "DB".
+ *
+ * La llave primaria es id_sesion: consultar el resumen de una sesión es una búsqueda en índice.
+ */
+public final class ResumenSesionSQLite {
+    /**
+     * Capturas leídas por página al reconstruir resúmenes. Ver: GeolocalizacionSQLite.seleccionarPagina
+     */
+    private static final int RECONSTRUCCION_CAPTURAS_POR_PAGINA = 1000;
+
+    /**
+     * Estructura de tabla ResumenSesion. Esquema.
+     */
+    static final String SQL_CREAR_TABLA_RESUMEN = String.format(
+        "CREATE TABLE %s (" +
+            "%s INTEGER NOT NULL PRIMARY KEY," +
+            "%s INTEGER NOT NULL DEFAULT 0," +
+            "%s INTEGER NOT NULL DEFAULT 0," +
+            "%s INTEGER NOT NULL DEFAULT 0," +
+            "%s REAL NOT NULL DEFAULT 0," +
+            "%s REAL NOT NULL DEFAULT 0," +
+            "%s INTEGER NOT NULL DEFAULT 0," +
+            "%s INTEGER NOT NULL DEFAULT 0," +
+            "%s INTEGER NOT NULL DEFAULT 0," +
+            "%s INTEGER NOT NULL DEFAULT 0," +
+            "%s INTEGER NOT NULL DEFAULT 0," +
+            "%s INTEGER NOT NULL DEFAULT 0," +
+            "%s INTEGER NOT NULL DEFAULT 0," +
+
+            "FOREIGN KEY (%s) REFERENCES %s(%s)" +
+        ");",
+        ResumenSesion.TABLA_RESUMEN,
+        ResumenSesion.TABLA_RESUMEN_ID_SESION,
+        ResumenSesion.TABLA_RESUMEN_CAPTURAS,
+        ResumenSesion.TABLA_RESUMEN_FECHA_PRIMERA,
+        ResumenSesion.TABLA_RESUMEN_FECHA_ULTIMA,
+        ResumenSesion.TABLA_RESUMEN_DISTANCIA,
+        ResumenSesion.TABLA_RESUMEN_VELOCIDAD_MAXIMA,
+        ResumenSesion.TABLA_RESUMEN_LATITUD_MINIMA,
+        ResumenSesion.TABLA_RESUMEN_LATITUD_MAXIMA,
+        ResumenSesion.TABLA_RESUMEN_LONGITUD_MINIMA,
+        ResumenSesion.TABLA_RESUMEN_LONGITUD_MAXIMA,
+        ResumenSesion.TABLA_RESUMEN_LATITUD_ULTIMA,
+        ResumenSesion.TABLA_RESUMEN_LONGITUD_ULTIMA,
+        ResumenSesion.TABLA_RESUMEN_TERMINADA,
+        ResumenSesion.TABLA_RESUMEN_ID_SESION, Sesion.TABLA_SESION, Sesion.TABLA_SESION_ID
+    );
+
+    /**
+     * SQL de SQLite3 para eliminar tabla ResumenSesion.
+     */
+    static final String SQL_DESTRUIR_TABLA_RESUMEN = String.format(
+        "DROP TABLE IF EXISTS %s;",
+        ResumenSesion.TABLA_RESUMEN
+    );
+
+    /**
+     * Selecciona el resumen de una sesión. Las columnas están en el orden ResumenSesion.TABLA_RESUMEN_*_INDICE.
+     */
+    static final String SQL_SELECCIONAR_RESUMEN = String.format(
+        "SELECT %s, %s, %s, %s, %s, %s, %s, %s, %s, %s, %s, %s, %s FROM %s WHERE %s = ? LIMIT 1;",
+        ResumenSesion.TABLA_RESUMEN_ID_SESION,
+        ResumenSesion.TABLA_RESUMEN_CAPTURAS,
+        ResumenSesion.TABLA_RESUMEN_FECHA_PRIMERA,
+        ResumenSesion.TABLA_RESUMEN_FECHA_ULTIMA,
+        ResumenSesion.TABLA_RESUMEN_DISTANCIA,
+        ResumenSesion.TABLA_RESUMEN_VELOCIDAD_MAXIMA,
+        ResumenSesion.TABLA_RESUMEN_LATITUD_MINIMA,
+        ResumenSesion.TABLA_RESUMEN_LATITUD_MAXIMA,
+        ResumenSesion.TABLA_RESUMEN_LONGITUD_MINIMA,
+        ResumenSesion.TABLA_RESUMEN_LONGITUD_MAXIMA,
+        ResumenSesion.TABLA_RESUMEN_LATITUD_ULTIMA,
+        ResumenSesion.TABLA_RESUMEN_LONGITUD_ULTIMA,
+        ResumenSesion.TABLA_RESUMEN_TERMINADA,
+        ResumenSesion.TABLA_RESUMEN,
+        ResumenSesion.TABLA_RESUMEN_ID_SESION
+    );
+
+    /**
+     * Actualiza el resumen de una sesión. Un resumen terminado permanece terminado, aunque quien
+     * lo actualiza no lo sepa (por ejemplo, un buffer que escribe capturas con retraso).
+     *
+     * Parámetros: los 11 campos de capturas a longitud_ultima, terminada (0 o 1) e id_sesion.
+     */
+    static final String SQL_ACTUALIZAR_RESUMEN = String.format(
+        "UPDATE %s SET %s = ?, %s = ?, %s = ?, %s = ?, %s = ?, %s = ?, %s = ?, %s = ?, %s = ?, %s = ?, %s = ?, %s = MAX(%s, ?) WHERE %s = ?;",
+        ResumenSesion.TABLA_RESUMEN,
+        ResumenSesion.TABLA_RESUMEN_CAPTURAS,
+        ResumenSesion.TABLA_RESUMEN_FECHA_PRIMERA,
+        ResumenSesion.TABLA_RESUMEN_FECHA_ULTIMA,
+        ResumenSesion.TABLA_RESUMEN_DISTANCIA,
+        ResumenSesion.TABLA_RESUMEN_VELOCIDAD_MAXIMA,
+        ResumenSesion.TABLA_RESUMEN_LATITUD_MINIMA,
+        ResumenSesion.TABLA_RESUMEN_LATITUD_MAXIMA,
+        ResumenSesion.TABLA_RESUMEN_LONGITUD_MINIMA,
+        ResumenSesion.TABLA_RESUMEN_LONGITUD_MAXIMA,
+        ResumenSesion.TABLA_RESUMEN_LATITUD_ULTIMA,
+        ResumenSesion.TABLA_RESUMEN_LONGITUD_ULTIMA,
+        ResumenSesion.TABLA_RESUMEN_TERMINADA, ResumenSesion.TABLA_RESUMEN_TERMINADA,
+        ResumenSesion.TABLA_RESUMEN_ID_SESION
+    );
+
+    /**
+     * Inserta el resumen de una sesión que aún no tiene uno.
+     *
+     * Parámetros: los 11 campos de capturas a longitud_ultima, terminada (0 o 1) e id_sesion.
+     */
+    static final String SQL_INSERTAR_RESUMEN = String.format(
+        "INSERT INTO %s (%s, %s, %s, %s, %s, %s, %s, %s, %s, %s, %s, %s, %s) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?);",
+        ResumenSesion.TABLA_RESUMEN,
+        ResumenSesion.TABLA_RESUMEN_CAPTURAS,
+        ResumenSesion.TABLA_RESUMEN_FECHA_PRIMERA,
+        ResumenSesion.TABLA_RESUMEN_FECHA_ULTIMA,
+        ResumenSesion.TABLA_RESUMEN_DISTANCIA,
+        ResumenSesion.TABLA_RESUMEN_VELOCIDAD_MAXIMA,
+        ResumenSesion.TABLA_RESUMEN_LATITUD_MINIMA,
+        ResumenSesion.TABLA_RESUMEN_LATITUD_MAXIMA,
+        ResumenSesion.TABLA_RESUMEN_LONGITUD_MINIMA,
+        ResumenSesion.TABLA_RESUMEN_LONGITUD_MAXIMA,
+        ResumenSesion.TABLA_RESUMEN_LATITUD_ULTIMA,
+        ResumenSesion.TABLA_RESUMEN_LONGITUD_ULTIMA,
+        ResumenSesion.TABLA_RESUMEN_TERMINADA,
+        ResumenSesion.TABLA_RESUMEN_ID_SESION
+    );
+
+    /**
+     * Sesiones y si están terminadas, para reconstruir sus resúmenes.
+     */
+    private static final String SQL_SELECCIONAR_SESIONES_TERMINADAS = String.format(
+        "SELECT %s, %s IS NOT NULL FROM %s ORDER BY %s;",
+        Sesion.TABLA_SESION_ID,
+        Sesion.TABLA_SESION_FECHA_FIN,
+        Sesion.TABLA_SESION,
+        Sesion.TABLA_SESION_ID
+    );
+
+    /**
+     * Estructura de tabla ResumenSesion en la versión 4 de "DB". Sólo usada por migrarVersion4.
+     */
+    private static final String SQL_CREAR_TABLA_RESUMEN_V4 =
+        "CREATE TABLE ResumenSesion (" +
+            "id_sesion INTEGER NOT NULL PRIMARY KEY," +
+            "capturas INTEGER NOT NULL DEFAULT 0," +
+            "fecha_primera INTEGER NOT NULL DEFAULT 0," +
+            "fecha_ultima INTEGER NOT NULL DEFAULT 0," +
+            "distancia REAL NOT NULL DEFAULT 0," +
+            "velocidad_maxima REAL NOT NULL DEFAULT 0," +
+            "latitud_minima INTEGER NOT NULL DEFAULT 0," +
+            "latitud_maxima INTEGER NOT NULL DEFAULT 0," +
+            "longitud_minima INTEGER NOT NULL DEFAULT 0," +
+            "longitud_maxima INTEGER NOT NULL DEFAULT 0," +
+            "latitud_ultima INTEGER NOT NULL DEFAULT 0," +
+            "longitud_ultima INTEGER NOT NULL DEFAULT 0," +
+            "terminada INTEGER NOT NULL DEFAULT 0," +
+            "FOREIGN KEY (id_sesion) REFERENCES Sesion(id)" +
+        ");";
+
+    /**
+     * Crea la tabla ResumenSesion de la versión 4 de "DB" y calcula los resúmenes de las sesiones
+     * existentes. Debe ser ejecutado dentro de la transacción de SQLiteOpenHelper.onUpgrade.
+     *
+     * @param db La base de datos SQLite3 en versión 3.
+     */
+    static void migrarVersion4(SQLiteDatabase db) {
+        db.execSQL(SQL_CREAR_TABLA_RESUMEN_V4);
+        reconstruirResumenes(db);
+    }
+
+    /**
+     * @param db Objeto SQLiteDatabase con una conexión abierta a la base de datos "DB".
+     * @param id_sesion ID de la sesión.
+     *
+     * @return El resumen guardado de la sesión, o null si no tiene uno.
+     */
+    public static final RegistroResumen seleccionarResumen(SQLiteDatabase db, long id_sesion) {
+        Cursor c = db.rawQuery(SQL_SELECCIONAR_RESUMEN, new String[] { String.valueOf(id_sesion) });
+
+        try {
+            if (!c.moveToFirst()) {
+                return null;
+            }
+
+            RegistroResumen resumen = new RegistroResumen(c.getLong(ResumenSesion.TABLA_RESUMEN_ID_SESION_INDICE));
+
+            resumen.capturas = c.getLong(ResumenSesion.TABLA_RESUMEN_CAPTURAS_INDICE);
+            resumen.fechaPrimera = c.getLong(ResumenSesion.TABLA_RESUMEN_FECHA_PRIMERA_INDICE);
+            resumen.fechaUltima = c.getLong(ResumenSesion.TABLA_RESUMEN_FECHA_ULTIMA_INDICE);
+            resumen.distancia = c.getDouble(ResumenSesion.TABLA_RESUMEN_DISTANCIA_INDICE);
+            resumen.velocidadMaxima = c.getDouble(ResumenSesion.TABLA_RESUMEN_VELOCIDAD_MAXIMA_INDICE);
+            resumen.latitudMinima = c.getInt(ResumenSesion.TABLA_RESUMEN_LATITUD_MINIMA_INDICE);
+            resumen.latitudMaxima = c.getInt(ResumenSesion.TABLA_RESUMEN_LATITUD_MAXIMA_INDICE);
+            resumen.longitudMinima = c.getInt(ResumenSesion.TABLA_RESUMEN_LONGITUD_MINIMA_INDICE);
+            resumen.longitudMaxima = c.getInt(ResumenSesion.TABLA_RESUMEN_LONGITUD_MAXIMA_INDICE);
+            resumen.latitudUltima = c.getInt(ResumenSesion.TABLA_RESUMEN_LATITUD_ULTIMA_INDICE);
+            resumen.longitudUltima = c.getInt(ResumenSesion.TABLA_RESUMEN_LONGITUD_ULTIMA_INDICE);
+            resumen.terminada = c.getInt(ResumenSesion.TABLA_RESUMEN_TERMINADA_INDICE) != 0;
+
+            return resumen;
+        } finally {
+            c.close();
+        }
+    }
+
+    /**
+     * Igual que seleccionarResumen, pero si la sesión no tiene un resumen guardado lo calcula a
+     * partir de sus capturas (sin guardarlo). Usado por quien va a agregar capturas a la sesión.
+     */
+    static RegistroResumen seleccionarOCalcularResumen(SQLiteDatabase db, long id_sesion) {
+        RegistroResumen resumen = seleccionarResumen(db, id_sesion);
+        return resumen != null ? resumen : calcularResumen(db, id_sesion);
+    }
+
+    /**
+     * Guarda un resumen usando statements compilados de SQL_ACTUALIZAR_RESUMEN y
+     * SQL_INSERTAR_RESUMEN. Debe ser ejecutado dentro de una transacción.
+     */
+    static void guardarResumen(SQLiteStatement actualizacion, SQLiteStatement insercion, RegistroResumen resumen) {
+        try {
+            vincular(actualizacion, resumen);
+
+            if (actualizacion.executeUpdateDelete() == 0) {
+                vincular(insercion, resumen);
+                insercion.executeInsert();
+            }
+        } finally {
+            actualizacion.clearBindings();
+            insercion.clearBindings();
+        }
+    }
+
+    /**
+     * Guarda un resumen. Cada llamado compila sus statements; para guardar resúmenes con
+     * frecuencia, usar guardarResumen(SQLiteStatement, SQLiteStatement, RegistroResumen).
+     *
+     * @param db Objeto SQLiteDatabase con una conexión abierta a la base de datos "DB", permisos de lectura y escritura
+     * @param resumen Resumen de una sesión existente.
+     */
+    public static final void guardarResumen(SQLiteDatabase db, RegistroResumen resumen) {
+        SQLiteStatement actualizacion = db.compileStatement(SQL_ACTUALIZAR_RESUMEN);
+        SQLiteStatement insercion = db.compileStatement(SQL_INSERTAR_RESUMEN);
+
+        db.beginTransaction();
+        try {
+            guardarResumen(actualizacion, insercion, resumen);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            actualizacion.close();
+            insercion.close();
+        }
+    }
+
+    /**
+     * Marca el resumen de una sesión como terminado. Si el resumen no existe o no incluye todas
+     * las capturas de la sesión, es reconstruido a partir de ellas.
+     *
+     * @param db Objeto SQLiteDatabase con una conexión abierta a la base de datos "DB", permisos de lectura y escritura
+     * @param id_sesion ID de la sesión terminada.
+     *
+     * @return El resumen terminado.
+     */
+    public static final RegistroResumen terminarResumen(SQLiteDatabase db, long id_sesion) {
+        RegistroResumen resumen;
+
+        db.beginTransaction();
+        try {
+            resumen = seleccionarResumen(db, id_sesion);
+
+            if (resumen == null || resumen.capturas != GeolocalizacionSQLite.contarCoordenadas(db, id_sesion)) {
+                resumen = calcularResumen(db, id_sesion);
+            }
+
+            resumen.terminar();
+            guardarResumen(db, resumen);
+
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        return resumen;
+    }
+
+    /**
+     * Calcula el resumen de una sesión leyendo todas sus capturas, página por página. No lo guarda.
+     */
+    static RegistroResumen calcularResumen(SQLiteDatabase db, long id_sesion) {
+        RegistroResumen resumen = new RegistroResumen(id_sesion);
+        long ultimaSecuencia = 0;
+        int leidas;
+
+        do {
+            Cursor pagina = GeolocalizacionSQLite.seleccionarPagina(db, id_sesion, ultimaSecuencia, RECONSTRUCCION_CAPTURAS_POR_PAGINA);
+            leidas = 0;
+
+            try {
+                while (pagina.moveToNext()) {
+                    resumen.agregar(
+                        pagina.getInt(GeolocalizacionSQLite.CONSULTA_LATITUD_INDICE),
+                        pagina.getInt(GeolocalizacionSQLite.CONSULTA_LONGITUD_INDICE),
+                        pagina.getLong(GeolocalizacionSQLite.CONSULTA_FECHA_INDICE)
+                    );
+                    ultimaSecuencia = pagina.getLong(GeolocalizacionSQLite.CONSULTA_SECUENCIA_INDICE);
+                    leidas++;
+                }
+            } finally {
+                pagina.close();
+            }
+        } while (leidas == RECONSTRUCCION_CAPTURAS_POR_PAGINA);
+
+        return resumen;
+    }
+
+    /**
+     * Descarta todos los resúmenes y los vuelve a calcular a partir de las capturas de cada
+     * sesión, en una sola transacción. Su costo es proporcional al total de capturas.
+     *
+     * @param db Objeto SQLiteDatabase con una conexión abierta a la base de datos "DB", permisos de lectura y escritura
+     *
+     * @return Número de resúmenes calculados; uno por sesión.
+     */
+    public static final int reconstruirResumenes(SQLiteDatabase db) {
+        SQLiteStatement actualizacion = db.compileStatement(SQL_ACTUALIZAR_RESUMEN);
+        SQLiteStatement insercion = db.compileStatement(SQL_INSERTAR_RESUMEN);
+        int reconstruidos = 0;
+
+        db.beginTransaction();
+        try {
+            db.execSQL(String.format("DELETE FROM %s;", ResumenSesion.TABLA_RESUMEN));
+
+            Cursor sesiones = db.rawQuery(SQL_SELECCIONAR_SESIONES_TERMINADAS, null);
+
+            try {
+                while (sesiones.moveToNext()) {
+                    RegistroResumen resumen = calcularResumen(db, sesiones.getLong(0));
+
+                    if (sesiones.getInt(1) != 0) {
+                        resumen.terminar();
+                    }
+
+                    guardarResumen(actualizacion, insercion, resumen);
+                    reconstruidos++;
+                }
+            } finally {
+                sesiones.close();
+            }
+
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            actualizacion.close();
+            insercion.close();
+        }
+
+        return reconstruidos;
+    }
+
+    private static void vincular(SQLiteStatement sentencia, RegistroResumen resumen) {
+        sentencia.bindLong(1, resumen.capturas);
+        sentencia.bindLong(2, resumen.fechaPrimera);
+        sentencia.bindLong(3, resumen.fechaUltima);
+        sentencia.bindDouble(4, resumen.distancia);
+        sentencia.bindDouble(5, resumen.velocidadMaxima);
+        sentencia.bindLong(6, resumen.latitudMinima);
+        sentencia.bindLong(7, resumen.latitudMaxima);
+        sentencia.bindLong(8, resumen.longitudMinima);
+        sentencia.bindLong(9, resumen.longitudMaxima);
+        sentencia.bindLong(10, resumen.latitudUltima);
+        sentencia.bindLong(11, resumen.longitudUltima);
+        sentencia.bindLong(12, resumen.terminada ? 1 : 0);
+        sentencia.bindLong(13, resumen.idSesion);
+    }
+}
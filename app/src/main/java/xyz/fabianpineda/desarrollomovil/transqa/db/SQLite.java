@@ -20,6 +20,36 @@ public final class SQLite extends SQLiteOpenHelper {
      */
     static final String SQLITE_SUFIJO_NOMBRE_ARCHIVO_DB = ".db";
 
+    /*
+     * Perfiles de durabilidad, seleccionados al crear el objeto SQLite. Cada perfil es una
+     * combinación de modo de journal y nivel de "synchronous" de SQLite3:
+     *
+     *      * SEGURO: journal "rollback" (DELETE) y synchronous FULL. Comportamiento por defecto
+     *        de SQLite3; cada transacción confirmada sobrevive incluso a cortes de energía.
+     *      * BALANCEADO: journal WAL y synchronous NORMAL. Una transacción confirmada sobrevive si
+     *        el proceso es matado; ante un corte de energía se pueden perder las últimas
+     *        transacciones, pero la base de datos no queda corrupta.
+     *      * RENDIMIENTO: journal WAL y synchronous OFF. SQLite3 nunca espera al disco; ante un
+     *        corte de energía se pueden perder transacciones o corromper la base de datos. Si el
+     *        proceso es matado, las transacciones confirmadas sobreviven.
+     *
+     * https://www.sqlite.org/pragma.html#pragma_synchronous
+     * https://www.sqlite.org/wal.html
+     *
+     * Ver: BenchmarkDurabilidadSQLiteTest, que mide el rendimiento de inserción y la ventana de
+     * pérdida de datos de cada perfil.
+     */
+    public static final int PERFIL_DURABILIDAD_SEGURO = 0;
+    public static final int PERFIL_DURABILIDAD_BALANCEADO = 1;
+    public static final int PERFIL_DURABILIDAD_RENDIMIENTO = 2;
+
+    /**
+     * Perfil usado si no se especifica uno explícitamente.
+     */
+    public static final int PERFIL_DURABILIDAD_DEFAULT = PERFIL_DURABILIDAD_SEGURO;
+
+    private final int perfilDurabilidad;
+
     /**
      * Statements SQL ejecutados cada vez que una base de datos "DB" es creada o abierta.
      *
@@ -30,19 +60,70 @@ public final class SQLite extends SQLiteOpenHelper {
      * https://developer.android.com/reference/android/database/sqlite/SQLiteDatabase.html#setForeignKeyConstraintsEnabled(boolean)
      * https://developer.android.com/reference/android/database/sqlite/SQLiteOpenHelper.html#onConfigure(android.database.sqlite.SQLiteDatabase)
      *
+     * También se aplica el perfil de durabilidad de este objeto (ver PERFIL_DURABILIDAD_*). El
+     * modo de journal queda almacenado en el archivo de la base de datos, así que se activa o
+     * desactiva explícitamente en cada apertura. El nivel de "synchronous" es por conexión.
+     *
+     * Se solicita auto_vacuum INCREMENTAL, para que CompactacionSQLite pueda devolver espacio al
+     * sistema de archivos en lotes pequeños. Sólo tiene efecto en bases de datos nuevas (se
+     * ejecuta antes de onCreate); las existentes no son convertidas (ver CompactacionSQLite).
+     *
      * @param db La base de datos SQLite3. Manejado por Android.
      */
     @Override
     public void onConfigure(SQLiteDatabase db){
         super.onConfigure(db);
         db.setForeignKeyConstraintsEnabled(true);
+        db.execSQL("PRAGMA auto_vacuum = INCREMENTAL;");
+
+        switch (perfilDurabilidad) {
+            case PERFIL_DURABILIDAD_BALANCEADO:
+                db.enableWriteAheadLogging();
+                db.execSQL("PRAGMA synchronous = NORMAL;");
+                break;
+            case PERFIL_DURABILIDAD_RENDIMIENTO:
+                db.enableWriteAheadLogging();
+                db.execSQL("PRAGMA synchronous = OFF;");
+                break;
+            case PERFIL_DURABILIDAD_SEGURO:
+            default:
+                db.disableWriteAheadLogging();
+                db.execSQL("PRAGMA synchronous = FULL;");
+                break;
+        }
+    }
+
+    /**
+     * @return Perfil de durabilidad de este objeto. Alguna de las constantes PERFIL_DURABILIDAD_*.
+     */
+    public int perfilDurabilidad() {
+        return perfilDurabilidad;
     }
 
     /**
      * Maneja la "migración" a nuevas versiones de la base de datos.
      *
-     * TODO: actualmente elimina los contenidos antiguos de la base de datos y la vuelve a crear,
-     * TODO: idealmente, podría simplemente preservar los datos y alterar estructura de tablas.
+     * Cada versión tiene su propio paso de migración, los cuales son aplicados en orden desde
+     * oldVersion hasta newVersion, preservando los datos existentes. Todos los pasos son ejecutados
+     * dentro de una misma transacción por SQLiteOpenHelper.
+     *
+     *      * 1 -> 2: Geolocalizacion recibe llave primaria (id_sesion, secuencia) e índice
+     *                (id_sesion, fecha). Ver: GeolocalizacionSQLite.migrarVersion2
+     *      * 2 -> 3: coordenadas como enteros en unidades de 1e-7 grados y fechas como
+     *                milisegundos desde epoch. Ver: migrarVersion3
+     *      * 3 -> 4: tabla ResumenSesion, calculada a partir de las capturas existentes.
+     *                Ver: ResumenSesionSQLite.migrarVersion4
+     *      * 4 -> 5: columna "celda" e índice espacial en Geolocalizacion.
+     *                Ver: GeolocalizacionSQLite.migrarVersion5
+     *      * 5 -> 6: tabla MapaCalor, calculada a partir de las capturas existentes.
+     *                Ver: MapaCalorSQLite.migrarVersion6
+     *      * 6 -> 7: tabla Compactacion, vacía. Ver: CompactacionSQLite.migrarVersion7
+     *      * 7 -> 8: índice de Sesion por fecha de inicio. Ver: SesionSQLite.migrarVersion8
+     *      * 8 -> 9: tabla LatenciaSesion, vacía. Ver: LatenciaSesionSQLite.migrarVersion9
+     *      * 9 -> 10: tabla AjusteRuta, vacía. Ver: AjusteRutaSQLite.migrarVersion10
+     *
+     * Si no existe un paso de migración para oldVersion, se eliminan los contenidos antiguos de la
+     * base de datos y se vuelve a crear.
      *
      * @param db La base de datos SQLite3. Manejado por Android.
      * @param oldVersion Versión anterior de la base de datos.
@@ -50,8 +131,124 @@ public final class SQLite extends SQLiteOpenHelper {
      */
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        db.execSQL(SesionSQLite.SQL_DESTRUIR_TABLA_SESION);
-        db.execSQL(GeolocalizacionSQLite.SQL_DESTRUIR_TABLA_GEOLOCALIZACION);
+        if (oldVersion < 1) {
+            db.execSQL(AjusteRutaSQLite.SQL_DESTRUIR_TABLA_AJUSTE);
+            db.execSQL(LatenciaSesionSQLite.SQL_DESTRUIR_TABLA_LATENCIA);
+            db.execSQL(CompactacionSQLite.SQL_DESTRUIR_TABLA_COMPACTACION);
+            db.execSQL(MapaCalorSQLite.SQL_DESTRUIR_TABLA_MAPA_CALOR);
+            db.execSQL(ResumenSesionSQLite.SQL_DESTRUIR_TABLA_RESUMEN);
+            db.execSQL(GeolocalizacionSQLite.SQL_DESTRUIR_TABLA_GEOLOCALIZACION);
+            db.execSQL(SesionSQLite.SQL_DESTRUIR_TABLA_SESION);
+            onCreate(db);
+            return;
+        }
+
+        if (oldVersion < 2) {
+            GeolocalizacionSQLite.migrarVersion2(db);
+        }
+
+        if (oldVersion < 3) {
+            migrarVersion3(db);
+        }
+
+        if (oldVersion < 4) {
+            ResumenSesionSQLite.migrarVersion4(db);
+        }
+
+        if (oldVersion < 5) {
+            GeolocalizacionSQLite.migrarVersion5(db);
+        }
+
+        if (oldVersion < 6) {
+            MapaCalorSQLite.migrarVersion6(db);
+        }
+
+        if (oldVersion < 7) {
+            CompactacionSQLite.migrarVersion7(db);
+        }
+
+        if (oldVersion < 8) {
+            SesionSQLite.migrarVersion8(db);
+        }
+
+        if (oldVersion < 9) {
+            LatenciaSesionSQLite.migrarVersion9(db);
+        }
+
+        if (oldVersion < 10) {
+            AjusteRutaSQLite.migrarVersion10(db);
+        }
+    }
+
+    /**
+     * Migra las tablas Sesion y Geolocalizacion de la versión 2 de "DB" a la versión 3.
+     *
+     * Las fechas almacenadas como texto en hora local son convertidas a milisegundos desde epoch
+     * (UTC) y las coordenadas a enteros en unidades de 1e-7 grados (ver CodificacionCoordenadas).
+     *
+     * Ambas tablas son renombradas antes de crear las nuevas; al renombrar Sesion, SQLite actualiza
+     * la llave foránea de la Geolocalizacion anterior para que apunte a la Sesion anterior. Así, las
+     * tablas anteriores pueden ser eliminadas (hija primero) sin violar llaves foráneas.
+     *
+     * @param db La base de datos SQLite3 en versión 2.
+     */
+    static void migrarVersion3(SQLiteDatabase db) {
+        String sesionAnterior = Sesion.TABLA_SESION + "_v2";
+        String geolocalizacionAnterior = Geolocalizacion.TABLA_GEOLOCALIZACION + "_v2";
+
+        db.execSQL(String.format("ALTER TABLE %s RENAME TO %s;", Geolocalizacion.TABLA_GEOLOCALIZACION, geolocalizacionAnterior));
+        db.execSQL(String.format("ALTER TABLE %s RENAME TO %s;", Sesion.TABLA_SESION, sesionAnterior));
+
+        db.execSQL(SesionSQLite.SQL_CREAR_TABLA_SESION);
+        db.execSQL(String.format(
+            "INSERT INTO %s (%s, %s, %s, %s) SELECT %s, %s, %s, %s FROM %s;",
+            Sesion.TABLA_SESION,
+            Sesion.TABLA_SESION_ID,
+            Sesion.TABLA_SESION_NOMBRE,
+            Sesion.TABLA_SESION_FECHA_INICIO,
+            Sesion.TABLA_SESION_FECHA_FIN,
+            Sesion.TABLA_SESION_ID,
+            Sesion.TABLA_SESION_NOMBRE,
+            sqlFechaEpoch(Sesion.TABLA_SESION_FECHA_INICIO),
+            sqlFechaEpoch(Sesion.TABLA_SESION_FECHA_FIN),
+            sesionAnterior
+        ));
+
+        db.execSQL(GeolocalizacionSQLite.SQL_CREAR_TABLA_GEOLOCALIZACION_V3);
+        db.execSQL(String.format(
+            "INSERT INTO %s (%s, %s, %s, %s, %s) SELECT %s, %s, %s, %s, %s FROM %s;",
+            Geolocalizacion.TABLA_GEOLOCALIZACION,
+            Geolocalizacion.TABLA_GEOLOCALIZACION_ID_SESION,
+            Geolocalizacion.TABLA_GEOLOCALIZACION_SECUENCIA,
+            Geolocalizacion.TABLA_GEOLOCALIZACION_LATITUD,
+            Geolocalizacion.TABLA_GEOLOCALIZACION_LONGITUD,
+            Geolocalizacion.TABLA_GEOLOCALIZACION_FECHA,
+            Geolocalizacion.TABLA_GEOLOCALIZACION_ID_SESION,
+            Geolocalizacion.TABLA_GEOLOCALIZACION_SECUENCIA,
+            sqlCoordenadaE7(Geolocalizacion.TABLA_GEOLOCALIZACION_LATITUD),
+            sqlCoordenadaE7(Geolocalizacion.TABLA_GEOLOCALIZACION_LONGITUD),
+            sqlFechaEpoch(Geolocalizacion.TABLA_GEOLOCALIZACION_FECHA),
+            geolocalizacionAnterior
+        ));
+
+        db.execSQL(String.format("DROP TABLE %s;", geolocalizacionAnterior));
+        db.execSQL(String.format("DROP TABLE %s;", sesionAnterior));
+        db.execSQL(GeolocalizacionSQLite.SQL_CREAR_INDICE_GEOLOCALIZACION_SESION_FECHA);
+    }
+
+    /**
+     * @return Expresión SQL que convierte una columna de fecha en hora local ("YYYY-MM-DD HH:MM:SS")
+     * a milisegundos desde epoch (UTC). NULL permanece NULL.
+     */
+    private static String sqlFechaEpoch(String columna) {
+        return String.format("CAST(strftime('%%s', %s, 'utc') AS INTEGER) * 1000", columna);
+    }
+
+    /**
+     * @return Expresión SQL que convierte una columna de coordenadas en grados a unidades de 1e-7 grados.
+     */
+    private static String sqlCoordenadaE7(String columna) {
+        return String.format("CAST(ROUND(%s * %d) AS INTEGER)", columna, (long) CodificacionCoordenadas.UNIDADES_POR_GRADO);
     }
 
     /**
@@ -64,7 +261,15 @@ public final class SQLite extends SQLiteOpenHelper {
     @Override
     public void onCreate(SQLiteDatabase db) {
         db.execSQL(SesionSQLite.SQL_CREAR_TABLA_SESION);
+        db.execSQL(SesionSQLite.SQL_CREAR_INDICE_SESION_FECHA_INICIO);
         db.execSQL(GeolocalizacionSQLite.SQL_CREAR_TABLA_GEOLOCALIZACION);
+        db.execSQL(GeolocalizacionSQLite.SQL_CREAR_INDICE_GEOLOCALIZACION_SESION_FECHA);
+        db.execSQL(GeolocalizacionSQLite.SQL_CREAR_INDICE_GEOLOCALIZACION_CELDA);
+        db.execSQL(ResumenSesionSQLite.SQL_CREAR_TABLA_RESUMEN);
+        db.execSQL(MapaCalorSQLite.SQL_CREAR_TABLA_MAPA_CALOR);
+        db.execSQL(CompactacionSQLite.SQL_CREAR_TABLA_COMPACTACION);
+        db.execSQL(LatenciaSesionSQLite.SQL_CREAR_TABLA_LATENCIA);
+        db.execSQL(AjusteRutaSQLite.SQL_CREAR_TABLA_AJUSTE);
     }
 
     /**
@@ -74,9 +279,34 @@ public final class SQLite extends SQLiteOpenHelper {
      * El nombre de la base de datos es la concatenación del nombre de la base de datos especificado
      * en "DB" con el sufijo de nombre definido en esta clase.
      *
+     * Usa el perfil de durabilidad PERFIL_DURABILIDAD_DEFAULT.
+     *
      * @param contexto
      */
     public SQLite(Context contexto) {
-        super(contexto, DB.DB_NOMBRE + SQLITE_SUFIJO_NOMBRE_ARCHIVO_DB, null, DB.DB_VERSION);
+        this(contexto, PERFIL_DURABILIDAD_DEFAULT);
+    }
+
+    /**
+     * Igual que SQLite(contexto), pero con un perfil de durabilidad específico.
+     *
+     * @param contexto
+     * @param perfilDurabilidad Alguna de las constantes PERFIL_DURABILIDAD_*.
+     */
+    public SQLite(Context contexto, int perfilDurabilidad) {
+        this(contexto, DB.DB_NOMBRE + SQLITE_SUFIJO_NOMBRE_ARCHIVO_DB, perfilDurabilidad);
+    }
+
+    /**
+     * Igual que SQLite(contexto, perfilDurabilidad), pero con un nombre de archivo arbitrario. Usado
+     * por pruebas y benchmarks para no tocar la base de datos de la aplicación.
+     *
+     * @param contexto
+     * @param nombreArchivo Nombre del archivo de la base de datos, o null para una base de datos en memoria.
+     * @param perfilDurabilidad Alguna de las constantes PERFIL_DURABILIDAD_*.
+     */
+    SQLite(Context contexto, String nombreArchivo, int perfilDurabilidad) {
+        super(contexto, nombreArchivo, null, DB.DB_VERSION);
+        this.perfilDurabilidad = perfilDurabilidad;
     }
 }
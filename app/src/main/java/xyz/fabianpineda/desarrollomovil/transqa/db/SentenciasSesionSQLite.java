@@ -0,0 +1,75 @@
+package xyz.fabianpineda.desarrollomovil.transqa.db;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Statements SQL compilados usados por SesionSQLite para una conexión a la base de datos "DB".
+ *
+ * Cada statement es compilado una sola vez por conexión y reutilizado en cada operación de sesión,
+ * así que SQLite no vuelve a analizar ni planear el SQL. Los objetos de esta clase son obtenidos
+ * con obtener() y deben ser liberados con liberar() antes de cerrar la conexión.
+ *
+ * También se recuerda el nombre y fecha de inicio de las sesiones iniciadas con esta conexión que
+ * aún no han terminado. Así, terminar una sesión recién iniciada no requiere consultar su registro.
+ *
+ * Los statements no son seguros para ser usados desde varios hilos al mismo tiempo; quien los use
+ * debe sincronizar sobre el objeto de esta clase.
+ */
+final class SentenciasSesionSQLite {
+    // Un objeto por conexión abierta. Ver: obtener() y liberar().
+    private static final Map<SQLiteDatabase, SentenciasSesionSQLite> sentenciasPorConexion = new HashMap<>();
+
+    final SQLiteStatement insertar;
+    final SQLiteStatement terminar;
+
+    // Sesiones iniciadas con esta conexión y aún no terminadas. ID -> { nombre, fecha de inicio }
+    final Map<Long, Object[]> sesionesAbiertas = new HashMap<>();
+
+    private SentenciasSesionSQLite(SQLiteDatabase db) {
+        insertar = db.compileStatement(SesionSQLite.SQL_INSERTAR_SESION);
+        terminar = db.compileStatement(SesionSQLite.SQL_TERMINAR_SESION);
+    }
+
+    /**
+     * @param db Conexión abierta a la base de datos "DB".
+     * @return Los statements compilados para "db". Son compilados en el primer llamado para cada conexión.
+     */
+    static SentenciasSesionSQLite obtener(SQLiteDatabase db) {
+        synchronized (sentenciasPorConexion) {
+            SentenciasSesionSQLite sentencias = sentenciasPorConexion.get(db);
+
+            if (sentencias == null) {
+                sentencias = new SentenciasSesionSQLite(db);
+                sentenciasPorConexion.put(db, sentencias);
+            }
+
+            return sentencias;
+        }
+    }
+
+    /**
+     * Libera los statements compilados para "db", si existen. Debe ser llamado antes de cerrar la
+     * conexión.
+     *
+     * @param db Conexión a la base de datos "DB".
+     */
+    static void liberar(SQLiteDatabase db) {
+        SentenciasSesionSQLite sentencias;
+
+        synchronized (sentenciasPorConexion) {
+            sentencias = sentenciasPorConexion.remove(db);
+        }
+
+        if (sentencias != null) {
+            synchronized (sentencias) {
+                sentencias.insertar.close();
+                sentencias.terminar.close();
+                sentencias.sesionesAbiertas.clear();
+            }
+        }
+    }
+}
@@ -4,7 +4,8 @@ package xyz.fabianpineda.desarrollomovil.transqa.db;
  * Define la tabla/entidad Sesion en una base de datos relacional cualquiera.
  *
  * Cada entrada tiene una fecha de inicio y una fecha final; si no se encuentra una fecha final, se
- * asume qu la sesión aún no ha terminado.
+ * asume qu la sesión aún no ha terminado. Las fechas son almacenadas como milisegundos desde epoch
+ * (UTC). Ver: CodificacionCoordenadas
  *
  * Adicionalmente, una Sesion contiene 0 o más capturas de coordenadas "Geolocalizacion"; cada
  * entrada en la tabla Geolocalización está asociada a una Sesion por la ID de sesión.
@@ -1,7 +1,7 @@
 package xyz.fabianpineda.desarrollomovil.transqa.db;
 
-import android.content.ContentValues;
 import android.database.Cursor;
+import android.database.MatrixCursor;
 import android.database.sqlite.SQLiteDatabase;
 
 /**
@@ -9,7 +9,11 @@ import android.database.sqlite.SQLiteDatabase;
  *
  * Usado para crear y operar con la tabla "Sesion" en SQLite3 en la base de datos "DB".
  *
- * TODO: mover statements SQL dentro de métodos y hacerlos constantes, propiedades de clase.
+ * Las fechas de inicio y fin son enteros: milisegundos desde epoch (UTC).
+ *
+ * Todas las operaciones usan SQL constante con parámetros. Iniciar y terminar sesiones usa
+ * statements compilados una vez por conexión (ver SentenciasSesionSQLite); quien use estas
+ * operaciones debe llamar liberarSentencias() antes de cerrar la conexión.
  */
 public final class SesionSQLite {
     /**
@@ -19,8 +23,8 @@ public final class SesionSQLite {
         "CREATE TABLE %s (" +
             "%s INTEGER NOT NULL PRIMARY KEY AUTOINCREMENT UNIQUE," +
             "%s VARCHAR(255) NOT NULL DEFAULT ''," +
-            "%s DATETIME NOT NULL DEFAULT (datetime('now', 'localtime'))," +
-            "%s DATETIME" +
+            "%s INTEGER NOT NULL DEFAULT (CAST(strftime('%%s', 'now') AS INTEGER) * 1000)," +
+            "%s INTEGER" +
         ");",
 
         Sesion.TABLA_SESION,
@@ -31,6 +35,23 @@ public final class SesionSQLite {
         Sesion.TABLA_SESION_FECHA_FIN
     );
 
+    /**
+     * Nombre del índice de la tabla Sesion por fecha de inicio. Como todo índice de una tabla con
+     * rowid, incluye implícitamente la ID al final; así sirve para recorrer las sesiones en el
+     * orden (fecha_inicio, id) del listado. Ver: listarSesiones
+     */
+    static final String INDICE_SESION_FECHA_INICIO = "indice_sesion_fecha_inicio";
+
+    /**
+     * Definición del índice INDICE_SESION_FECHA_INICIO.
+     */
+    static final String SQL_CREAR_INDICE_SESION_FECHA_INICIO = String.format(
+        "CREATE INDEX %s ON %s (%s);",
+        INDICE_SESION_FECHA_INICIO,
+        Sesion.TABLA_SESION,
+        Sesion.TABLA_SESION_FECHA_INICIO
+    );
+
     /**
      * SQL para destruir la tabla Sesion.
      */
@@ -39,17 +60,109 @@ public final class SesionSQLite {
         Sesion.TABLA_SESION
     );
 
+    /**
+     * Inserta una nueva sesión con nombre y fecha de inicio.
+     */
+    static final String SQL_INSERTAR_SESION = String.format(
+        "INSERT INTO %s (%s, %s) VALUES (?, ?);",
+        Sesion.TABLA_SESION,
+        Sesion.TABLA_SESION_NOMBRE,
+        Sesion.TABLA_SESION_FECHA_INICIO
+    );
+
+    /**
+     * Agrega fecha de terminación a una sesión, sólo si aún no tiene una. Es una búsqueda en la
+     * llave primaria.
+     */
+    static final String SQL_TERMINAR_SESION = String.format(
+        "UPDATE %s SET %s = ? WHERE %s = ? AND %s IS NULL;",
+        Sesion.TABLA_SESION,
+        Sesion.TABLA_SESION_FECHA_FIN,
+        Sesion.TABLA_SESION_ID,
+        Sesion.TABLA_SESION_FECHA_FIN
+    );
+
+    /**
+     * Selecciona una sesión por ID. Las columnas están en el orden Sesion.TABLA_SESION_*_INDICE.
+     *
+     * Al ser SQL constante, Android reutiliza el statement compilado de su caché por conexión.
+     */
+    static final String SQL_SELECCIONAR_SESION = String.format(
+        "SELECT %s, %s, %s, %s FROM %s WHERE %s = ? LIMIT 1;",
+        Sesion.TABLA_SESION_ID,
+        Sesion.TABLA_SESION_NOMBRE,
+        Sesion.TABLA_SESION_FECHA_INICIO,
+        Sesion.TABLA_SESION_FECHA_FIN,
+        Sesion.TABLA_SESION,
+        Sesion.TABLA_SESION_ID
+    );
+
+    /**
+     * Selecciona una página del listado de sesiones, de la más reciente a la más antigua: orden
+     * (fecha_inicio, id) descendente. Las columnas están en el orden Sesion.TABLA_SESION_*_INDICE.
+     *
+     * La página empieza después de la última sesión de la página anterior ("keyset"), así que
+     * recorre INDICE_SESION_FECHA_INICIO desde esa posición sin contar ni saltar filas anteriores,
+     * como lo haría OFFSET. La primera condición limita el recorrido del índice; la segunda
+     * descarta, dentro de la misma fecha de inicio, las sesiones ya listadas.
+     *
+     * Parámetros: fecha mínima (inclusiva), fecha máxima (inclusiva), fecha e ID de la última
+     * sesión de la página anterior, patrón LIKE del nombre y límite. Ver: listarSesiones
+     */
+    static final String SQL_LISTAR_SESIONES = String.format(
+        "SELECT %s, %s, %s, %s FROM %s " +
+            "WHERE %s >= ? AND %s <= ? AND (%s < ? OR %s < ?) AND %s LIKE ? ESCAPE '\\' " +
+            "ORDER BY %s DESC, %s DESC LIMIT ?;",
+        Sesion.TABLA_SESION_ID,
+        Sesion.TABLA_SESION_NOMBRE,
+        Sesion.TABLA_SESION_FECHA_INICIO,
+        Sesion.TABLA_SESION_FECHA_FIN,
+        Sesion.TABLA_SESION,
+        Sesion.TABLA_SESION_FECHA_INICIO,
+        Sesion.TABLA_SESION_FECHA_INICIO,
+        Sesion.TABLA_SESION_FECHA_INICIO,
+        Sesion.TABLA_SESION_ID,
+        Sesion.TABLA_SESION_NOMBRE,
+        Sesion.TABLA_SESION_FECHA_INICIO,
+        Sesion.TABLA_SESION_ID
+    );
+
+    /**
+     * Nombres de columnas de los Cursor creados a partir de valores recién escritos, en el orden
+     * Sesion.TABLA_SESION_*_INDICE.
+     */
+    private static final String[] COLUMNAS_SESION = {
+        Sesion.TABLA_SESION_ID,
+        Sesion.TABLA_SESION_NOMBRE,
+        Sesion.TABLA_SESION_FECHA_INICIO,
+        Sesion.TABLA_SESION_FECHA_FIN
+    };
+
+    /**
+     * @return Un Cursor de una sola fila, ya posicionado en ella, con los valores especificados.
+     */
+    private static Cursor cursorSesion(long id, String nombre, Long fechaInicio, Long fechaFin) {
+        MatrixCursor sesion = new MatrixCursor(COLUMNAS_SESION, 1);
+        sesion.addRow(new Object[] { id, nombre, fechaInicio, fechaFin });
+        sesion.moveToFirst();
+
+        return sesion;
+    }
+
     /**
      * Inicia una nueva Sesion; crea un nuevo registro Sesion y regresa sus datos.
      *
+     * Los datos regresados son los valores recién escritos; no se consulta el registro creado.
+     *
      * @param db Conexion abierta a una SQLiteDatabase con la base de datos "DB", con permisos de lectura y escritura
      * @param nombre Nombre o comentario de sesión. Puede ser null. Null será tratado como una String vacía.
      *
      * @return Un objeto Cursor con los resultados (información) de la nueva Sesion creada, o null si no se pudo crear. Debe ser cerrado posteriormente llamado su método close()
      */
     public static final Cursor iniciarSesion(SQLiteDatabase db, String nombre) {
-        Cursor temp;
-        long id = 0;
+        SentenciasSesionSQLite sentencias = SentenciasSesionSQLite.obtener(db);
+        long fechaInicio = System.currentTimeMillis();
+        long id;
 
         String n = "";
 
@@ -57,18 +170,24 @@ public final class SesionSQLite {
             n = nombre.trim();
         }
 
-        ContentValues valoresNuevaSesion = new ContentValues();
-        valoresNuevaSesion.put(Sesion.TABLA_SESION_NOMBRE, n);
+        synchronized (sentencias) {
+            try {
+                sentencias.insertar.bindString(1, n);
+                sentencias.insertar.bindLong(2, fechaInicio);
+                id = sentencias.insertar.executeInsert();
+            } finally {
+                sentencias.insertar.clearBindings();
+            }
 
-        id = db.insert(Sesion.TABLA_SESION, null, valoresNuevaSesion);
+            // Registro no fue creado. Regresando null.
+            if (id < 1) {
+                return null;
+            }
 
-        // Regresa el Cursor si y solo si contiene un resultado después de inserción.
-        if (id > 0 && (temp = seleccionarSesion(db, id)) != null && temp.moveToFirst()) {
-            return temp;
+            sentencias.sesionesAbiertas.put(id, new Object[] { n, fechaInicio });
         }
 
-        // Registro no existe. Regresando null.
-        return null;
+        return cursorSesion(id, n, fechaInicio, null);
     }
 
     /**
@@ -81,62 +200,157 @@ public final class SesionSQLite {
      */
     public static final Cursor seleccionarSesion(SQLiteDatabase db, long id) {
         Cursor temp;
-        String consulta = String.format(
-            "SELECT * FROM %s WHERE %s = %s LIMIT 1",
-            Sesion.TABLA_SESION,
-            Sesion.TABLA_SESION_ID,
-            String.valueOf(id)
-        );
 
         // Sólo se regresa el Cursor si existe un registro Sesion con ID "id"
-        if ((temp = db.rawQuery(consulta, null)) != null && temp.moveToFirst()) {
-            return temp;
+        if ((temp = db.rawQuery(SQL_SELECCIONAR_SESION, new String[] { String.valueOf(id) })) != null) {
+            if (temp.moveToFirst()) {
+                return temp;
+            }
+
+            temp.close();
         }
 
         // Registro no existe. Regresando null.
         return null;
     }
 
+    /**
+     * Selecciona una página del listado de sesiones, de la más reciente a la más antigua (orden
+     * fecha de inicio, ID descendente). Ver: SQL_LISTAR_SESIONES
+     *
+     * Para obtener la página siguiente, "fecha_anterior" e "id_anterior" deben ser la fecha de
+     * inicio y la ID de la última sesión de la página actual. El costo de cada página depende
+     * sólo de "limite" (y de cuántas sesiones descarta el filtro por nombre), no de su posición.
+     *
+     * @param db Conexion abierta a una SQLiteDatabase con la base de datos "DB".
+     * @param nombre Texto que debe contener el nombre de las sesiones, sin distinguir mayúsculas (ASCII). null o vacío para no filtrar por nombre.
+     * @param desde Fecha de inicio mínima, inclusiva, en milisegundos desde epoch (UTC). Long.MIN_VALUE para no limitar.
+     * @param hasta Fecha de inicio máxima, inclusiva, en milisegundos desde epoch (UTC). Long.MAX_VALUE para no limitar.
+     * @param fecha_anterior Fecha de inicio de la última sesión de la página anterior; Long.MAX_VALUE para la primera página.
+     * @param id_anterior ID de la última sesión de la página anterior; Long.MAX_VALUE para la primera página.
+     * @param limite Máximo de sesiones seleccionadas.
+     *
+     * @return Cursor con columnas en el orden Sesion.TABLA_SESION_*_INDICE. Debe ser cerrado posteriormente usando su método close()
+     */
+    public static final Cursor listarSesiones(SQLiteDatabase db, String nombre, long desde, long hasta, long fecha_anterior, long id_anterior, int limite) {
+        String patron = "%";
+
+        if (nombre != null && nombre.trim().length() > 0) {
+            patron = "%" + nombre.trim().replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%";
+        }
+
+        return db.rawQuery(SQL_LISTAR_SESIONES, new String[] {
+            String.valueOf(desde),
+            String.valueOf(Math.min(hasta, fecha_anterior)),
+            String.valueOf(fecha_anterior),
+            String.valueOf(id_anterior),
+            patron,
+            String.valueOf(limite)
+        });
+    }
+
+    /**
+     * Crea el índice INDICE_SESION_FECHA_INICIO de la versión 8 de "DB". Debe ser ejecutado
+     * dentro de la transacción de SQLiteOpenHelper.onUpgrade.
+     *
+     * @param db La base de datos SQLite3 en versión 7.
+     */
+    static void migrarVersion8(SQLiteDatabase db) {
+        db.execSQL(SQL_CREAR_INDICE_SESION_FECHA_INICIO);
+    }
+
     /**
      * Termina una sesión abierta, agregando una fecha de terminación.
      *
+     * La sesión es terminada con un solo UPDATE condicional, y su resumen es marcado como
+     * terminado (ver ResumenSesionSQLite.terminarResumen) en la misma transacción. Si la sesión
+     * fue iniciada con la misma conexión, los datos regresados son los valores conocidos y recién
+     * escritos; en otro caso (por ejemplo, después de que el servicio es reiniciado) se consulta el
+     * registro una vez.
+     *
      * @param db Conexion abierta a una SQLiteDatabase con la base de datos "DB", con permisos de lectura y escritura
      * @param id ID de la sesión abierta que se desea cerrar.
      *
      * @return Un Cursor con la información de la sesión cerrada. Regresa null si la sesión no existe o si ya estaba terminada. En este último caso, la fecha de terminación de sesión quedará intacta.
      */
     public static final Cursor terminarSesion(SQLiteDatabase db, long id) {
-        Cursor sesion;
-
-        String update = String.format(
-            "UPDATE %s SET %s = (datetime('now','localtime')) WHERE %s = %d",
-            Sesion.TABLA_SESION,
-            Sesion.TABLA_SESION_FECHA_FIN,
-            Sesion.TABLA_SESION_ID,
-            id
-        );
-
-        // Es un error si la sesión no existe o si "id" es un ID inválido.
-        if (id < 1 || (sesion = seleccionarSesion(db, id)) == null || !sesion.moveToFirst()) {
+        return terminarSesion(db, id, null);
+    }
+
+    /**
+     * Igual que terminarSesion(db, id), pero además guarda las latencias de escritura medidas
+     * durante la sesión (ver LatenciaSesionSQLite), sólo si la sesión fue terminada. Si alguna de
+     * las escrituras falla, ninguna queda guardada y la sesión sigue abierta.
+     *
+     * @param db Conexion abierta a una SQLiteDatabase con la base de datos "DB", con permisos de lectura y escritura
+     * @param id ID de la sesión abierta que se desea cerrar.
+     * @param latencias Latencias de la sesión "id", o null si no fueron medidas.
+     *
+     * @return Un Cursor con la información de la sesión cerrada, o null. Ver: terminarSesion(db, id)
+     */
+    public static final Cursor terminarSesion(SQLiteDatabase db, long id, RegistroLatencias latencias) {
+        // Es un error si "id" es un ID inválido.
+        if (id < 1) {
             return null;
         }
 
-        // Si la sesión existe y no tiene fecha de terminación, entonces la sesión está abierta y puede ser terminada.
-        if (sesion.getString(Sesion.TABLA_SESION_FECHA_FIN_INDICE) == null) {
-            sesion.close();
+        SentenciasSesionSQLite sentencias = SentenciasSesionSQLite.obtener(db);
+        long fechaFin = System.currentTimeMillis();
+        Object[] sesionAbierta;
+        int actualizadas;
 
-            db.execSQL(update);
+        // La fecha de terminación, el resumen y las latencias se guardan juntos o no se guardan.
+        db.beginTransaction();
+        try {
+            synchronized (sentencias) {
+                try {
+                    sentencias.terminar.bindLong(1, fechaFin);
+                    sentencias.terminar.bindLong(2, id);
+                    actualizadas = sentencias.terminar.executeUpdateDelete();
+                } finally {
+                    sentencias.terminar.clearBindings();
+                }
+            }
 
-            // Esto nunca debería ocurrir. Pero si ocurre (fila actualizada deja de existir por alguna razón) se regresa null. Es un error.
-            if ((sesion = seleccionarSesion(db, id)) == null || !sesion.moveToFirst() || sesion.getString(Sesion.TABLA_SESION_FECHA_FIN_INDICE) == null) {
-                return null;
+            if (actualizadas == 1) {
+                ResumenSesionSQLite.terminarResumen(db, id);
+
+                if (latencias != null && latencias.idSesion == id) {
+                    LatenciaSesionSQLite.guardarLatencias(db, latencias);
+                }
             }
 
-            // La sesión existe, estaba abierta y fue cerrada exitosamente. Se regresa su Cursor.
-            return sesion;
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
         }
 
-        // La sesión existe pero ya estaba cerrada. Quedará intacta y se regresará null. Es un error.
-        return null;
+        // Sólo después de confirmar la transacción; si falla, la sesión sigue abierta.
+        synchronized (sentencias) {
+            sesionAbierta = sentencias.sesionesAbiertas.remove(id);
+        }
+
+        // La sesión no existe o ya estaba cerrada. Quedará intacta y se regresará null. Es un error.
+        if (actualizadas != 1) {
+            return null;
+        }
+
+        // La sesión existe, estaba abierta y fue cerrada exitosamente. Se regresa su Cursor.
+        if (sesionAbierta != null) {
+            return cursorSesion(id, (String) sesionAbierta[0], (Long) sesionAbierta[1], fechaFin);
+        }
+
+        return seleccionarSesion(db, id);
+    }
+
+    /**
+     * Libera los statements compilados usados por las operaciones de sesión con "db". Debe ser
+     * llamado antes de cerrar la conexión. Usar una operación de sesión después de este llamado
+     * vuelve a compilar los statements.
+     *
+     * @param db Conexion a una SQLiteDatabase con la base de datos "DB".
+     */
+    public static final void liberarSentencias(SQLiteDatabase db) {
+        SentenciasSesionSQLite.liberar(db);
     }
 }
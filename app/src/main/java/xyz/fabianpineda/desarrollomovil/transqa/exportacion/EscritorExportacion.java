@@ -0,0 +1,170 @@
+package xyz.fabianpineda.desarrollomovil.transqa.exportacion;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+
+import xyz.fabianpineda.desarrollomovil.transqa.db.CodificacionCoordenadas;
+import xyz.fabianpineda.desarrollomovil.transqa.db.RegistroSesion;
+
+/**
+ * Escribe una sesión en el formato binario de exportación (ver FormatoExportacion), capturas a
+ * medida que llegan: sólo un bloque de capturas es mantenido en memoria, sin importar la duración
+ * de la sesión.
+ *
+ * Uso: crear el escritor (escribe el encabezado), llamar agregar() por cada captura en orden, y
+ * llamar terminar(). Para exportar una sesión de un almacén, ver ExportadorSesion.FORMATO_TQAX.
+ *
+ * Esta clase no es segura para ser usada desde varios hilos al mismo tiempo.
+ *
+ * No se debe incluir en este objeto código específico de Android, para poder probarlo localmente.
+ */
+public final class EscritorExportacion {
+    private final DataOutputStream salida;
+    private final CRC32 crc = new CRC32();
+
+    // Bloque actual: columnas sin codificar, y contenido codificado.
+    private final long[] fechas;
+    private final int[] latitudes;
+    private final int[] longitudes;
+    private final byte[] contenido;
+    private final byte[] encabezadoBloque = new byte[2 * FormatoExportacion.VARINT_MAXIMO_BYTES];
+    private int cantidad;
+
+    private long capturas;
+    private boolean terminado;
+
+    /**
+     * Escribe el encabezado de la exportación de "sesion".
+     *
+     * @param salida Destino. No es cerrado por este objeto.
+     * @param sesion Sesión exportada.
+     */
+    public EscritorExportacion(OutputStream salida, RegistroSesion sesion) throws IOException {
+        this(salida, sesion, FormatoExportacion.FORMATO_CAPTURAS_POR_BLOQUE);
+    }
+
+    /**
+     * @param capturasPorBloque Máximo de capturas por bloque. Debe ser mayor que 0.
+     */
+    EscritorExportacion(OutputStream salida, RegistroSesion sesion, int capturasPorBloque) throws IOException {
+        if (capturasPorBloque < 1) {
+            throw new IllegalArgumentException("capturasPorBloque < 1");
+        }
+
+        this.salida = new DataOutputStream(salida);
+
+        fechas = new long[capturasPorBloque];
+        latitudes = new int[capturasPorBloque];
+        longitudes = new int[capturasPorBloque];
+        contenido = new byte[3 * capturasPorBloque * FormatoExportacion.VARINT_MAXIMO_BYTES];
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream encabezado = new DataOutputStream(bytes);
+
+        encabezado.writeInt(FormatoExportacion.FORMATO_MARCA);
+        encabezado.writeByte(FormatoExportacion.FORMATO_VERSION);
+        encabezado.writeLong(sesion.id);
+        encabezado.writeUTF(sesion.nombre != null ? sesion.nombre : "");
+        encabezado.writeLong(sesion.fechaInicio);
+        encabezado.writeLong(sesion.fechaFin);
+        encabezado.flush();
+
+        byte[] datos = bytes.toByteArray();
+        crc.reset();
+        crc.update(datos, 0, datos.length);
+
+        this.salida.write(datos);
+        this.salida.writeInt((int) crc.getValue());
+    }
+
+    /**
+     * @return Número de capturas agregadas.
+     */
+    public long capturas() {
+        return capturas;
+    }
+
+    /**
+     * @return Número de bytes escritos hasta el momento.
+     */
+    public long bytes() {
+        return salida.size() & 0xFFFFFFFFL;
+    }
+
+    /**
+     * Agrega una captura. Las capturas deben ser agregadas en el orden de la sesión.
+     *
+     * @param latitud Coordenada. Latitud, en grados.
+     * @param longitud Coordenada. Longitud, en grados.
+     * @param fecha Fecha de captura en milisegundos desde epoch (UTC).
+     */
+    public void agregar(double latitud, double longitud, long fecha) throws IOException {
+        if (terminado) {
+            throw new IllegalStateException("Exportación terminada.");
+        }
+
+        fechas[cantidad] = fecha;
+        latitudes[cantidad] = CodificacionCoordenadas.codificar(latitud);
+        longitudes[cantidad] = CodificacionCoordenadas.codificar(longitud);
+        capturas++;
+
+        if (++cantidad == fechas.length) {
+            escribirBloque();
+        }
+    }
+
+    /**
+     * Escribe las capturas pendientes y el final de la exportación. No cierra la salida.
+     */
+    public void terminar() throws IOException {
+        if (terminado) {
+            return;
+        }
+
+        escribirBloque();
+        salida.writeByte(0);
+        salida.flush();
+        terminado = true;
+    }
+
+    private void escribirBloque() throws IOException {
+        if (cantidad == 0) {
+            return;
+        }
+
+        int n = 0;
+        long anterior = 0;
+
+        for (int i = 0; i < cantidad; i++) {
+            n = FormatoExportacion.escribirVarint(contenido, n, FormatoExportacion.zigzag(fechas[i] - anterior));
+            anterior = fechas[i];
+        }
+
+        anterior = 0;
+        for (int i = 0; i < cantidad; i++) {
+            n = FormatoExportacion.escribirVarint(contenido, n, FormatoExportacion.zigzag(latitudes[i] - anterior));
+            anterior = latitudes[i];
+        }
+
+        anterior = 0;
+        for (int i = 0; i < cantidad; i++) {
+            n = FormatoExportacion.escribirVarint(contenido, n, FormatoExportacion.zigzag(longitudes[i] - anterior));
+            anterior = longitudes[i];
+        }
+
+        crc.reset();
+        crc.update(contenido, 0, n);
+
+        int e = FormatoExportacion.escribirVarint(encabezadoBloque, 0, cantidad);
+        e = FormatoExportacion.escribirVarint(encabezadoBloque, e, n);
+
+        salida.write(encabezadoBloque, 0, e);
+        salida.write(contenido, 0, n);
+        salida.writeInt((int) crc.getValue());
+
+        cantidad = 0;
+    }
+}
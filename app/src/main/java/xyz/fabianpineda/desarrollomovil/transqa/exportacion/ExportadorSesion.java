@@ -0,0 +1,524 @@
+package xyz.fabianpineda.desarrollomovil.transqa.exportacion;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import xyz.fabianpineda.desarrollomovil.transqa.db.AlmacenCapturas;
+import xyz.fabianpineda.desarrollomovil.transqa.db.AlmacenSesiones;
+import xyz.fabianpineda.desarrollomovil.transqa.db.CodificacionCoordenadas;
+import xyz.fabianpineda.desarrollomovil.transqa.db.RegistroSesion;
+
+/**
+ * Exporta una sesión a GPX, GeoJSON, CSV o al formato binario TQAX (ver FormatoExportacion),
+ * escribiendo directamente a un OutputStream.
+ *
+ * Las capturas son leídas por páginas (ver AlmacenCapturas.leerPagina) de tamaño fijo, y cada
+ * página es escrita antes de leer la siguiente; la memoria usada no depende del tamaño de la
+ * sesión. Con SQLite, cada página cabe en un solo CursorWindow.
+ *
+ * La exportación puede ser cancelada desde otro hilo con cancelar(); la cancelación es atendida
+ * entre páginas. Después de cada página se informa el progreso a un ProgresoExportacion, si existe.
+ *
+ * Formatos (ver FORMATO_*):
+ *
+ *      * FORMATO_GPX: GPX 1.1, un "trk" con un "trkseg" y un "trkpt" (con "time") por captura.
+ *      * FORMATO_GEOJSON: un FeatureCollection con un Feature "Point" por captura. Sus
+ *        "properties" son la secuencia y la fecha (milisegundos desde epoch). Los datos de la
+ *        sesión van en "properties" del FeatureCollection.
+ *      * FORMATO_CSV: columnas secuencia, latitud, longitud, fecha (milisegundos desde epoch) y
+ *        fecha_utc (ISO 8601), con una línea de encabezado.
+ *      * FORMATO_TQAX: ver FormatoExportacion. Es el más compacto.
+ *
+ * Coordenadas en grados con hasta 7 decimales; son exactamente las almacenadas (ver
+ * CodificacionCoordenadas). Textos en UTF-8, con "\n" como fin de línea.
+ *
+ * Un objeto exporta una sesión a la vez: exportar() no debe ser llamado desde varios hilos al
+ * mismo tiempo. cancelar() puede ser llamado desde cualquier hilo.
+ *
+ * No se debe incluir en este objeto código específico de Android, para poder probarlo localmente.
+ */
+public final class ExportadorSesion {
+    public static final int FORMATO_GPX = 0;
+    public static final int FORMATO_GEOJSON = 1;
+    public static final int FORMATO_CSV = 2;
+    public static final int FORMATO_TQAX = 3;
+
+    public static final int EXPORTACION_CAPTURAS_POR_PAGINA_DEFAULT = 1000;
+
+    /**
+     * Valor regresado por exportar() si la exportación fue cancelada.
+     */
+    public static final long EXPORTACION_CANCELADA = -1L;
+
+    private static final int ESCRITURA_BUFFER_BYTES = 16384;
+
+    /**
+     * Recibe el progreso de una exportación, desde el hilo que la realiza.
+     */
+    public interface ProgresoExportacion {
+        /**
+         * @param exportadas Capturas exportadas hasta el momento.
+         * @param total Capturas de la sesión al iniciar la exportación.
+         */
+        void progresoExportacion(long exportadas, long total);
+    }
+
+    private final AlmacenSesiones sesiones;
+    private final AlmacenCapturas capturas;
+
+    // Página actual. Cada índice i < cantidad es una captura.
+    private final long[] secuencias;
+    private final double[] latitudes;
+    private final double[] longitudes;
+    private final long[] fechas;
+    private int cantidad;
+
+    private final AlmacenCapturas.LectorCapturas lectorPagina = new AlmacenCapturas.LectorCapturas() {
+        @Override
+        public void capturaLeida(long secuencia, double latitud, double longitud, long fecha) {
+            secuencias[cantidad] = secuencia;
+            latitudes[cantidad] = latitud;
+            longitudes[cantidad] = longitud;
+            fechas[cantidad] = fecha;
+            cantidad++;
+        }
+    };
+
+    private volatile boolean cancelada;
+
+    /**
+     * @param sesiones Almacén del que se leen los datos de la sesión.
+     * @param capturas Almacén del que se leen las capturas de la sesión.
+     */
+    public ExportadorSesion(AlmacenSesiones sesiones, AlmacenCapturas capturas) {
+        this(sesiones, capturas, EXPORTACION_CAPTURAS_POR_PAGINA_DEFAULT);
+    }
+
+    /**
+     * @param capturasPorPagina Capturas leídas por cada página. Debe ser mayor que 0.
+     */
+    ExportadorSesion(AlmacenSesiones sesiones, AlmacenCapturas capturas, int capturasPorPagina) {
+        if (capturasPorPagina < 1) {
+            throw new IllegalArgumentException("capturasPorPagina < 1");
+        }
+
+        this.sesiones = sesiones;
+        this.capturas = capturas;
+
+        secuencias = new long[capturasPorPagina];
+        latitudes = new double[capturasPorPagina];
+        longitudes = new double[capturasPorPagina];
+        fechas = new long[capturasPorPagina];
+    }
+
+    /**
+     * Cancela la exportación en curso, si existe, y las siguientes. Puede ser llamado desde
+     * cualquier hilo.
+     */
+    public void cancelar() {
+        cancelada = true;
+    }
+
+    /**
+     * @return true si cancelar() fue llamado.
+     */
+    public boolean cancelada() {
+        return cancelada;
+    }
+
+    /**
+     * Exporta la sesión "idSesion" con sus capturas escritas.
+     *
+     * Si la exportación es cancelada, lo escrito en "salida" hasta ese momento queda incompleto y
+     * debe ser descartado.
+     *
+     * @param idSesion ID de la sesión.
+     * @param formato Alguna de las constantes FORMATO_*.
+     * @param salida Destino. No es cerrado.
+     * @param progreso Recibe el progreso después de cada página. Puede ser null.
+     *
+     * @return Número de capturas exportadas, o EXPORTACION_CANCELADA.
+     *
+     * @throws IllegalArgumentException Si la sesión no existe o el formato no es válido.
+     */
+    public long exportar(long idSesion, int formato, OutputStream salida, ProgresoExportacion progreso) throws IOException {
+        RegistroSesion sesion = sesiones.seleccionarSesion(idSesion);
+
+        if (sesion == null) {
+            throw new IllegalArgumentException("Sesión inexistente: " + idSesion);
+        }
+
+        Formato destino = crearFormato(formato, salida);
+        long total = capturas.contarCapturas(idSesion);
+        long exportadas = 0;
+        long ultimaSecuencia = 0;
+        int capturasPorPagina = secuencias.length;
+
+        destino.iniciar(sesion);
+
+        while (true) {
+            if (cancelada) {
+                destino.interrumpir();
+                return EXPORTACION_CANCELADA;
+            }
+
+            cantidad = 0;
+            int leidas = capturas.leerPagina(idSesion, ultimaSecuencia, capturasPorPagina, lectorPagina);
+
+            for (int i = 0; i < leidas; i++) {
+                destino.captura(secuencias[i], latitudes[i], longitudes[i], fechas[i]);
+            }
+
+            if (leidas > 0) {
+                ultimaSecuencia = secuencias[leidas - 1];
+                exportadas += leidas;
+            }
+
+            if (progreso != null) {
+                progreso.progresoExportacion(exportadas, Math.max(total, exportadas));
+            }
+
+            if (leidas < capturasPorPagina) {
+                break;
+            }
+        }
+
+        destino.terminar();
+        return exportadas;
+    }
+
+    /**
+     * @param formato Alguna de las constantes FORMATO_*.
+     * @return Extensión de archivo del formato, sin punto.
+     *
+     * @throws IllegalArgumentException Si el formato no es válido.
+     */
+    public static String extension(int formato) {
+        switch (formato) {
+            case FORMATO_GPX:
+                return "gpx";
+            case FORMATO_GEOJSON:
+                return "geojson";
+            case FORMATO_CSV:
+                return "csv";
+            case FORMATO_TQAX:
+                return "tqax";
+            default:
+                throw new IllegalArgumentException("Formato inválido: " + formato);
+        }
+    }
+
+    /**
+     * @param formato Alguna de las constantes FORMATO_*.
+     * @return Tipo MIME del formato, para compartir el archivo exportado con otras aplicaciones.
+     *
+     * @throws IllegalArgumentException Si el formato no es válido.
+     */
+    public static String tipoMime(int formato) {
+        switch (formato) {
+            case FORMATO_GPX:
+                return "application/gpx+xml";
+            case FORMATO_GEOJSON:
+                return "application/geo+json";
+            case FORMATO_CSV:
+                return "text/csv";
+            case FORMATO_TQAX:
+                return "application/octet-stream";
+            default:
+                throw new IllegalArgumentException("Formato inválido: " + formato);
+        }
+    }
+
+    private static Formato crearFormato(int formato, OutputStream salida) throws IOException {
+        switch (formato) {
+            case FORMATO_GPX:
+                return new FormatoGPX(salida);
+            case FORMATO_GEOJSON:
+                return new FormatoGeoJSON(salida);
+            case FORMATO_CSV:
+                return new FormatoCSV(salida);
+            case FORMATO_TQAX:
+                return new FormatoTQAX(salida);
+            default:
+                throw new IllegalArgumentException("Formato inválido: " + formato);
+        }
+    }
+
+    /**
+     * Escritor de un formato de exportación.
+     */
+    private static abstract class Formato {
+        abstract void iniciar(RegistroSesion sesion) throws IOException;
+
+        abstract void captura(long secuencia, double latitud, double longitud, long fecha) throws IOException;
+
+        abstract void terminar() throws IOException;
+
+        /**
+         * Escribe lo pendiente sin terminar el formato, al cancelar.
+         */
+        abstract void interrumpir() throws IOException;
+    }
+
+    private static final class FormatoTQAX extends Formato {
+        private final OutputStream salida;
+        private EscritorExportacion escritor;
+
+        FormatoTQAX(OutputStream salida) {
+            this.salida = salida;
+        }
+
+        @Override
+        void iniciar(RegistroSesion sesion) throws IOException {
+            escritor = new EscritorExportacion(salida, sesion);
+        }
+
+        @Override
+        void captura(long secuencia, double latitud, double longitud, long fecha) throws IOException {
+            escritor.agregar(latitud, longitud, fecha);
+        }
+
+        @Override
+        void terminar() throws IOException {
+            escritor.terminar();
+        }
+
+        @Override
+        void interrumpir() throws IOException {
+            salida.flush();
+        }
+    }
+
+    /**
+     * Base de los formatos de texto: escritura con buffer en UTF-8 y conversión de números y
+     * fechas sin pasar por String.format (que es lento y depende del Locale).
+     */
+    private static abstract class FormatoTexto extends Formato {
+        final Writer salida;
+
+        private final SimpleDateFormat formatoFecha = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'", Locale.US);
+        private final Date fecha = new Date();
+        private final char[] numero = new char[24];
+
+        FormatoTexto(OutputStream salida) throws IOException {
+            this.salida = new BufferedWriter(new OutputStreamWriter(salida, "UTF-8"), ESCRITURA_BUFFER_BYTES);
+            formatoFecha.setTimeZone(TimeZone.getTimeZone("UTC"));
+        }
+
+        @Override
+        void interrumpir() throws IOException {
+            salida.flush();
+        }
+
+        /**
+         * Escribe una coordenada en grados, con los decimales necesarios (a lo sumo 7).
+         */
+        final void grados(double grados) throws IOException {
+            long valor = CodificacionCoordenadas.codificar(grados);
+            boolean negativo = valor < 0;
+
+            if (negativo) {
+                valor = -valor;
+            }
+
+            long fraccion = valor % 10000000L;
+            int decimales = 7;
+
+            while (decimales > 1 && fraccion % 10 == 0) {
+                fraccion /= 10;
+                decimales--;
+            }
+
+            int p = numero.length;
+
+            for (int i = 0; i < decimales; i++) {
+                numero[--p] = (char) ('0' + fraccion % 10);
+                fraccion /= 10;
+            }
+
+            numero[--p] = '.';
+            valor /= 10000000L;
+
+            do {
+                numero[--p] = (char) ('0' + valor % 10);
+                valor /= 10;
+            } while (valor > 0);
+
+            if (negativo) {
+                numero[--p] = '-';
+            }
+
+            salida.write(numero, p, numero.length - p);
+        }
+
+        /**
+         * Escribe una fecha en milisegundos desde epoch como ISO 8601 en UTC.
+         */
+        final void fechaUTC(long milisegundos) throws IOException {
+            fecha.setTime(milisegundos);
+            salida.write(formatoFecha.format(fecha));
+        }
+
+        final void entero(long valor) throws IOException {
+            salida.write(Long.toString(valor));
+        }
+    }
+
+    private static final class FormatoGPX extends FormatoTexto {
+        FormatoGPX(OutputStream salida) throws IOException {
+            super(salida);
+        }
+
+        @Override
+        void iniciar(RegistroSesion sesion) throws IOException {
+            salida.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+            salida.write("<gpx version=\"1.1\" creator=\"TransQA\" xmlns=\"http://www.topografix.com/GPX/1/1\">\n");
+            salida.write("<metadata><name>");
+            xml(sesion.nombre);
+            salida.write("</name><time>");
+            fechaUTC(sesion.fechaInicio);
+            salida.write("</time></metadata>\n<trk><name>");
+            xml(sesion.nombre);
+            salida.write("</name><number>");
+            entero(sesion.id);
+            salida.write("</number><trkseg>\n");
+        }
+
+        @Override
+        void captura(long secuencia, double latitud, double longitud, long fecha) throws IOException {
+            salida.write("<trkpt lat=\"");
+            grados(latitud);
+            salida.write("\" lon=\"");
+            grados(longitud);
+            salida.write("\"><time>");
+            fechaUTC(fecha);
+            salida.write("</time></trkpt>\n");
+        }
+
+        @Override
+        void terminar() throws IOException {
+            salida.write("</trkseg></trk>\n</gpx>\n");
+            salida.flush();
+        }
+
+        private void xml(String texto) throws IOException {
+            for (int i = 0; i < texto.length(); i++) {
+                char c = texto.charAt(i);
+
+                switch (c) {
+                    case '<': salida.write("&lt;"); break;
+                    case '>': salida.write("&gt;"); break;
+                    case '&': salida.write("&amp;"); break;
+                    case '"': salida.write("&quot;"); break;
+                    case '\'': salida.write("&apos;"); break;
+                    default: salida.write(c);
+                }
+            }
+        }
+    }
+
+    private static final class FormatoGeoJSON extends FormatoTexto {
+        private boolean primera = true;
+
+        FormatoGeoJSON(OutputStream salida) throws IOException {
+            super(salida);
+        }
+
+        @Override
+        void iniciar(RegistroSesion sesion) throws IOException {
+            salida.write("{\"type\":\"FeatureCollection\",\"properties\":{\"id\":");
+            entero(sesion.id);
+            salida.write(",\"nombre\":");
+            json(sesion.nombre);
+            salida.write(",\"fechaInicio\":");
+            entero(sesion.fechaInicio);
+            salida.write(",\"fechaFin\":");
+
+            if (sesion.terminada()) {
+                entero(sesion.fechaFin);
+            } else {
+                salida.write("null");
+            }
+
+            salida.write("},\"features\":[");
+        }
+
+        @Override
+        void captura(long secuencia, double latitud, double longitud, long fecha) throws IOException {
+            salida.write(primera ? "\n" : ",\n");
+            primera = false;
+
+            salida.write("{\"type\":\"Feature\",\"geometry\":{\"type\":\"Point\",\"coordinates\":[");
+            grados(longitud);
+            salida.write(',');
+            grados(latitud);
+            salida.write("]},\"properties\":{\"secuencia\":");
+            entero(secuencia);
+            salida.write(",\"fecha\":");
+            entero(fecha);
+            salida.write("}}");
+        }
+
+        @Override
+        void terminar() throws IOException {
+            salida.write("\n]}\n");
+            salida.flush();
+        }
+
+        private void json(String texto) throws IOException {
+            salida.write('"');
+
+            for (int i = 0; i < texto.length(); i++) {
+                char c = texto.charAt(i);
+
+                if (c == '"' || c == '\\') {
+                    salida.write('\\');
+                    salida.write(c);
+                } else if (c < 0x20) {
+                    salida.write(String.format(Locale.US, "\\u%04x", (int) c));
+                } else {
+                    salida.write(c);
+                }
+            }
+
+            salida.write('"');
+        }
+    }
+
+    private static final class FormatoCSV extends FormatoTexto {
+        FormatoCSV(OutputStream salida) throws IOException {
+            super(salida);
+        }
+
+        @Override
+        void iniciar(RegistroSesion sesion) throws IOException {
+            salida.write("secuencia,latitud,longitud,fecha,fecha_utc\n");
+        }
+
+        @Override
+        void captura(long secuencia, double latitud, double longitud, long fecha) throws IOException {
+            entero(secuencia);
+            salida.write(',');
+            grados(latitud);
+            salida.write(',');
+            grados(longitud);
+            salida.write(',');
+            entero(fecha);
+            salida.write(',');
+            fechaUTC(fecha);
+            salida.write('\n');
+        }
+
+        @Override
+        void terminar() throws IOException {
+            salida.flush();
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package xyz.fabianpineda.desarrollomovil.transqa.exportacion;
+
+/**
+ * Formato binario de exportación de sesiones ("TQAX"). Ver EscritorExportacion y
+ * LectorExportacion.
+ *
+ * Todos los enteros de tamaño fijo son big-endian. "varint" es un entero sin signo de 7 bits por
+ * byte, el byte menos significativo primero, con el bit alto indicando que sigue otro byte
+ * (LEB128). "zigzag" convierte un entero con signo en uno sin signo, para que valores negativos
+ * pequeños también ocupen pocos bytes: 0, -1, 1, -2, 2... se convierten en 0, 1, 2, 3, 4...
+ *
+ * Encabezado:
+ *
+ *      * Marca FORMATO_MARCA (4 bytes) y versión FORMATO_VERSION (1 byte).
+ *      * ID de sesión (long), nombre (DataOutput.writeUTF), fecha de inicio (long) y fecha de fin
+ *        (long; 0 si la sesión no ha terminado). Fechas en milisegundos desde epoch (UTC).
+ *      * CRC32 de todo lo anterior (int).
+ *
+ * Bloques, cada uno con hasta FORMATO_CAPTURAS_POR_BLOQUE capturas:
+ *
+ *      * Número de capturas (varint). 0 indica el final de la exportación.
+ *      * Tamaño del contenido en bytes (varint).
+ *      * Contenido: tres columnas, una tras otra: fechas, latitudes y longitudes (codificadas, ver
+ *        CodificacionCoordenadas). El primer valor de cada columna es absoluto; los siguientes son
+ *        la diferencia con el anterior. Todos son zigzag varint. Cada bloque puede ser leído sin
+ *        los anteriores.
+ *      * CRC32 del contenido (int).
+ *
+ * Con capturas cada pocos segundos, cada captura ocupa típicamente 4 a 6 bytes, contra 32 de un
+ * registro binario de tamaño fijo o 40 a 60 de una línea CSV.
+ *
+ * Las capturas son numeradas (secuencia) en el orden en que aparecen, empezando en 1.
+ */
+final class FormatoExportacion {
+    static final int FORMATO_MARCA = 0x54514158;     // "TQAX"
+    static final int FORMATO_VERSION = 1;
+    static final int FORMATO_CAPTURAS_POR_BLOQUE = 1024;
+
+    // Máximo de bytes de un varint de 64 bits.
+    static final int VARINT_MAXIMO_BYTES = 10;
+
+    private FormatoExportacion() {
+    }
+
+    static long zigzag(long valor) {
+        return (valor << 1) ^ (valor >> 63);
+    }
+
+    static long deszigzag(long valor) {
+        return (valor >>> 1) ^ -(valor & 1);
+    }
+
+    /**
+     * Escribe "valor" como varint en "destino" a partir de "posicion".
+     *
+     * @return Posición siguiente al último byte escrito.
+     */
+    static int escribirVarint(byte[] destino, int posicion, long valor) {
+        while ((valor & ~0x7FL) != 0) {
+            destino[posicion++] = (byte) ((valor & 0x7F) | 0x80);
+            valor >>>= 7;
+        }
+
+        destino[posicion++] = (byte) valor;
+        return posicion;
+    }
+}
@@ -0,0 +1,208 @@
+package xyz.fabianpineda.desarrollomovil.transqa.exportacion;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+
+import xyz.fabianpineda.desarrollomovil.transqa.db.AlmacenCapturas;
+import xyz.fabianpineda.desarrollomovil.transqa.db.CodificacionCoordenadas;
+import xyz.fabianpineda.desarrollomovil.transqa.db.RegistroSesion;
+
+/**
+ * Lee una exportación en formato binario (ver FormatoExportacion) bloque por bloque: sólo un
+ * bloque es mantenido en memoria. Pensado para ser usado en una JVM cualquiera, por ejemplo para
+ * importar exportaciones en un servidor.
+ *
+ * Datos inválidos (marca, versión, tamaños o CRC incorrectos) causan una IOException.
+ *
+ * Esta clase no es segura para ser usada desde varios hilos al mismo tiempo.
+ *
+ * No se debe incluir en este objeto código específico de Android, para poder probarlo localmente.
+ */
+public final class LectorExportacion {
+    // Límite de capturas por bloque aceptado al leer; protege de tamaños corruptos.
+    private static final int CAPTURAS_POR_BLOQUE_MAXIMO = 1 << 20;
+
+    private final DataInputStream entrada;
+    private final CRC32 crc = new CRC32();
+    private final RegistroSesion sesion;
+
+    private byte[] contenido = new byte[0];
+    private long[] fechas = new long[0];
+    private int[] latitudes = new int[0];
+    private int[] longitudes = new int[0];
+
+    private long capturas;
+    private boolean terminado;
+
+    /**
+     * Lee y valida el encabezado.
+     *
+     * @param entrada Origen. No es cerrado por este objeto.
+     */
+    public LectorExportacion(InputStream entrada) throws IOException {
+        this.entrada = new DataInputStream(entrada);
+
+        CheckedInputStream verificada = new CheckedInputStream(entrada, crc);
+        DataInputStream encabezado = new DataInputStream(verificada);
+
+        if (encabezado.readInt() != FormatoExportacion.FORMATO_MARCA) {
+            throw new IOException("No es una exportación TQAX.");
+        }
+
+        int version = encabezado.readUnsignedByte();
+        if (version != FormatoExportacion.FORMATO_VERSION) {
+            throw new IOException("Versión no soportada: " + version);
+        }
+
+        long id = encabezado.readLong();
+        String nombre = encabezado.readUTF();
+        long fechaInicio = encabezado.readLong();
+        long fechaFin = encabezado.readLong();
+
+        if (this.entrada.readInt() != (int) crc.getValue()) {
+            throw new IOException("CRC de encabezado incorrecto.");
+        }
+
+        sesion = new RegistroSesion(id, nombre, fechaInicio, fechaFin);
+    }
+
+    /**
+     * @return Datos de la sesión exportada, leídos del encabezado.
+     */
+    public RegistroSesion sesion() {
+        return sesion;
+    }
+
+    /**
+     * @return Número de capturas leídas hasta el momento.
+     */
+    public long capturas() {
+        return capturas;
+    }
+
+    /**
+     * Lee el siguiente bloque y entrega sus capturas a "lector", en orden.
+     *
+     * @return Número de capturas leídas. 0 si la exportación terminó.
+     */
+    public int leerBloque(AlmacenCapturas.LectorCapturas lector) throws IOException {
+        if (terminado) {
+            return 0;
+        }
+
+        long cantidad = leerVarint();
+
+        if (cantidad == 0) {
+            terminado = true;
+            return 0;
+        }
+
+        long tamano = leerVarint();
+
+        if (cantidad > CAPTURAS_POR_BLOQUE_MAXIMO || tamano < 3 * cantidad || tamano > 3 * cantidad * FormatoExportacion.VARINT_MAXIMO_BYTES) {
+            throw new IOException("Bloque inválido.");
+        }
+
+        int n = (int) cantidad;
+
+        if (contenido.length < tamano) {
+            contenido = new byte[(int) tamano];
+        }
+
+        if (fechas.length < n) {
+            fechas = new long[n];
+            latitudes = new int[n];
+            longitudes = new int[n];
+        }
+
+        entrada.readFully(contenido, 0, (int) tamano);
+        crc.reset();
+        crc.update(contenido, 0, (int) tamano);
+
+        if (entrada.readInt() != (int) crc.getValue()) {
+            throw new IOException("CRC de bloque incorrecto.");
+        }
+
+        int[] posicion = { 0 };
+        long anterior = 0;
+
+        for (int i = 0; i < n; i++) {
+            fechas[i] = anterior += FormatoExportacion.deszigzag(leerVarint(contenido, posicion, (int) tamano));
+        }
+
+        anterior = 0;
+        for (int i = 0; i < n; i++) {
+            latitudes[i] = (int) (anterior += FormatoExportacion.deszigzag(leerVarint(contenido, posicion, (int) tamano)));
+        }
+
+        anterior = 0;
+        for (int i = 0; i < n; i++) {
+            longitudes[i] = (int) (anterior += FormatoExportacion.deszigzag(leerVarint(contenido, posicion, (int) tamano)));
+        }
+
+        if (posicion[0] != tamano) {
+            throw new IOException("Bloque inválido.");
+        }
+
+        for (int i = 0; i < n; i++) {
+            lector.capturaLeida(++capturas, CodificacionCoordenadas.decodificar(latitudes[i]), CodificacionCoordenadas.decodificar(longitudes[i]), fechas[i]);
+        }
+
+        return n;
+    }
+
+    /**
+     * Lee todos los bloques restantes.
+     *
+     * @return Número de capturas leídas.
+     */
+    public long leerTodo(AlmacenCapturas.LectorCapturas lector) throws IOException {
+        long leidas = 0;
+        int n;
+
+        while ((n = leerBloque(lector)) > 0) {
+            leidas += n;
+        }
+
+        return leidas;
+    }
+
+    private long leerVarint() throws IOException {
+        long valor = 0;
+
+        for (int desplazamiento = 0; desplazamiento < 64; desplazamiento += 7) {
+            int b = entrada.read();
+
+            if (b < 0) {
+                throw new EOFException();
+            }
+
+            valor |= (long) (b & 0x7F) << desplazamiento;
+
+            if ((b & 0x80) == 0) {
+                return valor;
+            }
+        }
+
+        throw new IOException("Varint inválido.");
+    }
+
+    private static long leerVarint(byte[] origen, int[] posicion, int limite) throws IOException {
+        long valor = 0;
+
+        for (int desplazamiento = 0; desplazamiento < 64 && posicion[0] < limite; desplazamiento += 7) {
+            int b = origen[posicion[0]++];
+            valor |= (long) (b & 0x7F) << desplazamiento;
+
+            if ((b & 0x80) == 0) {
+                return valor;
+            }
+        }
+
+        throw new IOException("Varint inválido.");
+    }
+}
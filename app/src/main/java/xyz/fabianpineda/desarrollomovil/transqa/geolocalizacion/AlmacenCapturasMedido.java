@@ -0,0 +1,106 @@
+package xyz.fabianpineda.desarrollomovil.transqa.geolocalizacion;
+
+import xyz.fabianpineda.desarrollomovil.transqa.db.AlmacenCapturas;
+import xyz.fabianpineda.desarrollomovil.transqa.metricas.Histograma;
+
+/**
+ * AlmacenCapturas que delega en otro y mide cada escritura: su duración y cuántas capturas
+ * escribió. Una escritura es un vaciar() que escribió capturas, o un agregar() que regresó true.
+ *
+ * Las capturas de una escritura hecha por agregar() son contadas como las agregadas desde la
+ * escritura anterior, que es lo que escriben los almacenes con buffer (ver
+ * BufferGeolocalizacionSQLite).
+ *
+ * Medir no reserva memoria; es usado por EscritorCapturas por cada captura. Como el almacén, sólo
+ * debe ser usado por un hilo.
+ */
+final class AlmacenCapturasMedido implements AlmacenCapturas {
+    private final AlmacenCapturas almacen;
+    private final Histograma latencia;          // Microsegundos por escritura.
+    private final Histograma tamano;            // Capturas por escritura.
+
+    private int sinEscribir;                    // Capturas agregadas desde la última escritura.
+
+    /**
+     * @param almacen Almacén medido.
+     * @param latencia Recibe la duración de cada escritura, en microsegundos.
+     * @param tamano Recibe el número de capturas de cada escritura.
+     */
+    AlmacenCapturasMedido(AlmacenCapturas almacen, Histograma latencia, Histograma tamano) {
+        this.almacen = almacen;
+        this.latencia = latencia;
+        this.tamano = tamano;
+    }
+
+    @Override
+    public boolean agregar(long idSesion, double latitud, double longitud, long fecha) {
+        long inicio = System.nanoTime();
+        boolean escritas = almacen.agregar(idSesion, latitud, longitud, fecha);
+
+        sinEscribir++;
+
+        if (escritas) {
+            registrar(inicio, sinEscribir);
+        }
+
+        return escritas;
+    }
+
+    @Override
+    public long ultimaSecuencia() {
+        return almacen.ultimaSecuencia();
+    }
+
+    @Override
+    public void ajustar(long idSesion, long secuencia, String ruta, int tramo, double recorrido) {
+        almacen.ajustar(idSesion, secuencia, ruta, tramo, recorrido);
+    }
+
+    @Override
+    public int vaciar() {
+        long inicio = System.nanoTime();
+        int escritas = almacen.vaciar();
+
+        if (escritas > 0) {
+            registrar(inicio, escritas);
+        }
+
+        return escritas;
+    }
+
+    private void registrar(long inicio, int capturas) {
+        latencia.registrar((System.nanoTime() - inicio) / 1000);
+        tamano.registrar(capturas);
+        sinEscribir = 0;
+    }
+
+    @Override
+    public long tiempoParaVencer() {
+        return almacen.tiempoParaVencer();
+    }
+
+    @Override
+    public long contarCapturas(long idSesion) {
+        return almacen.contarCapturas(idSesion);
+    }
+
+    @Override
+    public int leerCapturas(long idSesion, long desde, long hasta, LectorCapturas lector) {
+        return almacen.leerCapturas(idSesion, desde, hasta, lector);
+    }
+
+    @Override
+    public int leerPagina(long idSesion, long despuesDe, int limite, LectorCapturas lector) {
+        return almacen.leerPagina(idSesion, despuesDe, limite, lector);
+    }
+
+    @Override
+    public int leerAjustes(long idSesion, LectorAjustes lector) {
+        return almacen.leerAjustes(idSesion, lector);
+    }
+
+    @Override
+    public void cerrar() {
+        almacen.cerrar();
+    }
+}
@@ -0,0 +1,155 @@
+package xyz.fabianpineda.desarrollomovil.transqa.geolocalizacion;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+
+/**
+ * Canal de eventos dentro del proceso, de ServicioGeolocalizacion hacia sus clientes (por ejemplo
+ * MainActivity). Reemplaza el envío de Intents con datos Serializable por LocalBroadcastManager:
+ * los eventos (EventoServicio y sus subclases) son objetos inmutables entregados tal cual, sin
+ * crear Intents ni Bundles, ni serializar o convertir datos.
+ *
+ * Los eventos pueden ser publicados desde cualquier hilo y son entregados en orden, en el hilo de
+ * entrega (el hilo principal, para la instancia compartida; ver obtener()), a todos los receptores
+ * registrados en ese momento.
+ *
+ * Eventos coalescibles (ver EventoServicio.coalescible) no se acumulan: si ya hay uno pendiente
+ * de entrega con la misma acción, es reemplazado por el nuevo, que conserva la posición del
+ * pendiente en la cola. Así, si el hilo principal está ocupado, un cliente lento recibe sólo el
+ * estado más reciente y la cola no crece con eventos de estado obsoletos. Los demás eventos
+ * nunca son descartados.
+ *
+ * Cada entrega procesa a lo sumo CANAL_EVENTOS_POR_ENTREGA eventos y vuelve a programarse si
+ * quedan más, para no bloquear el hilo principal durante ráfagas.
+ */
+public final class CanalEventos {
+    /**
+     * Recibe eventos del canal, en el hilo de entrega.
+     */
+    public interface ReceptorEventos {
+        void eventoRecibido(EventoServicio evento);
+    }
+
+    static final int CANAL_EVENTOS_POR_ENTREGA = 32;
+
+    private static CanalEventos instancia;
+
+    private final Executor entrega;
+    private final CopyOnWriteArrayList<ReceptorEventos> receptores = new CopyOnWriteArrayList<>();
+
+    /*
+     * Protegidos por el bloqueo de "cola". Cada elemento de "cola" es un EventoServicio no
+     * coalescible, o la acción (String) de un evento coalescible cuyo valor más reciente está en
+     * "coalescidos".
+     */
+    private final ArrayDeque<Object> cola = new ArrayDeque<>();
+    private final Map<String, EventoServicio> coalescidos = new HashMap<>();
+    private boolean entregaProgramada;
+
+    private final Runnable entregar = new Runnable() {
+        @Override
+        public void run() {
+            entregarPendientes();
+        }
+    };
+
+    /**
+     * @param entrega Ejecuta las entregas de eventos; define el hilo de entrega. Debe ejecutar las tareas en orden y en un solo hilo.
+     */
+    CanalEventos(Executor entrega) {
+        this.entrega = entrega;
+    }
+
+    /**
+     * @return El canal compartido del proceso, que entrega eventos en el hilo principal.
+     */
+    public static synchronized CanalEventos obtener() {
+        if (instancia == null) {
+            final Handler principal = new Handler(Looper.getMainLooper());
+
+            instancia = new CanalEventos(new Executor() {
+                @Override
+                public void execute(Runnable tarea) {
+                    principal.post(tarea);
+                }
+            });
+        }
+
+        return instancia;
+    }
+
+    /**
+     * Registra un receptor. No hace nada si ya estaba registrado.
+     */
+    public void registrar(ReceptorEventos receptor) {
+        receptores.addIfAbsent(receptor);
+    }
+
+    /**
+     * Anula el registro de un receptor. Eventos pendientes ya no le son entregados.
+     */
+    public void anularRegistro(ReceptorEventos receptor) {
+        receptores.remove(receptor);
+    }
+
+    /**
+     * Publica un evento. Puede ser llamado desde cualquier hilo; nunca bloquea esperando la entrega.
+     */
+    public void publicar(EventoServicio evento) {
+        boolean programar;
+
+        synchronized (cola) {
+            if (!evento.coalescible) {
+                cola.add(evento);
+            } else if (coalescidos.put(evento.accion, evento) == null) {
+                cola.add(evento.accion);
+            }
+
+            programar = !entregaProgramada;
+            entregaProgramada = true;
+        }
+
+        if (programar) {
+            entrega.execute(entregar);
+        }
+    }
+
+    /**
+     * @return Número de eventos pendientes de entrega.
+     */
+    int pendientes() {
+        synchronized (cola) {
+            return cola.size();
+        }
+    }
+
+    private void entregarPendientes() {
+        for (int i = 0; i < CANAL_EVENTOS_POR_ENTREGA; i++) {
+            EventoServicio evento;
+
+            synchronized (cola) {
+                Object siguiente = cola.poll();
+
+                if (siguiente == null) {
+                    entregaProgramada = false;
+                    return;
+                }
+
+                evento = siguiente instanceof String ? coalescidos.remove(siguiente) : (EventoServicio) siguiente;
+            }
+
+            for (ReceptorEventos receptor : receptores) {
+                receptor.eventoRecibido(evento);
+            }
+        }
+
+        // Quedan eventos; la entrega sigue programada.
+        entrega.execute(entregar);
+    }
+}
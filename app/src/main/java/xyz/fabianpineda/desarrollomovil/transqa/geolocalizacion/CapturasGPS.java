@@ -0,0 +1,65 @@
+package xyz.fabianpineda.desarrollomovil.transqa.geolocalizacion;
+
+import xyz.fabianpineda.desarrollomovil.transqa.metricas.Contador;
+import xyz.fabianpineda.desarrollomovil.transqa.metricas.Histograma;
+
+/**
+ * Cuenta las capturas del GPS en las métricas del servicio ("gps.capturas" y
+ * "gps.intervalo_capturas").
+ *
+ * Con fusión de proveedores (ver ServicioGeolocalizacion.solicitarActualizaciones), cada captura
+ * del GPS llega dos veces con proveedor "gps": por la solicitud a GPS_PROVIDER y por la de
+ * PASSIVE_PROVIDER. Una captura cuya marca GNSS (Location.getElapsedRealtimeNanos()) no es
+ * posterior a la de la última captura contada es una repetición y no es contada; así el total (y
+ * "gps.capturas_por_minuto") no se duplica y el intervalo no registra 0 ms por cada repetición.
+ * Las capturas sin marca GNSS siempre son contadas, sin intervalo.
+ *
+ * Sólo debe ser usado desde un hilo (el principal del servicio).
+ *
+ * No se debe incluir en este objeto código específico de Android, para poder probarlo localmente.
+ */
+final class CapturasGPS {
+    private final Contador capturas;
+    private final Histograma intervalo;     // Milisegundos entre capturas consecutivas.
+
+    private long ultimaCapturaNanos;        // Marca GNSS de la última captura contada; 0 si no hay.
+
+    /**
+     * @param capturas Recibe una unidad por captura contada.
+     * @param intervalo Recibe los milisegundos entre capturas consecutivas.
+     */
+    CapturasGPS(Contador capturas, Histograma intervalo) {
+        this.capturas = capturas;
+        this.intervalo = intervalo;
+    }
+
+    /**
+     * @param capturaNanos Location.getElapsedRealtimeNanos() de la captura, o 0 si se desconoce.
+     *
+     * @return true si la captura fue contada; false si repite una captura ya contada.
+     */
+    boolean registrar(long capturaNanos) {
+        if (capturaNanos > 0 && capturaNanos <= ultimaCapturaNanos) {
+            return false;
+        }
+
+        capturas.incrementar();
+
+        if (capturaNanos > 0) {
+            if (ultimaCapturaNanos != 0) {
+                intervalo.registrar((capturaNanos - ultimaCapturaNanos) / 1000000);
+            }
+
+            ultimaCapturaNanos = capturaNanos;
+        }
+
+        return true;
+    }
+
+    /**
+     * Olvida la última captura: la siguiente no registra intervalo. Usado al encender el GPS.
+     */
+    void reiniciar() {
+        ultimaCapturaNanos = 0;
+    }
+}
@@ -0,0 +1,153 @@
+package xyz.fabianpineda.desarrollomovil.transqa.geolocalizacion;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cola acotada, sin bloqueos ("lock-free"), de un solo productor y un solo consumidor (SPSC) para
+ * capturas de coordenadas.
+ *
+ * El productor es el hilo que recibe las capturas (el hilo principal, en onLocationChanged) y el
+ * consumidor es el hilo de escritura a la base de datos (EscritorCapturas). Cada captura es
+ * almacenada en arreglos de tipos primitivos dentro de un anillo cuya capacidad es una potencia
+ * de dos, así que no se crean objetos por captura.
+ *
+ * Además de sus coordenadas y fecha, cada captura lleva dos marcas de tiempo en nanosegundos del
+ * reloj SystemClock.elapsedRealtimeNanos(), usadas para medir latencias (ver TrazaLatencias): la
+ * de su captura en el receptor GNSS (Location.getElapsedRealtimeNanos()) y la de su entrada a la
+ * etapa actual del camino de escritura. Quien la recibe decide qué etapa empieza con cada marca.
+ *
+ * Política de desbordamiento: si la cola está llena, la captura *nueva* es descartada y se
+ * incrementa el contador de capturas descartadas. Las capturas ya encoladas nunca son
+ * reemplazadas, ya que hacerlo requeriría que el productor modificara la posición de lectura del
+ * consumidor. El productor nunca se bloquea.
+ *
+ * Usar la misma instancia desde más de un productor o más de un consumidor no es seguro.
+ */
+final class ColaCapturas {
+    /**
+     * Recibe capturas tomadas de la cola. Ver: drenar(ConsumidorCapturas, int)
+     */
+    interface ConsumidorCapturas {
+        /**
+         * @param capturaNanos Marca de tiempo de la captura en el receptor GNSS, o 0 si se desconoce.
+         * @param etapaNanos Marca de tiempo de entrada de la captura a la etapa que termina con este llamado.
+         */
+        void capturaTomada(long idSesion, double latitud, double longitud, long fecha, long capturaNanos, long etapaNanos);
+    }
+
+    private final int capacidad;
+    private final int mascara;
+
+    private final long[] sesiones;
+    private final double[] latitudes;
+    private final double[] longitudes;
+    private final long[] fechas;
+    private final long[] capturasNanos;
+    private final long[] etapasNanos;
+
+    private final AtomicLong lectura = new AtomicLong();     // Siguiente posición a leer. Escrita sólo por el consumidor.
+    private final AtomicLong escritura = new AtomicLong();   // Siguiente posición a escribir. Escrita sólo por el productor.
+    private final AtomicLong descartadas = new AtomicLong(); // Capturas rechazadas por cola llena.
+
+    /**
+     * @param capacidadMinima Capacidad deseada. Es redondeada a la siguiente potencia de dos.
+     */
+    ColaCapturas(int capacidadMinima) {
+        if (capacidadMinima < 1 || capacidadMinima > (1 << 30)) {
+            throw new IllegalArgumentException("capacidadMinima fuera de rango: " + capacidadMinima);
+        }
+
+        int c = 1;
+        while (c < capacidadMinima) {
+            c <<= 1;
+        }
+
+        capacidad = c;
+        mascara = c - 1;
+
+        sesiones = new long[capacidad];
+        latitudes = new double[capacidad];
+        longitudes = new double[capacidad];
+        fechas = new long[capacidad];
+        capturasNanos = new long[capacidad];
+        etapasNanos = new long[capacidad];
+    }
+
+    /**
+     * Encola una captura. Sólo debe ser llamado por el productor.
+     *
+     * @param capturaNanos Marca de tiempo de la captura en el receptor GNSS, o 0 si se desconoce.
+     * @param etapaNanos Marca de tiempo de entrada a la cola; usualmente, de su recepción.
+     *
+     * @return true si la captura fue encolada. false si la cola estaba llena y fue descartada.
+     */
+    boolean ofrecer(long idSesion, double latitud, double longitud, long fecha, long capturaNanos, long etapaNanos) {
+        long posicion = escritura.get();
+
+        if (posicion - lectura.get() >= capacidad) {
+            descartadas.incrementAndGet();
+            return false;
+        }
+
+        int i = (int) (posicion & mascara);
+        sesiones[i] = idSesion;
+        latitudes[i] = latitud;
+        longitudes[i] = longitud;
+        fechas[i] = fecha;
+        capturasNanos[i] = capturaNanos;
+        etapasNanos[i] = etapaNanos;
+
+        // Publica la captura al consumidor. lazySet basta ya que hay un solo escritor.
+        escritura.lazySet(posicion + 1);
+        return true;
+    }
+
+    /**
+     * Entrega al consumidor hasta "maximo" capturas, en orden de llegada. Sólo debe ser llamado
+     * por el consumidor.
+     *
+     * Cada captura es retirada de la cola antes de ser entregada; si el consumidor lanza una
+     * excepción, la captura que la causó no es entregada de nuevo.
+     *
+     * @return Número de capturas entregadas.
+     */
+    int drenar(ConsumidorCapturas consumidor, int maximo) {
+        long posicion = lectura.get();
+        long disponibles = escritura.get() - posicion;
+        int n = (int) Math.min(disponibles, maximo);
+
+        for (int k = 0; k < n; k++, posicion++) {
+            int i = (int) (posicion & mascara);
+            long idSesion = sesiones[i];
+            double latitud = latitudes[i];
+            double longitud = longitudes[i];
+            long fecha = fechas[i];
+            long capturaNanos = capturasNanos[i];
+            long etapaNanos = etapasNanos[i];
+
+            // Libera la posición para el productor antes de entregar la captura.
+            lectura.lazySet(posicion + 1);
+            consumidor.capturaTomada(idSesion, latitud, longitud, fecha, capturaNanos, etapaNanos);
+        }
+
+        return n;
+    }
+
+    /**
+     * @return Número aproximado de capturas encoladas. Puede ser llamado desde cualquier hilo.
+     */
+    int profundidad() {
+        return (int) (escritura.get() - lectura.get());
+    }
+
+    int capacidad() {
+        return capacidad;
+    }
+
+    /**
+     * @return Total de capturas descartadas por cola llena. Puede ser llamado desde cualquier hilo.
+     */
+    long descartadas() {
+        return descartadas.get();
+    }
+}
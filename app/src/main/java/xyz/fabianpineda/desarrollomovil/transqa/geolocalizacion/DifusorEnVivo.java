@@ -0,0 +1,190 @@
+package xyz.fabianpineda.desarrollomovil.transqa.geolocalizacion;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Entrega el EstadoEnVivo más reciente de ServicioGeolocalizacion a clientes suscritos, a lo sumo
+ * una vez por cada intervalo mínimo elegido por cada suscriptor.
+ *
+ * El "difusor" no acumula estados: si llegan varias capturas durante el intervalo de un
+ * suscriptor, éste recibe sólo la más reciente, al cumplirse el intervalo. Así, un GPS que reporta
+ * una o más capturas por segundo nunca genera más trabajo en la interfaz de usuario que el que
+ * cada cliente pidió, sin importar qué tan rápido lleguen las capturas.
+ *
+ * Un suscriptor nuevo recibe el último estado conocido de inmediato, si existe.
+ *
+ * Todos los métodos deben ser llamados desde el hilo del temporizador (el hilo principal, para
+ * el difusor de principal()), que es también donde se entregan los estados.
+ */
+public final class DifusorEnVivo {
+    /**
+     * Recibe estados del difusor, en el hilo principal.
+     */
+    public interface ReceptorEnVivo {
+        void estadoRecibido(EstadoEnVivo estado);
+    }
+
+    /**
+     * Reloj y programación de tareas usados por el difusor. Permite probar el difusor sin Looper.
+     */
+    interface Temporizador {
+        long ahora();
+        void programar(Runnable tarea, long retraso);
+        void cancelar(Runnable tarea);
+    }
+
+    public static final long DIFUSOR_INTERVALO_DEFAULT = 1000L;     // Milisegundos; una actualización por segundo.
+    static final long DIFUSOR_INTERVALO_MINIMO = 100L;             // Intervalos menores son aumentados a este valor.
+
+    private final Temporizador temporizador;
+    private final List<Suscripcion> suscripciones = new ArrayList<>();
+
+    private EstadoEnVivo ultimo;
+
+    /**
+     * Suscripción de un receptor. Es también la tarea programada que le entrega el último estado.
+     */
+    private final class Suscripcion implements Runnable {
+        final ReceptorEnVivo receptor;
+        final long intervalo;
+
+        boolean entregado;          // True si ya recibió algún estado.
+        long ultimaEntrega;         // Según el temporizador. Sólo válido si "entregado".
+        boolean programada;         // True si hay una entrega pendiente.
+
+        Suscripcion(ReceptorEnVivo receptor, long intervalo) {
+            this.receptor = receptor;
+            this.intervalo = intervalo;
+        }
+
+        @Override
+        public void run() {
+            programada = false;
+            entregado = true;
+            ultimaEntrega = temporizador.ahora();
+
+            receptor.estadoRecibido(ultimo);
+        }
+    }
+
+    /**
+     * @param temporizador Reloj y programación de entregas; define el hilo de entrega.
+     */
+    DifusorEnVivo(Temporizador temporizador) {
+        this.temporizador = temporizador;
+    }
+
+    /**
+     * @return Un difusor nuevo que entrega estados en el hilo principal.
+     */
+    static DifusorEnVivo principal() {
+        final Handler principal = new Handler(Looper.getMainLooper());
+
+        return new DifusorEnVivo(new Temporizador() {
+            @Override
+            public long ahora() {
+                // El mismo reloj usado por Handler.postDelayed.
+                return SystemClock.uptimeMillis();
+            }
+
+            @Override
+            public void programar(Runnable tarea, long retraso) {
+                principal.postDelayed(tarea, retraso);
+            }
+
+            @Override
+            public void cancelar(Runnable tarea) {
+                principal.removeCallbacks(tarea);
+            }
+        });
+    }
+
+    /**
+     * Suscribe un receptor, o cambia su intervalo si ya estaba suscrito.
+     *
+     * @param receptor Receptor de estados.
+     * @param intervalo Tiempo mínimo, en milisegundos, entre dos entregas a este receptor. Ver: DIFUSOR_INTERVALO_*
+     */
+    public void suscribir(ReceptorEnVivo receptor, long intervalo) {
+        anularSuscripcion(receptor);
+
+        Suscripcion suscripcion = new Suscripcion(receptor, Math.max(intervalo, DIFUSOR_INTERVALO_MINIMO));
+        suscripciones.add(suscripcion);
+
+        programar(suscripcion);
+    }
+
+    /**
+     * Anula la suscripción de un receptor y descarta su entrega pendiente. No hace nada si el
+     * receptor no estaba suscrito.
+     */
+    public void anularSuscripcion(ReceptorEnVivo receptor) {
+        for (int i = 0; i < suscripciones.size(); i++) {
+            Suscripcion suscripcion = suscripciones.get(i);
+
+            if (suscripcion.receptor == receptor) {
+                temporizador.cancelar(suscripcion);
+                suscripciones.remove(i);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Anula todas las suscripciones. Usado cuando el último cliente se desenlaza del servicio, o
+     * cuando el servicio es destruido.
+     */
+    public void anularTodas() {
+        for (Suscripcion suscripcion : suscripciones) {
+            temporizador.cancelar(suscripcion);
+        }
+
+        suscripciones.clear();
+    }
+
+    /**
+     * Reemplaza el último estado y programa su entrega a cada suscriptor que no tenga ya una
+     * entrega pendiente; las entregas pendientes entregarán este estado.
+     */
+    public void publicar(EstadoEnVivo estado) {
+        ultimo = estado;
+
+        for (Suscripcion suscripcion : suscripciones) {
+            programar(suscripcion);
+        }
+    }
+
+    /**
+     * @return El último estado publicado, o null si aún no se ha recibido ninguna captura.
+     */
+    public EstadoEnVivo ultimo() {
+        return ultimo;
+    }
+
+    /**
+     * @return Número de receptores suscritos.
+     */
+    int suscripciones() {
+        return suscripciones.size();
+    }
+
+    private void programar(Suscripcion suscripcion) {
+        if (suscripcion.programada || ultimo == null) {
+            return;
+        }
+
+        long retraso = 0;
+
+        if (suscripcion.entregado) {
+            retraso = Math.max(0, suscripcion.ultimaEntrega + suscripcion.intervalo - temporizador.ahora());
+        }
+
+        suscripcion.programada = true;
+        temporizador.programar(suscripcion, retraso);
+    }
+}
@@ -0,0 +1,571 @@
+package xyz.fabianpineda.desarrollomovil.transqa.geolocalizacion;
+
+import android.os.Process;
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import xyz.fabianpineda.desarrollomovil.transqa.db.AlmacenCapturas;
+import xyz.fabianpineda.desarrollomovil.transqa.db.RegistroLatencias;
+import xyz.fabianpineda.desarrollomovil.transqa.rutas.AjustadorRutas;
+
+/**
+ * Hilo dedicado a persistir capturas de coordenadas, para que ninguna escritura a la base de datos
+ * ocurra en el hilo principal.
+ *
+ * El hilo que recibe las capturas (productor) las agrega usando agregar(); éstas son encoladas en
+ * una ColaCapturas sin bloqueos y el hilo de escritura (consumidor) las toma de la cola y las pasa
+ * a un AlmacenCapturas (por ejemplo, BufferGeolocalizacionSQLite, que las inserta en lotes). Si
+ * la cola está llena, la captura nueva es descartada (ver ColaCapturas) y agregar() regresa false.
+ *
+ * Opcionalmente, las capturas pasan por un SimplificadorTrayectoria antes de llegar al almacén, y
+ * sólo las capturas significativas son escritas. La simplificación también ocurre en este hilo.
+ * Las capturas pendientes del simplificador son conservadas al sincronizar() y al terminar().
+ *
+ * Opcionalmente, las capturas escritas también pasan por un AjustadorRutas, que las asocia a la
+ * ruta de transporte en la que fueron tomadas; sus ajustes son escritos con
+ * AlmacenCapturas.ajustar(), unas capturas después de la captura ajustada. El ajuste también
+ * ocurre en este hilo, y sus capturas pendientes son entregadas al sincronizar() y al terminar().
+ *
+ * La latencia de cada etapa del camino de escritura de cada captura es medida con un
+ * TrazaLatencias, también en este hilo: las capturas llevan su marca de captura GNSS y de
+ * recepción por la cola, y una escritura es un agregar() del almacén que regresa true, un vaciar()
+ * que escribe capturas o un cerrar().
+ *
+ * El hilo duerme mientras no haya capturas encoladas, y despierta cuando llega una captura, cuando
+ * las capturas pendientes del almacén alcanzan su edad máxima, o cuando se solicita sincronizar()
+ * o ejecutarDespuesDeEscribir().
+ *
+ * Operaciones que deben ver todas las capturas agregadas hasta cierto momento (por ejemplo,
+ * terminar una sesión) son solicitadas con ejecutarDespuesDeEscribir(): la tarea es ejecutada en
+ * este hilo después de escribir esas capturas, así que quien la solicita nunca espera. Si la
+ * escritura falla, la sincronización o tarea es completada de todas formas, informando la falla;
+ * las capturas siguen pendientes y son reintentadas.
+ *
+ * Sólo un hilo debe llamar agregar(). sincronizar(), ejecutarDespuesDeEscribir() y terminar()
+ * pueden ser llamados desde cualquier hilo, pero normalmente son llamados desde el hilo
+ * principal; sólo terminar() y sincronizar() bloquean.
+ */
+final class EscritorCapturas extends Thread implements ColaCapturas.ConsumidorCapturas {
+    /**
+     * Tarea ejecutada en el hilo escritor después de escribir capturas. Ver: ejecutarDespuesDeEscribir()
+     */
+    interface TareaEscritor {
+        /**
+         * @param escritas true si todas las capturas agregadas antes de solicitar la tarea fueron escritas.
+         */
+        void ejecutar(boolean escritas);
+    }
+
+    /**
+     * Tarea solicitada, con el número de la sincronización que debe completarse antes de ejecutarla.
+     */
+    private static final class TareaPendiente {
+        final long objetivo;
+        final TareaEscritor tarea;
+
+        TareaPendiente(long objetivo, TareaEscritor tarea) {
+            this.objetivo = objetivo;
+            this.tarea = tarea;
+        }
+    }
+
+    private static final String ETIQUETA = EscritorCapturas.class.getSimpleName();
+
+    public static final int ESCRITOR_CAPACIDAD_COLA_DEFAULT = 256;
+
+    // Máximo de capturas tomadas de la cola por iteración; evita retrasar vaciados por edad.
+    private static final int ESCRITOR_MAXIMO_DRENADO = 64;
+
+    // Espera después de un error de escritura antes de reintentar, en milisegundos.
+    private static final long ESCRITOR_ESPERA_ERROR = 1000L;
+
+    // Intentos de escribir las capturas pendientes al terminar, antes de darlas por perdidas.
+    private static final int ESCRITOR_INTENTOS_TERMINAR = 3;
+
+    private final ColaCapturas cola;
+    private final AlmacenCapturas almacen;  // Sólo usado por este hilo.
+    private final SimplificadorTrayectoria simplificador;   // Sólo usado por este hilo. Puede ser null.
+    private final AjustadorRutas ajustador; // Sólo usado por este hilo, excepto sus contadores. Puede ser null.
+    private final TrazaLatencias traza;     // Sólo usado por este hilo, excepto latenciasSesion().
+
+    // Recibe las capturas conservadas por "simplificador" y las agrega al almacén.
+    private final ColaCapturas.ConsumidorCapturas salidaSimplificador = new ColaCapturas.ConsumidorCapturas() {
+        @Override
+        public void capturaTomada(long idSesion, double latitud, double longitud, long fecha, long capturaNanos, long etapaNanos) {
+            escribir(idSesion, latitud, longitud, fecha, capturaNanos, etapaNanos);
+        }
+    };
+
+    // Recibe las capturas ajustadas por "ajustador" y escribe sus ajustes en el almacén.
+    private final AjustadorRutas.ConsumidorAjustes salidaAjustador = new AjustadorRutas.ConsumidorAjustes() {
+        @Override
+        public void capturaAjustada(long idSesion, long secuencia, String ruta, int tramo, double recorrido) {
+            almacen.ajustar(idSesion, secuencia, ruta, tramo, recorrido);
+        }
+    };
+
+    private volatile boolean activo = true;
+
+    // Estado de solicitudes de sincronización y de tareas. Protegido por "monitor".
+    private final Object monitor = new Object();
+    private long sincronizacionesSolicitadas;
+    private long sincronizacionesCompletadas;
+    private long sincronizacionesFallidas;  // Última solicitud completada sin poder escribir sus capturas.
+    private final ArrayDeque<TareaPendiente> tareas = new ArrayDeque<>();
+    private boolean terminado;              // El hilo ya no escribe; las tareas nuevas son ejecutadas por quien las solicita.
+
+    private final AtomicLong procesadas = new AtomicLong();
+    private final AtomicLong perdidas = new AtomicLong();  // Capturas rechazadas por el almacén o no escritas al terminar.
+
+    private long sinEscribir;   // Capturas entregadas al almacén aún no escritas. Sólo usado por este hilo.
+
+    /**
+     * @param almacen Almacén de capturas. Pasa a ser usado exclusivamente por este hilo.
+     * @param traza Mide las latencias de escritura. Pasa a ser usado exclusivamente por este hilo.
+     * @param capacidadCola Capacidad de la cola entre el productor y este hilo.
+     */
+    EscritorCapturas(AlmacenCapturas almacen, TrazaLatencias traza, int capacidadCola) {
+        this(almacen, null, traza, capacidadCola);
+    }
+
+    /**
+     * @param almacen Almacén de capturas. Pasa a ser usado exclusivamente por este hilo.
+     * @param simplificador Simplificador aplicado antes del almacén, o null para escribir todas las capturas. Pasa a ser usado exclusivamente por este hilo.
+     * @param traza Mide las latencias de escritura. Pasa a ser usado exclusivamente por este hilo.
+     * @param capacidadCola Capacidad de la cola entre el productor y este hilo.
+     */
+    EscritorCapturas(AlmacenCapturas almacen, SimplificadorTrayectoria simplificador, TrazaLatencias traza, int capacidadCola) {
+        this(almacen, simplificador, null, traza, capacidadCola);
+    }
+
+    /**
+     * @param almacen Almacén de capturas. Pasa a ser usado exclusivamente por este hilo.
+     * @param simplificador Simplificador aplicado antes del almacén, o null para escribir todas las capturas. Pasa a ser usado exclusivamente por este hilo.
+     * @param ajustador Ajustador de las capturas escritas a rutas, o null para no ajustarlas. Pasa a ser usado exclusivamente por este hilo.
+     * @param traza Mide las latencias de escritura. Pasa a ser usado exclusivamente por este hilo.
+     * @param capacidadCola Capacidad de la cola entre el productor y este hilo.
+     */
+    EscritorCapturas(AlmacenCapturas almacen, SimplificadorTrayectoria simplificador, AjustadorRutas ajustador, TrazaLatencias traza, int capacidadCola) {
+        super(ETIQUETA);
+
+        this.cola = new ColaCapturas(capacidadCola);
+        this.almacen = almacen;
+        this.simplificador = simplificador;
+        this.ajustador = ajustador;
+        this.traza = traza;
+    }
+
+    /**
+     * Encola una captura para ser persistida. Nunca bloquea. Sólo debe ser llamado por un hilo.
+     *
+     * @param capturaNanos Location.getElapsedRealtimeNanos() de la captura, o 0 si se desconoce.
+     * @param recepcionNanos SystemClock.elapsedRealtimeNanos() al recibir la captura.
+     *
+     * @return true si la captura fue encolada. false si fue descartada por cola llena.
+     */
+    boolean agregar(long idSesion, double latitud, double longitud, long fecha, long capturaNanos, long recepcionNanos) {
+        boolean encolada = cola.ofrecer(idSesion, latitud, longitud, fecha, capturaNanos, recepcionNanos);
+        LockSupport.unpark(this);
+        return encolada;
+    }
+
+    /**
+     * Espera hasta que todas las capturas agregadas antes de este llamado estén escritas en el
+     * almacén.
+     *
+     * @param espera Tiempo máximo de espera en milisegundos.
+     *
+     * @return true si todas las capturas fueron escritas. false si se agotó el tiempo, si el hilo
+     * fue interrumpido, si la escritura falló o si el hilo de escritura ya no está activo.
+     */
+    boolean sincronizar(long espera) {
+        long objetivo;
+        long limite = System.currentTimeMillis() + espera;
+
+        synchronized (monitor) {
+            objetivo = ++sincronizacionesSolicitadas;
+        }
+
+        LockSupport.unpark(this);
+
+        synchronized (monitor) {
+            while (sincronizacionesCompletadas < objetivo && isAlive()) {
+                long restante = limite - System.currentTimeMillis();
+
+                if (restante <= 0) {
+                    return false;
+                }
+
+                try {
+                    monitor.wait(restante);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+
+            return sincronizacionesCompletadas >= objetivo && sincronizacionesFallidas < objetivo;
+        }
+    }
+
+    /**
+     * Solicita ejecutar "tarea" en este hilo después de escribir todas las capturas agregadas antes
+     * de este llamado. Nunca bloquea. Las tareas son ejecutadas en el orden solicitado.
+     *
+     * Si la escritura falla, la tarea es ejecutada de todas formas con escritas = false. Si el hilo
+     * ya terminó, la tarea es ejecutada inmediatamente, en el hilo que llama, con escritas = false.
+     */
+    void ejecutarDespuesDeEscribir(TareaEscritor tarea) {
+        boolean ejecutarAhora;
+
+        synchronized (monitor) {
+            ejecutarAhora = terminado;
+
+            if (!terminado) {
+                tareas.add(new TareaPendiente(++sincronizacionesSolicitadas, tarea));
+            }
+        }
+
+        if (ejecutarAhora) {
+            tarea.ejecutar(false);
+        } else {
+            LockSupport.unpark(this);
+        }
+    }
+
+    /**
+     * Detiene el hilo después de escribir todas las capturas pendientes, cierra el almacén y espera
+     * a que termine. Si la escritura falla, es reintentada a lo sumo ESCRITOR_INTENTOS_TERMINAR
+     * veces; las capturas que aún no fueron escritas son contadas en capturasDescartadas(). El
+     * almacén es cerrado en todo caso.
+     */
+    void terminar() {
+        activo = false;
+        LockSupport.unpark(this);
+
+        try {
+            join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return Número aproximado de capturas en la cola, aún no tomadas por este hilo.
+     */
+    int profundidadCola() {
+        return cola.profundidad();
+    }
+
+    /**
+     * @return Total de capturas descartadas porque la cola estaba llena, o perdidas porque el
+     * almacén no las aceptó o no pudieron ser escritas (ni ajustadas) al terminar.
+     */
+    long capturasDescartadas() {
+        return cola.descartadas() + perdidas.get();
+    }
+
+    /**
+     * @return Total de capturas tomadas de la cola por este hilo.
+     */
+    long capturasProcesadas() {
+        return procesadas.get();
+    }
+
+    /**
+     * @return Total de capturas conservadas por el simplificador, o capturasProcesadas() si no hay simplificador.
+     */
+    long capturasConservadas() {
+        return simplificador != null ? simplificador.conservadas() : procesadas.get();
+    }
+
+    /**
+     * @return Total de capturas omitidas por el simplificador; nunca serán escritas. 0 si no hay simplificador.
+     */
+    long capturasOmitidas() {
+        return simplificador != null ? simplificador.omitidas() : 0L;
+    }
+
+    /**
+     * @return Total de capturas escritas ajustadas a alguna ruta. 0 si no hay ajustador.
+     */
+    long capturasAjustadas() {
+        return ajustador != null ? ajustador.ajustadas() : 0L;
+    }
+
+    /**
+     * @return Total de capturas escritas decididas fuera de toda ruta. 0 si no hay ajustador.
+     */
+    long capturasFueraDeRuta() {
+        return ajustador != null ? ajustador.fueraDeRuta() : 0L;
+    }
+
+    /**
+     * Latencias de escritura de una sesión. Para que incluyan todas sus capturas, debe ser llamado
+     * después de sincronizar(). Puede ser llamado desde cualquier hilo.
+     *
+     * @return Las latencias de la sesión, o null si no es la última sesión de la que se tomaron capturas.
+     */
+    RegistroLatencias latenciasSesion(long idSesion) {
+        return traza.latencias(idSesion);
+    }
+
+    /**
+     * De ColaCapturas.ConsumidorCapturas. Ejecutado en este hilo por cada captura tomada.
+     *
+     * La captura sigue su camino con la marca de captura (o la de recepción, si se desconoce)
+     * como origen, y la marca de este momento como entrada a la simplificación.
+     */
+    @Override
+    public void capturaTomada(long idSesion, double latitud, double longitud, long fecha, long capturaNanos, long recepcionNanos) {
+        procesadas.incrementAndGet();
+
+        long tomadaNanos = traza.tomada(idSesion, capturaNanos, recepcionNanos);
+        long origenNanos = capturaNanos > 0 ? capturaNanos : recepcionNanos;
+
+        if (simplificador != null) {
+            simplificador.agregar(idSesion, latitud, longitud, fecha, origenNanos, tomadaNanos, salidaSimplificador);
+        } else {
+            escribir(idSesion, latitud, longitud, fecha, origenNanos, tomadaNanos);
+        }
+    }
+
+    /**
+     * Agrega una captura al almacén, midiendo su entrega y, si el almacén escribe, las capturas
+     * escritas. Después la pasa al ajustador, si existe, con el número de secuencia que el almacén
+     * le asignó.
+     */
+    private void escribir(long idSesion, double latitud, double longitud, long fecha, long origenNanos, long tomadaNanos) {
+        traza.entregada(origenNanos, tomadaNanos);
+
+        boolean escritas;
+
+        try {
+            escritas = almacen.agregar(idSesion, latitud, longitud, fecha);
+        } catch (RuntimeException e) {
+            // El almacén no aceptó la captura (ver AlmacenCapturas); nadie la reintentará.
+            perdidas.incrementAndGet();
+            throw e;
+        }
+
+        sinEscribir++;
+
+        if (escritas) {
+            sinEscribir = 0;
+            traza.escritas();
+        }
+
+        if (ajustador != null) {
+            ajustador.agregar(idSesion, almacen.ultimaSecuencia(), latitud, longitud, fecha, salidaAjustador);
+        }
+    }
+
+    /**
+     * Escribe las capturas pendientes del almacén, midiéndolas si las había.
+     */
+    private void vaciarAlmacen() {
+        int escritas = almacen.vaciar();
+
+        sinEscribir = 0;
+
+        if (escritas > 0) {
+            traza.escritas();
+        }
+    }
+
+    /**
+     * Entrega al almacén la captura pendiente del simplificador, si existe.
+     */
+    private void vaciarSimplificador() {
+        if (simplificador != null) {
+            simplificador.vaciar(salidaSimplificador);
+        }
+    }
+
+    /**
+     * Escribe en el almacén los ajustes de las capturas pendientes del ajustador, si existe.
+     */
+    private void vaciarAjustador() {
+        if (ajustador != null) {
+            ajustador.vaciar(salidaAjustador);
+        }
+    }
+
+    @Override
+    public void run() {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+
+        while (true) {
+            boolean continuar = activo;
+            long solicitadas;
+
+            synchronized (monitor) {
+                solicitadas = sincronizacionesSolicitadas;
+            }
+
+            if (!continuar) {
+                terminarEscritura(solicitadas);
+                break;
+            }
+
+            try {
+                // Toda captura encolada antes de leer "solicitadas" es drenada aquí.
+                drenarCola();
+
+                if (solicitadas > sincronizacionesCompletadasActual()) {
+                    vaciarSimplificador();
+                    vaciarAjustador();
+                    vaciarAlmacen();
+                    completarSincronizaciones(solicitadas, true);
+                } else if (almacen.tiempoParaVencer() == 0) {
+                    vaciarAlmacen();
+                }
+            } catch (RuntimeException e) {
+                // Las capturas no escritas permanecen pendientes en el almacén y serán reintentadas.
+                Log.e(ETIQUETA, "Error escribiendo capturas", e);
+
+                // Quien espera por estas capturas no debe esperar al siguiente intento.
+                completarSincronizaciones(solicitadas, false);
+
+                LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(ESCRITOR_ESPERA_ERROR));
+                continue;
+            }
+
+            if (cola.profundidad() == 0 && activo) {
+                long espera = almacen.tiempoParaVencer();
+                LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(Math.min(espera, TimeUnit.HOURS.toMillis(1))));
+            }
+        }
+
+        // Ya no habrá escrituras: completa las solicitudes restantes como fallidas.
+        long restantes;
+
+        synchronized (monitor) {
+            terminado = true;
+            restantes = sincronizacionesSolicitadas;
+        }
+
+        completarSincronizaciones(restantes, false);
+
+        // Despierta a quien espere en sincronizar(); isAlive() pronto será false.
+        synchronized (monitor) {
+            monitor.notifyAll();
+        }
+    }
+
+    /**
+     * Toma todas las capturas de la cola, escribiendo las del almacén cuando alcanzan su edad máxima.
+     */
+    private void drenarCola() {
+        while (cola.drenar(this, ESCRITOR_MAXIMO_DRENADO) > 0) {
+            if (almacen.tiempoParaVencer() == 0) {
+                vaciarAlmacen();
+            }
+        }
+    }
+
+    /**
+     * Escribe todas las capturas pendientes (cola, simplificador, ajustador y almacén) y cierra el
+     * almacén. Ejecutado una vez, al terminar el hilo.
+     *
+     * Si la escritura falla, es reintentada hasta ESCRITOR_INTENTOS_TERMINAR veces en total. El
+     * almacén es cerrado aunque todos los intentos fallen; se pierden y son contadas en "perdidas"
+     * las capturas que quedaron en la cola, la que el simplificador habría conservado, y las más
+     * recientes que quedaron pendientes en el almacén o sin ajustar en el ajustador (son las
+     * mismas capturas, así que se cuenta la mayor de las dos cantidades).
+     */
+    private void terminarEscritura(long solicitadas) {
+        boolean escritas = false;
+
+        try {
+            for (int intento = 1; !escritas && intento <= ESCRITOR_INTENTOS_TERMINAR; intento++) {
+                try {
+                    drenarCola();
+                    vaciarSimplificador();
+                    vaciarAjustador();
+                    vaciarAlmacen();
+                    escritas = true;
+                } catch (RuntimeException e) {
+                    Log.e(ETIQUETA, "Error escribiendo capturas al terminar; intento " + intento + " de " + ESCRITOR_INTENTOS_TERMINAR, e);
+
+                    if (intento < ESCRITOR_INTENTOS_TERMINAR) {
+                        LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(ESCRITOR_ESPERA_ERROR));
+                    }
+                }
+            }
+        } finally {
+            try {
+                // cerrar() también escribe las capturas pendientes del almacén.
+                almacen.cerrar();
+                sinEscribir = 0;
+                traza.escritas();
+            } catch (RuntimeException e) {
+                Log.e(ETIQUETA, "Error cerrando el almacén", e);
+                escritas = false;
+            }
+
+            // vaciar() del simplificador conserva sólo la más reciente de sus capturas pendientes.
+            long perdidasAhora = cola.profundidad()
+                    + (simplificador != null && simplificador.pendientes() > 0 ? 1 : 0)
+                    + Math.max(sinEscribir, ajustador != null ? ajustador.pendientes() : 0);
+
+            if (perdidasAhora > 0) {
+                perdidas.addAndGet(perdidasAhora);
+                Log.e(ETIQUETA, "Capturas perdidas al terminar: " + perdidasAhora);
+            }
+        }
+
+        completarSincronizaciones(solicitadas, escritas);
+    }
+
+    private long sincronizacionesCompletadasActual() {
+        synchronized (monitor) {
+            return sincronizacionesCompletadas;
+        }
+    }
+
+    /**
+     * Marca como completadas las sincronizaciones hasta "solicitadas", y ejecuta las tareas que
+     * esperaban por ellas.
+     *
+     * @param exito false si las capturas de esas sincronizaciones no pudieron ser escritas.
+     */
+    private void completarSincronizaciones(long solicitadas, boolean exito) {
+        synchronized (monitor) {
+            if (solicitadas > sincronizacionesCompletadas) {
+                sincronizacionesCompletadas = solicitadas;
+
+                if (!exito) {
+                    sincronizacionesFallidas = solicitadas;
+                }
+
+                monitor.notifyAll();
+            }
+        }
+
+        while (true) {
+            TareaPendiente pendiente;
+
+            synchronized (monitor) {
+                pendiente = tareas.peek();
+
+                if (pendiente == null || pendiente.objetivo > solicitadas) {
+                    return;
+                }
+
+                tareas.poll();
+            }
+
+            // Una tarea que falla no detiene la escritura ni las demás tareas.
+            try {
+                pendiente.tarea.ejecutar(exito);
+            } catch (RuntimeException e) {
+                Log.e(ETIQUETA, "Error ejecutando tarea", e);
+            }
+        }
+    }
+}
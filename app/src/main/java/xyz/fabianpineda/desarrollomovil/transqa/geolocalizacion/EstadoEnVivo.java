@@ -0,0 +1,70 @@
+package xyz.fabianpineda.desarrollomovil.transqa.geolocalizacion;
+
+/**
+ * Última captura recibida por ServicioGeolocalizacion junto con estadísticas acumuladas de la
+ * sesión en progreso. Inmutable; entregado a clientes enlazados al servicio por DifusorEnVivo.
+ *
+ * Las estadísticas se acumulan desde el estado anterior (ver siguiente()) y empiezan de nuevo
+ * cada vez que cambia la sesión. Sin sesión en progreso, sesionID es 0 y las estadísticas se
+ * acumulan igualmente, para mostrar el GPS mientras no se captura.
+ *
+ * Las capturas cuentan todas las ubicaciones recibidas del GPS, no sólo las almacenadas después
+ * de la simplificación de trayectoria.
+ */
+public final class EstadoEnVivo {
+    public final long sesionID;             // ID de sesión en progreso, o 0 si no hay.
+    public final double latitud;
+    public final double longitud;
+    public final float precision;           // Metros, o NaN si el proveedor no la reporta.
+    public final float velocidad;           // Metros por segundo, o NaN si el proveedor no la reporta.
+    public final long fecha;                // Fecha de la captura, en milisegundos desde la época.
+
+    public final int capturas;              // Capturas recibidas en la sesión, incluyendo ésta.
+    public final double distancia;          // Metros recorridos en la sesión.
+    public final float velocidadMaxima;     // Metros por segundo, o NaN si ninguna captura reportó velocidad.
+
+    private EstadoEnVivo(long sesionID, double latitud, double longitud, float precision, float velocidad, long fecha, int capturas, double distancia, float velocidadMaxima) {
+        this.sesionID = sesionID;
+        this.latitud = latitud;
+        this.longitud = longitud;
+        this.precision = precision;
+        this.velocidad = velocidad;
+        this.fecha = fecha;
+        this.capturas = capturas;
+        this.distancia = distancia;
+        this.velocidadMaxima = velocidadMaxima;
+    }
+
+    /**
+     * Crea el estado correspondiente a una nueva captura.
+     *
+     * @param anterior Estado anterior, o null si es la primera captura recibida por el servicio.
+     * @param sesionID ID de la sesión en progreso, o 0 si no hay.
+     * @param latitud Latitud de la captura.
+     * @param longitud Longitud de la captura.
+     * @param precision Precisión en metros, o NaN si no está disponible.
+     * @param velocidad Velocidad en metros por segundo, o NaN si no está disponible.
+     * @param fecha Fecha de la captura.
+     * @return Estado con las estadísticas de "anterior" más esta captura si la sesión no cambió, o sólo de esta captura si cambió.
+     */
+    public static EstadoEnVivo siguiente(EstadoEnVivo anterior, long sesionID, double latitud, double longitud, float precision, float velocidad, long fecha) {
+        if (anterior == null || anterior.sesionID != sesionID) {
+            return new EstadoEnVivo(sesionID, latitud, longitud, precision, velocidad, fecha, 1, 0, velocidad);
+        }
+
+        float velocidadMaxima = anterior.velocidadMaxima;
+
+        if (Float.isNaN(velocidadMaxima) || velocidad > velocidadMaxima) {
+            velocidadMaxima = velocidad;
+        }
+
+        double distancia = anterior.distancia + SimplificadorTrayectoria.distancia(anterior.latitud, anterior.longitud, latitud, longitud);
+
+        return new EstadoEnVivo(sesionID, latitud, longitud, precision, velocidad, fecha, anterior.capturas + 1, distancia, velocidadMaxima);
+    }
+
+    @Override
+    public String toString() {
+        return "sesión " + sesionID + ": " + latitud + ", " + longitud + " (" + capturas + " capturas, " + distancia + " m)";
+    }
+}
@@ -0,0 +1,20 @@
+package xyz.fabianpineda.desarrollomovil.transqa.geolocalizacion;
+
+/**
+ * Evento SERVICIO_ACCION_MUESTREO_CAMBIADO: el servicio cambió el intervalo entre capturas de
+ * acuerdo a la velocidad y giros del vehículo. Inmutable y coalescible; sólo importa el modo más
+ * reciente. Ver: PlanificadorMuestreo
+ */
+public final class EventoMuestreo extends EventoServicio {
+    public final int modo;              // Alguna de las constantes PlanificadorMuestreo.MUESTREO_*.
+    public final long intervalo;        // Milisegundos.
+    public final long distancia;        // Metros.
+
+    public EventoMuestreo(int modo, long intervalo, long distancia) {
+        super(ServicioGeolocalizacion.SERVICIO_ACCION_MUESTREO_CAMBIADO, ServicioGeolocalizacion.SERVICIO_RESPUESTA_OK, null, true);
+
+        this.modo = modo;
+        this.intervalo = intervalo;
+        this.distancia = distancia;
+    }
+}
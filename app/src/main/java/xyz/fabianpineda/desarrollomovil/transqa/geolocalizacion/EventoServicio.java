@@ -0,0 +1,38 @@
+package xyz.fabianpineda.desarrollomovil.transqa.geolocalizacion;
+
+/**
+ * Respuesta o notificación de ServicioGeolocalizacion a sus clientes, publicada en CanalEventos.
+ * Inmutable.
+ *
+ * "accion" es alguna de las constantes ServicioGeolocalizacion.SERVICIO_ACCION_* y
+ * "tipoRespuesta" alguna de las constantes ServicioGeolocalizacion.SERVICIO_RESPUESTA_*. Las
+ * respuestas de error pueden incluir un mensaje a mostrar al usuario. Eventos con datos
+ * adicionales son subclases con campos propios (por ejemplo EventoMuestreo), así que los clientes
+ * no necesitan convertir ni deserializar datos genéricos.
+ *
+ * Un evento "coalescible" describe un estado que reemplaza al anterior (por ejemplo, el modo de
+ * muestreo actual): si hay uno pendiente de entrega con la misma acción, sólo se entrega el más
+ * reciente. Ver: CanalEventos
+ */
+public class EventoServicio {
+    public final String accion;
+    public final int tipoRespuesta;
+    public final String mensaje;        // Mensaje de error opcional, o null.
+    public final boolean coalescible;
+
+    public EventoServicio(String accion, int tipoRespuesta, String mensaje) {
+        this(accion, tipoRespuesta, mensaje, false);
+    }
+
+    protected EventoServicio(String accion, int tipoRespuesta, String mensaje, boolean coalescible) {
+        this.accion = accion;
+        this.tipoRespuesta = tipoRespuesta;
+        this.mensaje = mensaje;
+        this.coalescible = coalescible;
+    }
+
+    @Override
+    public String toString() {
+        return accion + ": respuesta tipo " + tipoRespuesta + (mensaje != null ? " (" + mensaje + ")" : "");
+    }
+}
@@ -0,0 +1,304 @@
+package xyz.fabianpineda.desarrollomovil.transqa.geolocalizacion;
+
+/**
+ * Fusión de capturas de varios proveedores de ubicación (GPS, NETWORK, PASSIVE) con un filtro de
+ * Kalman de velocidad constante.
+ *
+ * El estado es la posición y la velocidad en un plano local (metros al este y al norte de un
+ * origen cercano), con un filtro independiente por eje: posición, velocidad y su covarianza 2x2.
+ * Como el error de una captura es circular (Location.getAccuracy()) y el ruido de proceso es igual
+ * en ambos ejes, es equivalente a un filtro de cuatro estados, con menos operaciones. Todo el
+ * estado está en arreglos de tipos primitivos; actualizar() no reserva memoria.
+ *
+ * Cada captura, de cualquier proveedor, es una medición de posición con varianza igual al
+ * cuadrado de su precisión; así las capturas de NETWORK (decenas o cientos de metros) sólo
+ * corrigen levemente una trayectoria de GPS, pero mantienen la estimación cuando el GPS no
+ * entrega capturas (por ejemplo, en un túnel). Si la captura tiene velocidad y rumbo, también es
+ * una medición de velocidad, lo que mejora la predicción durante esas pausas.
+ *
+ * El tiempo de cada captura es Location.getElapsedRealtimeNanos(), que es monótono y común a
+ * todos los proveedores. Resultados de actualizar() (FUSION_*):
+ *
+ *      * FUSION_ACEPTADA: la captura corrigió la estimación.
+ *      * FUSION_DUPLICADA: la captura no es posterior a la última usada; por ejemplo, la misma
+ *        captura de GPS recibida de nuevo a través de PASSIVE. Ignorada.
+ *      * FUSION_RECHAZADA: la captura está demasiado lejos de la predicción para su precisión
+ *        (distancia de Mahalanobis sobre FUSION_UMBRAL_COMPUERTA). Ignorada.
+ *      * FUSION_REINICIADA: el filtro empezó de nuevo en esta captura: es la primera, la anterior
+ *        es muy antigua (FUSION_ESPERA_MAXIMA) o hubo FUSION_RECHAZOS_REINICIO rechazos seguidos
+ *        (la predicción, y no las capturas, es la que está equivocada).
+ *
+ * Después de FUSION_ACEPTADA o FUSION_REINICIADA, latitud(), longitud(), precision(),
+ * velocidad() y rumbo() describen la estimación en la fecha de la captura.
+ *
+ * Esta clase no es segura para ser usada desde varios hilos al mismo tiempo.
+ *
+ * No se debe incluir en este objeto código específico de Android, para poder probarlo localmente.
+ */
+final class FusionUbicacion {
+    static final int FUSION_ACEPTADA = 0;
+    static final int FUSION_DUPLICADA = 1;
+    static final int FUSION_RECHAZADA = 2;
+    static final int FUSION_REINICIADA = 3;
+
+    /** Desviación estándar de la aceleración no modelada, en m/s². Vehículo urbano. */
+    static final double FUSION_ACELERACION = 1.5;
+
+    /** Precisión, en metros, supuesta para capturas que no la informan. */
+    static final double FUSION_PRECISION_DESCONOCIDA = 50.0;
+
+    /** Desviación estándar, en m/s, de la velocidad informada por una captura. */
+    static final double FUSION_PRECISION_VELOCIDAD = 1.0;
+
+    /** Desviación estándar, en m/s, de la velocidad al reiniciar sin velocidad informada. */
+    static final double FUSION_PRECISION_VELOCIDAD_INICIAL = 15.0;
+
+    /** Cuadrado de la distancia de Mahalanobis máxima; chi cuadrado con 2 grados de libertad al 99.9%. */
+    static final double FUSION_UMBRAL_COMPUERTA = 13.8;
+
+    static final int FUSION_RECHAZOS_REINICIO = 3;
+
+    /** Nanosegundos sin capturas después de los cuales la predicción no es útil y se reinicia. */
+    static final long FUSION_ESPERA_MAXIMA = 120L * 1000000000L;
+
+    /** Metros desde el origen del plano local a partir de los cuales el origen es movido. */
+    private static final double FUSION_DISTANCIA_ORIGEN = 10000.0;
+
+    // Metros por grado de latitud, usando el radio medio de la Tierra.
+    private static final double METROS_POR_GRADO = 6371008.8 * Math.PI / 180.0;
+
+    private static final int ESTE = 0;
+    private static final int NORTE = 1;
+
+    private final double ruidoAceleracion;      // Varianza de la aceleración no modelada.
+
+    // Origen del plano local.
+    private boolean iniciado;
+    private double origenLatitud;
+    private double origenLongitud;
+    private double metrosPorGradoLongitud;
+
+    // Estado y covarianza por eje (ESTE, NORTE).
+    private final double[] posicion = new double[2];
+    private final double[] velocidad = new double[2];
+    private final double[] covarianzaPosicion = new double[2];
+    private final double[] covarianzaCruzada = new double[2];
+    private final double[] covarianzaVelocidad = new double[2];
+
+    private long ultimaNanos;
+    private int rechazosSeguidos;
+
+    /**
+     * Crea un filtro con FUSION_ACELERACION.
+     */
+    FusionUbicacion() {
+        this(FUSION_ACELERACION);
+    }
+
+    /**
+     * @param aceleracion Desviación estándar de la aceleración no modelada, en m/s². Mayor es más sensible a giros y frenados, y menos suave.
+     */
+    FusionUbicacion(double aceleracion) {
+        if (!(aceleracion > 0)) {
+            throw new IllegalArgumentException("aceleracion <= 0");
+        }
+
+        ruidoAceleracion = aceleracion * aceleracion;
+    }
+
+    /**
+     * Olvida la estimación; la siguiente captura reinicia el filtro.
+     */
+    void reiniciar() {
+        iniciado = false;
+        rechazosSeguidos = 0;
+    }
+
+    /**
+     * Agrega una captura.
+     *
+     * @param latitud Grados.
+     * @param longitud Grados.
+     * @param precision Radio de precisión en metros, o NaN si se desconoce.
+     * @param rapidez Velocidad en m/s, o NaN si se desconoce.
+     * @param rumbo Rumbo en grados desde el norte, o NaN si se desconoce.
+     * @param nanos Location.getElapsedRealtimeNanos() de la captura.
+     *
+     * @return Alguna de las constantes FUSION_*.
+     */
+    int actualizar(double latitud, double longitud, double precision, double rapidez, double rumbo, long nanos) {
+        double varianza = precision > 0 ? precision * precision : FUSION_PRECISION_DESCONOCIDA * FUSION_PRECISION_DESCONOCIDA;
+        boolean tieneVelocidad = !Double.isNaN(rapidez) && !Double.isNaN(rumbo);
+
+        if (iniciado && nanos <= ultimaNanos) {
+            return FUSION_DUPLICADA;
+        }
+
+        if (!iniciado || nanos - ultimaNanos > FUSION_ESPERA_MAXIMA) {
+            iniciar(latitud, longitud, varianza, tieneVelocidad, rapidez, rumbo, nanos);
+            return FUSION_REINICIADA;
+        }
+
+        double x = (longitud - origenLongitud) * metrosPorGradoLongitud;
+        double y = (latitud - origenLatitud) * METROS_POR_GRADO;
+
+        predecir((nanos - ultimaNanos) / 1e9);
+        ultimaNanos = nanos;
+
+        double innovacionX = x - posicion[ESTE];
+        double innovacionY = y - posicion[NORTE];
+        double distancia = innovacionX * innovacionX / (covarianzaPosicion[ESTE] + varianza)
+                + innovacionY * innovacionY / (covarianzaPosicion[NORTE] + varianza);
+
+        if (distancia > FUSION_UMBRAL_COMPUERTA) {
+            if (++rechazosSeguidos >= FUSION_RECHAZOS_REINICIO) {
+                iniciar(latitud, longitud, varianza, tieneVelocidad, rapidez, rumbo, nanos);
+                return FUSION_REINICIADA;
+            }
+
+            return FUSION_RECHAZADA;
+        }
+
+        rechazosSeguidos = 0;
+        corregirPosicion(ESTE, x, varianza);
+        corregirPosicion(NORTE, y, varianza);
+
+        if (tieneVelocidad) {
+            double varianzaVelocidad = FUSION_PRECISION_VELOCIDAD * FUSION_PRECISION_VELOCIDAD;
+            double radianes = Math.toRadians(rumbo);
+
+            corregirVelocidad(ESTE, rapidez * Math.sin(radianes), varianzaVelocidad);
+            corregirVelocidad(NORTE, rapidez * Math.cos(radianes), varianzaVelocidad);
+        }
+
+        if (Math.abs(posicion[ESTE]) + Math.abs(posicion[NORTE]) > FUSION_DISTANCIA_ORIGEN) {
+            moverOrigen();
+        }
+
+        return FUSION_ACEPTADA;
+    }
+
+    /**
+     * @return Latitud estimada, en grados.
+     */
+    double latitud() {
+        return origenLatitud + posicion[NORTE] / METROS_POR_GRADO;
+    }
+
+    /**
+     * @return Longitud estimada, en grados.
+     */
+    double longitud() {
+        return origenLongitud + posicion[ESTE] / metrosPorGradoLongitud;
+    }
+
+    /**
+     * @return Error cuadrático medio radial ("DRMS") de la posición estimada, en metros.
+     */
+    double precision() {
+        return Math.sqrt(covarianzaPosicion[ESTE] + covarianzaPosicion[NORTE]);
+    }
+
+    /**
+     * @return Velocidad estimada, en m/s.
+     */
+    double velocidad() {
+        return Math.sqrt(velocidad[ESTE] * velocidad[ESTE] + velocidad[NORTE] * velocidad[NORTE]);
+    }
+
+    /**
+     * @return Rumbo estimado en grados desde el norte, de 0 a 360.
+     */
+    double rumbo() {
+        double rumbo = Math.toDegrees(Math.atan2(velocidad[ESTE], velocidad[NORTE]));
+        return rumbo < 0 ? rumbo + 360 : rumbo;
+    }
+
+    /**
+     * @return Location.getElapsedRealtimeNanos() de la última captura usada.
+     */
+    long nanos() {
+        return ultimaNanos;
+    }
+
+    private void iniciar(double latitud, double longitud, double varianza, boolean tieneVelocidad, double rapidez, double rumbo, long nanos) {
+        iniciado = true;
+        origenLatitud = latitud;
+        origenLongitud = longitud;
+        metrosPorGradoLongitud = Math.cos(Math.toRadians(latitud)) * METROS_POR_GRADO;
+        ultimaNanos = nanos;
+        rechazosSeguidos = 0;
+
+        double radianes = tieneVelocidad ? Math.toRadians(rumbo) : 0;
+        double precisionVelocidad = tieneVelocidad ? FUSION_PRECISION_VELOCIDAD : FUSION_PRECISION_VELOCIDAD_INICIAL;
+
+        velocidad[ESTE] = tieneVelocidad ? rapidez * Math.sin(radianes) : 0;
+        velocidad[NORTE] = tieneVelocidad ? rapidez * Math.cos(radianes) : 0;
+
+        for (int eje = ESTE; eje <= NORTE; eje++) {
+            posicion[eje] = 0;
+            covarianzaPosicion[eje] = varianza;
+            covarianzaCruzada[eje] = 0;
+            covarianzaVelocidad[eje] = precisionVelocidad * precisionVelocidad;
+        }
+    }
+
+    /**
+     * Avanza el estado "segundos" con velocidad constante. La incertidumbre crece con el ruido de
+     * aceleración integrado (modelo de aceleración continua de ruido blanco).
+     */
+    private void predecir(double segundos) {
+        double t2 = segundos * segundos;
+        double t3 = t2 * segundos;
+
+        for (int eje = ESTE; eje <= NORTE; eje++) {
+            posicion[eje] += velocidad[eje] * segundos;
+            covarianzaPosicion[eje] += segundos * (2 * covarianzaCruzada[eje] + segundos * covarianzaVelocidad[eje]) + ruidoAceleracion * t3 / 3;
+            covarianzaCruzada[eje] += segundos * covarianzaVelocidad[eje] + ruidoAceleracion * t2 / 2;
+            covarianzaVelocidad[eje] += ruidoAceleracion * segundos;
+        }
+    }
+
+    private void corregirPosicion(int eje, double medicion, double varianza) {
+        double s = covarianzaPosicion[eje] + varianza;
+        double gananciaPosicion = covarianzaPosicion[eje] / s;
+        double gananciaVelocidad = covarianzaCruzada[eje] / s;
+        double innovacion = medicion - posicion[eje];
+
+        posicion[eje] += gananciaPosicion * innovacion;
+        velocidad[eje] += gananciaVelocidad * innovacion;
+
+        covarianzaVelocidad[eje] -= gananciaVelocidad * covarianzaCruzada[eje];
+        covarianzaCruzada[eje] *= 1 - gananciaPosicion;
+        covarianzaPosicion[eje] *= 1 - gananciaPosicion;
+    }
+
+    private void corregirVelocidad(int eje, double medicion, double varianza) {
+        double s = covarianzaVelocidad[eje] + varianza;
+        double gananciaPosicion = covarianzaCruzada[eje] / s;
+        double gananciaVelocidad = covarianzaVelocidad[eje] / s;
+        double innovacion = medicion - velocidad[eje];
+
+        posicion[eje] += gananciaPosicion * innovacion;
+        velocidad[eje] += gananciaVelocidad * innovacion;
+
+        covarianzaPosicion[eje] -= gananciaPosicion * covarianzaCruzada[eje];
+        covarianzaCruzada[eje] *= 1 - gananciaVelocidad;
+        covarianzaVelocidad[eje] *= 1 - gananciaVelocidad;
+    }
+
+    /**
+     * Mueve el origen del plano local a la posición estimada, para que la proyección
+     * equirectangular siga siendo precisa. No cambia la estimación.
+     */
+    private void moverOrigen() {
+        double latitud = latitud();
+        double longitud = longitud();
+
+        origenLatitud = latitud;
+        origenLongitud = longitud;
+        metrosPorGradoLongitud = Math.cos(Math.toRadians(latitud)) * METROS_POR_GRADO;
+        posicion[ESTE] = 0;
+        posicion[NORTE] = 0;
+    }
+}
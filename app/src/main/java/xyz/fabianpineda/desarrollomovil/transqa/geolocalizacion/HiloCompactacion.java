@@ -0,0 +1,86 @@
+package xyz.fabianpineda.desarrollomovil.transqa.geolocalizacion;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.util.Log;
+
+import xyz.fabianpineda.desarrollomovil.transqa.db.AlmacenSQLite;
+import xyz.fabianpineda.desarrollomovil.transqa.db.CompactacionSQLite;
+
+/**
+ * Hilo de baja prioridad que compacta periódicamente la base de datos (ver
+ * AlmacenSQLite.compactar y CompactacionSQLite).
+ *
+ * Cada ejecución trabaja a lo sumo HILO_COMPACTACION_PRESUPUESTO milisegundos, en lotes de
+ * transacciones cortas, para no bloquear al hilo que escribe capturas. Si queda trabajo, la
+ * siguiente ejecución ocurre después de una pausa corta (HILO_COMPACTACION_PAUSA), dejando pasar
+ * escrituras pendientes; si no, después de HILO_COMPACTACION_INTERVALO.
+ *
+ * Errores de una ejecución son registrados en el log y la compactación es reintentada en el
+ * siguiente intervalo.
+ */
+final class HiloCompactacion extends HandlerThread {
+    private static final String ETIQUETA = HiloCompactacion.class.getSimpleName();
+
+    // Tiempos en milisegundos.
+    static final long HILO_COMPACTACION_PRESUPUESTO = 200L;
+    static final long HILO_COMPACTACION_PAUSA = 2000L;
+    static final long HILO_COMPACTACION_INTERVALO = 6L * 60 * 60 * 1000;   // 6 horas.
+    static final long HILO_COMPACTACION_ESPERA_INICIAL = 60000L;          // Después de iniciar el servicio.
+
+    private final AlmacenSQLite almacen;
+    private final CompactacionSQLite compactacion;
+    private Handler manejador;
+
+    private final Runnable tarea = new Runnable() {
+        @Override
+        public void run() {
+            long espera = HILO_COMPACTACION_INTERVALO;
+
+            try {
+                if (almacen.compactar(compactacion, HILO_COMPACTACION_PRESUPUESTO)) {
+                    espera = HILO_COMPACTACION_PAUSA;
+                }
+            } catch (RuntimeException e) {
+                Log.e(ETIQUETA, "Error compactando la base de datos.", e);
+            }
+
+            manejador.postDelayed(this, espera);
+        }
+    };
+
+    /**
+     * @param almacen Almacén compactado. Debe permanecer abierto hasta que terminar() regrese.
+     * @param compactacion Configuración de la compactación. Pasa a ser usada exclusivamente por este hilo.
+     */
+    HiloCompactacion(AlmacenSQLite almacen, CompactacionSQLite compactacion) {
+        super(ETIQUETA, Process.THREAD_PRIORITY_BACKGROUND);
+
+        this.almacen = almacen;
+        this.compactacion = compactacion;
+    }
+
+    /**
+     * Inicia el hilo y programa la primera compactación.
+     */
+    void iniciar() {
+        start();
+
+        manejador = new Handler(getLooper());
+        manejador.postDelayed(tarea, HILO_COMPACTACION_ESPERA_INICIAL);
+    }
+
+    /**
+     * Cancela las compactaciones programadas y espera a que termine la que esté en ejecución.
+     */
+    void terminar() {
+        quit();
+
+        try {
+            join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
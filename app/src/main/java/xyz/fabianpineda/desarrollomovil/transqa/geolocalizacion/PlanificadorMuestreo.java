@@ -0,0 +1,262 @@
+package xyz.fabianpineda.desarrollomovil.transqa.geolocalizacion;
+
+/**
+ * Planificador de la frecuencia de muestreo del GPS.
+ *
+ * A partir de cada captura recibida, estima la velocidad y la tasa de giro (cambio de rumbo por
+ * segundo) del vehículo y elige uno de tres modos de muestreo (ver MUESTREO_*), cada uno con su
+ * propio intervalo de tiempo y distancia mínimos entre capturas:
+ *
+ *      * MUESTREO_DETENIDO: el vehículo está detenido. Capturas poco frecuentes.
+ *      * MUESTREO_CRUCERO: el vehículo se mueve sin giros bruscos. Igual al intervalo fijo anterior.
+ *      * MUESTREO_RAPIDO: el vehículo se mueve rápido o está girando. Capturas frecuentes.
+ *
+ * Para evitar cambios de modo constantes ("thrashing") se usa histéresis de dos maneras:
+ *
+ *      * Umbrales distintos para entrar y salir de cada modo. Por ejemplo, se entra a
+ *        MUESTREO_DETENIDO bajo VELOCIDAD_DETENIDO_ENTRADA pero sólo se sale sobre
+ *        VELOCIDAD_DETENIDO_SALIDA.
+ *      * Confirmaciones: pasar a un modo más frecuente requiere CONFIRMACIONES_SUBIR capturas
+ *        consecutivas que lo indiquen; pasar a uno menos frecuente requiere CONFIRMACIONES_BAJAR.
+ *        Así un giro se atiende de inmediato, pero una pausa corta no reduce el muestreo.
+ *
+ * La distancia mínima sólo se usa en MUESTREO_DETENIDO (DISTANCIA_DETENIDO): un vehículo
+ * estacionado deja de producir capturas, aunque se cumpla el intervalo, hasta desplazarse más que
+ * el error típico del GPS. En los demás modos la distancia es 0: el planificador necesita capturas
+ * periódicas para notar que el vehículo frena o se detiene, y en MUESTREO_CRUCERO un vehículo que
+ * avanza lento en un trancón no superaría la distancia mínima. Como en MUESTREO_DETENIDO la
+ * siguiente captura puede llegar mucho después que la anterior, una captura sin velocidad del GPS
+ * que se desplazó al menos DISTANCIA_DETENIDO cuenta como movimiento (ver actualizar); si fue sólo
+ * ruido, el planificador vuelve a MUESTREO_DETENIDO tras CONFIRMACIONES_BAJAR capturas.
+ *
+ * Quien use este objeto debe volver a solicitar actualizaciones de ubicación con intervalo() y
+ * distancia() cada vez que actualizar() regrese true.
+ *
+ * No se debe incluir en este objeto código específico de Android, para poder probarlo localmente.
+ */
+final class PlanificadorMuestreo {
+    // Modos de muestreo, ordenados de menor a mayor frecuencia.
+    public static final int MUESTREO_DETENIDO = 0;
+    public static final int MUESTREO_CRUCERO = 1;
+    public static final int MUESTREO_RAPIDO = 2;
+
+    // Intervalo de tiempo mínimo (milisegundos) y distancia mínima (metros) de cada modo, por índice MUESTREO_*.
+    private static final long[] INTERVALOS = { 30000L, 5000L, 2000L };
+    private static final float DISTANCIA_DETENIDO = 10.0f;
+    private static final float[] DISTANCIAS = { DISTANCIA_DETENIDO, 0.0f, 0.0f };
+
+    // Umbrales de velocidad en metros por segundo y de giro en grados por segundo.
+    private static final double VELOCIDAD_DETENIDO_ENTRADA = 0.8;
+    private static final double VELOCIDAD_DETENIDO_SALIDA = 2.0;
+    private static final double VELOCIDAD_RAPIDO_ENTRADA = 16.0;
+    private static final double VELOCIDAD_RAPIDO_SALIDA = 12.0;
+    private static final double GIRO_RAPIDO_ENTRADA = 12.0;
+    private static final double GIRO_RAPIDO_SALIDA = 6.0;
+
+    private static final int CONFIRMACIONES_SUBIR = 1;
+    private static final int CONFIRMACIONES_BAJAR = 3;
+
+    // Desplazamiento mínimo, en metros, para calcular un rumbo a partir de dos capturas.
+    private static final double DESPLAZAMIENTO_MINIMO_RUMBO = 3.0;
+
+    private int modo;
+    private int modoCandidato;
+    private int confirmaciones;
+    private long cambios;
+
+    // Captura anterior y su rumbo, si se conoce.
+    private boolean hayAnterior;
+    private double latitudAnterior;
+    private double longitudAnterior;
+    private long fechaAnterior;
+    private boolean hayRumboAnterior;
+    private double rumboAnterior;
+
+    // Estimaciones más recientes, para informar.
+    private double velocidad;
+    private double giro;
+
+    /**
+     * Crea un planificador en modo MUESTREO_CRUCERO.
+     */
+    PlanificadorMuestreo() {
+        reiniciar();
+    }
+
+    /**
+     * Vuelve al modo MUESTREO_CRUCERO y olvida las capturas anteriores. No cuenta como un cambio.
+     */
+    void reiniciar() {
+        modo = MUESTREO_CRUCERO;
+        modoCandidato = MUESTREO_CRUCERO;
+        confirmaciones = 0;
+        hayAnterior = false;
+        hayRumboAnterior = false;
+        velocidad = 0;
+        giro = 0;
+    }
+
+    /**
+     * @return Modo de muestreo actual. Alguna de las constantes MUESTREO_*.
+     */
+    int modo() {
+        return modo;
+    }
+
+    /**
+     * @return Intervalo de tiempo mínimo entre capturas del modo actual, en milisegundos.
+     */
+    long intervalo() {
+        return INTERVALOS[modo];
+    }
+
+    /**
+     * @return Distancia mínima entre capturas del modo actual, en metros.
+     */
+    float distancia() {
+        return DISTANCIAS[modo];
+    }
+
+    /**
+     * @return Total de cambios de modo desde que este objeto fue creado.
+     */
+    long cambios() {
+        return cambios;
+    }
+
+    /**
+     * @return Velocidad estimada con la última captura, en metros por segundo.
+     */
+    double velocidad() {
+        return velocidad;
+    }
+
+    /**
+     * @return Tasa de giro estimada con la última captura, en grados por segundo (valor absoluto).
+     */
+    double giro() {
+        return giro;
+    }
+
+    /**
+     * Actualiza las estimaciones con una nueva captura y decide si el modo debe cambiar.
+     *
+     * @param latitud Coordenada. Latitud, en grados.
+     * @param longitud Coordenada. Longitud, en grados.
+     * @param fecha Fecha de captura en milisegundos.
+     * @param tieneVelocidad true si "velocidadGPS" es válida.
+     * @param velocidadGPS Velocidad reportada por el GPS, en metros por segundo.
+     * @param tieneRumbo true si "rumboGPS" es válido.
+     * @param rumboGPS Rumbo reportado por el GPS, en grados [0, 360).
+     *
+     * @return true si el modo cambió y las actualizaciones de ubicación deben ser solicitadas de nuevo.
+     */
+    boolean actualizar(double latitud, double longitud, long fecha, boolean tieneVelocidad, float velocidadGPS, boolean tieneRumbo, float rumboGPS) {
+        double segundos = hayAnterior ? (fecha - fechaAnterior) / 1000.0 : 0;
+
+        // Capturas repetidas o desordenadas no aportan información.
+        if (hayAnterior && segundos <= 0) {
+            return false;
+        }
+
+        double desplazamiento = hayAnterior ? SimplificadorTrayectoria.distancia(latitudAnterior, longitudAnterior, latitud, longitud) : 0;
+
+        if (tieneVelocidad) {
+            velocidad = velocidadGPS;
+        } else if (hayAnterior) {
+            velocidad = desplazamiento / segundos;
+
+            // Dividir por toda la pausa ocultaría el movimiento que dejó pasar esta captura.
+            if (modo == MUESTREO_DETENIDO && desplazamiento >= DISTANCIA_DETENIDO) {
+                velocidad = Math.max(velocidad, VELOCIDAD_DETENIDO_SALIDA);
+            }
+        }
+
+        boolean hayRumbo = false;
+        double rumbo = 0;
+
+        if (tieneRumbo && velocidad >= VELOCIDAD_DETENIDO_ENTRADA) {
+            hayRumbo = true;
+            rumbo = rumboGPS;
+        } else if (hayAnterior && desplazamiento >= DESPLAZAMIENTO_MINIMO_RUMBO) {
+            hayRumbo = true;
+            rumbo = rumbo(latitudAnterior, longitudAnterior, latitud, longitud);
+        }
+
+        giro = 0;
+        if (hayRumbo && hayRumboAnterior && hayAnterior) {
+            double diferencia = Math.abs(rumbo - rumboAnterior) % 360.0;
+            giro = Math.min(diferencia, 360.0 - diferencia) / segundos;
+        }
+
+        hayAnterior = true;
+        latitudAnterior = latitud;
+        longitudAnterior = longitud;
+        fechaAnterior = fecha;
+
+        if (hayRumbo) {
+            hayRumboAnterior = true;
+            rumboAnterior = rumbo;
+        } else if (velocidad < VELOCIDAD_DETENIDO_ENTRADA) {
+            hayRumboAnterior = false;
+        }
+
+        return decidir(modoObjetivo());
+    }
+
+    /**
+     * @return El modo que corresponde a las estimaciones actuales, aplicando los umbrales de
+     * entrada y salida del modo actual.
+     */
+    private int modoObjetivo() {
+        boolean rapido = modo == MUESTREO_RAPIDO
+            ? velocidad > VELOCIDAD_RAPIDO_SALIDA || giro > GIRO_RAPIDO_SALIDA
+            : velocidad > VELOCIDAD_RAPIDO_ENTRADA || giro > GIRO_RAPIDO_ENTRADA;
+
+        if (rapido) {
+            return MUESTREO_RAPIDO;
+        }
+
+        boolean detenido = modo == MUESTREO_DETENIDO
+            ? velocidad < VELOCIDAD_DETENIDO_SALIDA
+            : velocidad < VELOCIDAD_DETENIDO_ENTRADA;
+
+        return detenido ? MUESTREO_DETENIDO : MUESTREO_CRUCERO;
+    }
+
+    private boolean decidir(int objetivo) {
+        if (objetivo == modo) {
+            modoCandidato = modo;
+            confirmaciones = 0;
+            return false;
+        }
+
+        if (objetivo != modoCandidato) {
+            modoCandidato = objetivo;
+            confirmaciones = 0;
+        }
+
+        confirmaciones++;
+
+        if (confirmaciones < (objetivo > modo ? CONFIRMACIONES_SUBIR : CONFIRMACIONES_BAJAR)) {
+            return false;
+        }
+
+        modo = objetivo;
+        confirmaciones = 0;
+        cambios++;
+
+        return true;
+    }
+
+    /**
+     * @return Rumbo inicial aproximado, en grados [0, 360), de la primera coordenada a la segunda.
+     */
+    private static double rumbo(double latitud1, double longitud1, double latitud2, double longitud2) {
+        double dx = (longitud2 - longitud1) * Math.cos(Math.toRadians((latitud1 + latitud2) / 2));
+        double dy = latitud2 - latitud1;
+        double grados = Math.toDegrees(Math.atan2(dx, dy));
+
+        return grados < 0 ? grados + 360.0 : grados;
+    }
+}
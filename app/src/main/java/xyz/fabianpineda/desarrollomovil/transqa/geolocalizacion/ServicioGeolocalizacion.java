@@ -8,26 +8,42 @@ import android.content.Intent;
 import android.content.IntentFilter;
 import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
-import android.database.Cursor;
-import android.database.sqlite.SQLiteDatabase;
-import android.database.sqlite.SQLiteException;
 import android.location.Location;
 import android.location.LocationListener;
 import android.location.LocationManager;
 import android.location.LocationProvider;
+import android.os.Binder;
 import android.os.Bundle;
+import android.os.Handler;
 import android.os.IBinder;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.preference.PreferenceManager;
 import android.support.v4.app.ActivityCompat;
 import android.support.v4.content.LocalBroadcastManager;
 
-import java.io.Serializable;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.List;
 
 import xyz.fabianpineda.desarrollomovil.transqa.R;
-import xyz.fabianpineda.desarrollomovil.transqa.db.GeolocalizacionSQLite;
+import xyz.fabianpineda.desarrollomovil.transqa.db.Almacen;
+import xyz.fabianpineda.desarrollomovil.transqa.db.AlmacenSQLite;
+import xyz.fabianpineda.desarrollomovil.transqa.db.AlmacenSegmentos;
+import xyz.fabianpineda.desarrollomovil.transqa.db.CompactacionSQLite;
+import xyz.fabianpineda.desarrollomovil.transqa.db.RegistroLatencias;
+import xyz.fabianpineda.desarrollomovil.transqa.db.RegistroSesion;
 import xyz.fabianpineda.desarrollomovil.transqa.db.SQLite;
-import xyz.fabianpineda.desarrollomovil.transqa.db.Sesion;
-import xyz.fabianpineda.desarrollomovil.transqa.db.SesionSQLite;
+import xyz.fabianpineda.desarrollomovil.transqa.metricas.Contador;
+import xyz.fabianpineda.desarrollomovil.transqa.metricas.Cronometro;
+import xyz.fabianpineda.desarrollomovil.transqa.metricas.Histograma;
+import xyz.fabianpineda.desarrollomovil.transqa.metricas.Medidor;
+import xyz.fabianpineda.desarrollomovil.transqa.metricas.RegistroMetricas;
+import xyz.fabianpineda.desarrollomovil.transqa.rutas.AjustadorRutas;
+import xyz.fabianpineda.desarrollomovil.transqa.rutas.FormasRutas;
+import xyz.fabianpineda.desarrollomovil.transqa.rutas.IndiceTramos;
 
 /**
  * Servicio de geolocalización que es ejecutado en el fondo, persistentemente, que captura y
@@ -57,8 +73,14 @@ import xyz.fabianpineda.desarrollomovil.transqa.db.SesionSQLite;
  *
  * Los componentes clientes interesados (restringidos en AndroidManifest.xml a clientes que hacen
  * parte del paquete de esta aplicación y no de aplicaciones distintas de terceros) pueden
- * registrarse como "broadcast receivers" usando el método registerReceiver de una instancia de un
- * LocalBroadcastManager.
+ * registrarse como receptores de eventos en CanalEventos.obtener(); las respuestas son objetos
+ * EventoServicio inmutables, entregados en el hilo principal.
+ *
+ * Adicionalmente, los clientes pueden enlazarse al servicio (bindService) para recibir la última
+ * captura y estadísticas de la sesión en progreso (EstadoEnVivo) por medio de Enlace. Las entregas
+ * son limitadas a un intervalo mínimo elegido por cada cliente (ver DifusorEnVivo). Enlazarse no
+ * reemplaza startService: el servicio sigue siendo un "started service" y los clientes no deben
+ * usar BIND_AUTO_CREATE, para no impedir que el servicio termine con stopSelf.
  *
  * Es importante saber que, entre todas las operaciones (acciones) soportadas por este servicio, los
  * clientes deben usar explícitamente sólo un subconjunto de  todas las acciones. Esto se debe a que
@@ -66,7 +88,7 @@ import xyz.fabianpineda.desarrollomovil.transqa.db.SesionSQLite;
  * algún efecto si se solicitan explícitamente. Un cliente, sin embargo, puede responder a
  * respuestas de cualquier tipo de acción soportada por el servicio, incluyendo acciones que los
  * clientes no deben solicitar explícitamente. Por ejemplo, la accion "iniciar GPS" no debe ser
- * solicitada explícitamente, pero un cliente "broadcast receiver" puede responder a respuestas
+ * solicitada explícitamente, pero un cliente receptor de eventos puede responder a respuestas
  * de esta acción para informarle al usuario que el GPS ha sido inicializado exitosamente.
  *
  * Este servicio hace uso de propiedades compartidas con todos los demás componentes de esta
@@ -85,6 +107,11 @@ import xyz.fabianpineda.desarrollomovil.transqa.db.SesionSQLite;
  * y continuará la sesión. Cerrar todas las Activities de la aplicación no interrumpen de ninguna
  * manera las sesiones abiertas y la captura de coordenadas continuará normalmente.
  *
+ * El servicio registra métricas de ejecución (capturas recibidas, intervalo entre capturas,
+ * duración y tamaño de las escrituras, tamaño de la base de datos, tiempo con el GPS encendido y
+ * apagado) en RegistroMetricas. Son visibles con "adb shell dumpsys activity service
+ * ServicioGeolocalizacion" (ver dump()) y en DiagnosticoActivity.
+ *
  * Internamente, se usa LocationManager como "API" para capturar coordenadas. No está siendo usado
  * el "Fused Location Provider" de las APIs Google Play.
  */
@@ -109,8 +136,13 @@ public final class ServicioGeolocalizacion extends Service implements LocationLi
 
     // Configuración del servicio. Usar con cuidado.
     private static final int SERVICIO_MODO_INICIO = START_STICKY;                       // El servicio se reiniciará tan pronto como sea posible si es "matado" por Android.
-    private static final int SERVICIO_INTERVALO_TIEMPO_GEOLOCALIZACION_MINIMO = 5000;   // Intervalo de tiempo mínimo entre capturas, en milisegundos. Es un "hint"; Android puede tardar más de 5000 ms.
-    private static final float SERVICIO_DISTANCIA_GEOLOCALIZACION_MINIMO = 0.0f;        // Distancia mínima entre capturas, en metros. Es cero ya que la captura es actualmente por tiempo, no por distancia.
+    private static final int SERVICIO_PERFIL_DURABILIDAD = SQLite.PERFIL_DURABILIDAD_SEGURO;    // Perfil de durabilidad de "almacen". Ver: SQLite.PERFIL_DURABILIDAD_* y BenchmarkDurabilidadSQLiteTest.
+    private static final boolean SERVICIO_REGISTRO_SEGMENTOS = false;                   // true para escribir capturas en un RegistroSegmentos e indexarlas en SQLite al terminar cada sesión. Ver: AlmacenSegmentos.
+    private static final String SERVICIO_DIRECTORIO_SEGMENTOS = "capturas";             // Directorio de los segmentos, dentro de los archivos de la aplicación.
+    private static final double SERVICIO_TOLERANCIA_SIMPLIFICACION = 5.0;               // Error máximo, en metros, de la trayectoria almacenada. 0 para almacenar todas las capturas. Ver: SimplificadorTrayectoria.
+    private static final boolean SERVICIO_FUSION_PROVEEDORES = true;                    // true para combinar capturas de GPS, NETWORK y PASSIVE con FusionUbicacion; false para usar sólo GPS, sin filtrar.
+    private static final long SERVICIO_FACTOR_INTERVALO_GPS_FUSION = 2L;                // Con fusión, el intervalo del GPS es el del planificador multiplicado por este factor. 1 para no reducirlo.
+    private static final String SERVICIO_ARCHIVO_RUTAS = "rutas.txt";                   // Formas de las rutas de transporte (shapes.txt de GTFS), dentro de los archivos de la aplicación. Si no existe, las capturas no son ajustadas a rutas. Ver: AjustadorRutas.
 
     // Acciones que pueden ser solicitadas directamente por componentes clientes.
     public static final String SERVICIO_ACCION_INICIAR_SERVICIO = "SERVICIO_GEOLOCALIZACION_ACCION_INICIAR_SERVICIO";
@@ -126,21 +158,22 @@ public final class ServicioGeolocalizacion extends Service implements LocationLi
     public static final String SERVICIO_ACCION_GPS_TERMINADO = "SERVICIO_GEOLOCALIZACION_ACCION_GPS_TERMINADO";
     public static final String SERVICIO_ACCION_GPS_INICIADO = "SERVICIO_GEOLOCALIZACION_ACCION_GPS_INICIADO";
     public static final String SERVICIO_ACCION_GPS_DESACTIVADO = "SERVICIO_GEOLOCALIZACION_ACCION_GPS_DESACTIVADO";
+    public static final String SERVICIO_ACCION_MUESTREO_CAMBIADO = "SERVICIO_GEOLOCALIZACION_ACCION_MUESTREO_CAMBIADO";
 
     // Acciones que indican errores o acciones inválidas. No hace sentido solicitarlas directamente en ningún caso.
     public static final String SERVICIO_ACCION_NINGUNA = "SERVICIO_GEOLOCALIZACION_ACCION_NINGUNA";
     public static final String SERVICIO_ACCION_DESCONOCIDA = "SERVICIO_GEOLOCALIZACION_ACCION_DESCONOCIDA";
 
     /*
-     * Los tipos de respuesta que pueden ser enviados como mensajes con resultados de acciones a los
-     * componentes clientes usando el método responder(String, int) a manera de Intents.
+     * Los tipos de respuesta que pueden ser enviados como eventos con resultados de acciones a los
+     * componentes clientes usando el método responder(String, int). Ver: CanalEventos
      *
-     * Algunos tipos de respuesta puede enviar de vuelta a los clientes datos adicionales usando
-     * responder(String, int, Serializable). El tipo de datos de estos "datos" adicionales para
-     * las respuestas es:
+     * Algunos tipos de respuesta envían de vuelta a los clientes datos adicionales:
      *
-     *      * SERVICIO_RESPUESTA_ERROR                  String  Opcional. Un mensaje de error.
-     *      * Todos los demás:                          null    Ninguno/ignorado/No usado.
+     *      * SERVICIO_RESPUESTA_ERROR                  EventoServicio.mensaje. Opcional. Un mensaje de error.
+     *      * SERVICIO_RESPUESTA_OK, en respuesta a
+     *        SERVICIO_ACCION_MUESTREO_CAMBIADO         EventoMuestreo: modo, intervalo y distancia. Coalescible.
+     *      * Todos los demás:                          Ninguno.
      *
      * TODO: las respuestas en muchos casos (la mayoría!?) son muy ambiguas. Se debería
      * TODO: "estandarizar", limpiar o crear más respuestas. Se debe verificar toda respuesta.
@@ -184,19 +217,6 @@ public final class ServicioGeolocalizacion extends Service implements LocationLi
      */
     // Ninguna acción *requiere* datos adicionales por el momento.
 
-    /*
-     * Las propiedades que contiene tdo Intent de respuesta enviado componentes clientes.
-     *
-     * Algunos tipos de respuesta no usan la propiedad "datos", pero todas las respuestas contienen,
-     * en adición a una "accion", una propiedad "tipo", que indica el tipo de respuesta, que
-     * puede ser cualquier valor SERVICIO_RESPUESTA_*.
-     *
-     * Los clientes interesados pueden entonces tomar decisiones dependiendo de la combinación de
-     * la acción con el tipo de respuesta, y opcionalmetne usar datos adicionales.
-     */
-    public static final String SERVICIO_RESPUESTA_PROPIEDAD_TIPO = "SERVICIO_GEOLOCALIZACION_RESPUESTA_TIPO";
-    public static final String SERVICIO_RESPUESTA_PROPIEDAD_DATOS = "SERVICIO_GEOLOCALIZACION_RESPUESTA_DATOS";
-
     /*
      * Listado de preferencias almacenadas en un SharedPreferences a nivel de aplicación.
      *
@@ -218,31 +238,57 @@ public final class ServicioGeolocalizacion extends Service implements LocationLi
      * Algunas propiedades tienen valores por defecto si no contienen un valor asignado explícitamente.
      * Vea las propiedades SERVICIO_PREFERENCIA_*_DEFAULT.
      *
+     * Las fechas de sesión son almacenadas como long: milisegundos desde epoch (UTC), igual que en
+     * la base de datos. Los clientes las convierten a hora local al mostrarlas.
+     *
      * TODO: cambiar preferencias "únicas" de este objeto a propiedades a nivel de componente?
      */
     public static final String SERVICIO_PREFERENCIA_OPERANDO = "SERVICIO_GEOLOCALIZACION_OPERACION";
     public static final String SERVICIO_PREFERENCIA_ID_SESION_EN_PROGRESO = "SERVICIO_GEOLOCALIZACION_ID_SESION_EN_PROGRESO";
     public static final String SERVICIO_PREFERENCIA_ID_SESION_A_MOSTRAR = "SERVICIO_GEOLOCALIZACION_ID_SESION_A_MOSTRAR_PROGRESO";
     public static final String SERVICIO_PREFERENCIA_NOMBRE_SESION = "SERVICIO_GEOLOCALIZACION_NOMBRE_SESION";
-    public static final String SERVICIO_PREFERENCIA_FECHA_INICIO_SESION = "SERVICIO_GEOLOCALIZACION_FECHA_INICIO_SESION";
-    public static final String SERVICIO_PREFERENCIA_FECHA_FIN_SESION = "SERVICIO_GEOLOCALIZACION_FECHA_FIN_SESION";
+    public static final String SERVICIO_PREFERENCIA_FECHA_INICIO_SESION = "SERVICIO_GEOLOCALIZACION_FECHA_INICIO_SESION_MS";
+    public static final String SERVICIO_PREFERENCIA_FECHA_FIN_SESION = "SERVICIO_GEOLOCALIZACION_FECHA_FIN_SESION_MS";
     public static final String SERVICIO_PREFERENCIA_ACCION = "SERVICIO_GEOLOCALIZACION_ACCION";
 
     // Valores por defecto para algunas preferencias compartidas a nivel de aplicación.
     public static final long SERVICIO_PREFERENCIA_ID_DEFAULT = 0L;
     public static final String SERVICIO_PREFERENCIA_NOMBRE_SESION_DEFAULT = "Sin nombre";
-    public static final String SERVICIO_PREFERENCIA_FECHA_DEFAULT = "/";
+    public static final long SERVICIO_PREFERENCIA_FECHA_DEFAULT = 0L;
 
     /*
      * Objetos usados por el servicio.
      *
-     * Note que el objeto "transmisor" es usado como un receptor de mensajes del sistema para poder
-     * terminar sesiones cuando el dispositivo esté siendo apagado.
+     * Note que el objeto "transmisor" sólo es usado como un receptor de mensajes del sistema para
+     * poder terminar sesiones cuando el dispositivo esté siendo apagado; los clientes son
+     * informados por medio de "eventos".
      */
-    private LocalBroadcastManager transmisor;   // Emisor de mensajes usado para informar clientes.
+    private LocalBroadcastManager transmisor;   // Receptor de mensajes del sistema.
+    private CanalEventos eventos;               // Canal usado para informar clientes.
+    private final Handler principal = new Handler(Looper.getMainLooper());  // Aplica en el hilo principal resultados de otros hilos.
     private SharedPreferences preferencias;     // Preferencias compartidas a nivel de aplicación.
     private LocationManager geolocalizador;     // Usado para obtener info. de geolocalización.
-    private SQLiteDatabase db;                  // Para persistir los registros de las sesiones.
+    private Almacen almacen;                    // Para persistir los registros de las sesiones. Ver: abrirAlmacen().
+    private EscritorCapturas escritor;          // Hilo que escribe capturas en "almacen" fuera del hilo principal.
+    private AlmacenSQLite almacenSQLite;        // Base de datos de "almacen", o su índice. Ver: abrirAlmacen().
+    private HiloCompactacion compactador;       // Hilo que compacta "almacenSQLite" periódicamente.
+    private final PlanificadorMuestreo planificador = new PlanificadorMuestreo();  // Decide intervalo y distancia entre capturas.
+    private final FusionUbicacion fusion = new FusionUbicacion();   // Combina capturas de todos los proveedores. Ver: SERVICIO_FUSION_PROVEEDORES.
+    private DifusorEnVivo difusor;              // Entrega "estadoEnVivo" a clientes enlazados.
+    private EstadoEnVivo estadoEnVivo;          // Última captura y estadísticas de la sesión; null si no hay capturas.
+    private final Enlace enlace = new Enlace(); // Devuelto a clientes enlazados. Ver: onBind.
+
+    // Métricas. Ver: registrarMetricas().
+    private final RegistroMetricas metricas = RegistroMetricas.obtener();
+    private Contador metricaCapturas;           // Capturas recibidas del GPS, sin repeticiones.
+    private CapturasGPS capturasGPS;            // Cuenta en "metricaCapturas" y "gps.intervalo_capturas".
+    private Cronometro metricaGPSEncendido;
+    private Cronometro metricaGPSApagado;
+    private Medidor metricaColaEscritor;        // Capturas en la cola del escritor.
+    private Medidor metricaCapturasDescartadas; // Capturas descartadas por cola del escritor llena.
+    private Medidor metricaCapturasAjustadas;   // Capturas escritas ajustadas a alguna ruta.
+    private Medidor metricaCapturasFueraDeRuta; // Capturas escritas fuera de toda ruta.
+    private final Contador[] metricasFusion = new Contador[4];  // Capturas por resultado de fusion.actualizar(), por índice FusionUbicacion.FUSION_*.
 
     // Usados para determinar el estado y/o soporte/presencia del GPS (proveedores) del dispositivo.
     private static boolean permisosGPSSuficientes;
@@ -257,8 +303,8 @@ public final class ServicioGeolocalizacion extends Service implements LocationLi
     private static long sesionIDActual;         // ID real de sesión en progreso, o un a valor < 1 si no hay.
     private static long sesionIDAMostrar;       // ID de sesión actual o de ID recientemente terminada. Para presentar a clientes.
     private static String sesionNombre;         // Nombre o comentario de Sesión. Para presentar a clientes.
-    private static String sesionFechaInicio;    // Fecha de inicio de sesión actual. Para presentar a clientes.
-    private static String sesionFechaFin;       // Fecha de fin de sesión recientemente terminada, si está disponible. Para presentar a clientes.
+    private static long sesionFechaInicio;      // Fecha de inicio de sesión actual. Para presentar a clientes.
+    private static long sesionFechaFin;         // Fecha de fin de sesión recientemente terminada, si está disponible. Para presentar a clientes.
 
     /**
      * Hace saber a los clientes si hay una sesión en progreso.
@@ -270,45 +316,28 @@ public final class ServicioGeolocalizacion extends Service implements LocationLi
     }
 
     /**
-     * Envía una respuesta a todos los clientes interesados.
-     *
-     * Esta versión del método es usada si se desean enviar datos adicionales con la respuesta. Si
-     * no se desean enviar datos adicionales, se puede usar null como valor para "datos", o
-     * simplemente se puede llamar responder(String, int).
+     * Envía una respuesta a todos los clientes interesados, publicando un EventoServicio en
+     * CanalEventos.
      *
-     * Notablemente, si el tipo de respuesta es SERVICIO_RESPUESTA_ERROR, se recomienda incluir
-     * como "datos" una String que contenga un mensaje de error a mostrar; una causa del error.
+     * Esta versión del método es usada para incluir un mensaje con la respuesta. Notablemente, si
+     * el tipo de respuesta es SERVICIO_RESPUESTA_ERROR, se recomienda incluir un mensaje de error a
+     * mostrar; una causa del error.
      *
      * Ver: responder(String, int)
      *
      * @param accion La acción a la que los clientes deben responder. Ver: SERVICIO_ACCION_*
      * @param tipoRespuesta El código de respuesta asociado a la acción. Ver: SERVICIO_RESPUESTA_*
-     * @param datos Datos adicionales enviados a clientes por medio de Intents. Contendrá adicionalmente la propiedad "accion" que será igual al valor del parámetro "accion".
+     * @param mensaje Mensaje a mostrar al usuario, o null.
      */
-    private void responder(String accion, int tipoRespuesta, Serializable datos) {
-        Intent respuesta = new Intent(accion);
-
-        respuesta.putExtra(SERVICIO_RESPUESTA_PROPIEDAD_TIPO, tipoRespuesta);
-
-        if (datos != null) {
-            respuesta.putExtra(SERVICIO_RESPUESTA_PROPIEDAD_DATOS, datos);
-        }
-
-        transmisor.sendBroadcast(respuesta);
+    private void responder(String accion, int tipoRespuesta, String mensaje) {
+        eventos.publicar(new EventoServicio(accion, tipoRespuesta, mensaje));
     }
 
     /**
-     * Envía una respuesta a todos los clientes interesados.
-     *
-     * Esta versión del método es usada si no se desean enviar datos adicionales con la respuesta.
-     * Si se busca enviar datos adicionales, considere usar responder(String, int, Serializable)
+     * Envía una respuesta sin mensaje a todos los clientes interesados. Los componentes clientes
+     * pueden usar la acción junto con tipoRespuesta para determinar un curso de acción.
      *
-     * Ya que la función llama responder(String, int, Serializable) internamente, a los clientes
-     * será unviado un Intent con una propiedad accion igual al parámetro "accion". Los componentes
-     * clientes pueden usar esta propiedad junto con tipoRespuesta para determinar un curso de
-     * acción.
-     *
-     * Ver: responder(String, int, Serializable)
+     * Ver: responder(String, int, String)
      *
      * @param accion La acción a la que los clientes deben responder. Ver: SERVICIO_ACCION_*
      * @param tipoRespuesta El código de respuesta asociado a la acción. Ver: SERVICIO_RESPUESTA_*
@@ -317,6 +346,22 @@ public final class ServicioGeolocalizacion extends Service implements LocationLi
         responder(accion, tipoRespuesta, null);
     }
 
+    /**
+     * Registra en el log los contadores del escritor, incluyendo capturas conservadas y omitidas por
+     * la simplificación de trayectoria, y ajustadas a rutas o fuera de ruta.
+     */
+    private static void registrarContadoresEscritor(EscritorCapturas escritor) {
+        android.util.Log.i(ServicioGeolocalizacion.class.getCanonicalName(), String.format(
+            "Capturas: procesadas=%d conservadas=%d omitidas=%d descartadas=%d ajustadas=%d fuera_de_ruta=%d",
+            escritor.capturasProcesadas(),
+            escritor.capturasConservadas(),
+            escritor.capturasOmitidas(),
+            escritor.capturasDescartadas(),
+            escritor.capturasAjustadas(),
+            escritor.capturasFueraDeRuta()
+        ));
+    }
+
     /**
      * Intenta iniciar una nueva sesión si no hay una sesión en progreso, actualizando
      * sesionIDActual y otras propiedades relacionadas en "preferencias."
@@ -326,22 +371,21 @@ public final class ServicioGeolocalizacion extends Service implements LocationLi
      * @return true si la operación fue exitosa. false en otros casos.
      */
     private boolean iniciarSesion(String nombre) {
-        Cursor sesion;
+        RegistroSesion sesion;
 
         if (sesionIDActual > 0) {
             return false; // No se puede crear una nueva sesión si ya existe una.
         }
 
-        if ((sesion = SesionSQLite.iniciarSesion(db, nombre)) != null) {
+        if ((sesion = almacen.sesiones().iniciarSesion(nombre)) != null) {
             preferencias.edit()
-                .putLong(SERVICIO_PREFERENCIA_ID_SESION_EN_PROGRESO, sesionIDActual = sesion.getLong(Sesion.TABLA_SESION_ID_INDICE))
+                .putLong(SERVICIO_PREFERENCIA_ID_SESION_EN_PROGRESO, sesionIDActual = sesion.id)
                 .putLong(SERVICIO_PREFERENCIA_ID_SESION_A_MOSTRAR, sesionIDAMostrar = sesionIDActual)
-                .putString(SERVICIO_PREFERENCIA_NOMBRE_SESION, sesionNombre = sesion.getString(Sesion.TABLA_SESION_NOMBRE_INDICE))
-                .putString(SERVICIO_PREFERENCIA_FECHA_INICIO_SESION, sesionFechaInicio = sesion.getString(Sesion.TABLA_SESION_FECHA_INICIO_INDICE))
-                .putString(SERVICIO_PREFERENCIA_FECHA_FIN_SESION, sesionFechaFin = SERVICIO_PREFERENCIA_FECHA_DEFAULT)
+                .putString(SERVICIO_PREFERENCIA_NOMBRE_SESION, sesionNombre = sesion.nombre)
+                .putLong(SERVICIO_PREFERENCIA_FECHA_INICIO_SESION, sesionFechaInicio = sesion.fechaInicio)
+                .putLong(SERVICIO_PREFERENCIA_FECHA_FIN_SESION, sesionFechaFin = SERVICIO_PREFERENCIA_FECHA_DEFAULT)
             .commit();
 
-            sesion.close();
             return true;
         }
 
@@ -349,27 +393,91 @@ public final class ServicioGeolocalizacion extends Service implements LocationLi
     }
 
     /**
-     * Intenta terminar la sesión abierta, si existe, modificando sesionIDActual y otras propiedades
-     * relacionadas en "preferencias."
+     * Solicita terminar la sesión abierta, si existe. Nunca bloquea el hilo principal.
      *
-     * No confundir con accionTerminarSesion().
+     * La sesión es terminada en el hilo escritor (ver EscritorCapturas.ejecutarDespuesDeEscribir)
+     * después de que inserte las capturas recibidas hasta el momento, para que la sesión quede
+     * completa en la base de datos al tener fecha de terminación. Las latencias de escritura de sus
+     * capturas (ver TrazaLatencias) son guardadas junto con la sesión. Si las capturas no pudieron
+     * ser insertadas, la sesión es terminada de todas formas y las capturas siguen pendientes en el
+     * escritor.
      *
-     * @return true si la operación fue exitosa. false en otros casos.
+     * El resultado es aplicado en el hilo principal por sesionTerminada(), que modifica
+     * sesionIDActual y otras propiedades relacionadas en "preferencias" y responde a los clientes
+     * con SERVICIO_ACCION_TERMINAR_SESION.
+     *
+     * No confundir con accionTerminarSesion().
      */
-    private boolean terminarSesion() {
-        Cursor resultado = SesionSQLite.terminarSesion(db, sesionIDActual);
+    private void terminarSesion() {
+        final long idSesion = sesionIDActual;
+        final Almacen almacenSesion = almacen;
+        final EscritorCapturas escritorSesion = escritor;
 
-        if (resultado != null) {
-            preferencias.edit()
-                    .putLong(SERVICIO_PREFERENCIA_ID_SESION_EN_PROGRESO, sesionIDActual = SERVICIO_PREFERENCIA_ID_DEFAULT)
-                    .putString(SERVICIO_PREFERENCIA_FECHA_FIN_SESION, sesionFechaFin = resultado.getString(Sesion.TABLA_SESION_FECHA_FIN_INDICE))
-            .commit();
+        EscritorCapturas.TareaEscritor tarea = new EscritorCapturas.TareaEscritor() {
+            @Override
+            public void ejecutar(boolean escritas) {
+                RegistroLatencias latencias = null;
+                RegistroSesion resultado = null;
 
-            resultado.close();
-            return true;
+                if (escritorSesion != null) {
+                    if (!escritas) {
+                        android.util.Log.w(ServicioGeolocalizacion.class.getCanonicalName(), "Capturas pendientes no fueron insertadas antes de terminar la sesión.");
+                    }
+
+                    registrarContadoresEscritor(escritorSesion);
+                    latencias = escritorSesion.latenciasSesion(idSesion);
+                }
+
+                try {
+                    resultado = almacenSesion.sesiones().terminarSesion(idSesion, latencias);
+                } catch (RuntimeException e) {
+                    android.util.Log.e(ServicioGeolocalizacion.class.getCanonicalName(), "Error terminando sesión.", e);
+                }
+
+                final RegistroSesion terminada = resultado;
+
+                principal.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        sesionTerminada(idSesion, terminada);
+                    }
+                });
+            }
+        };
+
+        if (escritorSesion != null) {
+            escritorSesion.ejecutarDespuesDeEscribir(tarea);
+        } else {
+            tarea.ejecutar(true);
         }
+    }
 
-        return false;
+    /**
+     * Aplica, en el hilo principal, el resultado de terminarSesion(). Si la sesión fue terminada,
+     * actualiza sesionIDActual y la fecha de fin en "preferencias" y responde
+     * SERVICIO_ACCION_TERMINAR_SESION con SERVICIO_RESPUESTA_OK. Si no, responde con
+     * SERVICIO_RESPUESTA_ERROR y mensaje R.string.error_terminando_sesion_formato con el ID de la
+     * sesión que no pudo ser terminada.
+     *
+     * @param idSesion ID de la sesión que se solicitó terminar.
+     * @param resultado La sesión terminada, o null si no pudo ser terminada.
+     */
+    private void sesionTerminada(long idSesion, RegistroSesion resultado) {
+        if (resultado == null) {
+            responder(SERVICIO_ACCION_TERMINAR_SESION, SERVICIO_RESPUESTA_ERROR, String.format(
+                    getString(R.string.error_terminando_sesion_formato),
+                    idSesion
+            ));
+
+            return;
+        }
+
+        preferencias.edit()
+                .putLong(SERVICIO_PREFERENCIA_ID_SESION_EN_PROGRESO, sesionIDActual = SERVICIO_PREFERENCIA_ID_DEFAULT)
+                .putLong(SERVICIO_PREFERENCIA_FECHA_FIN_SESION, sesionFechaFin = resultado.fechaFin)
+        .commit();
+
+        responder(SERVICIO_ACCION_TERMINAR_SESION, SERVICIO_RESPUESTA_OK);
     }
 
     /**
@@ -382,8 +490,9 @@ public final class ServicioGeolocalizacion extends Service implements LocationLi
      * onLocationChanged(Location location), onStatusChanged(String, int, Bundle),
      * onProviderDisabled(String) y onProviderEnabled(String).
      *
-     * La frecuencia de peticiones de coordenadas es controlada
-     * SERVICIO_INTERVALO_TIEMPO_GEOLOCALIZACION_MINIMO y SERVICIO_DISTANCIA_GEOLOCALIZACION_MINIMO
+     * La frecuencia de peticiones de coordenadas es controlada por "planificador", que es
+     * reiniciado a su modo inicial (ver PlanificadorMuestreo) cada vez que el GPS es iniciado, al
+     * igual que "fusion". Ver: solicitarActualizaciones()
      *
      * @return true si la operación es exitosa. false en otros casos.
      */
@@ -399,10 +508,84 @@ public final class ServicioGeolocalizacion extends Service implements LocationLi
             return false;
         }
 
-        geolocalizador.requestLocationUpdates(LocationManager.GPS_PROVIDER, SERVICIO_INTERVALO_TIEMPO_GEOLOCALIZACION_MINIMO, SERVICIO_DISTANCIA_GEOLOCALIZACION_MINIMO, this);
+        planificador.reiniciar();
+        fusion.reiniciar();
+        solicitarActualizaciones();
+
+        capturasGPS.reiniciar();
+        metricaGPSApagado.detener();
+        metricaGPSEncendido.iniciar();
         return true;
     }
 
+    /**
+     * Vuelve a solicitar actualizaciones de geolocalización con el intervalo y distancia del modo
+     * actual de "planificador", reemplazando la solicitud anterior, e informa el cambio a los
+     * clientes con una respuesta SERVICIO_ACCION_MUESTREO_CAMBIADO.
+     *
+     * Si no se cuentan con permisos suficientes, la operación falla silenciosamente; el error será
+     * detectado por onProviderDisabled o al iniciar el GPS de nuevo.
+     */
+    private void reprogramarGPS() {
+        if (ActivityCompat.checkSelfPermission(this, Manifest.permission.ACCESS_FINE_LOCATION) != PackageManager.PERMISSION_GRANTED) {
+            return;
+        }
+
+        solicitarActualizaciones();
+
+        android.util.Log.i(ServicioGeolocalizacion.class.getCanonicalName(), String.format(
+            "Muestreo: modo=%d intervalo=%d ms distancia=%.1f m velocidad=%.1f m/s giro=%.1f grados/s cambios=%d",
+            planificador.modo(),
+            planificador.intervalo(),
+            planificador.distancia(),
+            planificador.velocidad(),
+            planificador.giro(),
+            planificador.cambios()
+        ));
+
+        eventos.publicar(new EventoMuestreo(planificador.modo(), planificador.intervalo(), Math.round(planificador.distancia())));
+    }
+
+    /**
+     * Solicita actualizaciones de geolocalización con el intervalo y distancia del modo actual de
+     * "planificador", reemplazando las solicitudes anteriores. Requiere permisos suficientes.
+     *
+     * Sin fusión (SERVICIO_FUSION_PROVEEDORES), sólo se usa GPS_PROVIDER. Con fusión:
+     *
+     *      * GPS_PROVIDER, con el intervalo multiplicado por SERVICIO_FACTOR_INTERVALO_GPS_FUSION;
+     *        "fusion" suaviza y predice entre capturas, así que el GPS puede estar encendido menos
+     *        tiempo.
+     *      * NETWORK_PROVIDER, si existe y está activado, con el intervalo del planificador. Mantiene
+     *        la estimación donde el GPS no recibe señal.
+     *      * PASSIVE_PROVIDER, sin intervalo mínimo: capturas solicitadas por otras aplicaciones,
+     *        sin costo adicional. Las que repiten capturas ya recibidas son ignoradas por "fusion".
+     */
+    private void solicitarActualizaciones() {
+        long intervalo = planificador.intervalo();
+        float distancia = planificador.distancia();
+
+        if (!SERVICIO_FUSION_PROVEEDORES) {
+            geolocalizador.requestLocationUpdates(LocationManager.GPS_PROVIDER, intervalo, distancia, this);
+            return;
+        }
+
+        geolocalizador.requestLocationUpdates(LocationManager.GPS_PROVIDER, intervalo * SERVICIO_FACTOR_INTERVALO_GPS_FUSION, distancia, this);
+
+        if (proveedorRedActivado()) {
+            geolocalizador.requestLocationUpdates(LocationManager.NETWORK_PROVIDER, intervalo, distancia, this);
+        }
+
+        geolocalizador.requestLocationUpdates(LocationManager.PASSIVE_PROVIDER, 0L, 0.0f, this);
+    }
+
+    /**
+     * @return true si el dispositivo tiene NETWORK_PROVIDER y está activado.
+     */
+    private boolean proveedorRedActivado() {
+        List<String> proveedores = geolocalizador.getAllProviders();
+        return proveedores != null && proveedores.contains(LocationManager.NETWORK_PROVIDER) && geolocalizador.isProviderEnabled(LocationManager.NETWORK_PROVIDER);
+    }
+
     /**
      * Si se cuentan con suficientes permisos, el GPS está activado en modo "GPS" o de "alta
      * precisión" y se están recibiendo actualizaciones de geolocalización (con una sesión abierta),
@@ -420,6 +603,9 @@ public final class ServicioGeolocalizacion extends Service implements LocationLi
         }
 
         geolocalizador.removeUpdates(this);
+
+        metricaGPSEncendido.detener();
+        metricaGPSApagado.iniciar();
     }
 
     /**
@@ -509,30 +695,20 @@ public final class ServicioGeolocalizacion extends Service implements LocationLi
      *
      *      * Se termina el GPS si no ha sido terminado. Se envía un mensaje de tipo
      *        SERVICIO_ACCION_GPS_TERMINADO con respuesta tipo SERVICIO_RESPUESTA_VACIA.
-     *      * Se intenta terminar la sesión. Si la operación falló, entonces se envía un mensaje
-     *        SERVICIO_ACCION_TERMINAR_SESION con código respuesta SERVICIO_RESPUESTA_ERROR y
-     *        mensaje R.string.error_terminando_sesion_formato con el ID de la sesión que no pudo
-     *        ser cerrada.
-     *      * Si la operación fue exitosa, se cambia el estado del servicio a "no operando" y
-     *        y la acción a "ninguna". Se envía como respuesta un mensaje tipo
-     *        SERVICIO_ACCION_TERMINAR_SESION con código de respuesta SERVICIO_RESPUESTA_OK.
+     *      * Se solicita terminar la sesión (ver terminarSesion()). Cuando termina, se envía un
+     *        mensaje SERVICIO_ACCION_TERMINAR_SESION con código de respuesta
+     *        SERVICIO_RESPUESTA_OK o, si la operación falló, SERVICIO_RESPUESTA_ERROR y mensaje
+     *        R.string.error_terminando_sesion_formato con el ID de la sesión que no pudo ser
+     *        cerrada.
+     *      * Se cambia el estado del servicio a "no operando" y la acción a "ninguna".
      *
      *  @param datos Bundle con datos adicionales enviados desde onStartCommand. Ignorado.
      */
     private void accionTerminarSesion(Bundle datos) {
-        long sesionActual = sesionIDActual;
-
         terminarGPS();
         responder(SERVICIO_ACCION_GPS_TERMINADO, SERVICIO_RESPUESTA_VACIA);
 
-        if (!terminarSesion()) {
-            responder(SERVICIO_ACCION_TERMINAR_SESION, SERVICIO_RESPUESTA_ERROR, String.format(
-                    getString(R.string.error_terminando_sesion_formato),
-                    sesionActual
-            ));
-        } else {
-            responder(SERVICIO_ACCION_TERMINAR_SESION, SERVICIO_RESPUESTA_OK);
-        }
+        terminarSesion();
 
         preferencias.edit()
             .putBoolean(SERVICIO_PREFERENCIA_OPERANDO, operando = false)
@@ -696,7 +872,7 @@ public final class ServicioGeolocalizacion extends Service implements LocationLi
      *        * Si no se pudo iniciar el GPS, se encía una respuesta de error con tipo
      *          SERVICIO_ACCION_SERVICIO_REINICIADO y código SERVICIO_RESPUESTA_ERROR con texto
      *          R.string.error_geolocalizacion_no_gps. El estado del servicio cambia a "no operando"
-     *          y se intenta terminar la sesiión actual.
+     *          y se solicita terminar la sesiión actual (ver terminarSesion()).
      *          * Si no se pudo terminar la sesión, se responde con mensaje tipo
      *            SERVICIO_ACCION_TERMINAR_SESION, código SERVICIO_RESPUESTA_ERROR y texto
      *            R.string.error_terminando_sesion_formato con el ID de la sesión no terminada.
@@ -706,8 +882,6 @@ public final class ServicioGeolocalizacion extends Service implements LocationLi
      *            automáticamente para reiniciarse a si mismo.
      */
     private void reanudarOperacion() {
-        long sesionActual = sesionIDActual;
-
         if (!operando) {
             responder(SERVICIO_ACCION_SERVICIO_REINICIADO, SERVICIO_RESPUESTA_VACIA);
         } else if (sesionIDActual < 1) {
@@ -722,14 +896,7 @@ public final class ServicioGeolocalizacion extends Service implements LocationLi
             preferencias.edit().putBoolean(SERVICIO_PREFERENCIA_OPERANDO, operando = false).commit();
             responder(SERVICIO_ACCION_GPS_INICIADO, SERVICIO_RESPUESTA_ERROR, getString(R.string.error_geolocalizacion_no_gps));
 
-            if (!terminarSesion()) {
-                responder(SERVICIO_ACCION_TERMINAR_SESION, SERVICIO_RESPUESTA_ERROR, String.format(
-                        getString(R.string.error_terminando_sesion_formato),
-                        sesionActual
-                ));
-            } else {
-                responder(SERVICIO_ACCION_TERMINAR_SESION, SERVICIO_RESPUESTA_OK);
-            }
+            terminarSesion();
         }
     }
 
@@ -845,31 +1012,65 @@ public final class ServicioGeolocalizacion extends Service implements LocationLi
     }
 
     /**
-     * No hace nada; este no es un bound service.
+     * Interfaz local (dentro del mismo proceso) entregada a clientes enlazados al servicio. Todos
+     * sus métodos deben ser llamados desde el hilo principal.
+     */
+    public final class Enlace extends Binder {
+        /**
+         * Suscribe un receptor a la última captura y estadísticas de la sesión. El receptor recibe
+         * el último estado conocido de inmediato y después a lo sumo uno por "intervalo."
+         *
+         * @param receptor Receptor de estados, llamado en el hilo principal.
+         * @param intervalo Tiempo mínimo, en milisegundos, entre dos entregas. Ver: DifusorEnVivo.DIFUSOR_INTERVALO_DEFAULT
+         */
+        public void suscribir(DifusorEnVivo.ReceptorEnVivo receptor, long intervalo) {
+            difusor.suscribir(receptor, intervalo);
+        }
+
+        /**
+         * Anula la suscripción de un receptor. Los clientes deben llamarlo antes de unbindService;
+         * de todas formas, onUnbind anula todas las suscripciones cuando se desenlaza el último.
+         */
+        public void anularSuscripcion(DifusorEnVivo.ReceptorEnVivo receptor) {
+            difusor.anularSuscripcion(receptor);
+        }
+
+        /**
+         * @return La última captura y estadísticas de la sesión, o null si aún no hay capturas.
+         */
+        public EstadoEnVivo estadoActual() {
+            return estadoEnVivo;
+        }
+    }
+
+    /**
+     * Ejecutado cuando el primer cliente se enlaza al servicio.
      *
-     * @param intent Intent envíado como "comando" a bound service.
-     * @return null, para indicar que este no es un bound service.
+     * @param intent Intent usado por el cliente en bindService.
+     * @return "enlace", la interfaz local del servicio.
      */
     @Override
     public IBinder onBind(Intent intent) {
-        return null;
+        return enlace;
     }
 
     /**
-     * No hace nada; este no es un bound service.
+     * Ejecutado cuando todos los clientes se han desenlazado del servicio. Anula toda suscripción
+     * que algún cliente haya dejado activa, para no retener receptores (y sus Activities).
      *
-     * @param intent Intent enviado al "soltar" un bound service.
-     * @return false, ya que este no es un bound service y no se permite "rebind"
+     * @param intent Intent usado por los clientes en bindService.
+     * @return false; no se necesita onRebind, "enlace" es el mismo para todo cliente.
      */
     @Override
     public boolean onUnbind(Intent intent) {
+        difusor.anularTodas();
         return false;
     }
 
     /**
-     * No hace nada; este no es un bound service.
+     * No hace nada; onUnbind siempre devuelve false.
      *
-     * @param intent Intent enviado al intentar hacer "rebind". No hace nada, ya que no es un bound service y no permite rebind.
+     * @param intent Intent enviado al intentar hacer "rebind". No hace nada, ya que no se permite rebind.
      */
     @Override
     public void onRebind(Intent intent) {
@@ -882,17 +1083,81 @@ public final class ServicioGeolocalizacion extends Service implements LocationLi
      * captura de coordenadas será insertada en una base de datos local con una fecha de captura y
      * asociada a la sesion actual, por ID.
      *
+     * Este método es ejecutado en el hilo principal, así que no escribe en la base de datos: la
+     * captura es entregada al hilo "escritor", que las inserta en lotes. Si la cola del escritor
+     * está llena, la captura es descartada y contada (ver EscritorCapturas). La captura lleva su
+     * marca de tiempo GNSS y la de su recepción, para medir la latencia de cada etapa hasta ser
+     * escrita (ver TrazaLatencias).
+     *
+     * Con SERVICIO_FUSION_PROVEEDORES, las capturas pueden venir de GPS, NETWORK o PASSIVE y son
+     * combinadas por "fusion" (ver FusionUbicacion): capturas repetidas o incoherentes con la
+     * trayectoria son ignoradas, y en lugar de la captura se usa la posición estimada. Sólo las
+     * capturas del GPS son contadas en "gps.capturas" y "gps.intervalo_capturas", una sola vez
+     * aunque lleguen también por PASSIVE (ver CapturasGPS).
+     *
+     * Cada captura también es entregada a "planificador"; si éste decide cambiar el modo de
+     * muestreo, las actualizaciones de geolocalización son solicitadas de nuevo (ver reprogramarGPS).
+     *
+     * Toda captura, haya sesión o no, actualiza "estadoEnVivo" y es publicada en "difusor" para
+     * clientes enlazados; el difusor limita la frecuencia de las entregas. También es contada en
+     * las métricas del servicio, sin reservar memoria.
+     *
      * Sobreescritura de método de LocationListener.
      *
      * @param location Las coordenadas obtenidas en esta captura; proveido por Android.
      */
     @Override
     public void onLocationChanged(Location location) {
-        android.util.Log.d(ServicioGeolocalizacion.class.getCanonicalName(), location.toString()); // TODO: remover este mensaje cuando la aplicación esté más estable
+        long recepcionNanos = SystemClock.elapsedRealtimeNanos();
+        long capturaNanos = location.getElapsedRealtimeNanos();
+
+        if (LocationManager.GPS_PROVIDER.equals(location.getProvider())) {
+            capturasGPS.registrar(capturaNanos);
+        }
+
+        double latitud = location.getLatitude();
+        double longitud = location.getLongitude();
+        float precision = location.hasAccuracy() ? location.getAccuracy() : Float.NaN;
+
+        if (SERVICIO_FUSION_PROVEEDORES) {
+            int resultado = fusion.actualizar(
+                    latitud,
+                    longitud,
+                    precision,
+                    location.hasSpeed() ? location.getSpeed() : Double.NaN,
+                    location.hasBearing() ? location.getBearing() : Double.NaN,
+                    capturaNanos > 0 ? capturaNanos : recepcionNanos
+            );
+
+            metricasFusion[resultado].incrementar();
+
+            if (resultado == FusionUbicacion.FUSION_DUPLICADA || resultado == FusionUbicacion.FUSION_RECHAZADA) {
+                return;
+            }
+
+            latitud = fusion.latitud();
+            longitud = fusion.longitud();
+            precision = (float) fusion.precision();
+        }
 
         if (operando) {
-            GeolocalizacionSQLite.agregarCoordenadas(db, sesionIDActual, location.getLatitude(), location.getLongitude());
+            escritor.agregar(sesionIDActual, latitud, longitud, location.getTime(), capturaNanos, recepcionNanos);
+
+            if (planificador.actualizar(latitud, longitud, location.getTime(), location.hasSpeed(), location.getSpeed(), location.hasBearing(), location.getBearing())) {
+                reprogramarGPS();
+            }
         }
+
+        estadoEnVivo = EstadoEnVivo.siguiente(
+                estadoEnVivo,
+                operando ? sesionIDActual : 0,
+                latitud,
+                longitud,
+                precision,
+                location.hasSpeed() ? location.getSpeed() : Float.NaN,
+                location.getTime()
+        );
+        difusor.publicar(estadoEnVivo);
     }
 
     /**
@@ -906,6 +1171,10 @@ public final class ServicioGeolocalizacion extends Service implements LocationLi
      * * Si es TEMPORARILY_UNAVAILABLE, actualmente sólo se muestra un mensaje de depuración; según
      *   la documentación de Android, no es muy extensa en general.
      *
+     * Con SERVICIO_FUSION_PROVEEDORES, OUT_OF_SERVICE no interrumpe la sesión: el GPS es marcado
+     * como no disponible, pero la sesión continúa, degradada, con capturas de NETWORK y PASSIVE
+     * (por ejemplo, en túneles) hasta que el GPS vuelva a estar disponible.
+     *
      * @param provider El proveedor cuyo estado ha cambiado.
      * @param status Código de estado del tipo de cambio. Puede ser AVAILABLE, TEMPORARILY_UNAVAILABLE o OUT_OF_SERVICE.
      * @param extras Información extra proporcionada por LocationManager.
@@ -915,7 +1184,12 @@ public final class ServicioGeolocalizacion extends Service implements LocationLi
         if (provider.compareTo(LocationManager.GPS_PROVIDER) == 0) {
             if (status == LocationProvider.OUT_OF_SERVICE) {
                 proveedorGPSActivado = false;
-                accionGPSDesactivado(null);
+
+                if (SERVICIO_FUSION_PROVEEDORES) {
+                    android.util.Log.w(ServicioGeolocalizacion.class.getCanonicalName(), "GPS_PROVIDER fuera de servicio; continuando con otros proveedores.");
+                } else {
+                    accionGPSDesactivado(null);
+                }
             } else if (status == LocationProvider.AVAILABLE) {
                 proveedorGPSActivado = true;
             } else if (status == LocationProvider.TEMPORARILY_UNAVAILABLE) {
@@ -943,6 +1217,9 @@ public final class ServicioGeolocalizacion extends Service implements LocationLi
      * de GPS GPS_PROVIDER es desactivado, el servicio es terminado, y con el servicio, es terminada
      * cualquie sesión abierta.
      *
+     * Con SERVICIO_FUSION_PROVEEDORES, si NETWORK_PROVIDER sigue activado, la sesión continúa,
+     * degradada, con capturas de NETWORK y PASSIVE. Una sesión nueva requiere el GPS activado.
+     *
      * No confundir SERVICIO_ACCION_GPS_DESACTIVADO con SERVICIO_ACCION_GPS_TERMINADO. El primero
      * es emitido cuando el GPS es desactivado por el usuario (en settings, o si el proveedor de
      * GPS SERVICIO_ACCION_GPS_DESACTIVADO es desactivado por el usuario), mientras que el último
@@ -954,6 +1231,12 @@ public final class ServicioGeolocalizacion extends Service implements LocationLi
     public void onProviderDisabled(String provider) {
         if (provider.compareTo(LocationManager.GPS_PROVIDER) == 0) {
             proveedorGPSActivado = false;
+
+            if (SERVICIO_FUSION_PROVEEDORES && proveedorRedActivado()) {
+                android.util.Log.w(ServicioGeolocalizacion.class.getCanonicalName(), "GPS_PROVIDER desactivado; continuando con NETWORK_PROVIDER.");
+                return;
+            }
+
             accionGPSDesactivado(null);
         }
     }
@@ -970,7 +1253,9 @@ public final class ServicioGeolocalizacion extends Service implements LocationLi
      *      * Independientemente de lo anterior, si la acción siendo ejecutada es "terminar
      *        servicio" o "gps _desactivado_ (no terminado, ver onProviderDisabled(String))"
      *          * Si existe una sesión abierta (independientemente del valor de "operando"; es
-     *            decir, si el ID de la sesión es > 0), se intenta cerrar la sesión.
+     *            decir, si el ID de la sesión es > 0), se solicita cerrar la sesión (ver
+     *            terminarSesion()); el escritor la cierra antes de terminar, y la respuesta es
+     *            enviada después de este método.
      *              * Si la sesión no fue terminada (error) resp. SERVICIO_ACCION_TERMINAR_SESION
      *                con código respuesta SERVICIO_RESPUESTA_ERROR y mensaje
      *                R.string.error_terminando_sesion_formato con ID de sesión actual.
@@ -988,23 +1273,15 @@ public final class ServicioGeolocalizacion extends Service implements LocationLi
      */
     @Override
     public void onDestroy() {
-        long sesionActual = sesionIDActual;
-
         if (operando) {
             terminarGPS();
             responder(SERVICIO_ACCION_GPS_TERMINADO, SERVICIO_RESPUESTA_VACIA);
         }
 
         if (accion.equals(SERVICIO_ACCION_TERMINAR_SERVICIO)) {
+            // Ejecutado por el escritor antes de que escritor.terminar() regrese, más abajo.
             if (sesionIDActual > 0) {
-                if (!terminarSesion()) {
-                    responder(SERVICIO_ACCION_TERMINAR_SESION, SERVICIO_RESPUESTA_ERROR, String.format(
-                            getString(R.string.error_terminando_sesion_formato),
-                            sesionActual
-                    ));
-                } else {
-                    responder(SERVICIO_ACCION_TERMINAR_SESION, SERVICIO_RESPUESTA_OK);
-                }
+                terminarSesion();
             }
 
             preferencias.edit()
@@ -1017,13 +1294,158 @@ public final class ServicioGeolocalizacion extends Service implements LocationLi
             responder(SERVICIO_ACCION_TERMINAR_SERVICIO, SERVICIO_RESPUESTA_VACIA);
         }
 
-        if (db != null && db.isOpen()) {
-            db.close();
+        difusor.anularTodas();
+
+        metricaGPSEncendido.detener();
+        metricaGPSApagado.detener();
+
+        // Toda captura pendiente es escrita antes de cerrar el almacén.
+        if (escritor != null) {
+            escritor.terminar();
+
+            // Conservan sus valores finales, incluyendo capturas perdidas al terminar el escritor.
+            metricaCapturasDescartadas.establecer(escritor.capturasDescartadas());
+            metricaCapturasAjustadas.establecer(escritor.capturasAjustadas());
+            metricaCapturasFueraDeRuta.establecer(escritor.capturasFueraDeRuta());
+            metricaColaEscritor.establecer(0);
+            escritor = null;
+        }
+
+        // Las fuentes de estos medidores hacen referencia a "escritor."
+        metricaColaEscritor.establecerFuente(null);
+        metricaCapturasDescartadas.establecerFuente(null);
+        metricaCapturasAjustadas.establecerFuente(null);
+        metricaCapturasFueraDeRuta.establecerFuente(null);
+
+        if (compactador != null) {
+            compactador.terminar();
+            compactador = null;
+        }
+
+        if (almacen != null) {
+            almacen.cerrar();
+            almacen = null;
+            almacenSQLite = null;
         }
 
         iniciado = false;
     }
 
+    /**
+     * Obtiene (o crea, la primera vez en el proceso) las métricas del servicio en "metricas". Un
+     * servicio re-creado continúa sumando a las mismas métricas.
+     *
+     * Los medidores calculados sólo hacen referencia a objetos del registro o a archivos, excepto
+     * los del escritor, cuyas fuentes son establecidas en onCreate y removidas en onDestroy.
+     */
+    private void registrarMetricas() {
+        metricaCapturas = metricas.contador("gps.capturas");
+        capturasGPS = new CapturasGPS(metricaCapturas, metricas.histograma("gps.intervalo_capturas", Histograma.HISTOGRAMA_LIMITES_MILISEGUNDOS, "ms"));
+        metricaGPSEncendido = metricas.cronometro("gps.tiempo_encendido");
+        metricaGPSApagado = metricas.cronometro("gps.tiempo_apagado");
+        metricaColaEscritor = metricas.medidor("escritor.cola");
+        metricaCapturasDescartadas = metricas.medidor("escritor.capturas_descartadas");
+        metricaCapturasAjustadas = metricas.medidor("rutas.capturas_ajustadas");
+        metricaCapturasFueraDeRuta = metricas.medidor("rutas.capturas_fuera_de_ruta");
+        metricasFusion[FusionUbicacion.FUSION_ACEPTADA] = metricas.contador("fusion.aceptadas");
+        metricasFusion[FusionUbicacion.FUSION_DUPLICADA] = metricas.contador("fusion.duplicadas");
+        metricasFusion[FusionUbicacion.FUSION_RECHAZADA] = metricas.contador("fusion.rechazadas");
+        metricasFusion[FusionUbicacion.FUSION_REINICIADA] = metricas.contador("fusion.reinicios");
+
+        final Contador capturas = metricaCapturas;
+        final Cronometro encendido = metricaGPSEncendido;
+
+        metricas.medidor("gps.capturas_por_minuto").establecerFuente(new Medidor.Fuente() {
+            @Override
+            public long leer() {
+                long total = encendido.total();
+                return total == 0 ? 0 : capturas.valor() * 60000 / total;
+            }
+        });
+
+        final File db = AlmacenSQLite.archivoBaseDatos(this);
+        final File wal = new File(db.getPath() + "-wal");
+
+        metricas.medidor("db.tamano_bytes").establecerFuente(new Medidor.Fuente() {
+            @Override
+            public long leer() {
+                return db.length() + wal.length();
+            }
+        });
+    }
+
+    /**
+     * Escribe el estado del servicio y todas las métricas de RegistroMetricas. Usado por
+     * "adb shell dumpsys activity service
+     * xyz.fabianpineda.desarrollomovil.transqa/.geolocalizacion.ServicioGeolocalizacion".
+     *
+     * @param fd No usado.
+     * @param escritor Salida de dumpsys.
+     * @param argumentos No usados.
+     */
+    @Override
+    protected void dump(FileDescriptor fd, PrintWriter escritor, String[] argumentos) {
+        escritor.println("accion: " + accion);
+        escritor.println("operando: " + operando);
+        escritor.println("sesion: " + sesionIDActual);
+        escritor.println("estado_en_vivo: " + estadoEnVivo);
+        metricas.volcar(escritor);
+    }
+
+    /**
+     * Abre el almacén de sesiones y capturas usado por el servicio. Es el único lugar donde se
+     * elige el motor de almacenamiento; el resto del servicio sólo usa la interfaz Almacen.
+     *
+     * Si SERVICIO_REGISTRO_SEGMENTOS es true, las capturas son escritas en segmentos mapeados en
+     * memoria y SQLite sólo recibe las capturas de sesiones terminadas (ver AlmacenSegmentos).
+     * En ambos casos, la base de datos SQLite queda en "almacenSQLite" para ser compactada.
+     *
+     * @return Almacen abierto con permisos de escritura.
+     */
+    private Almacen abrirAlmacen() {
+        AlmacenSQLite sqlite = almacenSQLite = new AlmacenSQLite(this, SERVICIO_PERFIL_DURABILIDAD);
+
+        if (!SERVICIO_REGISTRO_SEGMENTOS) {
+            return sqlite;
+        }
+
+        try {
+            return new AlmacenSegmentos(sqlite, new File(getFilesDir(), SERVICIO_DIRECTORIO_SEGMENTOS));
+        } catch (IOException e) {
+            sqlite.cerrar();
+            almacenSQLite = null;
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Carga las formas de las rutas de transporte de SERVICIO_ARCHIVO_RUTAS y crea el
+     * AjustadorRutas del escritor. El índice de las formas es construido una vez, aquí.
+     *
+     * @return El ajustador, o null si el archivo no existe o no es válido; en ese caso las
+     * capturas no son ajustadas a rutas.
+     */
+    private AjustadorRutas cargarAjustador() {
+        File archivo = new File(getFilesDir(), SERVICIO_ARCHIVO_RUTAS);
+
+        if (!archivo.isFile()) {
+            return null;
+        }
+
+        try {
+            FormasRutas formas = FormasRutas.cargar(archivo);
+
+            android.util.Log.i(ServicioGeolocalizacion.class.getCanonicalName(), String.format(
+                "Rutas: %d rutas, %d tramos", formas.rutas(), formas.tramos()
+            ));
+
+            return new AjustadorRutas(new IndiceTramos(formas));
+        } catch (IOException e) {
+            android.util.Log.w(ServicioGeolocalizacion.class.getCanonicalName(), "Formas de rutas no válidas; las capturas no serán ajustadas.", e);
+            return null;
+        }
+    }
+
     /**
      * Define el estado inicial del servicio, o restaura el estado de operación anterior si está
      * siendo reiniciado.
@@ -1035,12 +1457,15 @@ public final class ServicioGeolocalizacion extends Service implements LocationLi
      * sesión, se asume que la acción es SERVICIO_ACCION_DESCONOCIDA, se toman valores por defecto
      * para sesionIDActual y sesionIDAMostrar (SERVICIO_PREFERENCIA_ID_DEFAULT) y para sesionNombre
      * (SERVICIO_PREFERENCIA_NOMBRE_SESION_DEFAULT) y para sesionFechaInicio sesionFechaFin
-     * (SERVICIO_PREFERENCIA_FECHA_DEFAULT). Se obtiene una referencia a una instancia
-     * LocalBroadcastManager para enviar mensajes a componentes clientes; se obtiene una referencia
+     * (SERVICIO_PREFERENCIA_FECHA_DEFAULT). Se obtiene el CanalEventos usado para enviar eventos
+     * a componentes clientes, se crea el DifusorEnVivo de clientes enlazados, se obtienen las
+     * métricas del servicio (ver registrarMetricas()) y una instancia LocalBroadcastManager para recibir mensajes del
+     * sistema; se obtiene una referencia
      * a LocationManager, se comprueba si el dispositivo tiene un sensor GPS configurado en modo
      * GPS o "alta precisión" y que tenga suficientes permisos en Android 6.0 o superior. Por último
      * el estado del servicio cambia a "iniciado", "operando" permanece siendo false, y se abre
-     * una conexión con la base de datos "DB" del servicio con permisos de escritura.
+     * el almacén de sesiones y capturas del servicio (ver abrirAlmacen()) y se inicia el escritor
+     * de capturas, que las ajusta a rutas de transporte si hay formas de rutas (ver cargarAjustador()).
      *
      * El servicio no es destruido y re-creado durante el funcionamiento normal del servicio. Si
      * las operaciones no fallan con errores críticos, es seguro asumir, por ejemplo, que una
@@ -1059,9 +1484,13 @@ public final class ServicioGeolocalizacion extends Service implements LocationLi
         sesionIDActual = preferencias.getLong(SERVICIO_PREFERENCIA_ID_SESION_EN_PROGRESO, SERVICIO_PREFERENCIA_ID_DEFAULT);
         sesionIDAMostrar = preferencias.getLong(SERVICIO_PREFERENCIA_ID_SESION_A_MOSTRAR, sesionIDActual);
         sesionNombre = preferencias.getString(SERVICIO_PREFERENCIA_NOMBRE_SESION, SERVICIO_PREFERENCIA_NOMBRE_SESION_DEFAULT);
-        sesionFechaInicio = preferencias.getString(SERVICIO_PREFERENCIA_FECHA_INICIO_SESION, SERVICIO_PREFERENCIA_FECHA_DEFAULT);
-        sesionFechaFin = preferencias.getString(SERVICIO_PREFERENCIA_FECHA_FIN_SESION, SERVICIO_PREFERENCIA_FECHA_DEFAULT);
+        sesionFechaInicio = preferencias.getLong(SERVICIO_PREFERENCIA_FECHA_INICIO_SESION, SERVICIO_PREFERENCIA_FECHA_DEFAULT);
+        sesionFechaFin = preferencias.getLong(SERVICIO_PREFERENCIA_FECHA_FIN_SESION, SERVICIO_PREFERENCIA_FECHA_DEFAULT);
 
+        eventos = CanalEventos.obtener();
+        difusor = DifusorEnVivo.principal();
+        registrarMetricas();
+        metricaGPSApagado.iniciar();
         transmisor = LocalBroadcastManager.getInstance(this);
         // TODO: arreglar, probar ya ctivar manejo de reinicio de dispositivo. *Debe* terminar sesiones abiertas.
         transmisor.registerReceiver(new BroadcastReceiver() {
@@ -1080,21 +1509,57 @@ public final class ServicioGeolocalizacion extends Service implements LocationLi
         permisosGPSSuficientes = ActivityCompat.checkSelfPermission(this, Manifest.permission.ACCESS_FINE_LOCATION) == PackageManager.PERMISSION_GRANTED;
         proveedorGPSActivado = geolocalizador.isProviderEnabled(LocationManager.GPS_PROVIDER);
 
-        SQLite auxiliarSQLite = null;
-        SQLiteException e = null;
-        db = null;
-
         try {
-            auxiliarSQLite = new SQLite(this);
-            db = auxiliarSQLite.getWritableDatabase();
-        } catch (SQLiteException x) {
-            e = x;
+            almacen = abrirAlmacen();
+        } catch (RuntimeException e) {
+            throw new RuntimeException(getString(R.string.error_sqlite_abrir_db), e);
         }
 
-        if (auxiliarSQLite == null || db == null || !db.isOpen() || db.isReadOnly()) {
-            throw new SQLiteException(getString(R.string.error_sqlite_abrir_db), e);
+        SimplificadorTrayectoria simplificador = null;
+
+        if (SERVICIO_TOLERANCIA_SIMPLIFICACION > 0) {
+            simplificador = new SimplificadorTrayectoria(SERVICIO_TOLERANCIA_SIMPLIFICACION, SimplificadorTrayectoria.SIMPLIFICADOR_CAPACIDAD_VENTANA_DEFAULT);
         }
 
+        AlmacenCapturasMedido capturas = new AlmacenCapturasMedido(
+                almacen.abrirCapturas(),
+                metricas.histograma("escritor.latencia_escritura", Histograma.HISTOGRAMA_LIMITES_MICROSEGUNDOS, "us"),
+                metricas.histograma("escritor.capturas_por_escritura", Histograma.HISTOGRAMA_LIMITES_TAMANO, "capturas")
+        );
+
+        escritor = new EscritorCapturas(capturas, simplificador, cargarAjustador(), new TrazaLatencias(metricas, TrazaLatencias.RELOJ_SISTEMA), EscritorCapturas.ESCRITOR_CAPACIDAD_COLA_DEFAULT);
+        escritor.start();
+
+        final EscritorCapturas escritorMedido = escritor;
+
+        metricaColaEscritor.establecerFuente(new Medidor.Fuente() {
+            @Override
+            public long leer() {
+                return escritorMedido.profundidadCola();
+            }
+        });
+        metricaCapturasDescartadas.establecerFuente(new Medidor.Fuente() {
+            @Override
+            public long leer() {
+                return escritorMedido.capturasDescartadas();
+            }
+        });
+        metricaCapturasAjustadas.establecerFuente(new Medidor.Fuente() {
+            @Override
+            public long leer() {
+                return escritorMedido.capturasAjustadas();
+            }
+        });
+        metricaCapturasFueraDeRuta.establecerFuente(new Medidor.Fuente() {
+            @Override
+            public long leer() {
+                return escritorMedido.capturasFueraDeRuta();
+            }
+        });
+
+        compactador = new HiloCompactacion(almacenSQLite, new CompactacionSQLite());
+        compactador.iniciar();
+
         iniciado = false;
     }
 }
\ No newline at end of file
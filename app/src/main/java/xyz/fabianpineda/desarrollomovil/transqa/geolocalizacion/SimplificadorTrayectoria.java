@@ -0,0 +1,250 @@
+package xyz.fabianpineda.desarrollomovil.transqa.geolocalizacion;
+
+/**
+ * Simplificación de trayectorias "en línea": decide, captura por captura, cuáles capturas son
+ * significativas y deben ser almacenadas, sin esperar a que la sesión termine.
+ *
+ * Usa una ventana deslizante ("opening window", una versión en línea de Douglas-Peucker): a partir
+ * de la última captura conservada (ancla), las capturas siguientes son acumuladas en una ventana
+ * mientras todas ellas estén a menos de "tolerancia" metros del segmento entre el ancla y la
+ * captura más reciente. Cuando una captura nueva hace que alguna captura de la ventana quede fuera
+ * de la tolerancia, la última captura de la ventana es conservada y pasa a ser el ancla. Así, cada
+ * captura omitida queda a menos de "tolerancia" metros de la trayectoria almacenada.
+ *
+ * La ventana tiene capacidad fija; al llenarse, su última captura es conservada aunque la
+ * trayectoria siga siendo recta. Esto acota memoria y tiempo por captura.
+ *
+ * Capturas a menos de "tolerancia" metros del ancla sin capturas en la ventana (por ejemplo, un
+ * vehículo detenido en una terminal) no entran a la ventana: están dentro de la tolerancia de
+ * cualquier segmento que empiece en el ancla. Sólo se recuerda la más reciente, que es conservada
+ * cuando el vehículo vuelve a moverse; así una detención es almacenada como dos capturas, llegada
+ * y salida, y su duración no se pierde.
+ *
+ * Las capturas conservadas son entregadas a un ColaCapturas.ConsumidorCapturas, con las mismas
+ * marcas de tiempo (ver ColaCapturas) con que fueron agregadas. Las capturas de
+ * sesiones distintas nunca son simplificadas juntas. vaciar() conserva la captura pendiente más
+ * reciente; debe ser llamado antes de terminar una sesión para conservar su última captura.
+ *
+ * Esta clase no es segura para ser usada desde varios hilos al mismo tiempo, excepto por los
+ * contadores, que pueden ser leídos desde cualquier hilo.
+ */
+final class SimplificadorTrayectoria {
+    public static final int SIMPLIFICADOR_CAPACIDAD_VENTANA_DEFAULT = 32;
+
+    // Metros por grado de latitud, usando el radio medio de la Tierra.
+    private static final double METROS_POR_GRADO = 6371008.8 * Math.PI / 180.0;
+
+    private final double tolerancia;
+    private final int capacidadVentana;
+
+    // Sesión de las capturas actuales y última captura conservada.
+    private boolean hayAncla;
+    private long sesion;
+    private double anclaLatitud;
+    private double anclaLongitud;
+
+    // Capturas no conservadas aún desde el ancla. Cada índice i < cantidadVentana es una captura.
+    private final double[] latitudes;
+    private final double[] longitudes;
+    private final long[] fechas;
+    private final long[] capturasNanos;
+    private final long[] etapasNanos;
+    private int cantidadVentana;
+
+    // Captura más reciente dentro de la tolerancia del ancla, cuando la ventana está vacía.
+    private boolean hayReposo;
+    private double reposoLatitud;
+    private double reposoLongitud;
+    private long reposoFecha;
+    private long reposoCapturaNanos;
+    private long reposoEtapaNanos;
+
+    // Contadores. Escritos sólo por el hilo que usa este objeto.
+    private volatile long recibidas;
+    private volatile long conservadas;
+
+    /**
+     * @param tolerancia Error máximo, en metros, entre una captura omitida y la trayectoria almacenada. Debe ser mayor que 0.
+     * @param capacidadVentana Máximo de capturas acumuladas antes de conservar una. Debe ser mayor que 0.
+     */
+    SimplificadorTrayectoria(double tolerancia, int capacidadVentana) {
+        if (!(tolerancia > 0)) {
+            throw new IllegalArgumentException("tolerancia <= 0");
+        }
+
+        if (capacidadVentana < 1) {
+            throw new IllegalArgumentException("capacidadVentana < 1");
+        }
+
+        this.tolerancia = tolerancia;
+        this.capacidadVentana = capacidadVentana;
+
+        latitudes = new double[capacidadVentana];
+        longitudes = new double[capacidadVentana];
+        fechas = new long[capacidadVentana];
+        capturasNanos = new long[capacidadVentana];
+        etapasNanos = new long[capacidadVentana];
+    }
+
+    /**
+     * @return Total de capturas recibidas por agregar().
+     */
+    long recibidas() {
+        return recibidas;
+    }
+
+    /**
+     * @return Total de capturas conservadas; entregadas al consumidor.
+     */
+    long conservadas() {
+        return conservadas;
+    }
+
+    /**
+     * @return Total de capturas omitidas; nunca serán entregadas al consumidor.
+     */
+    long omitidas() {
+        return recibidas - conservadas - pendientes();
+    }
+
+    /**
+     * @return Capturas recibidas aún no conservadas ni omitidas. Aproximado si es leído desde otro hilo.
+     */
+    int pendientes() {
+        return cantidadVentana + (hayReposo ? 1 : 0);
+    }
+
+    /**
+     * Agrega una captura. Puede causar que una captura anterior (o esta misma, si es la primera de
+     * una sesión) sea entregada a "salida".
+     *
+     * @param idSesion ID de la sesión a la que la captura pertenece.
+     * @param latitud Coordenada. Latitud, en grados.
+     * @param longitud Coordenada. Longitud, en grados.
+     * @param fecha Fecha de captura en milisegundos desde epoch (UTC).
+     * @param capturaNanos Marca de tiempo de la captura en el receptor GNSS. Ver ColaCapturas.
+     * @param etapaNanos Marca de tiempo de entrada a la simplificación. Ver ColaCapturas.
+     * @param salida Recibe las capturas conservadas.
+     */
+    void agregar(long idSesion, double latitud, double longitud, long fecha, long capturaNanos, long etapaNanos, ColaCapturas.ConsumidorCapturas salida) {
+        recibidas++;
+
+        if (hayAncla && idSesion != sesion) {
+            vaciar(salida);
+            hayAncla = false;
+        }
+
+        if (!hayAncla) {
+            sesion = idSesion;
+            conservar(latitud, longitud, fecha, capturaNanos, etapaNanos, salida);
+            return;
+        }
+
+        // La ventana sólo puede quedar vacía después de conservar una captura, así que esto se
+        // repite a lo sumo dos veces.
+        while (true) {
+            if (cantidadVentana == 0) {
+                if (distancia(anclaLatitud, anclaLongitud, latitud, longitud) <= tolerancia) {
+                    hayReposo = true;
+                    reposoLatitud = latitud;
+                    reposoLongitud = longitud;
+                    reposoFecha = fecha;
+                    reposoCapturaNanos = capturaNanos;
+                    reposoEtapaNanos = etapaNanos;
+                    return;
+                }
+
+                if (hayReposo) {
+                    hayReposo = false;
+                    conservar(reposoLatitud, reposoLongitud, reposoFecha, reposoCapturaNanos, reposoEtapaNanos, salida);
+                    continue;
+                }
+
+                break;
+            }
+
+            if (cantidadVentana < capacidadVentana && ventanaDentroDeTolerancia(latitud, longitud)) {
+                break;
+            }
+
+            int ultima = cantidadVentana - 1;
+            cantidadVentana = 0;
+            conservar(latitudes[ultima], longitudes[ultima], fechas[ultima], capturasNanos[ultima], etapasNanos[ultima], salida);
+        }
+
+        latitudes[cantidadVentana] = latitud;
+        longitudes[cantidadVentana] = longitud;
+        fechas[cantidadVentana] = fecha;
+        capturasNanos[cantidadVentana] = capturaNanos;
+        etapasNanos[cantidadVentana] = etapaNanos;
+        cantidadVentana++;
+    }
+
+    /**
+     * Conserva la captura pendiente más reciente, si existe, y la entrega a "salida". Las demás
+     * capturas pendientes son omitidas; todas están dentro de la tolerancia.
+     *
+     * @param salida Recibe la captura conservada.
+     */
+    void vaciar(ColaCapturas.ConsumidorCapturas salida) {
+        if (cantidadVentana > 0) {
+            int ultima = cantidadVentana - 1;
+            cantidadVentana = 0;
+            hayReposo = false;
+            conservar(latitudes[ultima], longitudes[ultima], fechas[ultima], capturasNanos[ultima], etapasNanos[ultima], salida);
+        } else if (hayReposo) {
+            hayReposo = false;
+            conservar(reposoLatitud, reposoLongitud, reposoFecha, reposoCapturaNanos, reposoEtapaNanos, salida);
+        }
+    }
+
+    private void conservar(double latitud, double longitud, long fecha, long capturaNanos, long etapaNanos, ColaCapturas.ConsumidorCapturas salida) {
+        hayAncla = true;
+        anclaLatitud = latitud;
+        anclaLongitud = longitud;
+
+        conservadas++;
+        salida.capturaTomada(sesion, latitud, longitud, fecha, capturaNanos, etapaNanos);
+    }
+
+    /**
+     * @return true si todas las capturas de la ventana están a menos de "tolerancia" metros del
+     * segmento entre el ancla y la captura especificada.
+     */
+    private boolean ventanaDentroDeTolerancia(double latitud, double longitud) {
+        double escalaLongitud = Math.cos(Math.toRadians(anclaLatitud)) * METROS_POR_GRADO;
+
+        // Plano local con origen en el ancla, en metros.
+        double bx = (longitud - anclaLongitud) * escalaLongitud;
+        double by = (latitud - anclaLatitud) * METROS_POR_GRADO;
+        double longitudCuadrada = bx * bx + by * by;
+        double toleranciaCuadrada = tolerancia * tolerancia;
+
+        for (int i = 0; i < cantidadVentana; i++) {
+            double px = (longitudes[i] - anclaLongitud) * escalaLongitud;
+            double py = (latitudes[i] - anclaLatitud) * METROS_POR_GRADO;
+            double t = longitudCuadrada > 0 ? (px * bx + py * by) / longitudCuadrada : 0;
+
+            t = Math.max(0, Math.min(1, t));
+
+            double dx = px - t * bx;
+            double dy = py - t * by;
+
+            if (dx * dx + dy * dy > toleranciaCuadrada) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * @return Distancia aproximada en metros entre dos coordenadas cercanas (proyección equirectangular).
+     */
+    static double distancia(double latitud1, double longitud1, double latitud2, double longitud2) {
+        double dx = (longitud2 - longitud1) * Math.cos(Math.toRadians((latitud1 + latitud2) / 2)) * METROS_POR_GRADO;
+        double dy = (latitud2 - latitud1) * METROS_POR_GRADO;
+
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+}
@@ -0,0 +1,198 @@
+package xyz.fabianpineda.desarrollomovil.transqa.geolocalizacion;
+
+import android.os.SystemClock;
+
+import java.util.Arrays;
+
+import xyz.fabianpineda.desarrollomovil.transqa.db.RegistroLatencias;
+import xyz.fabianpineda.desarrollomovil.transqa.metricas.Histograma;
+import xyz.fabianpineda.desarrollomovil.transqa.metricas.RegistroMetricas;
+
+/**
+ * Mide, por cada captura, la latencia de cada etapa del camino de escritura: desde su captura en
+ * el receptor GNSS hasta que la transacción que la incluye termina. Las etapas son las de
+ * RegistroLatencias (LATENCIA_ETAPA_*).
+ *
+ * Todas las marcas de tiempo son del reloj SystemClock.elapsedRealtimeNanos(), el mismo de
+ * Location.getElapsedRealtimeNanos(). La captura y la recepción son marcadas por el servicio y
+ * viajan con la captura por ColaCapturas; las demás son tomadas en el hilo de escritura, que es el
+ * único que usa este objeto (ver EscritorCapturas):
+ *
+ *      * tomada(): la captura fue tomada de la cola. Registra ENTREGA y COLA.
+ *      * entregada(): la captura fue conservada por el simplificador y entregada al almacén.
+ *        Registra FILTRADO y queda pendiente de escritura.
+ *      * escritas(): el almacén terminó una transacción. Registra ESCRITURA y TOTAL de todas las
+ *        capturas pendientes.
+ *
+ * Las latencias son registradas en histogramas de RegistroMetricas ("latencia.*", en
+ * microsegundos), así que son visibles en el volcado de métricas; registrar no reserva memoria.
+ * Los histogramas describen la sesión actual: son reiniciados cuando llega la primera captura de
+ * otra sesión. Capturas de la sesión anterior aún pendientes de escritura en ese momento son
+ * contadas en la nueva; no ocurre si la sesión anterior fue sincronizada antes de terminarla.
+ */
+final class TrazaLatencias {
+    /**
+     * Fuente de marcas de tiempo, en nanosegundos. Reemplazable en pruebas.
+     */
+    interface Reloj {
+        long ahora();
+    }
+
+    /**
+     * SystemClock.elapsedRealtimeNanos().
+     */
+    static final Reloj RELOJ_SISTEMA = new Reloj() {
+        @Override
+        public long ahora() {
+            return SystemClock.elapsedRealtimeNanos();
+        }
+    };
+
+    /**
+     * Nombres de los histogramas en RegistroMetricas, por etapa (RegistroLatencias.LATENCIA_ETAPA_*).
+     */
+    static final String[] TRAZA_NOMBRES_ETAPAS = {
+            "latencia.entrega", "latencia.cola", "latencia.filtrado", "latencia.escritura", "latencia.total"
+    };
+
+    private static final int TRAZA_CAPACIDAD_INICIAL_PENDIENTES = 64;
+
+    private static final long SIN_SESION = Long.MIN_VALUE;
+
+    private final Reloj reloj;
+    private final Histograma[] etapas = new Histograma[RegistroLatencias.LATENCIA_ETAPAS];
+
+    private volatile long sesion = SIN_SESION;  // Sesión descrita por los histogramas.
+
+    // Capturas entregadas al almacén aún no escritas: marca de captura y de entrega al almacén.
+    private long[] pendientesCaptura = new long[TRAZA_CAPACIDAD_INICIAL_PENDIENTES];
+    private long[] pendientesEntrega = new long[TRAZA_CAPACIDAD_INICIAL_PENDIENTES];
+    private int cantidadPendientes;
+
+    /**
+     * @param metricas Registro donde se crean (u obtienen) los histogramas TRAZA_NOMBRES_ETAPAS.
+     * @param reloj Fuente de marcas de tiempo. Normalmente, RELOJ_SISTEMA.
+     */
+    TrazaLatencias(RegistroMetricas metricas, Reloj reloj) {
+        this.reloj = reloj;
+
+        for (int etapa = 0; etapa < etapas.length; etapa++) {
+            etapas[etapa] = metricas.histograma(TRAZA_NOMBRES_ETAPAS[etapa], Histograma.HISTOGRAMA_LIMITES_LATENCIA_MICROSEGUNDOS, "us");
+        }
+    }
+
+    /**
+     * Una captura fue tomada de la cola. Si es de otra sesión, los histogramas son reiniciados.
+     *
+     * @param idSesion Sesión de la captura.
+     * @param capturaNanos Marca de la captura en el receptor GNSS, o 0 si se desconoce; en ese caso no se registra ENTREGA.
+     * @param recepcionNanos Marca de la recepción de la captura por el servicio.
+     *
+     * @return Marca de este momento; inicio de la etapa FILTRADO.
+     */
+    long tomada(long idSesion, long capturaNanos, long recepcionNanos) {
+        long ahora = reloj.ahora();
+
+        if (idSesion != sesion) {
+            for (Histograma etapa : etapas) {
+                etapa.reiniciar();
+            }
+
+            sesion = idSesion;
+        }
+
+        if (capturaNanos > 0) {
+            registrar(RegistroLatencias.LATENCIA_ETAPA_ENTREGA, recepcionNanos - capturaNanos);
+        }
+
+        registrar(RegistroLatencias.LATENCIA_ETAPA_COLA, ahora - recepcionNanos);
+
+        return ahora;
+    }
+
+    /**
+     * Una captura fue entregada al almacén. Queda pendiente hasta el siguiente llamado a escritas().
+     *
+     * @param origenNanos Marca desde la que se mide TOTAL: la de captura, o la de recepción si se desconoce.
+     * @param tomadaNanos Marca regresada por tomada() para esta captura.
+     */
+    void entregada(long origenNanos, long tomadaNanos) {
+        long ahora = reloj.ahora();
+
+        registrar(RegistroLatencias.LATENCIA_ETAPA_FILTRADO, ahora - tomadaNanos);
+
+        if (cantidadPendientes == pendientesCaptura.length) {
+            pendientesCaptura = Arrays.copyOf(pendientesCaptura, cantidadPendientes * 2);
+            pendientesEntrega = Arrays.copyOf(pendientesEntrega, cantidadPendientes * 2);
+        }
+
+        pendientesCaptura[cantidadPendientes] = origenNanos;
+        pendientesEntrega[cantidadPendientes] = ahora;
+        cantidadPendientes++;
+    }
+
+    /**
+     * El almacén escribió todas las capturas entregadas hasta ahora.
+     */
+    void escritas() {
+        if (cantidadPendientes == 0) {
+            return;
+        }
+
+        long ahora = reloj.ahora();
+
+        for (int i = 0; i < cantidadPendientes; i++) {
+            registrar(RegistroLatencias.LATENCIA_ETAPA_ESCRITURA, ahora - pendientesEntrega[i]);
+            registrar(RegistroLatencias.LATENCIA_ETAPA_TOTAL, ahora - pendientesCaptura[i]);
+        }
+
+        cantidadPendientes = 0;
+    }
+
+    /**
+     * @return Número de capturas entregadas al almacén aún no escritas.
+     */
+    int pendientes() {
+        return cantidadPendientes;
+    }
+
+    /**
+     * Percentiles de cada etapa para una sesión. Puede ser llamado desde cualquier hilo; para que
+     * incluya todas las capturas de la sesión, el hilo de escritura debe haberlas escrito antes
+     * (ver EscritorCapturas.sincronizar).
+     *
+     * @param idSesion ID de la sesión.
+     *
+     * @return Las latencias de la sesión, o null si los histogramas no describen esa sesión.
+     */
+    RegistroLatencias latencias(long idSesion) {
+        if (idSesion != sesion) {
+            return null;
+        }
+
+        RegistroLatencias latencias = new RegistroLatencias(idSesion);
+
+        for (int etapa = 0; etapa < etapas.length; etapa++) {
+            Histograma histograma = etapas[etapa];
+
+            latencias.establecer(
+                    etapa,
+                    histograma.total(),
+                    histograma.percentil(0.5),
+                    histograma.percentil(0.9),
+                    histograma.percentil(0.99),
+                    histograma.maximo()
+            );
+        }
+
+        return latencias;
+    }
+
+    /**
+     * Registra una latencia en microsegundos. Diferencias negativas (por ejemplo, una marca de
+     * captura del receptor ligeramente adelantada) son registradas como 0.
+     */
+    private void registrar(int etapa, long nanos) {
+        etapas[etapa].registrar(Math.max(0, nanos) / 1000);
+    }
+}
@@ -0,0 +1,49 @@
+package xyz.fabianpineda.desarrollomovil.transqa.metricas;
+
+import java.io.PrintWriter;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Contador creciente, seguro para uso desde varios hilos.
+ *
+ * El valor está repartido en CONTADOR_FRANJAS franjas, elegidas por el ID del hilo que suma, cada
+ * una en su propia línea de caché; hilos distintos (por ejemplo, el principal y el de escritura)
+ * no compiten por la misma variable. valor() suma todas las franjas.
+ */
+public final class Contador extends Metrica {
+    static final int CONTADOR_FRANJAS = 8;            // Potencia de 2.
+    private static final int ESPACIADO = 8;           // longs por franja; 64 bytes.
+
+    private final AtomicLongArray franjas = new AtomicLongArray(CONTADOR_FRANJAS * ESPACIADO);
+
+    Contador(String nombre) {
+        super(nombre);
+    }
+
+    public void incrementar() {
+        sumar(1);
+    }
+
+    public void sumar(long cantidad) {
+        franjas.addAndGet(franja(), cantidad);
+    }
+
+    public long valor() {
+        long total = 0;
+
+        for (int i = 0; i < CONTADOR_FRANJAS; i++) {
+            total += franjas.get(i * ESPACIADO);
+        }
+
+        return total;
+    }
+
+    private static int franja() {
+        return (int) (Thread.currentThread().getId() & (CONTADOR_FRANJAS - 1)) * ESPACIADO;
+    }
+
+    @Override
+    void volcar(PrintWriter escritor) {
+        escritor.print(valor());
+    }
+}
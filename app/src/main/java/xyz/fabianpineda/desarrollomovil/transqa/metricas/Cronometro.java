@@ -0,0 +1,68 @@
+package xyz.fabianpineda.desarrollomovil.transqa.metricas;
+
+import java.io.PrintWriter;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tiempo total durante el cual algo estuvo activo (por ejemplo, el GPS), incluyendo el intervalo
+ * en curso. Usa System.nanoTime(), que no cambia con la hora del sistema.
+ *
+ * iniciar() y detener() deben ser llamados desde un mismo hilo; total() desde cualquiera.
+ */
+public final class Cronometro extends Metrica {
+    private final AtomicLong acumulado = new AtomicLong();     // Nanosegundos de intervalos terminados.
+    private volatile long inicio;                               // nanoTime() del intervalo en curso.
+    private volatile boolean activo;
+
+    Cronometro(String nombre) {
+        super(nombre);
+    }
+
+    /**
+     * Inicia un intervalo. No hace nada si ya hay uno en curso.
+     */
+    public void iniciar() {
+        if (!activo) {
+            inicio = System.nanoTime();
+            activo = true;
+        }
+    }
+
+    /**
+     * Termina el intervalo en curso. No hace nada si no hay uno.
+     */
+    public void detener() {
+        if (activo) {
+            acumulado.addAndGet(System.nanoTime() - inicio);
+            activo = false;
+        }
+    }
+
+    public boolean activo() {
+        return activo;
+    }
+
+    /**
+     * @return Milisegundos acumulados, incluyendo el intervalo en curso.
+     */
+    public long total() {
+        long total = acumulado.get();
+
+        if (activo) {
+            total += System.nanoTime() - inicio;
+        }
+
+        return TimeUnit.NANOSECONDS.toMillis(total);
+    }
+
+    @Override
+    void volcar(PrintWriter escritor) {
+        escritor.print(total());
+        escritor.print(" ms");
+
+        if (activo) {
+            escritor.print(" (activo)");
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package xyz.fabianpineda.desarrollomovil.transqa.metricas;
+
+import java.io.PrintWriter;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Distribución de valores (por ejemplo, latencias) en cubetas de límites fijos, segura para uso
+ * desde varios hilos.
+ *
+ * Cada cubeta i cuenta los valores menores o iguales a limites[i] y mayores que el límite
+ * anterior; una última cubeta cuenta los valores mayores que todos los límites. Los percentiles
+ * son aproximados por el límite de la cubeta que los contiene (o el máximo, para la última).
+ */
+public final class Histograma extends Metrica {
+    /** Latencias, en microsegundos: de 100 us a 1 s. */
+    public static final long[] HISTOGRAMA_LIMITES_MICROSEGUNDOS = {
+            100, 250, 500, 1000, 2500, 5000, 10000, 25000, 50000, 100000, 250000, 500000, 1000000
+    };
+
+    /** Latencias de extremo a extremo, en microsegundos: de 100 us a 5 minutos. */
+    public static final long[] HISTOGRAMA_LIMITES_LATENCIA_MICROSEGUNDOS = {
+            100, 250, 500, 1000, 2500, 5000, 10000, 25000, 50000, 100000, 250000, 500000, 1000000,
+            2500000, 5000000, 10000000, 30000000, 60000000, 300000000
+    };
+
+    /** Intervalos, en milisegundos: de 250 ms a 5 minutos. */
+    public static final long[] HISTOGRAMA_LIMITES_MILISEGUNDOS = {
+            250, 500, 1000, 2000, 5000, 10000, 30000, 60000, 300000
+    };
+
+    /** Tamaños (por ejemplo, capturas por transacción): potencias de 2 hasta 1024. */
+    public static final long[] HISTOGRAMA_LIMITES_TAMANO = {
+            1, 2, 4, 8, 16, 32, 64, 128, 256, 512, 1024
+    };
+
+    private final long[] limites;
+    private final String unidad;
+    private final AtomicLongArray conteos;
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong suma = new AtomicLong();
+    private final AtomicLong maximo = new AtomicLong(Long.MIN_VALUE);
+
+    /**
+     * @param limites Límites superiores de las cubetas, en orden creciente. No es copiado.
+     * @param unidad Unidad de los valores, mostrada por volcar().
+     */
+    Histograma(String nombre, long[] limites, String unidad) {
+        super(nombre);
+
+        this.limites = limites;
+        this.unidad = unidad;
+        this.conteos = new AtomicLongArray(limites.length + 1);
+    }
+
+    public void registrar(long valor) {
+        int cubeta = 0;
+
+        while (cubeta < limites.length && valor > limites[cubeta]) {
+            cubeta++;
+        }
+
+        conteos.incrementAndGet(cubeta);
+        total.incrementAndGet();
+        suma.addAndGet(valor);
+
+        long actual;
+
+        while (valor > (actual = maximo.get())) {
+            if (maximo.compareAndSet(actual, valor)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Descarta todos los valores registrados. No es atómico respecto a registrar(): un valor
+     * registrado al mismo tiempo desde otro hilo puede quedar contado sólo en parte.
+     */
+    public void reiniciar() {
+        for (int i = 0; i < conteos.length(); i++) {
+            conteos.set(i, 0);
+        }
+
+        total.set(0);
+        suma.set(0);
+        maximo.set(Long.MIN_VALUE);
+    }
+
+    public long total() {
+        return total.get();
+    }
+
+    /**
+     * @return Promedio de los valores registrados, o 0 si no hay.
+     */
+    public double promedio() {
+        long n = total.get();
+        return n == 0 ? 0 : (double) suma.get() / n;
+    }
+
+    /**
+     * @return Máximo valor registrado, o 0 si no hay.
+     */
+    public long maximo() {
+        long maximo = this.maximo.get();
+        return maximo == Long.MIN_VALUE ? 0 : maximo;
+    }
+
+    /**
+     * @param fraccion Entre 0 y 1; por ejemplo, 0.99 para el percentil 99.
+     * @return Límite superior de la cubeta que contiene el percentil, o 0 si no hay valores.
+     */
+    public long percentil(double fraccion) {
+        long n = total.get();
+
+        if (n == 0) {
+            return 0;
+        }
+
+        long objetivo = Math.max(1, (long) Math.ceil(fraccion * n));
+        long acumulado = 0;
+
+        for (int i = 0; i < limites.length; i++) {
+            acumulado += conteos.get(i);
+
+            if (acumulado >= objetivo) {
+                return Math.min(limites[i], maximo());
+            }
+        }
+
+        return maximo();
+    }
+
+    @Override
+    void volcar(PrintWriter escritor) {
+        escritor.print("n=");
+        escritor.print(total());
+        escritor.print(String.format(" promedio=%.1f", promedio()));
+        escritor.print(" p50<=" + percentil(0.5) + " p90<=" + percentil(0.9) + " p99<=" + percentil(0.99) + " max=" + maximo());
+        escritor.print(" ");
+        escritor.print(unidad);
+    }
+}
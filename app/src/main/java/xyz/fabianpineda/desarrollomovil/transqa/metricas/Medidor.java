@@ -0,0 +1,44 @@
+package xyz.fabianpineda.desarrollomovil.transqa.metricas;
+
+import java.io.PrintWriter;
+
+/**
+ * Valor instantáneo (por ejemplo, el tamaño de la base de datos), seguro para uso desde varios
+ * hilos. El valor es establecido con establecer(), o calculado al leerlo por una Fuente.
+ */
+public final class Medidor extends Metrica {
+    /**
+     * Calcula el valor de un medidor cada vez que es leído. Llamada desde el hilo que lee.
+     */
+    public interface Fuente {
+        long leer();
+    }
+
+    private volatile long valor;
+    private volatile Fuente fuente;
+
+    Medidor(String nombre) {
+        super(nombre);
+    }
+
+    public void establecer(long valor) {
+        this.valor = valor;
+    }
+
+    /**
+     * @param fuente Fuente del valor, o null para usar el último valor establecido.
+     */
+    public void establecerFuente(Fuente fuente) {
+        this.fuente = fuente;
+    }
+
+    public long valor() {
+        Fuente fuente = this.fuente;
+        return fuente != null ? fuente.leer() : valor;
+    }
+
+    @Override
+    void volcar(PrintWriter escritor) {
+        escritor.print(valor());
+    }
+}
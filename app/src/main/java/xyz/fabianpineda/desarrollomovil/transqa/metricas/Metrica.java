@@ -0,0 +1,21 @@
+package xyz.fabianpineda.desarrollomovil.transqa.metricas;
+
+import java.io.PrintWriter;
+
+/**
+ * Una métrica de RegistroMetricas. Registrar valores en una métrica nunca reserva memoria ni
+ * bloquea, así que puede hacerse en el hilo principal o en el de escritura por cada captura; sólo
+ * volcar() (usado por dump() y por la pantalla de diagnóstico) crea objetos.
+ */
+public abstract class Metrica {
+    public final String nombre;
+
+    Metrica(String nombre) {
+        this.nombre = nombre;
+    }
+
+    /**
+     * Escribe el valor actual de la métrica, en una línea, sin su nombre.
+     */
+    abstract void volcar(PrintWriter escritor);
+}
@@ -0,0 +1,97 @@
+package xyz.fabianpineda.desarrollomovil.transqa.metricas;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Registro de métricas de ejecución del proceso: contadores, medidores, cronómetros e
+ * histogramas, identificados por nombre (por ejemplo, "gps.capturas").
+ *
+ * Las métricas son creadas una vez (normalmente en onCreate de un componente) y sus referencias
+ * guardadas; registrar valores en ellas no pasa por el registro. Pedir una métrica que ya existe
+ * devuelve la misma instancia, así que un servicio re-creado continúa sumando a sus métricas.
+ *
+ * El contenido es expuesto por ServicioGeolocalizacion.dump() ("adb shell dumpsys activity
+ * service ...ServicioGeolocalizacion") y por DiagnosticoActivity.
+ */
+public final class RegistroMetricas {
+    private static RegistroMetricas instancia;
+
+    private final Map<String, Metrica> metricas = new TreeMap<>();     // Protegido por "this"; en orden de nombre.
+
+    RegistroMetricas() {
+    }
+
+    /**
+     * @return El registro compartido del proceso.
+     */
+    public static synchronized RegistroMetricas obtener() {
+        if (instancia == null) {
+            instancia = new RegistroMetricas();
+        }
+
+        return instancia;
+    }
+
+    public Contador contador(String nombre) {
+        Metrica metrica = buscar(nombre);
+        return metrica != null ? (Contador) metrica : (Contador) agregar(new Contador(nombre));
+    }
+
+    public Medidor medidor(String nombre) {
+        Metrica metrica = buscar(nombre);
+        return metrica != null ? (Medidor) metrica : (Medidor) agregar(new Medidor(nombre));
+    }
+
+    public Cronometro cronometro(String nombre) {
+        Metrica metrica = buscar(nombre);
+        return metrica != null ? (Cronometro) metrica : (Cronometro) agregar(new Cronometro(nombre));
+    }
+
+    /**
+     * @param limites Límites de las cubetas. Ver: Histograma.HISTOGRAMA_LIMITES_*. Ignorado si el histograma ya existe.
+     * @param unidad Unidad de los valores, mostrada al volcar.
+     */
+    public Histograma histograma(String nombre, long[] limites, String unidad) {
+        Metrica metrica = buscar(nombre);
+        return metrica != null ? (Histograma) metrica : (Histograma) agregar(new Histograma(nombre, limites, unidad));
+    }
+
+    /**
+     * Escribe todas las métricas, una por línea y en orden de nombre, como "nombre: valor".
+     */
+    public void volcar(PrintWriter escritor) {
+        List<Metrica> copia;
+
+        synchronized (this) {
+            copia = new ArrayList<>(metricas.values());
+        }
+
+        for (Metrica metrica : copia) {
+            escritor.print(metrica.nombre);
+            escritor.print(": ");
+            metrica.volcar(escritor);
+            escritor.println();
+        }
+
+        escritor.flush();
+    }
+
+    private synchronized Metrica buscar(String nombre) {
+        return metricas.get(nombre);
+    }
+
+    private synchronized Metrica agregar(Metrica metrica) {
+        Metrica existente = metricas.get(metrica.nombre);
+
+        if (existente != null) {
+            return existente;
+        }
+
+        metricas.put(metrica.nombre, metrica);
+        return metrica;
+    }
+}
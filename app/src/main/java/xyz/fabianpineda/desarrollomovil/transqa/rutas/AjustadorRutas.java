@@ -0,0 +1,360 @@
+package xyz.fabianpineda.desarrollomovil.transqa.rutas;
+
+/**
+ * Ajuste en línea de capturas a las formas de las rutas de transporte ("map matching"): decide,
+ * para cada captura, en qué ruta, en qué tramo y en qué punto de su recorrido estaba el vehículo,
+ * o si no estaba en ninguna ruta.
+ *
+ * Es un modelo oculto de Markov resuelto con el algoritmo de Viterbi, como en Newson y Krumm
+ * ("Hidden Markov Map Matching Through Noise and Sparseness"). Los estados de cada captura son
+ * sus tramos candidatos (a lo sumo AJUSTADOR_CANDIDATOS tramos a AJUSTADOR_RADIO metros o menos;
+ * ver IndiceTramos y CandidatosRuta) y un estado "fuera de ruta". Las probabilidades son usadas
+ * como logaritmos:
+ *
+ *      * Emisión: normal en la distancia entre la captura y el tramo, con desviación
+ *        AJUSTADOR_DESVIACION. La de "fuera de ruta" es la de un tramo a AJUSTADOR_RADIO metros.
+ *      * Transición entre tramos de una misma ruta: exponencial en la diferencia entre lo
+ *        avanzado en la ruta y la distancia en línea recta entre las capturas, con escala
+ *        AJUSTADOR_ESCALA_TRANSICION. Retroceder más de AJUSTADOR_RETROCESO_MAXIMO metros en la
+ *        ruta cuesta lo mismo que cambiar de ruta.
+ *      * Cambiar de ruta cuesta AJUSTADOR_PENALIZACION_CAMBIO; entrar o salir de "fuera de ruta"
+ *        cuesta AJUSTADOR_PENALIZACION_FUERA. Así, en un corredor compartido por varias rutas, el
+ *        ajuste se mantiene en la ruta en la que venía.
+ *
+ * Las decisiones son tomadas con retraso acotado ("fixed-lag"): después de cada captura, las
+ * capturas pendientes hasta el punto en que todos los caminos sobrevivientes coinciden ya no
+ * pueden cambiar, y son entregadas. Si hay AJUSTADOR_RETRASO_MAXIMO capturas pendientes, la más
+ * antigua es entregada según el mejor camino actual aunque no haya coincidencia, y los caminos
+ * que no pasan por el estado entregado son descartados: las capturas entregadas siempre forman
+ * un camino del modelo, y en un corredor compartido no alternan entre rutas. Cada captura
+ * cuesta a lo sumo (AJUSTADOR_CANDIDATOS + 1)^2 transiciones y una búsqueda en el índice; el
+ * estado está en arreglos de tipos primitivos y agregar() no reserva memoria.
+ *
+ * Una captura de otra sesión, o una captura más de AJUSTADOR_ESPERA_MAXIMA milisegundos después
+ * de la anterior, entrega todas las capturas pendientes y empieza de nuevo. vaciar() entrega las
+ * capturas pendientes; debe ser llamado antes de terminar una sesión.
+ *
+ * Esta clase no es segura para ser usada desde varios hilos al mismo tiempo, excepto por
+ * ajustadas() y fueraDeRuta().
+ *
+ * No se debe incluir en este objeto código específico de Android, para poder probarlo localmente.
+ */
+public final class AjustadorRutas {
+    /**
+     * Recibe las capturas ajustadas a alguna ruta. Las capturas fuera de ruta no son entregadas.
+     */
+    public interface ConsumidorAjustes {
+        /**
+         * @param idSesion Sesión de la captura.
+         * @param secuencia Número de secuencia de la captura; la identifica dentro de su sesión.
+         * @param ruta ID de la ruta (ver FormasRutas.ruta(int)).
+         * @param tramo Número del tramo dentro de la ruta, desde 0.
+         * @param recorrido Distancia en metros desde el inicio de la ruta, siguiendo su forma, hasta el punto ajustado.
+         */
+        void capturaAjustada(long idSesion, long secuencia, String ruta, int tramo, double recorrido);
+    }
+
+    static final double AJUSTADOR_RADIO = 50.0;                     // Distancia máxima a un tramo candidato, en metros.
+    static final int AJUSTADOR_CANDIDATOS = 8;                      // Máximo de tramos candidatos por captura.
+    static final double AJUSTADOR_DESVIACION = 10.0;                // Desviación del error de las capturas, en metros.
+    static final double AJUSTADOR_ESCALA_TRANSICION = 20.0;         // Metros de diferencia entre recorrido y línea recta por unidad de logaritmo.
+    static final double AJUSTADOR_RETROCESO_MAXIMO = 20.0;          // Retroceso en una ruta tolerado, en metros (error de las capturas).
+    static final double AJUSTADOR_PENALIZACION_CAMBIO = 12.0;       // Logaritmo; cambiar de ruta.
+    static final double AJUSTADOR_PENALIZACION_FUERA = 6.0;         // Logaritmo; entrar o salir de "fuera de ruta".
+    static final int AJUSTADOR_RETRASO_MAXIMO = 10;                 // Máximo de capturas pendientes.
+    static final long AJUSTADOR_ESPERA_MAXIMA = 120000L;            // Milisegundos sin capturas antes de empezar de nuevo.
+
+    private static final int FUERA = AJUSTADOR_CANDIDATOS;          // Índice del estado "fuera de ruta".
+    private static final int ESTADOS = AJUSTADOR_CANDIDATOS + 1;
+    private static final int SIN_ANTERIOR = -1;
+
+    private final FormasRutas formas;
+    private final IndiceTramos indice;
+    private final CandidatosRuta candidatos = new CandidatosRuta(AJUSTADOR_CANDIDATOS);
+
+    // Capturas pendientes, en un anillo de AJUSTADOR_RETRASO_MAXIMO pasos. Por paso: secuencia,
+    // fecha y, por estado, su tramo, recorrido y estado anterior en el mejor camino.
+    private final long[] secuencias = new long[AJUSTADOR_RETRASO_MAXIMO];
+    private final long[] fechas = new long[AJUSTADOR_RETRASO_MAXIMO];
+    private final int[][] tramos = new int[AJUSTADOR_RETRASO_MAXIMO][AJUSTADOR_CANDIDATOS];
+    private final double[][] recorridos = new double[AJUSTADOR_RETRASO_MAXIMO][AJUSTADOR_CANDIDATOS];
+    private final int[][] anteriores = new int[AJUSTADOR_RETRASO_MAXIMO][ESTADOS];
+    private int inicio;         // Paso más antiguo pendiente.
+    private int pendientes;
+
+    // Logaritmo de la probabilidad del mejor camino que termina en cada estado del último paso.
+    private final double[] puntajes = new double[ESTADOS];
+    private final double[] nuevos = new double[ESTADOS];
+
+    // Estados de los caminos sobrevivientes y mejor camino, usados al entregar.
+    private final int[] caminos = new int[ESTADOS];
+    private final int[] camino = new int[AJUSTADOR_RETRASO_MAXIMO];
+
+    private boolean iniciado;   // Hay un último paso, aunque ya haya sido entregado.
+    private int ultimo;         // Paso del anillo de la última captura.
+    private long sesion;
+    private double xAnterior;
+    private double yAnterior;
+
+    // Contadores; pueden ser leídos desde cualquier hilo.
+    private volatile long ajustadas;
+    private volatile long fueraDeRuta;
+
+    /**
+     * @param indice Índice de las formas. Pasa a ser usado exclusivamente por este objeto.
+     */
+    public AjustadorRutas(IndiceTramos indice) {
+        this.indice = indice;
+        this.formas = indice.formas();
+    }
+
+    /**
+     * Agrega una captura. Puede entregar a "salida" esta captura o capturas anteriores.
+     *
+     * @param idSesion Sesión de la captura.
+     * @param secuencia Número de secuencia de la captura en su sesión. Es entregado a "salida".
+     * @param latitud Grados.
+     * @param longitud Grados.
+     * @param fecha Milisegundos desde epoch (UTC). Creciente dentro de una sesión.
+     * @param salida Recibe las capturas ajustadas.
+     */
+    public void agregar(long idSesion, long secuencia, double latitud, double longitud, long fecha, ConsumidorAjustes salida) {
+        if (iniciado && (idSesion != sesion || fecha - fechas[ultimo] > AJUSTADOR_ESPERA_MAXIMA)) {
+            vaciar(salida);
+        }
+
+        if (pendientes == AJUSTADOR_RETRASO_MAXIMO) {
+            entregar(0, estadoEnPaso(0, mejorEstado()), salida);
+        }
+
+        double x = formas.x(longitud);
+        double y = formas.y(latitud);
+        int cantidad = indice.buscar(x, y, AJUSTADOR_RADIO, candidatos);
+
+        int paso = (inicio + pendientes) % AJUSTADOR_RETRASO_MAXIMO;
+
+        secuencias[paso] = secuencia;
+        fechas[paso] = fecha;
+
+        for (int j = 0; j < cantidad; j++) {
+            tramos[paso][j] = candidatos.tramo(j);
+            recorridos[paso][j] = candidatos.recorrido(j);
+        }
+
+        double lineal = iniciado ? Math.hypot(x - xAnterior, y - yAnterior) : 0;
+        double maximo = Double.NEGATIVE_INFINITY;
+
+        for (int j = 0; j < ESTADOS; j++) {
+            if (j >= cantidad && j != FUERA) {
+                nuevos[j] = Double.NEGATIVE_INFINITY;
+                anteriores[paso][j] = SIN_ANTERIOR;
+                continue;
+            }
+
+            double mejor = 0;
+            int anterior = SIN_ANTERIOR;
+
+            if (iniciado) {
+                mejor = Double.NEGATIVE_INFINITY;
+
+                for (int i = 0; i < ESTADOS; i++) {
+                    if (puntajes[i] == Double.NEGATIVE_INFINITY) {
+                        continue;
+                    }
+
+                    double puntaje = puntajes[i] + transicion(i, j, paso, lineal);
+
+                    if (puntaje > mejor) {
+                        mejor = puntaje;
+                        anterior = i;
+                    }
+                }
+            }
+
+            nuevos[j] = mejor + emision(j);
+            anteriores[paso][j] = anterior;
+            maximo = Math.max(maximo, nuevos[j]);
+        }
+
+        // Normalizados para que el mejor sea 0; evita perder precisión en sesiones largas.
+        for (int j = 0; j < ESTADOS; j++) {
+            puntajes[j] = nuevos[j] - maximo;
+        }
+
+        sesion = idSesion;
+        ultimo = paso;
+        xAnterior = x;
+        yAnterior = y;
+        iniciado = true;
+        pendientes++;
+
+        entregarConvergidas(salida);
+    }
+
+    /**
+     * Entrega todas las capturas pendientes según el mejor camino actual. La siguiente captura
+     * empieza de nuevo.
+     */
+    public void vaciar(ConsumidorAjustes salida) {
+        if (pendientes > 0) {
+            entregar(pendientes - 1, mejorEstado(), salida);
+        }
+
+        iniciado = false;
+    }
+
+    /**
+     * @return Capturas pendientes; aún no entregadas.
+     */
+    public int pendientes() {
+        return pendientes;
+    }
+
+    /**
+     * @return Total de capturas entregadas ajustadas a alguna ruta.
+     */
+    public long ajustadas() {
+        return ajustadas;
+    }
+
+    /**
+     * @return Total de capturas decididas fuera de ruta (no entregadas).
+     */
+    public long fueraDeRuta() {
+        return fueraDeRuta;
+    }
+
+    private double emision(int estado) {
+        double distancia = estado == FUERA ? AJUSTADOR_RADIO : candidatos.distancia(estado);
+        double normalizada = distancia / AJUSTADOR_DESVIACION;
+
+        return -0.5 * normalizada * normalizada;
+    }
+
+    /**
+     * @param i Estado del paso anterior.
+     * @param j Estado del paso "paso".
+     * @param lineal Distancia en línea recta entre las capturas, en metros.
+     */
+    private double transicion(int i, int j, int paso, double lineal) {
+        if (i == FUERA || j == FUERA) {
+            return i == j ? 0 : -AJUSTADOR_PENALIZACION_FUERA;
+        }
+
+        int tramoAnterior = tramos[ultimo][i];
+        int tramo = tramos[paso][j];
+
+        if (formas.rutaTramo(tramoAnterior) != formas.rutaTramo(tramo)) {
+            return -AJUSTADOR_PENALIZACION_CAMBIO;
+        }
+
+        double avance = recorridos[paso][j] - recorridos[ultimo][i];
+
+        if (avance < -AJUSTADOR_RETROCESO_MAXIMO) {
+            return -AJUSTADOR_PENALIZACION_CAMBIO;
+        }
+
+        return -Math.abs(Math.max(avance, 0) - lineal) / AJUSTADOR_ESCALA_TRANSICION;
+    }
+
+    private int mejorEstado() {
+        int mejor = FUERA;
+
+        for (int j = 0; j < ESTADOS; j++) {
+            if (puntajes[j] > puntajes[mejor]) {
+                mejor = j;
+            }
+        }
+
+        return mejor;
+    }
+
+    /**
+     * @return Paso del anillo de la captura pendiente número "pendiente" (0 es la más antigua).
+     */
+    private int paso(int pendiente) {
+        return (inicio + pendiente) % AJUSTADOR_RETRASO_MAXIMO;
+    }
+
+    /**
+     * @return Estado, en la captura pendiente "pendiente", del camino que termina en "estado" en la última captura.
+     */
+    private int estadoEnPaso(int pendiente, int estado) {
+        for (int k = pendientes - 1; k > pendiente; k--) {
+            estado = anteriores[paso(k)][estado];
+        }
+
+        return estado;
+    }
+
+    /**
+     * Busca la captura pendiente más reciente en la que todos los caminos sobrevivientes
+     * coinciden, y entrega las capturas pendientes hasta ella.
+     */
+    private void entregarConvergidas(ConsumidorAjustes salida) {
+        int vivos = 0;
+
+        for (int j = 0; j < ESTADOS; j++) {
+            if (puntajes[j] != Double.NEGATIVE_INFINITY) {
+                caminos[vivos++] = j;
+            }
+        }
+
+        for (int k = pendientes - 1; k >= 0; k--) {
+            if (k < pendientes - 1) {
+                int siguiente = paso(k + 1);
+
+                for (int c = 0; c < vivos; c++) {
+                    caminos[c] = anteriores[siguiente][caminos[c]];
+                }
+            }
+
+            boolean coinciden = true;
+
+            for (int c = 1; c < vivos && coinciden; c++) {
+                coinciden = caminos[c] == caminos[0];
+            }
+
+            if (coinciden) {
+                entregar(k, caminos[0], salida);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Entrega las capturas pendientes 0 a "hasta", siguiendo hacia atrás el camino que pasa por
+     * "estado" en la captura pendiente "hasta".
+     */
+    private void entregar(int hasta, int estado, ConsumidorAjustes salida) {
+        // Los caminos que no pasan por las capturas entregadas ya no pueden ser el resultado.
+        for (int j = 0; j < ESTADOS; j++) {
+            if (puntajes[j] != Double.NEGATIVE_INFINITY && estadoEnPaso(hasta, j) != estado) {
+                puntajes[j] = Double.NEGATIVE_INFINITY;
+            }
+        }
+
+        camino[hasta] = estado;
+
+        for (int k = hasta - 1; k >= 0; k--) {
+            camino[k] = anteriores[paso(k + 1)][camino[k + 1]];
+        }
+
+        for (int k = 0; k <= hasta; k++) {
+            int paso = paso(k);
+
+            if (camino[k] == FUERA) {
+                fueraDeRuta++;
+                continue;
+            }
+
+            int tramo = tramos[paso][camino[k]];
+
+            ajustadas++;
+            salida.capturaAjustada(sesion, secuencias[paso], formas.ruta(formas.rutaTramo(tramo)), formas.tramoEnRuta(tramo), recorridos[paso][camino[k]]);
+        }
+
+        inicio = paso(hasta + 1);
+        pendientes -= hasta + 1;
+    }
+}
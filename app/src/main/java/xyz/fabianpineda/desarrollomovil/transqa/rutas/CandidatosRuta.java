@@ -0,0 +1,135 @@
+package xyz.fabianpineda.desarrollomovil.transqa.rutas;
+
+/**
+ * Conjunto acotado de tramos candidatos para una captura, ordenado por distancia a la captura (el
+ * más cercano primero). Llenado por IndiceTramos.buscar() y usado por AjustadorRutas.
+ *
+ * Conserva a lo sumo capacidad() candidatos: los más cercanos. Además, de cada paso de una ruta
+ * por la captura sólo conserva el tramo más cercano; tramos consecutivos de una ruta cerca de un
+ * vértice son el mismo paso, pero una ruta que pasa dos veces por el mismo lugar (por ejemplo,
+ * una ruta circular en su inicio y su fin) tiene un candidato por cada paso. Dos candidatos de la
+ * misma ruta son el mismo paso si sus recorridos difieren en "separacion" metros o menos.
+ *
+ * Todo está en arreglos de tipos primitivos; ofrecer() no reserva memoria. Este objeto no es
+ * seguro para ser usado desde varios hilos al mismo tiempo.
+ */
+public final class CandidatosRuta {
+    private final int[] tramos;
+    private final int[] rutas;
+    private final double[] distancias;
+    private final double[] recorridos;
+    private int cantidad;
+
+    /**
+     * @param capacidad Máximo de candidatos. Debe ser mayor que 0.
+     */
+    public CandidatosRuta(int capacidad) {
+        if (capacidad < 1) {
+            throw new IllegalArgumentException("capacidad < 1");
+        }
+
+        tramos = new int[capacidad];
+        rutas = new int[capacidad];
+        distancias = new double[capacidad];
+        recorridos = new double[capacidad];
+    }
+
+    /**
+     * Elimina todos los candidatos.
+     */
+    public void limpiar() {
+        cantidad = 0;
+    }
+
+    /**
+     * Ofrece un tramo como candidato. Es descartado si ya hay un candidato más cercano del mismo
+     * paso de su ruta, o si el conjunto está lleno de candidatos más cercanos.
+     *
+     * @param tramo Número global del tramo.
+     * @param ruta Ruta del tramo.
+     * @param distancia Distancia entre la captura y el tramo, en metros.
+     * @param recorrido Recorrido, en metros, del punto del tramo más cercano a la captura.
+     * @param separacion Diferencia de recorrido máxima, en metros, entre candidatos de un mismo paso.
+     */
+    public void ofrecer(int tramo, int ruta, double distancia, double recorrido, double separacion) {
+        for (int i = 0; i < cantidad; i++) {
+            if (rutas[i] != ruta || Math.abs(recorridos[i] - recorrido) > separacion) {
+                continue;
+            }
+
+            if (distancias[i] <= distancia) {
+                return;
+            }
+
+            eliminar(i);
+            break;
+        }
+
+        if (cantidad == tramos.length) {
+            if (distancias[cantidad - 1] <= distancia) {
+                return;
+            }
+
+            cantidad--;
+        }
+
+        int i = cantidad;
+
+        for (; i > 0 && distancias[i - 1] > distancia; i--) {
+            tramos[i] = tramos[i - 1];
+            rutas[i] = rutas[i - 1];
+            distancias[i] = distancias[i - 1];
+            recorridos[i] = recorridos[i - 1];
+        }
+
+        tramos[i] = tramo;
+        rutas[i] = ruta;
+        distancias[i] = distancia;
+        recorridos[i] = recorrido;
+        cantidad++;
+    }
+
+    private void eliminar(int i) {
+        for (; i < cantidad - 1; i++) {
+            tramos[i] = tramos[i + 1];
+            rutas[i] = rutas[i + 1];
+            distancias[i] = distancias[i + 1];
+            recorridos[i] = recorridos[i + 1];
+        }
+
+        cantidad--;
+    }
+
+    /**
+     * @return Máximo de candidatos.
+     */
+    public int capacidad() {
+        return tramos.length;
+    }
+
+    /**
+     * @return Número de candidatos.
+     */
+    public int cantidad() {
+        return cantidad;
+    }
+
+    /**
+     * @return Número global del tramo del candidato "i" (0 es el más cercano).
+     */
+    public int tramo(int i) {
+        return tramos[i];
+    }
+
+    public int ruta(int i) {
+        return rutas[i];
+    }
+
+    public double distancia(int i) {
+        return distancias[i];
+    }
+
+    public double recorrido(int i) {
+        return recorridos[i];
+    }
+}
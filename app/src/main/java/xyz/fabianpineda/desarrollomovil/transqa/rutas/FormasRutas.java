@@ -0,0 +1,440 @@
+package xyz.fabianpineda.desarrollomovil.transqa.rutas;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import xyz.fabianpineda.desarrollomovil.transqa.db.CeldasGeograficas;
+
+/**
+ * Formas (trazados) de las rutas de transporte: cada ruta es una polilínea, dividida en tramos
+ * (segmentos rectos entre dos puntos consecutivos).
+ *
+ * Las formas son cargadas de un archivo CSV con el formato de "shapes.txt" de GTFS: un encabezado
+ * con, al menos, las columnas FORMAS_COLUMNA_* (en cualquier orden; otras columnas son ignoradas)
+ * y un punto por línea. Los puntos de cada ruta son ordenados por su secuencia, así que pueden
+ * estar en cualquier orden en el archivo. Puntos repetidos consecutivos son omitidos, y rutas con
+ * menos de dos puntos distintos no son cargadas. Datos inválidos causan una IOException.
+ *
+ * Todas las coordenadas son proyectadas a un plano local, en metros al este (x) y al norte (y) del
+ * centro del rectángulo que contiene todas las formas (proyección equirectangular). El error de la
+ * proyección es despreciable en la extensión de una ciudad; no debe ser usada para formas de
+ * cientos de kilómetros. Ver: x(double), y(double)
+ *
+ * Cada tramo tiene un número global (0 a tramos() - 1); los tramos de una ruta son consecutivos y
+ * están en el orden de la ruta. El recorrido de un punto de un tramo es la distancia, en metros,
+ * desde el inicio de su ruta siguiendo la forma.
+ *
+ * Todo está en arreglos de tipos primitivos; consultar no reserva memoria. Este objeto no es
+ * modificado después de cargarlo, así que puede ser usado desde varios hilos.
+ *
+ * No se debe incluir en este objeto código específico de Android, para poder probarlo localmente.
+ */
+public final class FormasRutas {
+    /*
+     * Columnas requeridas del archivo de formas (nombres de GTFS).
+     */
+    public static final String FORMAS_COLUMNA_RUTA = "shape_id";
+    public static final String FORMAS_COLUMNA_LATITUD = "shape_pt_lat";
+    public static final String FORMAS_COLUMNA_LONGITUD = "shape_pt_lon";
+    public static final String FORMAS_COLUMNA_SECUENCIA = "shape_pt_sequence";
+
+    private static final int FORMAS_CAPACIDAD_INICIAL = 1024;
+
+    private final double origenLatitud;
+    private final double origenLongitud;
+    private final double metrosPorGradoLongitud;
+
+    // Por ruta: ID y primer tramo. primerTramo[rutas.length] es el total de tramos.
+    private final String[] rutas;
+    private final int[] primerTramo;
+
+    // Por tramo: ruta, extremos en el plano local y recorrido en su inicio.
+    private final int[] rutaTramo;
+    private final double[] xInicio;
+    private final double[] yInicio;
+    private final double[] xFin;
+    private final double[] yFin;
+    private final double[] recorridoInicio;
+
+    private FormasRutas(String[] rutas, int[] primerTramo, double[] latitudes, double[] longitudes, double origenLatitud, double origenLongitud) {
+        this.origenLatitud = origenLatitud;
+        this.origenLongitud = origenLongitud;
+        this.metrosPorGradoLongitud = CeldasGeograficas.METROS_POR_GRADO * Math.cos(Math.toRadians(origenLatitud));
+
+        this.rutas = rutas;
+        this.primerTramo = primerTramo;
+
+        int tramos = primerTramo[rutas.length];
+        rutaTramo = new int[tramos];
+        xInicio = new double[tramos];
+        yInicio = new double[tramos];
+        xFin = new double[tramos];
+        yFin = new double[tramos];
+        recorridoInicio = new double[tramos];
+
+        // Los puntos de la ruta r son los índices primerTramo[r] + r a primerTramo[r + 1] + r.
+        for (int r = 0; r < rutas.length; r++) {
+            double recorrido = 0;
+
+            for (int t = primerTramo[r]; t < primerTramo[r + 1]; t++) {
+                int punto = t + r;
+
+                rutaTramo[t] = r;
+                xInicio[t] = x(longitudes[punto]);
+                yInicio[t] = y(latitudes[punto]);
+                xFin[t] = x(longitudes[punto + 1]);
+                yFin[t] = y(latitudes[punto + 1]);
+                recorridoInicio[t] = recorrido;
+
+                recorrido += longitudTramo(t);
+            }
+        }
+    }
+
+    /**
+     * Carga formas de un archivo con codificación UTF-8. Ver: cargar(Reader)
+     */
+    public static FormasRutas cargar(File archivo) throws IOException {
+        Reader entrada = new InputStreamReader(new FileInputStream(archivo), "UTF-8");
+
+        try {
+            return cargar(entrada);
+        } finally {
+            entrada.close();
+        }
+    }
+
+    /**
+     * Carga formas en formato CSV de "shapes.txt" de GTFS.
+     *
+     * @param entrada Origen. No es cerrado por este método.
+     *
+     * @return Las formas cargadas. Puede no tener rutas.
+     *
+     * @throws IOException Si no se puede leer, falta alguna columna FORMAS_COLUMNA_* o algún punto es inválido.
+     */
+    public static FormasRutas cargar(Reader entrada) throws IOException {
+        BufferedReader lineas = new BufferedReader(entrada);
+        String linea = lineas.readLine();
+
+        if (linea == null) {
+            throw new IOException("Archivo de formas vacío.");
+        }
+
+        // Marca de orden de bytes (BOM) de UTF-8.
+        if (linea.startsWith("\uFEFF")) {
+            linea = linea.substring(1);
+        }
+
+        List<String> encabezado = Arrays.asList(campos(linea));
+        int columnaRuta = columna(encabezado, FORMAS_COLUMNA_RUTA);
+        int columnaLatitud = columna(encabezado, FORMAS_COLUMNA_LATITUD);
+        int columnaLongitud = columna(encabezado, FORMAS_COLUMNA_LONGITUD);
+        int columnaSecuencia = columna(encabezado, FORMAS_COLUMNA_SECUENCIA);
+        int columnas = Math.max(Math.max(columnaRuta, columnaLatitud), Math.max(columnaLongitud, columnaSecuencia)) + 1;
+
+        Map<String, Integer> indiceRutas = new HashMap<>();
+        List<String> nombres = new ArrayList<>();
+
+        int cantidad = 0;
+        int[] rutasPunto = new int[FORMAS_CAPACIDAD_INICIAL];
+        long[] secuenciasPunto = new long[FORMAS_CAPACIDAD_INICIAL];
+        double[] latitudes = new double[FORMAS_CAPACIDAD_INICIAL];
+        double[] longitudes = new double[FORMAS_CAPACIDAD_INICIAL];
+
+        int numeroLinea = 1;
+
+        while ((linea = lineas.readLine()) != null) {
+            numeroLinea++;
+
+            if (linea.trim().isEmpty()) {
+                continue;
+            }
+
+            String[] valores = campos(linea);
+
+            if (valores.length < columnas) {
+                throw new IOException("Línea " + numeroLinea + ": faltan columnas.");
+            }
+
+            double latitud;
+            double longitud;
+            long secuencia;
+
+            try {
+                latitud = Double.parseDouble(valores[columnaLatitud]);
+                longitud = Double.parseDouble(valores[columnaLongitud]);
+                secuencia = Long.parseLong(valores[columnaSecuencia]);
+            } catch (NumberFormatException e) {
+                throw new IOException("Línea " + numeroLinea + ": número inválido.", e);
+            }
+
+            if (Math.abs(latitud) > 90 || Math.abs(longitud) > 180) {
+                throw new IOException("Línea " + numeroLinea + ": coordenadas fuera de rango.");
+            }
+
+            Integer ruta = indiceRutas.get(valores[columnaRuta]);
+
+            if (ruta == null) {
+                ruta = nombres.size();
+                indiceRutas.put(valores[columnaRuta], ruta);
+                nombres.add(valores[columnaRuta]);
+            }
+
+            if (cantidad == rutasPunto.length) {
+                int capacidad = cantidad * 2;
+                rutasPunto = Arrays.copyOf(rutasPunto, capacidad);
+                secuenciasPunto = Arrays.copyOf(secuenciasPunto, capacidad);
+                latitudes = Arrays.copyOf(latitudes, capacidad);
+                longitudes = Arrays.copyOf(longitudes, capacidad);
+            }
+
+            rutasPunto[cantidad] = ruta;
+            secuenciasPunto[cantidad] = secuencia;
+            latitudes[cantidad] = latitud;
+            longitudes[cantidad] = longitud;
+            cantidad++;
+        }
+
+        return construir(nombres, cantidad, rutasPunto, secuenciasPunto, latitudes, longitudes);
+    }
+
+    /**
+     * Ordena los puntos por ruta y secuencia, omite puntos repetidos y rutas sin tramos, y crea las
+     * formas.
+     */
+    private static FormasRutas construir(List<String> nombres, int cantidad, final int[] rutasPunto, final long[] secuencias, double[] latitudes, double[] longitudes) {
+        Integer[] orden = new Integer[cantidad];
+
+        for (int i = 0; i < cantidad; i++) {
+            orden[i] = i;
+        }
+
+        Arrays.sort(orden, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                if (rutasPunto[a] != rutasPunto[b]) {
+                    return rutasPunto[a] < rutasPunto[b] ? -1 : 1;
+                }
+
+                return secuencias[a] < secuencias[b] ? -1 : (secuencias[a] > secuencias[b] ? 1 : 0);
+            }
+        });
+
+        List<String> rutas = new ArrayList<>();
+        int[] primerTramo = new int[nombres.size() + 1];
+        double[] latitudesOrdenadas = new double[cantidad];
+        double[] longitudesOrdenadas = new double[cantidad];
+
+        double latitudMinima = 90;
+        double latitudMaxima = -90;
+        double longitudMinima = 180;
+        double longitudMaxima = -180;
+
+        int puntos = 0;
+        int tramos = 0;
+        int k = 0;
+
+        while (k < cantidad) {
+            int ruta = rutasPunto[orden[k]];
+            int inicio = puntos;
+
+            for (; k < cantidad && rutasPunto[orden[k]] == ruta; k++) {
+                int i = orden[k];
+
+                if (puntos > inicio && latitudes[i] == latitudesOrdenadas[puntos - 1] && longitudes[i] == longitudesOrdenadas[puntos - 1]) {
+                    continue;
+                }
+
+                latitudesOrdenadas[puntos] = latitudes[i];
+                longitudesOrdenadas[puntos] = longitudes[i];
+                puntos++;
+            }
+
+            if (puntos - inicio < 2) {
+                puntos = inicio;
+                continue;
+            }
+
+            for (int i = inicio; i < puntos; i++) {
+                latitudMinima = Math.min(latitudMinima, latitudesOrdenadas[i]);
+                latitudMaxima = Math.max(latitudMaxima, latitudesOrdenadas[i]);
+                longitudMinima = Math.min(longitudMinima, longitudesOrdenadas[i]);
+                longitudMaxima = Math.max(longitudMaxima, longitudesOrdenadas[i]);
+            }
+
+            primerTramo[rutas.size()] = tramos;
+            rutas.add(nombres.get(ruta));
+            tramos += puntos - inicio - 1;
+        }
+
+        primerTramo[rutas.size()] = tramos;
+
+        double origenLatitud = rutas.isEmpty() ? 0 : (latitudMinima + latitudMaxima) / 2;
+        double origenLongitud = rutas.isEmpty() ? 0 : (longitudMinima + longitudMaxima) / 2;
+
+        return new FormasRutas(
+                rutas.toArray(new String[rutas.size()]),
+                Arrays.copyOf(primerTramo, rutas.size() + 1),
+                latitudesOrdenadas,
+                longitudesOrdenadas,
+                origenLatitud,
+                origenLongitud
+        );
+    }
+
+    /**
+     * Separa una línea CSV en campos recortados y sin comillas. No soporta comas dentro de campos
+     * entre comillas, que no ocurren en los campos usados.
+     */
+    private static String[] campos(String linea) {
+        String[] campos = linea.split(",", -1);
+
+        for (int i = 0; i < campos.length; i++) {
+            String campo = campos[i].trim();
+
+            if (campo.length() >= 2 && campo.startsWith("\"") && campo.endsWith("\"")) {
+                campo = campo.substring(1, campo.length() - 1);
+            }
+
+            campos[i] = campo;
+        }
+
+        return campos;
+    }
+
+    private static int columna(List<String> encabezado, String nombre) throws IOException {
+        int columna = encabezado.indexOf(nombre);
+
+        if (columna < 0) {
+            throw new IOException("Falta la columna " + nombre + ".");
+        }
+
+        return columna;
+    }
+
+    /**
+     * @return Metros al este del origen del plano local.
+     */
+    public double x(double longitud) {
+        return (longitud - origenLongitud) * metrosPorGradoLongitud;
+    }
+
+    /**
+     * @return Metros al norte del origen del plano local.
+     */
+    public double y(double latitud) {
+        return (latitud - origenLatitud) * CeldasGeograficas.METROS_POR_GRADO;
+    }
+
+    /**
+     * @return Número de rutas.
+     */
+    public int rutas() {
+        return rutas.length;
+    }
+
+    /**
+     * @return ID (FORMAS_COLUMNA_RUTA) de la ruta "ruta".
+     */
+    public String ruta(int ruta) {
+        return rutas[ruta];
+    }
+
+    /**
+     * @return Número total de tramos.
+     */
+    public int tramos() {
+        return rutaTramo.length;
+    }
+
+    /**
+     * @return Ruta a la que pertenece un tramo.
+     */
+    public int rutaTramo(int tramo) {
+        return rutaTramo[tramo];
+    }
+
+    /**
+     * @return Número de un tramo dentro de su ruta, desde 0.
+     */
+    public int tramoEnRuta(int tramo) {
+        return tramo - primerTramo[rutaTramo[tramo]];
+    }
+
+    /**
+     * @return Longitud de una ruta, en metros.
+     */
+    public double longitudRuta(int ruta) {
+        int ultimo = primerTramo[ruta + 1] - 1;
+        return recorridoInicio[ultimo] + longitudTramo(ultimo);
+    }
+
+    /**
+     * @return Longitud de un tramo, en metros.
+     */
+    public double longitudTramo(int tramo) {
+        return Math.hypot(xFin[tramo] - xInicio[tramo], yFin[tramo] - yInicio[tramo]);
+    }
+
+    /**
+     * Extremos de un tramo en el plano local.
+     */
+    double xInicio(int tramo) {
+        return xInicio[tramo];
+    }
+
+    double yInicio(int tramo) {
+        return yInicio[tramo];
+    }
+
+    double xFin(int tramo) {
+        return xFin[tramo];
+    }
+
+    double yFin(int tramo) {
+        return yFin[tramo];
+    }
+
+    /**
+     * @param tramo Número global del tramo.
+     * @param x Punto en el plano local.
+     * @param y Punto en el plano local.
+     *
+     * @return Fracción del tramo, de 0 (inicio) a 1 (fin), del punto del tramo más cercano a (x, y).
+     */
+    public double proyeccion(int tramo, double x, double y) {
+        double dx = xFin[tramo] - xInicio[tramo];
+        double dy = yFin[tramo] - yInicio[tramo];
+        double t = ((x - xInicio[tramo]) * dx + (y - yInicio[tramo]) * dy) / (dx * dx + dy * dy);
+
+        return t < 0 ? 0 : (t > 1 ? 1 : t);
+    }
+
+    /**
+     * @return Distancia en metros entre (x, y) y el punto de un tramo en la fracción "t".
+     */
+    public double distancia(int tramo, double t, double x, double y) {
+        double px = xInicio[tramo] + t * (xFin[tramo] - xInicio[tramo]);
+        double py = yInicio[tramo] + t * (yFin[tramo] - yInicio[tramo]);
+
+        return Math.hypot(x - px, y - py);
+    }
+
+    /**
+     * @return Recorrido, en metros desde el inicio de su ruta, del punto de un tramo en la fracción "t".
+     */
+    public double recorrido(int tramo, double t) {
+        return recorridoInicio[tramo] + t * longitudTramo(tramo);
+    }
+}
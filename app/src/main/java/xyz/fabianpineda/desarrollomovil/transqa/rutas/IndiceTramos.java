@@ -0,0 +1,223 @@
+package xyz.fabianpineda.desarrollomovil.transqa.rutas;
+
+import java.util.Arrays;
+
+/**
+ * Índice espacial de los tramos de unas FormasRutas: una cuadrícula uniforme sobre el plano local
+ * de las formas, con la lista de tramos que tocan cada celda.
+ *
+ * Las listas están en un solo arreglo, ordenadas por celda ("compressed sparse row"): los tramos
+ * de la celda c son tramosCelda[inicioCelda[c]] a tramosCelda[inicioCelda[c + 1] - 1]. Un tramo
+ * es agregado a toda celda cuyo centro está a menos de media diagonal de celda del tramo, así que
+ * nunca falta en una celda que toca; tramos largos aparecen en varias celdas.
+ *
+ * Una búsqueda recorre sólo las celdas que tocan el cuadrado de lado 2 * radio alrededor del
+ * punto, así que su costo depende de la densidad de tramos cerca del punto y no del total de
+ * tramos. Con celdas de INDICE_TAMANO_CELDA_DEFAULT metros y radios de decenas de metros, son a
+ * lo sumo cuatro celdas. Si las formas son tan extensas que la cuadrícula tendría más de
+ * INDICE_CELDAS_MAXIMAS celdas, las celdas son agrandadas.
+ *
+ * buscar() no reserva memoria, pero usa un arreglo de marcas propio: este objeto no es seguro para
+ * ser usado desde varios hilos al mismo tiempo.
+ *
+ * No se debe incluir en este objeto código específico de Android, para poder probarlo localmente.
+ */
+public final class IndiceTramos {
+    /**
+     * Lado de las celdas, en metros.
+     */
+    public static final double INDICE_TAMANO_CELDA_DEFAULT = 100.0;
+
+    static final int INDICE_CELDAS_MAXIMAS = 1 << 22;
+
+    private final FormasRutas formas;
+
+    private final double minimoX;
+    private final double minimoY;
+    private final double tamano;
+    private final int columnas;
+    private final int filas;
+
+    private final int[] inicioCelda;
+    private final int[] tramosCelda;
+
+    // Marca de la última búsqueda que examinó cada tramo; evita examinarlo una vez por celda.
+    private final int[] marcas;
+    private int marca;
+
+    public IndiceTramos(FormasRutas formas) {
+        this(formas, INDICE_TAMANO_CELDA_DEFAULT);
+    }
+
+    /**
+     * @param formas Formas indexadas.
+     * @param tamanoCelda Lado de las celdas, en metros. Debe ser mayor que 0.
+     */
+    public IndiceTramos(FormasRutas formas, double tamanoCelda) {
+        if (!(tamanoCelda > 0)) {
+            throw new IllegalArgumentException("tamanoCelda <= 0");
+        }
+
+        this.formas = formas;
+
+        int tramos = formas.tramos();
+        double minimoX = 0;
+        double minimoY = 0;
+        double maximoX = 0;
+        double maximoY = 0;
+
+        for (int t = 0; t < tramos; t++) {
+            if (t == 0) {
+                minimoX = maximoX = formas.xInicio(t);
+                minimoY = maximoY = formas.yInicio(t);
+            }
+
+            minimoX = Math.min(minimoX, Math.min(formas.xInicio(t), formas.xFin(t)));
+            minimoY = Math.min(minimoY, Math.min(formas.yInicio(t), formas.yFin(t)));
+            maximoX = Math.max(maximoX, Math.max(formas.xInicio(t), formas.xFin(t)));
+            maximoY = Math.max(maximoY, Math.max(formas.yInicio(t), formas.yFin(t)));
+        }
+
+        double ancho = maximoX - minimoX;
+        double alto = maximoY - minimoY;
+
+        tamanoCelda = Math.max(tamanoCelda, Math.sqrt(ancho * alto / INDICE_CELDAS_MAXIMAS));
+        tamanoCelda = Math.max(tamanoCelda, Math.max(ancho, alto) / (INDICE_CELDAS_MAXIMAS / 2));
+
+        this.minimoX = minimoX;
+        this.minimoY = minimoY;
+        this.tamano = tamanoCelda;
+        this.columnas = (int) (ancho / tamanoCelda) + 1;
+        this.filas = (int) (alto / tamanoCelda) + 1;
+
+        // Dos pasadas: contar los tramos de cada celda, y luego ubicarlos.
+        inicioCelda = new int[columnas * filas + 1];
+
+        for (int t = 0; t < tramos; t++) {
+            recorrerCeldas(t, null);
+        }
+
+        for (int c = 0; c < columnas * filas; c++) {
+            inicioCelda[c + 1] += inicioCelda[c];
+        }
+
+        tramosCelda = new int[inicioCelda[columnas * filas]];
+        int[] siguiente = new int[columnas * filas];
+
+        for (int t = 0; t < tramos; t++) {
+            recorrerCeldas(t, siguiente);
+        }
+
+        marcas = new int[tramos];
+    }
+
+    /**
+     * Recorre las celdas que toca un tramo. Si "siguiente" es null, cuenta el tramo en
+     * inicioCelda[c + 1] por cada celda c; si no, lo ubica en la posición siguiente[c] de la celda.
+     */
+    private void recorrerCeldas(int tramo, int[] siguiente) {
+        double x0 = formas.xInicio(tramo);
+        double y0 = formas.yInicio(tramo);
+        double x1 = formas.xFin(tramo);
+        double y1 = formas.yFin(tramo);
+        double mediaDiagonal = tamano * Math.sqrt(0.5);
+
+        int columnaInicio = columna(Math.min(x0, x1));
+        int columnaFin = columna(Math.max(x0, x1));
+        int filaInicio = fila(Math.min(y0, y1));
+        int filaFin = fila(Math.max(y0, y1));
+
+        for (int f = filaInicio; f <= filaFin; f++) {
+            for (int c = columnaInicio; c <= columnaFin; c++) {
+                double x = minimoX + (c + 0.5) * tamano;
+                double y = minimoY + (f + 0.5) * tamano;
+
+                if (formas.distancia(tramo, formas.proyeccion(tramo, x, y), x, y) > mediaDiagonal) {
+                    continue;
+                }
+
+                int celda = f * columnas + c;
+
+                if (siguiente == null) {
+                    inicioCelda[celda + 1]++;
+                } else {
+                    tramosCelda[inicioCelda[celda] + siguiente[celda]++] = tramo;
+                }
+            }
+        }
+    }
+
+    private int columna(double x) {
+        return Math.max(0, Math.min(columnas - 1, (int) Math.floor((x - minimoX) / tamano)));
+    }
+
+    private int fila(double y) {
+        return Math.max(0, Math.min(filas - 1, (int) Math.floor((y - minimoY) / tamano)));
+    }
+
+    /**
+     * @return Formas indexadas.
+     */
+    public FormasRutas formas() {
+        return formas;
+    }
+
+    /**
+     * @return Lado de las celdas, en metros. Puede ser mayor que el solicitado; ver INDICE_CELDAS_MAXIMAS.
+     */
+    public double tamanoCelda() {
+        return tamano;
+    }
+
+    /**
+     * Busca los tramos a "radio" metros o menos de un punto y los ofrece a "candidatos" (que es
+     * limpiado antes), con separación 2 * radio entre pasos de una misma ruta. Ver: CandidatosRuta
+     *
+     * @param x Punto en el plano local de las formas.
+     * @param y Punto en el plano local de las formas.
+     * @param radio Distancia máxima, en metros.
+     * @param candidatos Recibe los candidatos.
+     *
+     * @return Número de candidatos.
+     */
+    public int buscar(double x, double y, double radio, CandidatosRuta candidatos) {
+        candidatos.limpiar();
+
+        if (x + radio < minimoX || y + radio < minimoY || x - radio > minimoX + columnas * tamano || y - radio > minimoY + filas * tamano) {
+            return 0;
+        }
+
+        if (++marca == Integer.MAX_VALUE) {
+            Arrays.fill(marcas, 0);
+            marca = 1;
+        }
+
+        int columnaFin = columna(x + radio);
+        int filaFin = fila(y + radio);
+
+        for (int f = fila(y - radio); f <= filaFin; f++) {
+            for (int c = columna(x - radio); c <= columnaFin; c++) {
+                int celda = f * columnas + c;
+
+                for (int k = inicioCelda[celda]; k < inicioCelda[celda + 1]; k++) {
+                    int tramo = tramosCelda[k];
+
+                    if (marcas[tramo] == marca) {
+                        continue;
+                    }
+
+                    marcas[tramo] = marca;
+
+                    double t = formas.proyeccion(tramo, x, y);
+                    double distancia = formas.distancia(tramo, t, x, y);
+
+                    if (distancia <= radio) {
+                        candidatos.ofrecer(tramo, formas.rutaTramo(tramo), distancia, formas.recorrido(tramo, t), 2 * radio);
+                    }
+                }
+            }
+        }
+
+        return candidatos.cantidad();
+    }
+}
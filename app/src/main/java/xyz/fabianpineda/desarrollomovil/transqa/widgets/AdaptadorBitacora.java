@@ -0,0 +1,101 @@
+package xyz.fabianpineda.desarrollomovil.transqa.widgets;
+
+import android.content.Context;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+import android.widget.TextView;
+
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+import xyz.fabianpineda.desarrollomovil.transqa.bitacora.BitacoraFiltrada;
+import xyz.fabianpineda.desarrollomovil.transqa.bitacora.EntradaBitacora;
+
+/**
+ * Adaptador de un ListView con la bitácora de eventos mostrada al usuario, de la entrada más
+ * antigua a la más reciente.
+ *
+ * Reemplaza un TextView al que se le agregaba texto por cada evento: la bitácora es acotada (ver
+ * Bitacora) y el ListView sólo crea y reutiliza las filas visibles, así que agregar una entrada
+ * no vuelve a diagramar todo el texto anterior, sin importar cuánto tiempo lleve abierta la
+ * Activity.
+ *
+ * Todos los métodos deben ser llamados desde el hilo principal.
+ */
+public class AdaptadorBitacora extends BaseAdapter {
+    /** Formato para cada fila. Una hora seguida por el mensaje. */
+    private static final String FORMATO_FILA = "%s - %s.";
+
+    /** Formato para horas mostradas antes de cada mensaje, en hora local. */
+    private final DateFormat formatoFechas = new SimpleDateFormat("HH:mm:ss");
+
+    private final LayoutInflater inflador;
+    private final BitacoraFiltrada bitacora;
+
+    /**
+     * @param contexto Contexto usado para crear las filas.
+     * @param bitacora Bitácora a mostrar. Sólo debe recibir entradas por medio de este adaptador.
+     */
+    public AdaptadorBitacora(Context contexto, BitacoraFiltrada bitacora) {
+        this.inflador = LayoutInflater.from(contexto);
+        this.bitacora = bitacora;
+    }
+
+    /**
+     * Agrega una entrada con la fecha actual. Actualiza la lista sólo si cambiaron las entradas
+     * visibles.
+     *
+     * @param severidad Alguna de las constantes EntradaBitacora.BITACORA_SEVERIDAD_*.
+     * @param mensaje Mensaje a mostrar.
+     */
+    public void agregar(int severidad, String mensaje) {
+        if (bitacora.agregar(severidad, mensaje)) {
+            notifyDataSetChanged();
+        }
+    }
+
+    /**
+     * Muestra sólo las entradas con severidad mayor o igual a "severidadMinima."
+     *
+     * @param severidadMinima Alguna de las constantes EntradaBitacora.BITACORA_SEVERIDAD_*.
+     */
+    public void filtrar(int severidadMinima) {
+        if (severidadMinima == bitacora.severidadMinima()) {
+            return;
+        }
+
+        bitacora.filtrar(severidadMinima);
+        notifyDataSetChanged();
+    }
+
+    @Override
+    public int getCount() {
+        return bitacora.tamano();
+    }
+
+    @Override
+    public EntradaBitacora getItem(int posicion) {
+        return bitacora.obtener(posicion);
+    }
+
+    @Override
+    public long getItemId(int posicion) {
+        return posicion;
+    }
+
+    @Override
+    public View getView(int posicion, View vista, ViewGroup padre) {
+        if (vista == null) {
+            vista = inflador.inflate(android.R.layout.simple_list_item_1, padre, false);
+        }
+
+        EntradaBitacora entrada = bitacora.obtener(posicion);
+
+        ((TextView) vista.findViewById(android.R.id.text1)).setText(String.format(FORMATO_FILA, formatoFechas.format(new Date(entrada.fecha)), entrada.mensaje));
+
+        return vista;
+    }
+}
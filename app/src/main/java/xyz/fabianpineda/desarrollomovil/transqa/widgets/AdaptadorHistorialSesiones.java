@@ -0,0 +1,231 @@
+package xyz.fabianpineda.desarrollomovil.transqa.widgets;
+
+import android.content.Context;
+import android.os.AsyncTask;
+import android.util.Log;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.AbsListView;
+import android.widget.BaseAdapter;
+import android.widget.TextView;
+
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import xyz.fabianpineda.desarrollomovil.transqa.R;
+import xyz.fabianpineda.desarrollomovil.transqa.db.AlmacenSQLite;
+import xyz.fabianpineda.desarrollomovil.transqa.db.RegistroSesion;
+
+/**
+ * Adaptador de un ListView con el historial de sesiones, de la más reciente a la más antigua.
+ *
+ * Las sesiones son cargadas por páginas de HISTORIAL_TAMANO_PAGINA a medida que el usuario se
+ * acerca al final de la lista (el adaptador también debe ser el OnScrollListener del ListView).
+ * Cada página es una consulta "keyset" que continúa desde la última sesión cargada (ver
+ * AlmacenSesiones.listarSesiones), así que su costo no depende de cuántas sesiones haya antes.
+ *
+ * Las consultas se ejecutan fuera del hilo principal, en el ejecutor serial de AsyncTask, con una
+ * conexión propia de sólo lectura (ver AlmacenSQLite.abrirLectura); ServicioGeolocalizacion
+ * sigue escribiendo con la suya. La conexión es abierta, usada y cerrada sólo desde ese ejecutor.
+ *
+ * Todos los métodos públicos deben ser llamados desde el hilo principal. Se debe llamar cerrar()
+ * cuando la Activity es destruida.
+ */
+public class AdaptadorHistorialSesiones extends BaseAdapter implements AbsListView.OnScrollListener {
+    private static final String ETIQUETA = AdaptadorHistorialSesiones.class.getSimpleName();
+
+    /** Sesiones por página. Una página llena la pantalla varias veces. */
+    public static final int HISTORIAL_TAMANO_PAGINA = 50;
+
+    /** Se carga la siguiente página cuando quedan menos de estas filas por mostrar. */
+    static final int HISTORIAL_FILAS_ANTICIPADAS = 15;
+
+    /** Formato para fechas de inicio y fin de sesión, en hora local. */
+    private final DateFormat formatoFechas = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+
+    private final Context contexto;
+    private final LayoutInflater inflador;
+    private final List<RegistroSesion> sesiones = new ArrayList<>();
+
+    private AlmacenSQLite almacen;      // Sólo usado desde AsyncTask.SERIAL_EXECUTOR.
+
+    private CargaPagina carga;          // Carga en progreso, o null.
+    private boolean agotado;            // True si ya no hay más páginas.
+    private boolean cerrado;
+    private int generacion;             // Incrementado por recargar(); descarta cargas anteriores.
+
+    /**
+     * Carga una página de sesiones después de "anterior" y la agrega al final de la lista.
+     */
+    private final class CargaPagina extends AsyncTask<Void, Void, List<RegistroSesion>> {
+        private final RegistroSesion anterior;
+        private final int generacionCarga;
+
+        CargaPagina(RegistroSesion anterior, int generacionCarga) {
+            this.anterior = anterior;
+            this.generacionCarga = generacionCarga;
+        }
+
+        /**
+         * @return La página, vacía si la base de datos aún no existe, o null si hubo un error.
+         */
+        @Override
+        protected List<RegistroSesion> doInBackground(Void... parametros) {
+            try {
+                if (almacen == null) {
+                    almacen = AlmacenSQLite.abrirLectura(contexto);
+                }
+
+                if (almacen == null) {
+                    return new ArrayList<>();
+                }
+
+                return almacen.listarSesiones(null, Long.MIN_VALUE, Long.MAX_VALUE, anterior, HISTORIAL_TAMANO_PAGINA);
+            } catch (RuntimeException e) {
+                Log.e(ETIQUETA, "Error cargando historial de sesiones.", e);
+                return null;
+            }
+        }
+
+        @Override
+        protected void onPostExecute(List<RegistroSesion> pagina) {
+            if (cerrado || generacionCarga != generacion) {
+                return;
+            }
+
+            carga = null;
+
+            // Ante un error no se reintenta al desplazarse; recargar() vuelve a intentarlo.
+            if (pagina == null || pagina.size() < HISTORIAL_TAMANO_PAGINA) {
+                agotado = true;
+            }
+
+            if (pagina != null && !pagina.isEmpty()) {
+                sesiones.addAll(pagina);
+                notifyDataSetChanged();
+            }
+        }
+    }
+
+    /**
+     * @param contexto Contexto usado para abrir la base de datos y crear las filas. Normalmente la Activity que muestra la lista.
+     */
+    public AdaptadorHistorialSesiones(Context contexto) {
+        this.contexto = contexto.getApplicationContext();
+        this.inflador = LayoutInflater.from(contexto);
+    }
+
+    /**
+     * Descarta las sesiones cargadas y carga de nuevo la primera página. Usado cuando una sesión
+     * es iniciada o terminada.
+     */
+    public void recargar() {
+        if (cerrado) {
+            return;
+        }
+
+        generacion++;
+        carga = null;
+        agotado = false;
+        sesiones.clear();
+        notifyDataSetChanged();
+
+        cargarSiguientePagina();
+    }
+
+    /**
+     * Inicia la carga de la página siguiente, si no hay una carga en progreso y aún hay páginas.
+     */
+    public void cargarSiguientePagina() {
+        if (cerrado || agotado || carga != null) {
+            return;
+        }
+
+        carga = new CargaPagina(sesiones.isEmpty() ? null : sesiones.get(sesiones.size() - 1), generacion);
+        carga.execute();
+    }
+
+    /**
+     * Descarta cargas pendientes y cierra la conexión después de que terminen. El adaptador no
+     * carga más páginas después de este llamado.
+     */
+    public void cerrar() {
+        if (cerrado) {
+            return;
+        }
+
+        cerrado = true;
+
+        if (carga != null) {
+            carga.cancel(false);
+            carga = null;
+        }
+
+        // Ejecutado después de cualquier carga ya iniciada, en el mismo ejecutor serial.
+        AsyncTask.SERIAL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (almacen != null) {
+                    almacen.cerrar();
+                    almacen = null;
+                }
+            }
+        });
+    }
+
+    @Override
+    public void onScrollStateChanged(AbsListView vista, int estado) {
+    }
+
+    @Override
+    public void onScroll(AbsListView vista, int primeraVisible, int visibles, int total) {
+        if (total - (primeraVisible + visibles) < HISTORIAL_FILAS_ANTICIPADAS) {
+            cargarSiguientePagina();
+        }
+    }
+
+    @Override
+    public int getCount() {
+        return sesiones.size();
+    }
+
+    @Override
+    public RegistroSesion getItem(int posicion) {
+        return sesiones.get(posicion);
+    }
+
+    @Override
+    public long getItemId(int posicion) {
+        return sesiones.get(posicion).id;
+    }
+
+    @Override
+    public boolean hasStableIds() {
+        return true;
+    }
+
+    @Override
+    public View getView(int posicion, View vista, ViewGroup padre) {
+        if (vista == null) {
+            vista = inflador.inflate(android.R.layout.simple_list_item_2, padre, false);
+        }
+
+        RegistroSesion sesion = sesiones.get(posicion);
+        String nombre = sesion.nombre.trim();
+
+        if (nombre.length() == 0) {
+            nombre = contexto.getString(R.string.sesion_nombre_ninguno);
+        }
+
+        String fin = sesion.terminada() ? formatoFechas.format(new Date(sesion.fechaFin)) : contexto.getString(R.string.sesion_estado_activa);
+
+        ((TextView) vista.findViewById(android.R.id.text1)).setText(String.format(contexto.getString(R.string.historial_sesion_nombre_formato), nombre, sesion.id));
+        ((TextView) vista.findViewById(android.R.id.text2)).setText(String.format(contexto.getString(R.string.historial_sesion_fechas_formato), formatoFechas.format(new Date(sesion.fechaInicio)), fin));
+
+        return vista;
+    }
+}
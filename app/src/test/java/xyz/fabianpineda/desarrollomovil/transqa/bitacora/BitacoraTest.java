@@ -0,0 +1,120 @@
+package xyz.fabianpineda.desarrollomovil.transqa.bitacora;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+
+/**
+ * Pruebas locales de Bitacora, BitacoraFiltrada y ArchivoBitacora: capacidad acotada, filtro por
+ * severidad mantenido incrementalmente, y rotación de archivos.
+ */
+public class BitacoraTest {
+    private File directorio;
+
+    private static final Executor DIRECTO = new Executor() {
+        @Override
+        public void execute(Runnable tarea) {
+            tarea.run();
+        }
+    };
+
+    @Before
+    public void crearDirectorio() throws Exception {
+        directorio = File.createTempFile("bitacora", "");
+        directorio.delete();
+    }
+
+    @After
+    public void borrarDirectorio() throws Exception {
+        File[] archivos = directorio.listFiles();
+
+        if (archivos != null) {
+            for (File archivo : archivos) {
+                archivo.delete();
+            }
+        }
+
+        directorio.delete();
+    }
+
+    @Test
+    public void conservaSoloLasUltimasEntradas() throws Exception {
+        Bitacora bitacora = new Bitacora(10, null);
+
+        for (int i = 0; i < 25; i++) {
+            EntradaBitacora descartada = bitacora.agregar(new EntradaBitacora(i, EntradaBitacora.BITACORA_SEVERIDAD_INFORMACION, "m" + i));
+
+            if (i < 10) {
+                assertNull(descartada);
+            } else {
+                assertEquals(i - 10, descartada.fecha);
+            }
+        }
+
+        assertEquals(10, bitacora.tamano());
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals(15 + i, bitacora.obtener(i).fecha);
+        }
+    }
+
+    @Test
+    public void filtroIncrementalIgualAFiltroCompleto() throws Exception {
+        BitacoraFiltrada filtrada = new BitacoraFiltrada(new Bitacora(16, null), EntradaBitacora.BITACORA_SEVERIDAD_INFORMACION);
+
+        for (int i = 0; i < 100; i++) {
+            int severidad = i % 7 == 0 ? EntradaBitacora.BITACORA_SEVERIDAD_ERROR : (i % 2 == 0 ? EntradaBitacora.BITACORA_SEVERIDAD_DETALLE : EntradaBitacora.BITACORA_SEVERIDAD_INFORMACION);
+            filtrada.agregar(severidad, "m" + i);
+        }
+
+        String[] incremental = new String[filtrada.tamano()];
+
+        for (int i = 0; i < incremental.length; i++) {
+            assertTrue(filtrada.obtener(i).severidad >= EntradaBitacora.BITACORA_SEVERIDAD_INFORMACION);
+            incremental[i] = filtrada.obtener(i).mensaje;
+        }
+
+        filtrada.filtrar(EntradaBitacora.BITACORA_SEVERIDAD_DETALLE);
+        assertEquals(16, filtrada.tamano());
+
+        filtrada.filtrar(EntradaBitacora.BITACORA_SEVERIDAD_INFORMACION);
+        assertEquals(incremental.length, filtrada.tamano());
+
+        for (int i = 0; i < incremental.length; i++) {
+            assertEquals(incremental[i], filtrada.obtener(i).mensaje);
+        }
+
+        filtrada.agregar(EntradaBitacora.BITACORA_SEVERIDAD_DETALLE, "oculto");
+        assertNotEquals("oculto", filtrada.obtener(filtrada.tamano() - 1).mensaje);
+    }
+
+    @Test
+    public void archivoRotaAlSuperarTamano() throws Exception {
+        ArchivoBitacora archivo = new ArchivoBitacora(directorio, 1024, 2, DIRECTO);
+        Bitacora bitacora = new Bitacora(8, archivo);
+
+        StringBuilder mensaje = new StringBuilder();
+
+        for (int i = 0; i < 100; i++) {
+            mensaje.append('x');
+        }
+
+        for (int i = 0; i < 100; i++) {
+            bitacora.agregar(EntradaBitacora.BITACORA_SEVERIDAD_INFORMACION, mensaje.toString());
+        }
+
+        String nombre = archivo.archivo().getPath();
+
+        assertTrue(new File(nombre + ".1").exists());
+        assertTrue(new File(nombre + ".2").exists());
+        assertFalse(new File(nombre + ".3").exists());
+        assertTrue(new File(nombre + ".1").length() > 1024);
+        assertTrue(archivo.archivo().length() <= 1024);
+        assertEquals(8, bitacora.tamano());
+    }
+}
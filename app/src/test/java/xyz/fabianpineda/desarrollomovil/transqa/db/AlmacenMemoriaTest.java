@@ -0,0 +1,187 @@
+package xyz.fabianpineda.desarrollomovil.transqa.db;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Pruebas locales de AlmacenMemoria: debe comportarse como AlmacenSQLite en sesiones, secuencias,
+ * codificación de coordenadas y consultas por rango de fechas.
+ */
+public class AlmacenMemoriaTest {
+    private Almacen almacen;
+    private AlmacenCapturas capturas;
+
+    @Before
+    public void abrir() throws Exception {
+        almacen = new AlmacenMemoria();
+        capturas = almacen.abrirCapturas();
+    }
+
+    @After
+    public void cerrar() throws Exception {
+        capturas.cerrar();
+        almacen.cerrar();
+    }
+
+    @Test
+    public void iniciarYTerminarSesion() throws Exception {
+        RegistroSesion iniciada = almacen.sesiones().iniciarSesion("  turno  ");
+
+        assertEquals(1, iniciada.id);
+        assertEquals("turno", iniciada.nombre);
+        assertFalse(iniciada.terminada());
+
+        RegistroSesion terminada = almacen.sesiones().terminarSesion(iniciada.id);
+
+        assertTrue(terminada.terminada());
+        assertEquals(iniciada.fechaInicio, terminada.fechaInicio);
+        assertEquals(terminada.fechaFin, almacen.sesiones().seleccionarSesion(iniciada.id).fechaFin);
+
+        assertNull(almacen.sesiones().terminarSesion(iniciada.id));
+        assertNull(almacen.sesiones().terminarSesion(iniciada.id + 1));
+        assertEquals("", almacen.sesiones().iniciarSesion(null).nombre);
+    }
+
+    @Test
+    public void latenciasSeGuardanAlTerminarSesion() throws Exception {
+        long sesion = almacen.sesiones().iniciarSesion("a").id;
+        RegistroLatencias latencias = new RegistroLatencias(sesion);
+        latencias.establecer(RegistroLatencias.LATENCIA_ETAPA_TOTAL, 3, 1000, 2500, 2500, 2100);
+
+        assertNull(almacen.sesiones().latenciasSesion(sesion));
+        assertNotNull(almacen.sesiones().terminarSesion(sesion, latencias));
+
+        latencias.establecer(RegistroLatencias.LATENCIA_ETAPA_TOTAL, 0, 0, 0, 0, 0);
+        RegistroLatencias guardadas = almacen.sesiones().latenciasSesion(sesion);
+
+        assertEquals(3, guardadas.capturas(RegistroLatencias.LATENCIA_ETAPA_TOTAL));
+        assertEquals(2100, guardadas.maximo(RegistroLatencias.LATENCIA_ETAPA_TOTAL));
+        assertNull(almacen.sesiones().latenciasSesion(sesion + 1));
+    }
+
+    @Test
+    public void capturasSeLeenPorRangoEnOrdenDeFecha() throws Exception {
+        long sesion = almacen.sesiones().iniciarSesion("a").id;
+        long otra = almacen.sesiones().iniciarSesion("b").id;
+
+        capturas.agregar(sesion, 10.9685, -74.7813, 3000);
+        capturas.agregar(otra, 0, 0, 2000);
+        capturas.agregar(sesion, 10.9686, -74.7814, 1000);
+        capturas.agregar(sesion, 10.9687, -74.7815, 2000);
+        capturas.vaciar();
+
+        assertEquals(3, capturas.contarCapturas(sesion));
+        assertEquals(1, capturas.contarCapturas(otra));
+
+        final List<long[]> leidas = new ArrayList<>();
+        final List<Double> latitudes = new ArrayList<>();
+
+        int n = capturas.leerCapturas(sesion, 1000, 2999, new AlmacenCapturas.LectorCapturas() {
+            @Override
+            public void capturaLeida(long secuencia, double latitud, double longitud, long fecha) {
+                leidas.add(new long[] { secuencia, fecha });
+                latitudes.add(latitud);
+            }
+        });
+
+        assertEquals(2, n);
+        assertArrayEquals(new long[] { 2, 1000 }, leidas.get(0));
+        assertArrayEquals(new long[] { 3, 2000 }, leidas.get(1));
+        assertEquals(CodificacionCoordenadas.decodificar(CodificacionCoordenadas.codificar(10.9686)), latitudes.get(0), 0);
+    }
+
+    @Test
+    public void ajustesSeLeenEnOrdenDeSecuenciaYSeReemplazan() throws Exception {
+        long sesion = almacen.sesiones().iniciarSesion("a").id;
+        long otra = almacen.sesiones().iniciarSesion("b").id;
+
+        // Dos capturas con la misma fecha: cada una tiene su propio ajuste.
+        capturas.agregar(sesion, 10.9685, -74.7813, 1000);
+        long primera = capturas.ultimaSecuencia();
+        capturas.agregar(sesion, 10.9686, -74.7813, 1000);
+        long segunda = capturas.ultimaSecuencia();
+        assertEquals(primera + 1, segunda);
+
+        capturas.ajustar(sesion, segunda, "R1", 3, 250.0);
+        capturas.ajustar(sesion, primera, "R1", 2, 150.0);
+        capturas.ajustar(otra, 1, "R2", 0, 10.0);
+        capturas.ajustar(sesion, segunda, "R7", 5, 260.0);
+        capturas.vaciar();
+
+        final List<Long> secuencias = new ArrayList<>();
+        final List<String> rutas = new ArrayList<>();
+        final List<Double> recorridos = new ArrayList<>();
+
+        int n = capturas.leerAjustes(sesion, new AlmacenCapturas.LectorAjustes() {
+            @Override
+            public void ajusteLeido(long secuencia, String ruta, int tramo, double recorrido) {
+                secuencias.add(secuencia);
+                rutas.add(ruta);
+                recorridos.add(recorrido);
+            }
+        });
+
+        assertEquals(2, n);
+        assertEquals(Arrays.asList(primera, segunda), secuencias);
+        assertEquals(Arrays.asList("R1", "R7"), rutas);
+        assertEquals(260.0, recorridos.get(1), 0);
+        assertEquals(0, capturas.leerAjustes(99, null));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void ajusteDeSesionInexistenteFalla() throws Exception {
+        capturas.ajustar(99, 0, "R1", 0, 0);
+    }
+
+    @Test
+    public void listarSesionesPorPaginas() throws Exception {
+        AlmacenSesiones sesiones = almacen.sesiones();
+
+        for (int i = 0; i < 7; i++) {
+            sesiones.iniciarSesion(i % 2 == 0 ? "Ruta " + i : "turno");
+        }
+
+        List<RegistroSesion> todas = sesiones.listarSesiones(null, Long.MIN_VALUE, Long.MAX_VALUE, null, 100);
+        assertEquals(7, todas.size());
+
+        for (int i = 1; i < todas.size(); i++) {
+            RegistroSesion anterior = todas.get(i - 1);
+            RegistroSesion actual = todas.get(i);
+
+            assertTrue(anterior.fechaInicio > actual.fechaInicio || (anterior.fechaInicio == actual.fechaInicio && anterior.id > actual.id));
+        }
+
+        // Página por página, continuando desde la última sesión de cada página.
+        List<Long> paginadas = new ArrayList<>();
+        List<RegistroSesion> pagina = sesiones.listarSesiones(null, Long.MIN_VALUE, Long.MAX_VALUE, null, 3);
+
+        while (!pagina.isEmpty()) {
+            for (RegistroSesion sesion : pagina) {
+                paginadas.add(sesion.id);
+            }
+
+            pagina = sesiones.listarSesiones(null, Long.MIN_VALUE, Long.MAX_VALUE, pagina.get(pagina.size() - 1), 3);
+        }
+
+        List<Long> esperadas = new ArrayList<>();
+        for (RegistroSesion sesion : todas) {
+            esperadas.add(sesion.id);
+        }
+
+        assertEquals(esperadas, paginadas);
+        assertEquals(4, sesiones.listarSesiones("ruta", Long.MIN_VALUE, Long.MAX_VALUE, null, 100).size());
+        assertEquals(0, sesiones.listarSesiones(null, Long.MIN_VALUE, todas.get(6).fechaInicio - 1, null, 100).size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void capturaDeSesionInexistenteFalla() throws Exception {
+        capturas.agregar(99, 0, 0, 0);
+    }
+}
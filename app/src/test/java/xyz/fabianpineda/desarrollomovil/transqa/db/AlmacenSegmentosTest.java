@@ -0,0 +1,133 @@
+package xyz.fabianpineda.desarrollomovil.transqa.db;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Pruebas locales de AlmacenSegmentos con un AlmacenMemoria como índice: las capturas de una
+ * sesión terminada son copiadas al índice, incluso si el proceso muere antes de copiarlas.
+ */
+public class AlmacenSegmentosTest {
+    private File directorio;
+
+    @Before
+    public void crearDirectorio() throws Exception {
+        directorio = File.createTempFile("segmentos", "");
+        directorio.delete();
+    }
+
+    @After
+    public void borrarDirectorio() throws Exception {
+        File[] archivos = directorio.listFiles();
+
+        if (archivos != null) {
+            for (File archivo : archivos) {
+                archivo.delete();
+            }
+        }
+
+        directorio.delete();
+    }
+
+    @Test
+    public void sesionTerminadaEsIndexada() throws Exception {
+        AlmacenMemoria indice = new AlmacenMemoria();
+        AlmacenSegmentos almacen = new AlmacenSegmentos(indice, new RegistroSegmentos(directorio, 4, 1, 60000L));
+        AlmacenCapturas capturas = almacen.abrirCapturas();
+        long sesion = almacen.sesiones().iniciarSesion("a").id;
+
+        for (int i = 0; i < 10; i++) {
+            capturas.agregar(sesion, 10.9685 + i * 1e-5, -74.7813, 1000L * i);
+        }
+
+        assertEquals(10, capturas.contarCapturas(sesion));
+        assertEquals(0, indice.abrirCapturas().contarCapturas(sesion));
+
+        // Páginas leídas del registro, entre segmentos.
+        final List<Long> secuencias = new ArrayList<>();
+        AlmacenCapturas.LectorCapturas lector = new AlmacenCapturas.LectorCapturas() {
+            @Override
+            public void capturaLeida(long secuencia, double latitud, double longitud, long fecha) {
+                secuencias.add(secuencia);
+            }
+        };
+
+        assertEquals(4, capturas.leerPagina(sesion, 3, 4, lector));
+        assertEquals(2, capturas.leerPagina(sesion, 8, 4, lector));
+        assertEquals(Arrays.asList(4L, 5L, 6L, 7L, 9L, 10L), secuencias);
+
+        capturas.vaciar();
+        assertNotNull(almacen.sesiones().terminarSesion(sesion));
+
+        assertEquals(10, indice.abrirCapturas().contarCapturas(sesion));
+        assertEquals(10, capturas.contarCapturas(sesion));
+        assertEquals(1, almacen.registro().segmentos());
+
+        // Después de indexar, las mismas páginas salen del índice.
+        secuencias.clear();
+        assertEquals(4, capturas.leerPagina(sesion, 3, 4, lector));
+        assertEquals(Arrays.asList(4L, 5L, 6L, 7L), secuencias);
+        capturas.cerrar();
+    }
+
+    @Test
+    public void ajustesSeEscribenEnElIndice() throws Exception {
+        AlmacenMemoria indice = new AlmacenMemoria();
+        AlmacenSegmentos almacen = new AlmacenSegmentos(indice, new RegistroSegmentos(directorio, 4, 1, 60000L));
+        AlmacenCapturas capturas = almacen.abrirCapturas();
+        long sesion = almacen.sesiones().iniciarSesion("a").id;
+
+        capturas.agregar(sesion, 10.9685, -74.7813, 1000L);
+        capturas.agregar(sesion, 10.9686, -74.7813, 2000L);
+        assertEquals(2, capturas.ultimaSecuencia());
+        capturas.ajustar(sesion, capturas.ultimaSecuencia(), "R1", 0, 12.5);
+        capturas.vaciar();
+
+        final List<String> rutas = new ArrayList<>();
+        AlmacenCapturas.LectorAjustes lector = new AlmacenCapturas.LectorAjustes() {
+            @Override
+            public void ajusteLeido(long secuencia, String ruta, int tramo, double recorrido) {
+                assertEquals(2, secuencia);
+                rutas.add(ruta);
+            }
+        };
+
+        // Antes de indexar la sesión, el ajuste ya está en el índice.
+        assertEquals(0, indice.abrirCapturas().contarCapturas(sesion));
+        assertEquals(1, indice.abrirCapturas().leerAjustes(sesion, lector));
+        assertEquals(1, capturas.leerAjustes(sesion, lector));
+        assertEquals(Arrays.asList("R1", "R1"), rutas);
+
+        capturas.cerrar();
+        almacen.cerrar();
+    }
+
+    @Test
+    public void sesionTerminadaSinIndexarEsIndexadaAlAbrir() throws Exception {
+        AlmacenMemoria indice = new AlmacenMemoria();
+        RegistroSegmentos registro = new RegistroSegmentos(directorio, 4, 1, 60000L);
+        long sesion = indice.iniciarSesion("a").id;
+
+        for (int i = 0; i < 6; i++) {
+            registro.agregar(sesion, i, i, i);
+        }
+
+        // Como si el proceso muriera después de terminar la sesión, antes de indexarla.
+        indice.terminarSesion(sesion);
+        registro.cerrar();
+
+        AlmacenSegmentos almacen = new AlmacenSegmentos(indice, new RegistroSegmentos(directorio, 4, 1, 60000L));
+
+        assertEquals(6, indice.abrirCapturas().contarCapturas(sesion));
+        assertEquals(1, almacen.registro().segmentos());
+        almacen.cerrar();
+    }
+}
@@ -0,0 +1,73 @@
+package xyz.fabianpineda.desarrollomovil.transqa.db;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Pruebas locales de CeldasGeograficas: bordes de celda, orden por filas y rectángulos que
+ * contienen el círculo de búsqueda.
+ */
+public class CeldasGeograficasTest {
+    @Test
+    public void bordesDeCelda() throws Exception {
+        // El borde inferior de una celda pertenece a ella; la unidad anterior, a la celda vecina.
+        int borde = (int) (CeldasGeograficas.CELDA_UNIDADES * 100L - CeldasGeograficas.DESPLAZAMIENTO_LONGITUD);
+
+        assertEquals(CeldasGeograficas.columna(borde), CeldasGeograficas.columna(borde + CeldasGeograficas.CELDA_UNIDADES - 1));
+        assertEquals(CeldasGeograficas.columna(borde) - 1, CeldasGeograficas.columna(borde - 1));
+
+        // Extremos del rango de coordenadas.
+        assertEquals(0, CeldasGeograficas.celda(CodificacionCoordenadas.codificar(-90), CodificacionCoordenadas.codificar(-180)));
+        assertTrue(CeldasGeograficas.columna(CodificacionCoordenadas.codificar(180)) < (1L << CeldasGeograficas.CELDA_BITS_COLUMNA));
+    }
+
+    @Test
+    public void celdasDeUnaFilaSonConsecutivas() throws Exception {
+        int latitud = CodificacionCoordenadas.codificar(10.9685);
+        int oeste = CodificacionCoordenadas.codificar(-74.80);
+        int este = CodificacionCoordenadas.codificar(-74.70);
+
+        long primera = CeldasGeograficas.celda(latitud, oeste);
+        long ultima = CeldasGeograficas.celda(latitud, este);
+
+        for (int longitud = oeste; longitud <= este; longitud += 1000) {
+            long celda = CeldasGeograficas.celda(latitud, longitud);
+            assertTrue(celda >= primera && celda <= ultima);
+        }
+
+        // La fila siguiente empieza después de todas las columnas de esta.
+        int norte = latitud + CeldasGeograficas.CELDA_UNIDADES;
+        assertTrue(CeldasGeograficas.celda(norte, CodificacionCoordenadas.codificar(-180)) > CeldasGeograficas.celda(latitud, CodificacionCoordenadas.codificar(180)));
+    }
+
+    @Test
+    public void rectanguloContieneElCirculo() throws Exception {
+        double[][] centros = { { 10.9685, -74.7813 }, { 60.0, 25.0 }, { -33.45, -70.66 } };
+        double metros = 5000;
+
+        for (double[] centro : centros) {
+            int[] rectangulo = CeldasGeograficas.rectanguloRadio(centro[0], centro[1], metros);
+
+            for (int angulo = 0; angulo < 360; angulo += 15) {
+                // Punto a "metros" del centro, en dirección "angulo", sobre la esfera.
+                double d = metros / 6371008.8;
+                double rumbo = Math.toRadians(angulo);
+                double latitud1 = Math.toRadians(centro[0]);
+                double latitud2 = Math.asin(Math.sin(latitud1) * Math.cos(d) + Math.cos(latitud1) * Math.sin(d) * Math.cos(rumbo));
+                double longitud2 = Math.toRadians(centro[1]) + Math.atan2(Math.sin(rumbo) * Math.sin(d) * Math.cos(latitud1), Math.cos(d) - Math.sin(latitud1) * Math.sin(latitud2));
+
+                int latitud = CodificacionCoordenadas.codificar(Math.toDegrees(latitud2));
+                int longitud = CodificacionCoordenadas.codificar(Math.toDegrees(longitud2));
+
+                assertTrue(latitud >= rectangulo[0] && latitud <= rectangulo[2]);
+                assertTrue(longitud >= rectangulo[1] && longitud <= rectangulo[3]);
+            }
+        }
+
+        // Cerca del antimeridiano, toda la franja de longitudes.
+        int[] rectangulo = CeldasGeograficas.rectanguloRadio(0, 179.99, metros);
+        assertEquals(CodificacionCoordenadas.codificar(-180), rectangulo[1]);
+        assertEquals(CodificacionCoordenadas.codificar(180), rectangulo[3]);
+    }
+}
@@ -0,0 +1,27 @@
+package xyz.fabianpineda.desarrollomovil.transqa.db;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Pruebas locales de CodificacionCoordenadas: rango completo y error máximo de redondeo.
+ */
+public class CodificacionCoordenadasTest {
+    @Test
+    public void rangoCompletoCabeEnInt() throws Exception {
+        assertEquals(1800000000, CodificacionCoordenadas.codificar(180));
+        assertEquals(-1800000000, CodificacionCoordenadas.codificar(-180));
+        assertEquals(0, CodificacionCoordenadas.codificar(0));
+    }
+
+    @Test
+    public void errorDeRedondeoEsMenorAMedioUnidad() throws Exception {
+        double[] coordenadas = { 10.9685, -74.7813, 89.99999995, -179.123456789, 0.00000004 };
+
+        for (double grados : coordenadas) {
+            double decodificada = CodificacionCoordenadas.decodificar(CodificacionCoordenadas.codificar(grados));
+            assertEquals(grados, decodificada, 0.5 / CodificacionCoordenadas.UNIDADES_POR_GRADO + 1e-12);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package xyz.fabianpineda.desarrollomovil.transqa.db;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Pruebas locales de RegistroMapaCalor: estadísticas de velocidad, combinación de agregados y
+ * ubicación de la celda.
+ */
+public class RegistroMapaCalorTest {
+    @Test
+    public void estadisticasDeVelocidad() throws Exception {
+        RegistroMapaCalor registro = new RegistroMapaCalor(0, 0);
+
+        registro.agregar(-1);
+        registro.agregar(2);
+        registro.agregar(4);
+        registro.agregar(6);
+
+        assertEquals(4, registro.capturas());
+        assertEquals(3, registro.muestrasVelocidad());
+        assertEquals(4.0, registro.velocidadPromedio(), 1e-9);
+        assertEquals(Math.sqrt(8.0 / 3.0), registro.desviacionVelocidad(), 1e-9);
+        assertEquals(6.0, registro.velocidadMaxima(), 0);
+
+        RegistroMapaCalor vacio = new RegistroMapaCalor(0, 0);
+        vacio.agregar(-1);
+        assertEquals(0, vacio.velocidadPromedio(), 0);
+        assertEquals(0, vacio.desviacionVelocidad(), 0);
+    }
+
+    @Test
+    public void combinarEsIgualAAgregarTodo() throws Exception {
+        RegistroMapaCalor todo = new RegistroMapaCalor(7, 1);
+        RegistroMapaCalor primero = new RegistroMapaCalor(7, 1);
+        RegistroMapaCalor segundo = new RegistroMapaCalor(7, 2);
+        double[] velocidades = { -1, 3.5, 10, 0, 7.25, 1 };
+
+        for (int i = 0; i < velocidades.length; i++) {
+            todo.agregar(velocidades[i]);
+            (i < 3 ? primero : segundo).agregar(velocidades[i]);
+        }
+
+        primero.combinar(segundo);
+
+        assertEquals(todo.capturas(), primero.capturas());
+        assertEquals(todo.muestrasVelocidad(), primero.muestrasVelocidad());
+        assertEquals(todo.velocidadPromedio(), primero.velocidadPromedio(), 1e-9);
+        assertEquals(todo.desviacionVelocidad(), primero.desviacionVelocidad(), 1e-9);
+        assertEquals(todo.velocidadMaxima(), primero.velocidadMaxima(), 0);
+    }
+
+    @Test
+    public void centroDeLaCeldaContieneLaCaptura() throws Exception {
+        int latitud = CodificacionCoordenadas.codificar(10.9685);
+        int longitud = CodificacionCoordenadas.codificar(-74.7813);
+        RegistroMapaCalor registro = new RegistroMapaCalor(CeldasGeograficas.celda(latitud, longitud), RegistroMapaCalor.periodo(0));
+
+        double tamano = CeldasGeograficas.CELDA_UNIDADES / CodificacionCoordenadas.UNIDADES_POR_GRADO;
+
+        assertEquals(10.9685, registro.latitud(), tamano / 2);
+        assertEquals(-74.7813, registro.longitud(), tamano / 2);
+        assertEquals(CeldasGeograficas.celda(latitud, longitud), CeldasGeograficas.celda(CodificacionCoordenadas.codificar(registro.latitud()), CodificacionCoordenadas.codificar(registro.longitud())));
+
+        assertEquals(0, RegistroMapaCalor.periodo(RegistroMapaCalor.PERIODO_DURACION - 1));
+        assertEquals(1, RegistroMapaCalor.periodo(RegistroMapaCalor.PERIODO_DURACION));
+    }
+}
@@ -0,0 +1,86 @@
+package xyz.fabianpineda.desarrollomovil.transqa.db;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Pruebas locales de RegistroResumen: distancia, velocidades y rectángulo, y su mantenimiento en
+ * AlmacenMemoria.
+ */
+public class RegistroResumenTest {
+    private static int e7(double grados) {
+        return CodificacionCoordenadas.codificar(grados);
+    }
+
+    @Test
+    public void haversine() throws Exception {
+        // Un grado de latitud; y Bogotá - Barranquilla, ~ 700 km.
+        assertEquals(111195.08, RegistroResumen.distancia(0, 0, 1, 0), 0.01);
+        assertEquals(RegistroResumen.distancia(4.711, -74.0721, 10.9685, -74.7813), RegistroResumen.distancia(10.9685, -74.7813, 4.711, -74.0721), 1e-6);
+        assertEquals(700000, RegistroResumen.distancia(4.711, -74.0721, 10.9685, -74.7813), 5000);
+        assertEquals(0, RegistroResumen.distancia(10.9685, -74.7813, 10.9685, -74.7813), 0);
+    }
+
+    @Test
+    public void resumenIncremental() throws Exception {
+        RegistroResumen resumen = new RegistroResumen(3);
+
+        assertEquals(0, resumen.capturas());
+        assertEquals(0, resumen.velocidadPromedio(), 0);
+
+        // 0.001 grados de latitud (~111 m) cada 10 s, luego un salto de ~11 m en 0.5 s que no
+        // cuenta para la velocidad máxima.
+        resumen.agregar(e7(10.000), e7(-74.000), 1000000L);
+        resumen.agregar(e7(10.001), e7(-74.000), 1010000L);
+        resumen.agregar(e7(10.002), e7(-74.002), 1020000L);
+        resumen.agregar(e7(10.0021), e7(-74.002), 1020500L);
+
+        double tramo1 = RegistroResumen.distancia(10.000, -74.000, 10.001, -74.000);
+        double tramo2 = RegistroResumen.distancia(10.001, -74.000, 10.002, -74.002);
+        double tramo3 = RegistroResumen.distancia(10.002, -74.002, 10.0021, -74.002);
+
+        assertEquals(4, resumen.capturas());
+        assertEquals(1000000L, resumen.fechaPrimera());
+        assertEquals(1020500L, resumen.fechaUltima());
+        assertEquals(20500L, resumen.duracion());
+        assertEquals(tramo1 + tramo2 + tramo3, resumen.distancia(), 1e-6);
+        assertEquals(tramo2 / 10.0, resumen.velocidadMaxima(), 1e-9);
+        assertEquals(resumen.distancia() / 20.5, resumen.velocidadPromedio(), 1e-9);
+
+        assertEquals(10.000, resumen.latitudMinima(), 0);
+        assertEquals(10.0021, resumen.latitudMaxima(), 0);
+        assertEquals(-74.002, resumen.longitudMinima(), 0);
+        assertEquals(-74.000, resumen.longitudMaxima(), 0);
+
+        RegistroResumen copia = resumen.copia();
+        copia.agregar(e7(11), e7(-74), 1030500L);
+        copia.terminar();
+
+        assertEquals(4, resumen.capturas());
+        assertFalse(resumen.terminada());
+        assertEquals(5, copia.capturas());
+        assertTrue(copia.terminada());
+    }
+
+    @Test
+    public void almacenMemoriaMantieneResumen() throws Exception {
+        AlmacenMemoria almacen = new AlmacenMemoria();
+        AlmacenCapturas capturas = almacen.abrirCapturas();
+        long sesion = almacen.iniciarSesion("a").id;
+
+        assertNull(almacen.resumenSesion(sesion + 1));
+        assertEquals(0, almacen.resumenSesion(sesion).capturas());
+
+        capturas.agregar(sesion, 10.9685, -74.7813, 1000L);
+        capturas.agregar(sesion, 10.9695, -74.7813, 11000L);
+        almacen.terminarSesion(sesion);
+
+        RegistroResumen resumen = almacen.resumenSesion(sesion);
+
+        assertEquals(2, resumen.capturas());
+        assertEquals(RegistroResumen.distancia(10.9685, -74.7813, 10.9695, -74.7813), resumen.distancia(), 1e-6);
+        assertTrue(resumen.terminada());
+        almacen.cerrar();
+    }
+}
@@ -0,0 +1,143 @@
+package xyz.fabianpineda.desarrollomovil.transqa.db;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Pruebas locales de RegistroSegmentos: cambio de segmento, reapertura y recuperación de un
+ * registro escrito en parte al final ("torn tail").
+ */
+public class RegistroSegmentosTest {
+    private static final int CAPTURAS_POR_SEGMENTO = 4;
+
+    private File directorio;
+
+    @Before
+    public void crearDirectorio() throws Exception {
+        directorio = File.createTempFile("segmentos", "");
+        directorio.delete();
+    }
+
+    @After
+    public void borrarDirectorio() throws Exception {
+        File[] archivos = directorio.listFiles();
+
+        if (archivos != null) {
+            for (File archivo : archivos) {
+                archivo.delete();
+            }
+        }
+
+        directorio.delete();
+    }
+
+    private RegistroSegmentos abrir() throws Exception {
+        return new RegistroSegmentos(directorio, CAPTURAS_POR_SEGMENTO, 2, 60000L);
+    }
+
+    private static List<long[]> leer(RegistroSegmentos registro, long idSesion, long despuesDe) throws Exception {
+        final List<long[]> leidos = new ArrayList<>();
+
+        registro.leer(idSesion, despuesDe, new RegistroSegmentos.LectorRegistros() {
+            @Override
+            public void registroLeido(long secuencia, int latitud, int longitud, long fecha) {
+                leidos.add(new long[] { secuencia, latitud, longitud, fecha });
+            }
+        });
+
+        return leidos;
+    }
+
+    @Test
+    public void registrosSobrevivenAlReabrir() throws Exception {
+        RegistroSegmentos registro = abrir();
+
+        for (int i = 0; i < 10; i++) {
+            registro.agregar(i % 3 == 0 ? 2 : 1, 100 + i, -100 - i, 1000L * i);
+        }
+
+        assertEquals(3, registro.segmentos());
+        registro.cerrar();
+
+        registro = abrir();
+
+        assertEquals(0, registro.registrosDescartados());
+        assertEquals(6, registro.contar(1));
+        assertEquals(4, registro.contar(2));
+        assertArrayEquals(new long[] { 1, 2 }, registro.sesiones());
+
+        List<long[]> leidos = leer(registro, 1, 4);
+
+        assertEquals(2, leidos.size());
+        assertArrayEquals(new long[] { 5, 107, -107, 7000 }, leidos.get(0));
+        assertArrayEquals(new long[] { 6, 108, -108, 8000 }, leidos.get(1));
+
+        // Continúa en el segmento activo.
+        registro.agregar(1, 0, 0, 10000);
+        assertEquals(3, registro.segmentos());
+        assertEquals(7, registro.contar(1));
+        registro.cerrar();
+    }
+
+    @Test
+    public void registroEscritoEnParteEsTruncado() throws Exception {
+        RegistroSegmentos registro = abrir();
+
+        for (int i = 0; i < 6; i++) {
+            registro.agregar(1, i, i, i);
+        }
+        registro.cerrar();
+
+        // Corrompe el último registro del segundo segmento: la fecha no coincide con su CRC.
+        File segundo = new File(directorio, String.format("segmento-%016d.log", 2));
+        RandomAccessFile archivo = new RandomAccessFile(segundo, "rw");
+        archivo.seek(RegistroSegmentos.REGISTRO_TAMANO + 16);
+        archivo.writeLong(123456789L);
+        archivo.close();
+
+        registro = abrir();
+
+        assertEquals(1, registro.registrosDescartados());
+        assertEquals(5, registro.contar(1));
+
+        // La captura siguiente ocupa el lugar de la descartada.
+        registro.agregar(1, 7, 7, 7);
+        registro.cerrar();
+
+        registro = abrir();
+        List<long[]> leidos = leer(registro, 1, 0);
+
+        assertEquals(0, registro.registrosDescartados());
+        assertEquals(6, leidos.size());
+        assertArrayEquals(new long[] { 6, 7, 7, 7 }, leidos.get(5));
+        registro.cerrar();
+    }
+
+    @Test
+    public void segmentosDeSesionesDescartablesSonEliminados() throws Exception {
+        RegistroSegmentos registro = abrir();
+
+        for (int i = 0; i < 9; i++) {
+            registro.agregar(i < 8 ? 1 : 2, i, i, i);
+        }
+
+        Set<Long> descartables = new HashSet<>();
+        descartables.add(1L);
+
+        assertEquals(2, registro.eliminarSegmentos(descartables));
+        assertEquals(1, registro.segmentos());
+        assertEquals(0, registro.contar(1));
+        assertEquals(1, registro.contar(2));
+        registro.cerrar();
+    }
+}
@@ -0,0 +1,113 @@
+package xyz.fabianpineda.desarrollomovil.transqa.exportacion;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import xyz.fabianpineda.desarrollomovil.transqa.db.AlmacenCapturas;
+import xyz.fabianpineda.desarrollomovil.transqa.db.CodificacionCoordenadas;
+import xyz.fabianpineda.desarrollomovil.transqa.db.RegistroSesion;
+
+import static org.junit.Assert.*;
+
+/**
+ * Pruebas locales del formato binario de exportación: ida y vuelta, bloques múltiples y detección
+ * de datos corruptos.
+ */
+public class ExportacionBinariaTest {
+    private static final RegistroSesion SESION = new RegistroSesion(7, "ruta 12", 1000, 9000000);
+
+    private static final class Capturas implements AlmacenCapturas.LectorCapturas {
+        final List<double[]> leidas = new ArrayList<>();
+
+        @Override
+        public void capturaLeida(long secuencia, double latitud, double longitud, long fecha) {
+            assertEquals(leidas.size() + 1, secuencia);
+            leidas.add(new double[] { latitud, longitud, fecha });
+        }
+    }
+
+    private static byte[] exportar(int capturas, int capturasPorBloque) throws IOException {
+        ByteArrayOutputStream salida = new ByteArrayOutputStream();
+        EscritorExportacion escritor = new EscritorExportacion(salida, SESION, capturasPorBloque);
+
+        for (int i = 0; i < capturas; i++) {
+            escritor.agregar(10.9685 + i * 0.0001, -74.7813 - (i % 7) * 0.00003, 1000 + i * 5000L);
+        }
+
+        escritor.terminar();
+        assertEquals(capturas, escritor.capturas());
+        assertEquals(salida.size(), escritor.bytes());
+
+        return salida.toByteArray();
+    }
+
+    @Test
+    public void idaYVueltaConservaSesionYCapturas() throws Exception {
+        byte[] datos = exportar(2500, 1024);
+        LectorExportacion lector = new LectorExportacion(new ByteArrayInputStream(datos));
+
+        assertEquals(SESION.id, lector.sesion().id);
+        assertEquals(SESION.nombre, lector.sesion().nombre);
+        assertEquals(SESION.fechaInicio, lector.sesion().fechaInicio);
+        assertEquals(SESION.fechaFin, lector.sesion().fechaFin);
+
+        Capturas capturas = new Capturas();
+
+        assertEquals(1024, lector.leerBloque(capturas));
+        assertEquals(2500, 1024 + lector.leerTodo(capturas));
+        assertEquals(0, lector.leerBloque(capturas));
+        assertEquals(2500, capturas.leidas.size());
+
+        for (int i = 0; i < 2500; i++) {
+            double[] captura = capturas.leidas.get(i);
+
+            assertEquals(CodificacionCoordenadas.decodificar(CodificacionCoordenadas.codificar(10.9685 + i * 0.0001)), captura[0], 0);
+            assertEquals(CodificacionCoordenadas.decodificar(CodificacionCoordenadas.codificar(-74.7813 - (i % 7) * 0.00003)), captura[1], 0);
+            assertEquals(1000 + i * 5000L, (long) captura[2]);
+        }
+
+        // Encabezado más unos pocos bytes por captura.
+        assertTrue(datos.length < 2500 * 8);
+    }
+
+    @Test
+    public void sesionSinCapturas() throws Exception {
+        LectorExportacion lector = new LectorExportacion(new ByteArrayInputStream(exportar(0, 16)));
+
+        assertEquals(0, lector.leerTodo(new Capturas()));
+    }
+
+    @Test
+    public void datosCorruptosSonDetectados() throws Exception {
+        byte[] datos = exportar(100, 16);
+
+        // Último byte de contenido del último bloque: antes de su CRC y del final.
+        datos[datos.length - 6] ^= 0x01;
+
+        LectorExportacion lector = new LectorExportacion(new ByteArrayInputStream(datos));
+        Capturas capturas = new Capturas();
+
+        try {
+            lector.leerTodo(capturas);
+            fail("Bloque corrupto no detectado.");
+        } catch (IOException e) {
+            // Los bloques anteriores al corrupto sí son leídos.
+            assertEquals(96, capturas.leidas.size());
+        }
+
+        datos = exportar(1, 16);
+        datos[10] ^= 0x01;
+
+        try {
+            new LectorExportacion(new ByteArrayInputStream(datos));
+            fail("Encabezado corrupto no detectado.");
+        } catch (IOException e) {
+            // Encabezado corrupto.
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package xyz.fabianpineda.desarrollomovil.transqa.exportacion;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import xyz.fabianpineda.desarrollomovil.transqa.db.Almacen;
+import xyz.fabianpineda.desarrollomovil.transqa.db.AlmacenCapturas;
+import xyz.fabianpineda.desarrollomovil.transqa.db.AlmacenMemoria;
+
+import static org.junit.Assert.*;
+
+/**
+ * Pruebas locales de ExportadorSesion: formatos de texto, recorrido por páginas, progreso y
+ * cancelación.
+ */
+public class ExportadorSesionTest {
+    private static final int CAPTURAS = 2500;
+    private static final int CAPTURAS_POR_PAGINA = 100;
+
+    private Almacen almacen;
+    private AlmacenCapturas capturas;
+    private long sesion;
+
+    @Before
+    public void abrir() throws Exception {
+        almacen = new AlmacenMemoria();
+        capturas = almacen.abrirCapturas();
+        sesion = almacen.sesiones().iniciarSesion("Ruta \"12\" <norte> & sur").id;
+
+        for (int i = 0; i < CAPTURAS; i++) {
+            capturas.agregar(sesion, 10.9685 + i * 0.0001, -74.78 - (i % 10) * 0.00001, 1478000000000L + i * 5000L);
+        }
+
+        almacen.sesiones().terminarSesion(sesion);
+    }
+
+    @After
+    public void cerrar() throws Exception {
+        capturas.cerrar();
+        almacen.cerrar();
+    }
+
+    private String exportar(int formato) throws Exception {
+        ByteArrayOutputStream salida = new ByteArrayOutputStream();
+        ExportadorSesion exportador = new ExportadorSesion(almacen.sesiones(), capturas, CAPTURAS_POR_PAGINA);
+
+        assertEquals(CAPTURAS, exportador.exportar(sesion, formato, salida, null));
+        return salida.toString("UTF-8");
+    }
+
+    private static int contar(String texto, String buscado) {
+        int cantidad = 0;
+
+        for (int i = texto.indexOf(buscado); i >= 0; i = texto.indexOf(buscado, i + 1)) {
+            cantidad++;
+        }
+
+        return cantidad;
+    }
+
+    @Test
+    public void formatosDeTexto() throws Exception {
+        String csv = exportar(ExportadorSesion.FORMATO_CSV);
+        String[] lineas = csv.split("\n");
+
+        assertEquals(CAPTURAS + 1, lineas.length);
+        assertEquals("secuencia,latitud,longitud,fecha,fecha_utc", lineas[0]);
+        assertEquals("1,10.9685,-74.78,1478000000000,2016-11-01T11:33:20.000Z", lineas[1]);
+        assertEquals("2,10.9686,-74.78001,1478000005000,2016-11-01T11:33:25.000Z", lineas[2]);
+
+        String gpx = exportar(ExportadorSesion.FORMATO_GPX);
+
+        assertEquals(CAPTURAS, contar(gpx, "<trkpt "));
+        assertTrue(gpx.contains("<name>Ruta &quot;12&quot; &lt;norte&gt; &amp; sur</name>"));
+        assertTrue(gpx.contains("<trkpt lat=\"10.9685\" lon=\"-74.78\"><time>2016-11-01T11:33:20.000Z</time></trkpt>"));
+        assertTrue(gpx.endsWith("</trkseg></trk>\n</gpx>\n"));
+
+        String geojson = exportar(ExportadorSesion.FORMATO_GEOJSON);
+
+        assertEquals(CAPTURAS, contar(geojson, "\"Point\""));
+        assertTrue(geojson.contains("\"nombre\":\"Ruta \\\"12\\\" <norte> & sur\""));
+        assertTrue(geojson.contains("\"coordinates\":[-74.78,10.9685]},\"properties\":{\"secuencia\":1,\"fecha\":1478000000000}}"));
+        assertFalse(geojson.contains(",\n]"));
+        assertTrue(geojson.endsWith("}}\n]}\n"));
+    }
+
+    @Test
+    public void formatoBinarioSeLeeCompleto() throws Exception {
+        ByteArrayOutputStream salida = new ByteArrayOutputStream();
+        ExportadorSesion exportador = new ExportadorSesion(almacen.sesiones(), capturas, CAPTURAS_POR_PAGINA);
+
+        assertEquals(CAPTURAS, exportador.exportar(sesion, ExportadorSesion.FORMATO_TQAX, salida, null));
+
+        LectorExportacion lector = new LectorExportacion(new ByteArrayInputStream(salida.toByteArray()));
+        final long[] ultimaFecha = { 0 };
+
+        assertEquals(sesion, lector.sesion().id);
+        assertEquals(CAPTURAS, lector.leerTodo(new AlmacenCapturas.LectorCapturas() {
+            @Override
+            public void capturaLeida(long secuencia, double latitud, double longitud, long fecha) {
+                assertTrue(fecha > ultimaFecha[0]);
+                ultimaFecha[0] = fecha;
+            }
+        }));
+    }
+
+    @Test
+    public void progresoPorPaginaYCancelacion() throws Exception {
+        final List<long[]> progreso = new ArrayList<>();
+        ExportadorSesion exportador = new ExportadorSesion(almacen.sesiones(), capturas, CAPTURAS_POR_PAGINA);
+
+        exportador.exportar(sesion, ExportadorSesion.FORMATO_CSV, new ByteArrayOutputStream(), new ExportadorSesion.ProgresoExportacion() {
+            @Override
+            public void progresoExportacion(long exportadas, long total) {
+                progreso.add(new long[] { exportadas, total });
+            }
+        });
+
+        // CAPTURAS es múltiplo de la página: la última página leída está vacía.
+        assertEquals(CAPTURAS / CAPTURAS_POR_PAGINA + 1, progreso.size());
+        assertEquals(CAPTURAS_POR_PAGINA, progreso.get(0)[0]);
+        assertEquals(CAPTURAS, progreso.get(0)[1]);
+        assertEquals(CAPTURAS, progreso.get(progreso.size() - 1)[0]);
+
+        final ExportadorSesion cancelable = new ExportadorSesion(almacen.sesiones(), capturas, CAPTURAS_POR_PAGINA);
+        final long[] paginas = { 0 };
+
+        long resultado = cancelable.exportar(sesion, ExportadorSesion.FORMATO_GPX, new ByteArrayOutputStream(), new ExportadorSesion.ProgresoExportacion() {
+            @Override
+            public void progresoExportacion(long exportadas, long total) {
+                if (++paginas[0] == 3) {
+                    cancelable.cancelar();
+                }
+            }
+        });
+
+        assertEquals(ExportadorSesion.EXPORTACION_CANCELADA, resultado);
+        assertEquals(3, paginas[0]);
+        assertTrue(cancelable.cancelada());
+    }
+}
@@ -0,0 +1,136 @@
+package xyz.fabianpineda.desarrollomovil.transqa.geolocalizacion;
+
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+
+/**
+ * Pruebas locales de CanalEventos con un ejecutor manual: orden de entrega, coalescencia de
+ * eventos de estado y entrega por lotes.
+ */
+public class CanalEventosTest {
+    private static final class EjecutorManual implements Executor {
+        final ArrayDeque<Runnable> tareas = new ArrayDeque<>();
+
+        @Override
+        public void execute(Runnable tarea) {
+            tareas.add(tarea);
+        }
+
+        boolean ejecutarUna() {
+            Runnable tarea = tareas.poll();
+
+            if (tarea == null) {
+                return false;
+            }
+
+            tarea.run();
+            return true;
+        }
+
+        void ejecutarTodas() {
+            while (ejecutarUna()) {
+            }
+        }
+    }
+
+    private static final class Receptor implements CanalEventos.ReceptorEventos {
+        final List<EventoServicio> eventos = new ArrayList<>();
+
+        @Override
+        public void eventoRecibido(EventoServicio evento) {
+            eventos.add(evento);
+        }
+    }
+
+    @Test
+    public void entregaEnOrdenUnaSolaVezProgramada() throws Exception {
+        EjecutorManual ejecutor = new EjecutorManual();
+        CanalEventos canal = new CanalEventos(ejecutor);
+        Receptor receptor = new Receptor();
+        canal.registrar(receptor);
+
+        canal.publicar(new EventoServicio(ServicioGeolocalizacion.SERVICIO_ACCION_INICIAR_SERVICIO, ServicioGeolocalizacion.SERVICIO_RESPUESTA_OK, null));
+        canal.publicar(new EventoServicio(ServicioGeolocalizacion.SERVICIO_ACCION_INICIAR_SESION, ServicioGeolocalizacion.SERVICIO_RESPUESTA_ERROR, "error"));
+
+        assertEquals(1, ejecutor.tareas.size());
+        assertTrue(receptor.eventos.isEmpty());
+
+        ejecutor.ejecutarTodas();
+
+        assertEquals(2, receptor.eventos.size());
+        assertEquals(ServicioGeolocalizacion.SERVICIO_ACCION_INICIAR_SERVICIO, receptor.eventos.get(0).accion);
+        assertEquals(ServicioGeolocalizacion.SERVICIO_ACCION_INICIAR_SESION, receptor.eventos.get(1).accion);
+        assertEquals("error", receptor.eventos.get(1).mensaje);
+        assertEquals(0, canal.pendientes());
+    }
+
+    @Test
+    public void eventosCoalesciblesConservanPosicionYUltimoValor() throws Exception {
+        EjecutorManual ejecutor = new EjecutorManual();
+        CanalEventos canal = new CanalEventos(ejecutor);
+        Receptor receptor = new Receptor();
+        canal.registrar(receptor);
+
+        canal.publicar(new EventoMuestreo(PlanificadorMuestreo.MUESTREO_DETENIDO, 30000, 0));
+        canal.publicar(new EventoServicio(ServicioGeolocalizacion.SERVICIO_ACCION_INICIAR_SESION, ServicioGeolocalizacion.SERVICIO_RESPUESTA_OK, null));
+
+        for (int i = 1; i <= 100; i++) {
+            canal.publicar(new EventoMuestreo(PlanificadorMuestreo.MUESTREO_CRUCERO, i * 1000, i));
+        }
+
+        assertEquals(2, canal.pendientes());
+
+        ejecutor.ejecutarTodas();
+
+        assertEquals(2, receptor.eventos.size());
+        assertTrue(receptor.eventos.get(0) instanceof EventoMuestreo);
+        assertEquals(100000, ((EventoMuestreo) receptor.eventos.get(0)).intervalo);
+        assertEquals(ServicioGeolocalizacion.SERVICIO_ACCION_INICIAR_SESION, receptor.eventos.get(1).accion);
+    }
+
+    @Test
+    public void eventosNoCoalesciblesNuncaSeDescartanYSeEntreganPorLotes() throws Exception {
+        EjecutorManual ejecutor = new EjecutorManual();
+        CanalEventos canal = new CanalEventos(ejecutor);
+        Receptor receptor = new Receptor();
+        canal.registrar(receptor);
+
+        int total = CanalEventos.CANAL_EVENTOS_POR_ENTREGA * 2 + 5;
+
+        for (int i = 0; i < total; i++) {
+            canal.publicar(new EventoServicio(ServicioGeolocalizacion.SERVICIO_ACCION_DESCONOCIDA, i, null));
+        }
+
+        assertTrue(ejecutor.ejecutarUna());
+        assertEquals(CanalEventos.CANAL_EVENTOS_POR_ENTREGA, receptor.eventos.size());
+        assertEquals(1, ejecutor.tareas.size());
+
+        ejecutor.ejecutarTodas();
+
+        assertEquals(total, receptor.eventos.size());
+
+        for (int i = 0; i < total; i++) {
+            assertEquals(i, receptor.eventos.get(i).tipoRespuesta);
+        }
+    }
+
+    @Test
+    public void receptorSinRegistroNoRecibePendientes() throws Exception {
+        EjecutorManual ejecutor = new EjecutorManual();
+        CanalEventos canal = new CanalEventos(ejecutor);
+        Receptor receptor = new Receptor();
+        canal.registrar(receptor);
+
+        canal.publicar(new EventoServicio(ServicioGeolocalizacion.SERVICIO_ACCION_TERMINAR_SESION, ServicioGeolocalizacion.SERVICIO_RESPUESTA_OK, null));
+        canal.anularRegistro(receptor);
+        ejecutor.ejecutarTodas();
+
+        assertTrue(receptor.eventos.isEmpty());
+    }
+}
@@ -0,0 +1,49 @@
+package xyz.fabianpineda.desarrollomovil.transqa.geolocalizacion;
+
+import org.junit.Test;
+
+import xyz.fabianpineda.desarrollomovil.transqa.metricas.Contador;
+import xyz.fabianpineda.desarrollomovil.transqa.metricas.Histograma;
+import xyz.fabianpineda.desarrollomovil.transqa.metricas.RegistroMetricas;
+
+import static org.junit.Assert.*;
+
+/**
+ * Pruebas locales de CapturasGPS: una captura del GPS entregada por GPS_PROVIDER y repetida por
+ * PASSIVE_PROVIDER es contada una sola vez, como en ServicioGeolocalizacion.onLocationChanged.
+ */
+public class CapturasGPSTest {
+    private static final long SEGUNDO = 1000000000L;
+    private static final double METRO = 1.0 / 111195.0;
+
+    @Test
+    public void capturaRepetidaPorPassiveNoEsContada() throws Exception {
+        RegistroMetricas metricas = RegistroMetricas.obtener();
+        Contador capturas = metricas.contador("prueba.capturas_gps.capturas");
+        Histograma intervalo = metricas.histograma("prueba.capturas_gps.intervalo", Histograma.HISTOGRAMA_LIMITES_MILISEGUNDOS, "ms");
+        CapturasGPS capturasGPS = new CapturasGPS(capturas, intervalo);
+        FusionUbicacion fusion = new FusionUbicacion();
+
+        for (int i = 1; i <= 10; i++) {
+            long nanos = i * SEGUNDO;
+            double latitud = 10.96 + i * 10 * METRO;
+
+            // La misma captura, primero por GPS_PROVIDER y luego por PASSIVE_PROVIDER.
+            assertTrue(capturasGPS.registrar(nanos));
+            assertNotEquals(FusionUbicacion.FUSION_DUPLICADA, fusion.actualizar(latitud, -74.78, 5, 10, 0, nanos));
+
+            assertFalse(capturasGPS.registrar(nanos));
+            assertEquals(FusionUbicacion.FUSION_DUPLICADA, fusion.actualizar(latitud, -74.78, 5, 10, 0, nanos));
+        }
+
+        assertEquals(10, capturas.valor());
+        assertEquals(9, intervalo.total());
+        assertEquals(1000.0, intervalo.promedio(), 0);
+
+        // Al encender de nuevo el GPS, la siguiente captura no registra intervalo.
+        capturasGPS.reiniciar();
+        assertTrue(capturasGPS.registrar(60 * SEGUNDO));
+        assertEquals(11, capturas.valor());
+        assertEquals(9, intervalo.total());
+    }
+}
@@ -0,0 +1,86 @@
+package xyz.fabianpineda.desarrollomovil.transqa.geolocalizacion;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Pruebas locales de ColaCapturas: orden de entrega, política de desbordamiento y entrega entre
+ * un hilo productor y un hilo consumidor.
+ */
+public class ColaCapturasTest {
+    @Test
+    public void capacidadEsRedondeadaAPotenciaDeDos() throws Exception {
+        assertEquals(1, new ColaCapturas(1).capacidad());
+        assertEquals(8, new ColaCapturas(5).capacidad());
+        assertEquals(256, new ColaCapturas(256).capacidad());
+    }
+
+    @Test
+    public void colaLlenaDescartaCapturaNueva() throws Exception {
+        ColaCapturas cola = new ColaCapturas(4);
+
+        for (int i = 0; i < 4; i++) {
+            assertTrue(cola.ofrecer(1, i, i, i, i, i + 1));
+        }
+
+        assertFalse(cola.ofrecer(1, 99, 99, 99, 99, 100));
+        assertEquals(1, cola.descartadas());
+        assertEquals(4, cola.profundidad());
+
+        final long[] fechas = new long[4];
+        final long[] etapas = new long[4];
+        final int[] n = new int[1];
+        cola.drenar(new ColaCapturas.ConsumidorCapturas() {
+            @Override
+            public void capturaTomada(long idSesion, double latitud, double longitud, long fecha, long capturaNanos, long etapaNanos) {
+                fechas[n[0]] = fecha;
+                etapas[n[0]++] = etapaNanos - capturaNanos;
+            }
+        }, 10);
+
+        assertArrayEquals(new long[] {0, 1, 2, 3}, fechas);
+        assertArrayEquals(new long[] {1, 1, 1, 1}, etapas);
+        assertEquals(0, cola.profundidad());
+    }
+
+    @Test
+    public void productorYConsumidorEnHilosDistintos() throws Exception {
+        final ColaCapturas cola = new ColaCapturas(64);
+        final int total = 200000;
+        final long[] siguiente = new long[1];
+        final boolean[] ordenCorrecto = {true};
+
+        Thread consumidor = new Thread() {
+            @Override
+            public void run() {
+                ColaCapturas.ConsumidorCapturas verificador = new ColaCapturas.ConsumidorCapturas() {
+                    @Override
+                    public void capturaTomada(long idSesion, double latitud, double longitud, long fecha, long capturaNanos, long etapaNanos) {
+                        if (fecha != siguiente[0] || latitud != fecha || idSesion != fecha) {
+                            ordenCorrecto[0] = false;
+                        }
+                        siguiente[0]++;
+                    }
+                };
+
+                while (siguiente[0] < total) {
+                    cola.drenar(verificador, 16);
+                }
+            }
+        };
+        consumidor.start();
+
+        for (long i = 0; i < total; ) {
+            if (cola.ofrecer(i, i, i, i, i, i)) {
+                i++;
+            }
+        }
+
+        consumidor.join(10000);
+
+        assertFalse(consumidor.isAlive());
+        assertTrue(ordenCorrecto[0]);
+        assertEquals(total, siguiente[0]);
+    }
+}
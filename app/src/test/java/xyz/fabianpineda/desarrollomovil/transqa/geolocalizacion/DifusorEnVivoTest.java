@@ -0,0 +1,167 @@
+package xyz.fabianpineda.desarrollomovil.transqa.geolocalizacion;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Pruebas locales de DifusorEnVivo con un reloj manual: entrega inmediata al suscribir, límite de
+ * frecuencia con el estado más reciente, y anulación de suscripciones. También prueba la
+ * acumulación de estadísticas de EstadoEnVivo.
+ */
+public class DifusorEnVivoTest {
+    // Aproximadamente 1 metro en latitud.
+    private static final double METRO = 1.0 / 111195.0;
+
+    private static final class TemporizadorManual implements DifusorEnVivo.Temporizador {
+        long ahora;
+        final List<Object[]> tareas = new ArrayList<>();     // { Runnable, Long momento }
+
+        @Override
+        public long ahora() {
+            return ahora;
+        }
+
+        @Override
+        public void programar(Runnable tarea, long retraso) {
+            tareas.add(new Object[] { tarea, ahora + retraso });
+        }
+
+        @Override
+        public void cancelar(Runnable tarea) {
+            for (Iterator<Object[]> i = tareas.iterator(); i.hasNext(); ) {
+                if (i.next()[0] == tarea) {
+                    i.remove();
+                }
+            }
+        }
+
+        // Avanza el reloj, ejecutando en orden las tareas que se cumplan.
+        void avanzar(long milisegundos) {
+            long fin = ahora + milisegundos;
+
+            while (true) {
+                Object[] siguiente = null;
+
+                for (Object[] tarea : tareas) {
+                    if ((Long) tarea[1] <= fin && (siguiente == null || (Long) tarea[1] < (Long) siguiente[1])) {
+                        siguiente = tarea;
+                    }
+                }
+
+                if (siguiente == null) {
+                    break;
+                }
+
+                tareas.remove(siguiente);
+                ahora = (Long) siguiente[1];
+                ((Runnable) siguiente[0]).run();
+            }
+
+            ahora = fin;
+        }
+    }
+
+    private static final class Receptor implements DifusorEnVivo.ReceptorEnVivo {
+        final List<EstadoEnVivo> estados = new ArrayList<>();
+
+        @Override
+        public void estadoRecibido(EstadoEnVivo estado) {
+            estados.add(estado);
+        }
+    }
+
+    private static EstadoEnVivo estado(EstadoEnVivo anterior, long fecha) {
+        return EstadoEnVivo.siguiente(anterior, 1, 4.6 + fecha * METRO, -74.1, 5, 10, fecha);
+    }
+
+    @Test
+    public void limitaFrecuenciaYEntregaEstadoMasReciente() throws Exception {
+        TemporizadorManual temporizador = new TemporizadorManual();
+        DifusorEnVivo difusor = new DifusorEnVivo(temporizador);
+        Receptor receptor = new Receptor();
+        difusor.suscribir(receptor, 1000);
+
+        // GPS a 10 Hz durante 5 segundos.
+        EstadoEnVivo ultimo = null;
+
+        for (int i = 0; i < 50; i++) {
+            difusor.publicar(ultimo = estado(ultimo, i));
+            temporizador.avanzar(100);
+        }
+        temporizador.avanzar(1000);
+
+        assertTrue(receptor.estados.size() >= 5 && receptor.estados.size() <= 6);
+        assertSame(ultimo, receptor.estados.get(receptor.estados.size() - 1));
+        assertEquals(50, ultimo.capturas);
+    }
+
+    @Test
+    public void suscriptorNuevoRecibeUltimoEstadoDeInmediato() throws Exception {
+        TemporizadorManual temporizador = new TemporizadorManual();
+        DifusorEnVivo difusor = new DifusorEnVivo(temporizador);
+        Receptor receptor = new Receptor();
+
+        difusor.suscribir(receptor, 1000);
+        temporizador.avanzar(5000);
+        assertTrue(receptor.estados.isEmpty());
+
+        EstadoEnVivo primero = estado(null, 0);
+        difusor.publicar(primero);
+        temporizador.avanzar(0);
+        assertEquals(1, receptor.estados.size());
+
+        Receptor otro = new Receptor();
+        difusor.suscribir(otro, 1);
+        temporizador.avanzar(0);
+        assertSame(primero, otro.estados.get(0));
+    }
+
+    @Test
+    public void anularSuscripcionDescartaEntregasPendientes() throws Exception {
+        TemporizadorManual temporizador = new TemporizadorManual();
+        DifusorEnVivo difusor = new DifusorEnVivo(temporizador);
+        Receptor a = new Receptor();
+        Receptor b = new Receptor();
+
+        difusor.suscribir(a, 1000);
+        difusor.suscribir(b, 1000);
+        difusor.publicar(estado(null, 0));
+        difusor.anularSuscripcion(a);
+        temporizador.avanzar(0);
+
+        assertTrue(a.estados.isEmpty());
+        assertEquals(1, b.estados.size());
+
+        difusor.publicar(estado(null, 1));
+        difusor.anularTodas();
+        temporizador.avanzar(5000);
+
+        assertEquals(1, b.estados.size());
+        assertEquals(0, difusor.suscripciones());
+        assertTrue(temporizador.tareas.isEmpty());
+    }
+
+    @Test
+    public void estadisticasSeReinicianAlCambiarDeSesion() throws Exception {
+        EstadoEnVivo estado = EstadoEnVivo.siguiente(null, 1, 4.6, -74.1, 5, Float.NaN, 0);
+        assertTrue(Float.isNaN(estado.velocidadMaxima));
+
+        estado = EstadoEnVivo.siguiente(estado, 1, 4.6 + 100 * METRO, -74.1, 5, 12, 1000);
+        estado = EstadoEnVivo.siguiente(estado, 1, 4.6 + 200 * METRO, -74.1, 5, 8, 2000);
+
+        assertEquals(3, estado.capturas);
+        assertEquals(200, estado.distancia, 0.5);
+        assertEquals(12, estado.velocidadMaxima, 0);
+
+        estado = EstadoEnVivo.siguiente(estado, 2, 4.6, -74.1, 5, 3, 3000);
+
+        assertEquals(1, estado.capturas);
+        assertEquals(0, estado.distancia, 0);
+        assertEquals(3, estado.velocidadMaxima, 0);
+    }
+}
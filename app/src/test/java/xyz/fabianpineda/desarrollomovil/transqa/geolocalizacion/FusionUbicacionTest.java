@@ -0,0 +1,129 @@
+package xyz.fabianpineda.desarrollomovil.transqa.geolocalizacion;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Pruebas locales de FusionUbicacion: convergencia con capturas ruidosas, capturas repetidas,
+ * capturas incoherentes, reinicio y estimación de velocidad.
+ */
+public class FusionUbicacionTest {
+    // Aproximadamente 1 metro en latitud.
+    private static final double METRO = 1.0 / 111195.0;
+    private static final long SEGUNDO = 1000000000L;
+
+    @Test
+    public void primeraCapturaReiniciaElFiltro() throws Exception {
+        FusionUbicacion fusion = new FusionUbicacion();
+
+        assertEquals(FusionUbicacion.FUSION_REINICIADA, fusion.actualizar(4.6, -74.08, 10, Double.NaN, Double.NaN, SEGUNDO));
+        assertEquals(4.6, fusion.latitud(), 1e-9);
+        assertEquals(-74.08, fusion.longitud(), 1e-9);
+        assertEquals(SEGUNDO, fusion.nanos());
+    }
+
+    @Test
+    public void lineaRectaRuidosaConvergeMejorQueLasCapturas() throws Exception {
+        FusionUbicacion fusion = new FusionUbicacion();
+        Random azar = new Random(7);
+        double errorCapturas = 0;
+        double errorFusion = 0;
+
+        for (int i = 0; i < 120; i++) {
+            double real = 4.6 + i * 10 * METRO;
+            double captura = real + azar.nextGaussian() * 8 * METRO;
+
+            int resultado = fusion.actualizar(captura, -74.08, 8, Double.NaN, Double.NaN, (i + 1) * SEGUNDO);
+            assertNotEquals(FusionUbicacion.FUSION_RECHAZADA, resultado);
+
+            if (i >= 20) {
+                errorCapturas += Math.abs(captura - real) / METRO;
+                errorFusion += Math.abs(fusion.latitud() - real) / METRO;
+            }
+        }
+
+        assertTrue(errorFusion < errorCapturas * 0.8);
+        assertEquals(10, fusion.velocidad(), 2);
+        assertEquals(0, fusion.rumbo(), 10);
+        assertTrue(fusion.precision() < 8);
+    }
+
+    @Test
+    public void capturaRepetidaEsIgnorada() throws Exception {
+        FusionUbicacion fusion = new FusionUbicacion();
+
+        fusion.actualizar(4.6, -74.08, 5, Double.NaN, Double.NaN, SEGUNDO);
+        assertEquals(FusionUbicacion.FUSION_ACEPTADA, fusion.actualizar(4.6 + 3 * METRO, -74.08, 5, Double.NaN, Double.NaN, 2 * SEGUNDO));
+
+        double latitud = fusion.latitud();
+
+        assertEquals(FusionUbicacion.FUSION_DUPLICADA, fusion.actualizar(4.6 + 3 * METRO, -74.08, 5, Double.NaN, Double.NaN, 2 * SEGUNDO));
+        assertEquals(FusionUbicacion.FUSION_DUPLICADA, fusion.actualizar(4.6, -74.08, 5, Double.NaN, Double.NaN, SEGUNDO));
+        assertEquals(latitud, fusion.latitud(), 0);
+    }
+
+    @Test
+    public void capturaLejanaEsRechazadaYRepetidasReinician() throws Exception {
+        FusionUbicacion fusion = new FusionUbicacion();
+        long nanos = SEGUNDO;
+
+        for (int i = 0; i < 10; i++) {
+            fusion.actualizar(4.6, -74.08, 5, 0, 0, nanos);
+            nanos += SEGUNDO;
+        }
+
+        double lejana = 4.6 + 2000 * METRO;
+
+        for (int i = 1; i < FusionUbicacion.FUSION_RECHAZOS_REINICIO; i++) {
+            assertEquals(FusionUbicacion.FUSION_RECHAZADA, fusion.actualizar(lejana, -74.08, 5, Double.NaN, Double.NaN, nanos));
+            assertEquals(4.6, fusion.latitud(), 2 * METRO);
+            nanos += SEGUNDO;
+        }
+
+        assertEquals(FusionUbicacion.FUSION_REINICIADA, fusion.actualizar(lejana, -74.08, 5, Double.NaN, Double.NaN, nanos));
+        assertEquals(lejana, fusion.latitud(), 1e-9);
+    }
+
+    @Test
+    public void capturaImprecisaCorrigePoco() throws Exception {
+        FusionUbicacion fusion = new FusionUbicacion();
+        long nanos = SEGUNDO;
+
+        for (int i = 0; i < 10; i++) {
+            fusion.actualizar(4.6, -74.08, 4, 0, 0, nanos);
+            nanos += SEGUNDO;
+        }
+
+        // Captura de NETWORK a 150 m, con precisión de 500 m.
+        assertEquals(FusionUbicacion.FUSION_ACEPTADA, fusion.actualizar(4.6 + 150 * METRO, -74.08, 500, Double.NaN, Double.NaN, nanos));
+        assertEquals(4.6, fusion.latitud(), 3 * METRO);
+    }
+
+    @Test
+    public void esperaLargaReiniciaElFiltro() throws Exception {
+        FusionUbicacion fusion = new FusionUbicacion();
+
+        fusion.actualizar(4.6, -74.08, 5, Double.NaN, Double.NaN, SEGUNDO);
+        assertEquals(FusionUbicacion.FUSION_REINICIADA, fusion.actualizar(4.7, -74.08, 5, Double.NaN, Double.NaN, SEGUNDO + FusionUbicacion.FUSION_ESPERA_MAXIMA + 1));
+        assertEquals(4.7, fusion.latitud(), 1e-9);
+    }
+
+    @Test
+    public void velocidadYRumboDeLasCapturasSonUsados() throws Exception {
+        FusionUbicacion fusion = new FusionUbicacion();
+        long nanos = SEGUNDO;
+
+        // Hacia el este a 15 m/s.
+        for (int i = 0; i < 5; i++) {
+            double longitud = -74.08 + i * 15 * METRO / Math.cos(Math.toRadians(4.6));
+            fusion.actualizar(4.6, longitud, 5, 15, 90, nanos);
+            nanos += SEGUNDO;
+        }
+
+        assertEquals(15, fusion.velocidad(), 1);
+        assertEquals(90, fusion.rumbo(), 3);
+    }
+}
@@ -0,0 +1,88 @@
+package xyz.fabianpineda.desarrollomovil.transqa.geolocalizacion;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Pruebas locales de PlanificadorMuestreo: modos por velocidad y giro, e histéresis.
+ */
+public class PlanificadorMuestreoTest {
+    private static final double METRO = 1.0 / 111195.0;
+
+    @Test
+    public void detenidoRequiereConfirmacionesYAltaVelocidadEsInmediata() throws Exception {
+        PlanificadorMuestreo planificador = new PlanificadorMuestreo();
+        long fecha = 0;
+
+        assertFalse(planificador.actualizar(10, -74, fecha += 5000, true, 0.1f, false, 0));
+        assertFalse(planificador.actualizar(10, -74, fecha += 5000, true, 0.1f, false, 0));
+        assertTrue(planificador.actualizar(10, -74, fecha += 5000, true, 0.1f, false, 0));
+        assertEquals(PlanificadorMuestreo.MUESTREO_DETENIDO, planificador.modo());
+        assertTrue(planificador.intervalo() > 5000);
+        assertTrue(planificador.distancia() > 0);
+
+        assertTrue(planificador.actualizar(10, -74, fecha += 30000, true, 20f, true, 0));
+        assertEquals(PlanificadorMuestreo.MUESTREO_RAPIDO, planificador.modo());
+        assertEquals(2, planificador.cambios());
+    }
+
+    @Test
+    public void velocidadCercaDeUmbralNoCambiaModoRepetidamente() throws Exception {
+        PlanificadorMuestreo planificador = new PlanificadorMuestreo();
+        long fecha = 0;
+
+        for (int i = 0; i < 3; i++) {
+            planificador.actualizar(10, -74, fecha += 5000, true, 0.1f, false, 0);
+        }
+        assertEquals(PlanificadorMuestreo.MUESTREO_DETENIDO, planificador.modo());
+
+        // Oscila alrededor del umbral de entrada, pero bajo el de salida.
+        for (int i = 0; i < 20; i++) {
+            planificador.actualizar(10, -74, fecha += 30000, true, i % 2 == 0 ? 1.5f : 0.3f, false, 0);
+        }
+
+        assertEquals(PlanificadorMuestreo.MUESTREO_DETENIDO, planificador.modo());
+        assertEquals(1, planificador.cambios());
+    }
+
+    @Test
+    public void giroCalculadoConPosicionesActivaModoRapido() throws Exception {
+        PlanificadorMuestreo planificador = new PlanificadorMuestreo();
+        long fecha = 0;
+        double latitud = 10;
+        double longitud = -74;
+
+        // Recta hacia el norte a 10 m/s, sin velocidad ni rumbo del GPS.
+        for (int i = 0; i < 5; i++) {
+            planificador.actualizar(latitud += 50 * METRO, longitud, fecha += 5000, false, 0, false, 0);
+        }
+        assertEquals(PlanificadorMuestreo.MUESTREO_CRUCERO, planificador.modo());
+
+        // Giro de 90 grados hacia el este.
+        assertTrue(planificador.actualizar(latitud, longitud + 50 * METRO, fecha += 5000, false, 0, false, 0));
+        assertEquals(PlanificadorMuestreo.MUESTREO_RAPIDO, planificador.modo());
+        assertEquals(2000, planificador.intervalo());
+    }
+
+    @Test
+    public void desplazamientoSinVelocidadSaleDeDetenido() throws Exception {
+        PlanificadorMuestreo planificador = new PlanificadorMuestreo();
+        long fecha = 0;
+        double latitud = 10;
+
+        for (int i = 0; i < 3; i++) {
+            planificador.actualizar(latitud, -74, fecha += 5000, false, 0, false, 0);
+        }
+        assertEquals(PlanificadorMuestreo.MUESTREO_DETENIDO, planificador.modo());
+
+        // Ruido menor a la distancia mínima tras una pausa larga: sigue detenido.
+        assertFalse(planificador.actualizar(latitud += 2 * METRO, -74, fecha += 300000, false, 0, false, 0));
+
+        // La distancia mínima dejó pasar esta captura: el vehículo arrancó, aunque 15 m en 5
+        // minutos sea una velocidad promedio baja.
+        assertTrue(planificador.actualizar(latitud += 15 * METRO, -74, fecha += 300000, false, 0, false, 0));
+        assertEquals(PlanificadorMuestreo.MUESTREO_CRUCERO, planificador.modo());
+        assertEquals(0, planificador.distancia(), 0);
+    }
+}
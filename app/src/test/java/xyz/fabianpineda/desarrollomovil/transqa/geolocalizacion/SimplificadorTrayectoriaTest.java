@@ -0,0 +1,126 @@
+package xyz.fabianpineda.desarrollomovil.transqa.geolocalizacion;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Pruebas locales de SimplificadorTrayectoria: trayectorias rectas, detenciones, cambios de sesión
+ * y error máximo respecto a la trayectoria original.
+ */
+public class SimplificadorTrayectoriaTest {
+    // Aproximadamente 1 metro en latitud.
+    private static final double METRO = 1.0 / 111195.0;
+
+    private static final class Salida implements ColaCapturas.ConsumidorCapturas {
+        final List<double[]> capturas = new ArrayList<>();
+
+        @Override
+        public void capturaTomada(long idSesion, double latitud, double longitud, long fecha, long capturaNanos, long etapaNanos) {
+            capturas.add(new double[] { idSesion, latitud, longitud, fecha, capturaNanos, etapaNanos });
+        }
+    }
+
+    @Test
+    public void lineaRectaConservaExtremos() throws Exception {
+        SimplificadorTrayectoria simplificador = new SimplificadorTrayectoria(5, 1000);
+        Salida salida = new Salida();
+
+        for (int i = 0; i < 100; i++) {
+            simplificador.agregar(1, 10 + i * 20 * METRO, -74, i, i, i, salida);
+        }
+        simplificador.vaciar(salida);
+
+        assertEquals(2, salida.capturas.size());
+        assertEquals(0, salida.capturas.get(0)[3], 0);
+        assertEquals(99, salida.capturas.get(1)[3], 0);
+        assertEquals(99, salida.capturas.get(1)[4], 0);
+        assertEquals(99, salida.capturas.get(1)[5], 0);
+        assertEquals(98, simplificador.omitidas());
+        assertEquals(0, simplificador.pendientes());
+    }
+
+    @Test
+    public void detencionConservaLlegadaYSalida() throws Exception {
+        SimplificadorTrayectoria simplificador = new SimplificadorTrayectoria(5, 32);
+        Salida salida = new Salida();
+        long fecha = 0;
+
+        simplificador.agregar(1, 10, -74, fecha++, 0, 0, salida);
+        for (int i = 0; i < 240; i++) {
+            simplificador.agregar(1, 10 + (i % 3) * METRO, -74, fecha++, 0, 0, salida);
+        }
+        simplificador.agregar(1, 10 + 100 * METRO, -74, fecha++, 0, 0, salida);
+        simplificador.vaciar(salida);
+
+        assertEquals(3, salida.capturas.size());
+        assertEquals(0, salida.capturas.get(0)[3], 0);
+        assertEquals(240, salida.capturas.get(1)[3], 0);
+        assertEquals(241, salida.capturas.get(2)[3], 0);
+    }
+
+    @Test
+    public void cambioDeSesionConservaUltimaCaptura() throws Exception {
+        SimplificadorTrayectoria simplificador = new SimplificadorTrayectoria(5, 32);
+        Salida salida = new Salida();
+
+        simplificador.agregar(1, 10, -74, 0, 0, 0, salida);
+        simplificador.agregar(1, 10 + 50 * METRO, -74, 1, 1, 1, salida);
+        simplificador.agregar(2, 11, -75, 2, 2, 2, salida);
+
+        assertEquals(3, salida.capturas.size());
+        assertEquals(1, salida.capturas.get(1)[0], 0);
+        assertEquals(2, salida.capturas.get(2)[0], 0);
+    }
+
+    @Test
+    public void capturasOmitidasEstanDentroDeTolerancia() throws Exception {
+        double tolerancia = 5;
+        SimplificadorTrayectoria simplificador = new SimplificadorTrayectoria(tolerancia, 16);
+        Salida salida = new Salida();
+        Random aleatorio = new Random(7);
+
+        List<double[]> originales = new ArrayList<>();
+        double latitud = 10;
+        double longitud = -74;
+        double rumbo = 0;
+
+        for (int i = 0; i < 2000; i++) {
+            rumbo += (aleatorio.nextDouble() - 0.5) * 0.6;
+            latitud += Math.cos(rumbo) * 8 * METRO;
+            longitud += Math.sin(rumbo) * 8 * METRO;
+            originales.add(new double[] { latitud, longitud, i });
+            simplificador.agregar(1, latitud, longitud, i, i, i, salida);
+        }
+        simplificador.vaciar(salida);
+
+        assertEquals(2000, simplificador.conservadas() + simplificador.omitidas());
+        assertTrue(salida.capturas.size() < 1000);
+
+        // Cada captura original está dentro de la tolerancia del segmento almacenado que la cubre.
+        int segmento = 0;
+        for (double[] original : originales) {
+            while (salida.capturas.get(segmento + 1)[3] < original[2]) {
+                segmento++;
+            }
+
+            double[] a = salida.capturas.get(segmento);
+            double[] b = salida.capturas.get(segmento + 1);
+            assertTrue(distanciaASegmento(original, a, b) <= tolerancia + 0.01);
+        }
+    }
+
+    private static double distanciaASegmento(double[] p, double[] a, double[] b) {
+        double escala = Math.cos(Math.toRadians(a[1]));
+        double bx = (b[2] - a[2]) * escala / METRO, by = (b[1] - a[1]) / METRO;
+        double px = (p[1] - a[2]) * escala / METRO, py = (p[0] - a[1]) / METRO;
+        double l = bx * bx + by * by;
+        double t = l > 0 ? Math.max(0, Math.min(1, (px * bx + py * by) / l)) : 0;
+
+        return Math.hypot(px - t * bx, py - t * by);
+    }
+}
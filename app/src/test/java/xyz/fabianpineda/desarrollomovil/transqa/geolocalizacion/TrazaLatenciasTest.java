@@ -0,0 +1,95 @@
+package xyz.fabianpineda.desarrollomovil.transqa.geolocalizacion;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import xyz.fabianpineda.desarrollomovil.transqa.db.RegistroLatencias;
+import xyz.fabianpineda.desarrollomovil.transqa.metricas.RegistroMetricas;
+
+import static org.junit.Assert.*;
+
+/**
+ * Pruebas locales de TrazaLatencias con un reloj manual: latencia de cada etapa, capturas
+ * pendientes hasta la escritura y reinicio al cambiar de sesión.
+ */
+public class TrazaLatenciasTest {
+    private static final long MILISEGUNDO = 1000000L;
+
+    private long ahora;
+    private TrazaLatencias traza;
+
+    @Before
+    public void crear() throws Exception {
+        ahora = 1000 * MILISEGUNDO;
+        traza = new TrazaLatencias(RegistroMetricas.obtener(), new TrazaLatencias.Reloj() {
+            @Override
+            public long ahora() {
+                return ahora;
+            }
+        });
+    }
+
+    @Test
+    public void cadaEtapaEsMedidaHastaLaEscritura() throws Exception {
+        long sesion = 101;
+        long captura = ahora;
+        long recepcion = captura + 20 * MILISEGUNDO;
+
+        ahora = recepcion + 3 * MILISEGUNDO;
+        long tomada = traza.tomada(sesion, captura, recepcion);
+
+        ahora += MILISEGUNDO;
+        traza.entregada(captura, tomada);
+        assertEquals(1, traza.pendientes());
+
+        ahora += 2000 * MILISEGUNDO;
+        traza.escritas();
+        assertEquals(0, traza.pendientes());
+
+        RegistroLatencias latencias = traza.latencias(sesion);
+
+        assertEquals(20000, latencias.maximo(RegistroLatencias.LATENCIA_ETAPA_ENTREGA));
+        assertEquals(3000, latencias.maximo(RegistroLatencias.LATENCIA_ETAPA_COLA));
+        assertEquals(1000, latencias.maximo(RegistroLatencias.LATENCIA_ETAPA_FILTRADO));
+        assertEquals(2000000, latencias.maximo(RegistroLatencias.LATENCIA_ETAPA_ESCRITURA));
+        assertEquals(2024000, latencias.maximo(RegistroLatencias.LATENCIA_ETAPA_TOTAL));
+        assertEquals(2024000, latencias.percentil99(RegistroLatencias.LATENCIA_ETAPA_TOTAL));
+
+        for (int etapa = 0; etapa < RegistroLatencias.LATENCIA_ETAPAS; etapa++) {
+            assertEquals(1, latencias.capturas(etapa));
+        }
+    }
+
+    @Test
+    public void capturaSinMarcaGNSSNoMideEntrega() throws Exception {
+        long sesion = 102;
+        long recepcion = ahora;
+
+        ahora += MILISEGUNDO;
+        long tomada = traza.tomada(sesion, 0, recepcion);
+        traza.entregada(recepcion, tomada);
+        traza.escritas();
+
+        RegistroLatencias latencias = traza.latencias(sesion);
+
+        assertEquals(0, latencias.capturas(RegistroLatencias.LATENCIA_ETAPA_ENTREGA));
+        assertEquals(1000, latencias.maximo(RegistroLatencias.LATENCIA_ETAPA_TOTAL));
+    }
+
+    @Test
+    public void otraSesionReiniciaLasLatencias() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            long tomada = traza.tomada(103, ahora, ahora);
+            traza.entregada(ahora, tomada);
+        }
+
+        traza.escritas();
+        assertEquals(5, traza.latencias(103).capturas(RegistroLatencias.LATENCIA_ETAPA_TOTAL));
+
+        traza.tomada(104, ahora, ahora);
+
+        assertNull(traza.latencias(103));
+        assertEquals(1, traza.latencias(104).capturas(RegistroLatencias.LATENCIA_ETAPA_COLA));
+        assertEquals(0, traza.latencias(104).capturas(RegistroLatencias.LATENCIA_ETAPA_TOTAL));
+    }
+}
@@ -0,0 +1,93 @@
+package xyz.fabianpineda.desarrollomovil.transqa.metricas;
+
+import org.junit.Test;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+import static org.junit.Assert.*;
+
+/**
+ * Pruebas locales de RegistroMetricas y sus métricas: contadores desde varios hilos, percentiles
+ * de histogramas, cronómetros y volcado.
+ */
+public class RegistroMetricasTest {
+    @Test
+    public void contadorSumaDesdeVariosHilos() throws Exception {
+        final Contador contador = new RegistroMetricas().contador("prueba");
+        Thread[] hilos = new Thread[6];
+
+        for (int i = 0; i < hilos.length; i++) {
+            hilos[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 100000; j++) {
+                        contador.incrementar();
+                    }
+                }
+            });
+            hilos[i].start();
+        }
+
+        for (Thread hilo : hilos) {
+            hilo.join();
+        }
+
+        assertEquals(600000, contador.valor());
+    }
+
+    @Test
+    public void histogramaAproximaPercentilesPorCubeta() throws Exception {
+        Histograma histograma = new RegistroMetricas().histograma("latencia", Histograma.HISTOGRAMA_LIMITES_MICROSEGUNDOS, "us");
+
+        assertEquals(0, histograma.percentil(0.5));
+
+        for (int i = 1; i <= 100; i++) {
+            histograma.registrar(i <= 90 ? 80 : 3000);
+        }
+        histograma.registrar(5000000);
+
+        assertEquals(101, histograma.total());
+        assertEquals(100, histograma.percentil(0.5));
+        assertEquals(5000, histograma.percentil(0.95));
+        assertEquals(5000000, histograma.percentil(1.0));
+        assertEquals(5000000, histograma.maximo());
+        assertEquals((90 * 80 + 10 * 3000 + 5000000) / 101.0, histograma.promedio(), 0.001);
+    }
+
+    @Test
+    public void registroDevuelveLaMismaMetricaYVuelcaEnOrden() throws Exception {
+        RegistroMetricas registro = new RegistroMetricas();
+
+        assertSame(registro.contador("b.capturas"), registro.contador("b.capturas"));
+        registro.contador("b.capturas").sumar(7);
+
+        Medidor medidor = registro.medidor("a.tamano");
+        medidor.establecer(3);
+        medidor.establecerFuente(new Medidor.Fuente() {
+            @Override
+            public long leer() {
+                return 42;
+            }
+        });
+
+        Cronometro cronometro = registro.cronometro("c.gps");
+        cronometro.iniciar();
+        Thread.sleep(20);
+        cronometro.detener();
+        long total = cronometro.total();
+
+        assertTrue(total >= 20);
+        Thread.sleep(5);
+        assertEquals(total, cronometro.total());
+
+        StringWriter texto = new StringWriter();
+        registro.volcar(new PrintWriter(texto));
+        String[] lineas = texto.toString().split("\n");
+
+        assertEquals(3, lineas.length);
+        assertEquals("a.tamano: 42", lineas[0].trim());
+        assertEquals("b.capturas: 7", lineas[1].trim());
+        assertTrue(lineas[2].startsWith("c.gps: "));
+    }
+}
@@ -0,0 +1,149 @@
+package xyz.fabianpineda.desarrollomovil.transqa.rutas;
+
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Pruebas locales de AjustadorRutas: capturas ruidosas sobre una ruta, rutas que comparten un
+ * corredor, capturas fuera de ruta, retraso acotado y cambios de sesión.
+ */
+public class AjustadorRutasTest {
+    // Aproximadamente 1 metro en latitud.
+    private static final double METRO = 1.0 / 111195.0;
+
+    private static final double LATITUD = 10.96;
+    private static final double LONGITUD = -74.78;
+
+    private static final class Ajustes implements AjustadorRutas.ConsumidorAjustes {
+        final List<Long> secuencias = new ArrayList<>();
+        final List<String> rutas = new ArrayList<>();
+        final List<Double> recorridos = new ArrayList<>();
+        long sesion;
+
+        @Override
+        public void capturaAjustada(long idSesion, long secuencia, String ruta, int tramo, double recorrido) {
+            sesion = idSesion;
+            secuencias.add(secuencia);
+            rutas.add(ruta);
+            recorridos.add(recorrido);
+        }
+    }
+
+    /**
+     * Ruta "N": 2 km hacia el norte, en tramos de 100 m. Ruta "E": el mismo primer kilómetro, y
+     * luego 1 km hacia el este.
+     */
+    private static AjustadorRutas crearAjustador() throws Exception {
+        StringBuilder csv = new StringBuilder("shape_id,shape_pt_lat,shape_pt_lon,shape_pt_sequence\n");
+        double metroLongitud = METRO / Math.cos(Math.toRadians(LATITUD));
+
+        for (int i = 0; i <= 20; i++) {
+            csv.append("N,").append(LATITUD + i * 100 * METRO).append(',').append(LONGITUD).append(',').append(i).append('\n');
+        }
+
+        for (int i = 0; i <= 20; i++) {
+            double latitud = LATITUD + Math.min(i, 10) * 100 * METRO;
+            double longitud = LONGITUD + Math.max(i - 10, 0) * 100 * metroLongitud;
+            csv.append("E,").append(latitud).append(',').append(longitud).append(',').append(i).append('\n');
+        }
+
+        return new AjustadorRutas(new IndiceTramos(FormasRutas.cargar(new StringReader(csv.toString()))));
+    }
+
+    @Test
+    public void capturasRuidosasSiguenLaRutaNorte() throws Exception {
+        AjustadorRutas ajustador = crearAjustador();
+        Ajustes ajustes = new Ajustes();
+        Random azar = new Random(5);
+
+        // 10 m/s hacia el norte, una captura por segundo, hasta pasar la bifurcación.
+        for (int i = 0; i < 190; i++) {
+            double latitud = LATITUD + (i * 10 + azar.nextGaussian() * 5) * METRO;
+            double longitud = LONGITUD + azar.nextGaussian() * 5 * METRO;
+
+            ajustador.agregar(1, i + 1, latitud, longitud, i * 1000L, ajustes);
+            assertTrue(ajustador.pendientes() <= AjustadorRutas.AJUSTADOR_RETRASO_MAXIMO);
+        }
+        ajustador.vaciar(ajustes);
+
+        assertEquals(190, ajustes.secuencias.size());
+        assertEquals(0, ajustador.fueraDeRuta());
+
+        for (int i = 0; i < 190; i++) {
+            assertEquals(i + 1, (long) ajustes.secuencias.get(i));
+            assertEquals(i * 10, ajustes.recorridos.get(i), 20);
+
+            // Sobre el corredor compartido la ruta es ambigua, pero no cambia de una captura a otra.
+            if (i > 0) {
+                assertEquals(ajustes.rutas.get(i - 1), ajustes.rutas.get(i));
+            }
+        }
+
+        assertEquals("N", ajustes.rutas.get(189));
+    }
+
+    @Test
+    public void rutaElegidaDespuesDeLaBifurcacionEsLaDelVehiculo() throws Exception {
+        AjustadorRutas ajustador = crearAjustador();
+        Ajustes ajustes = new Ajustes();
+        double metroLongitud = METRO / Math.cos(Math.toRadians(LATITUD));
+
+        for (int i = 0; i < 150; i++) {
+            double latitud = LATITUD + Math.min(i * 10, 1000) * METRO;
+            double longitud = LONGITUD + Math.max(i * 10 - 1000, 0) * metroLongitud;
+
+            ajustador.agregar(1, i + 1, latitud, longitud, i * 1000L, ajustes);
+        }
+        ajustador.vaciar(ajustes);
+
+        for (int i = 101; i < 150; i++) {
+            assertEquals("E", ajustes.rutas.get(i));
+            assertTrue(ajustes.recorridos.get(i) > ajustes.recorridos.get(i - 1));
+        }
+    }
+
+    @Test
+    public void capturasLejanasQuedanFueraDeRuta() throws Exception {
+        AjustadorRutas ajustador = crearAjustador();
+        Ajustes ajustes = new Ajustes();
+
+        for (int i = 0; i < 30; i++) {
+            // Capturas 10 a 19 a 300 m al oeste de las rutas.
+            double longitud = LONGITUD - (i >= 10 && i < 20 ? 300 * METRO : 0);
+            ajustador.agregar(1, i + 1, LATITUD + i * 10 * METRO, longitud, i * 1000L, ajustes);
+        }
+        ajustador.vaciar(ajustes);
+
+        assertEquals(20, ajustador.ajustadas());
+        assertEquals(10, ajustador.fueraDeRuta());
+        assertEquals(10, (long) ajustes.secuencias.get(9));
+        assertEquals(21, (long) ajustes.secuencias.get(10));
+    }
+
+    @Test
+    public void otraSesionEntregaLasCapturasPendientes() throws Exception {
+        AjustadorRutas ajustador = crearAjustador();
+        Ajustes ajustes = new Ajustes();
+
+        for (int i = 0; i < 5; i++) {
+            ajustador.agregar(1, i + 1, LATITUD + i * 10 * METRO, LONGITUD, i * 1000L, ajustes);
+        }
+
+        ajustador.agregar(2, 1, LATITUD, LONGITUD, 10000L, ajustes);
+
+        assertTrue(ajustes.secuencias.size() >= 5);
+        assertEquals(5, (long) ajustes.secuencias.get(4));
+
+        ajustador.vaciar(ajustes);
+
+        assertEquals(6, ajustes.secuencias.size());
+        assertEquals(2, ajustes.sesion);
+        assertEquals(0, ajustador.pendientes());
+    }
+}
@@ -0,0 +1,128 @@
+package xyz.fabianpineda.desarrollomovil.transqa.rutas;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Pruebas locales de FormasRutas e IndiceTramos: carga del archivo de formas y búsquedas en la
+ * cuadrícula comparadas con una búsqueda exhaustiva.
+ */
+public class IndiceTramosTest {
+    // Aproximadamente 1 metro en latitud.
+    private static final double METRO = 1.0 / 111195.0;
+
+    @Test
+    public void cargaFormasDesordenadasYOmitePuntosRepetidos() throws Exception {
+        FormasRutas formas = FormasRutas.cargar(new StringReader(
+                "shape_pt_sequence,shape_id,shape_dist_traveled,shape_pt_lat,shape_pt_lon\n" +
+                "3,\"A\",,10.9620,-74.7800\n" +
+                "1,\"A\",,10.9600,-74.7800\n" +
+                "2,\"A\",,10.9610,-74.7800\n" +
+                "2,\"A\",,10.9610,-74.7800\n" +
+                "\n" +
+                "1,B,,10.9600,-74.7810\n" +
+                "1,C,,10.9600,-74.7820\n" +
+                "2,C,,10.9600,-74.7830\n"
+        ));
+
+        assertEquals(2, formas.rutas());
+        assertEquals("A", formas.ruta(0));
+        assertEquals("C", formas.ruta(1));
+        assertEquals(3, formas.tramos());
+        assertEquals(1, formas.tramoEnRuta(1));
+        assertEquals(0, formas.tramoEnRuta(2));
+        assertEquals(0.002 / METRO, formas.longitudRuta(0), 1);
+    }
+
+    @Test
+    public void archivoSinColumnasRequeridasEsInvalido() throws Exception {
+        try {
+            FormasRutas.cargar(new StringReader("shape_id,shape_pt_lat,shape_pt_lon\nA,10,-74\n"));
+            fail("Columna faltante no detectada.");
+        } catch (IOException e) {
+            // Esperado.
+        }
+
+        try {
+            FormasRutas.cargar(new StringReader("shape_id,shape_pt_lat,shape_pt_lon,shape_pt_sequence\nA,diez,-74,1\n"));
+            fail("Número inválido no detectado.");
+        } catch (IOException e) {
+            // Esperado.
+        }
+    }
+
+    @Test
+    public void busquedaCoincideConBusquedaExhaustiva() throws Exception {
+        Random azar = new Random(11);
+        StringBuilder csv = new StringBuilder("shape_id,shape_pt_lat,shape_pt_lon,shape_pt_sequence\n");
+
+        // 20 rutas aleatorias de 50 puntos en un área de unos 3 km.
+        for (int r = 0; r < 20; r++) {
+            double latitud = 10.96 + azar.nextDouble() * 3000 * METRO;
+            double longitud = -74.78 + azar.nextDouble() * 3000 * METRO;
+
+            for (int p = 0; p < 50; p++) {
+                csv.append("R").append(r).append(',').append(latitud).append(',').append(longitud).append(',').append(p).append('\n');
+                latitud += (azar.nextDouble() - 0.5) * 400 * METRO;
+                longitud += (azar.nextDouble() - 0.5) * 400 * METRO;
+            }
+        }
+
+        FormasRutas formas = FormasRutas.cargar(new StringReader(csv.toString()));
+        IndiceTramos indice = new IndiceTramos(formas);
+        CandidatosRuta candidatos = new CandidatosRuta(8);
+        int conCandidatos = 0;
+
+        for (int i = 0; i < 2000; i++) {
+            double x = formas.x(-74.78 + (azar.nextDouble() * 4000 - 500) * METRO);
+            double y = formas.y(10.96 + (azar.nextDouble() * 4000 - 500) * METRO);
+            double radio = 10 + azar.nextDouble() * 90;
+
+            double minima = Double.POSITIVE_INFINITY;
+
+            for (int t = 0; t < formas.tramos(); t++) {
+                minima = Math.min(minima, formas.distancia(t, formas.proyeccion(t, x, y), x, y));
+            }
+
+            int cantidad = indice.buscar(x, y, radio, candidatos);
+
+            if (minima > radio) {
+                assertEquals(0, cantidad);
+                continue;
+            }
+
+            conCandidatos++;
+            assertTrue(cantidad > 0);
+            assertEquals(minima, candidatos.distancia(0), 1e-9);
+
+            for (int k = 1; k < cantidad; k++) {
+                assertTrue(candidatos.distancia(k) >= candidatos.distancia(k - 1));
+                assertTrue(candidatos.distancia(k) <= radio);
+            }
+        }
+
+        assertTrue(conCandidatos > 100);
+    }
+
+    @Test
+    public void candidatosConservanUnTramoPorPasoDeRuta() throws Exception {
+        CandidatosRuta candidatos = new CandidatosRuta(3);
+
+        candidatos.ofrecer(10, 1, 8, 100, 50);
+        candidatos.ofrecer(11, 1, 5, 110, 50);      // Mismo paso, más cercano: reemplaza al anterior.
+        candidatos.ofrecer(12, 1, 6, 120, 50);      // Mismo paso, más lejano: descartado.
+        candidatos.ofrecer(40, 1, 7, 900, 50);      // Segundo paso de la ruta 1.
+        candidatos.ofrecer(20, 2, 1, 0, 50);
+        candidatos.ofrecer(30, 3, 9, 0, 50);        // Lleno de candidatos más cercanos: descartado.
+
+        assertEquals(3, candidatos.cantidad());
+        assertEquals(20, candidatos.tramo(0));
+        assertEquals(11, candidatos.tramo(1));
+        assertEquals(40, candidatos.tramo(2));
+    }
+}
@@ -0,0 +1,540 @@
+package xyz.fabianpineda.desarrollomovil.transqa.benchmark;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import xyz.fabianpineda.desarrollomovil.transqa.db.Almacen;
+import xyz.fabianpineda.desarrollomovil.transqa.db.AlmacenCapturas;
+import xyz.fabianpineda.desarrollomovil.transqa.db.AlmacenSesiones;
+import xyz.fabianpineda.desarrollomovil.transqa.db.CeldasGeograficas;
+import xyz.fabianpineda.desarrollomovil.transqa.db.CodificacionCoordenadas;
+import xyz.fabianpineda.desarrollomovil.transqa.db.RegistroLatencias;
+import xyz.fabianpineda.desarrollomovil.transqa.db.RegistroResumen;
+import xyz.fabianpineda.desarrollomovil.transqa.db.RegistroSesion;
+
+/**
+ * Almacen sobre SQLite en la JVM, usando sqlite-jdbc. Sustituto de AlmacenSQLite, que no puede ser
+ * usado fuera de Android.
+ *
+ * Reproduce el esquema (versión 3 de "DB") y la forma de operar de BufferGeolocalizacionSQLite y
+ * SesionSQLite: capturas acumuladas en memoria e insertadas en lotes en una sola transacción con
+ * un statement compilado una sola vez, y sesiones iniciadas y terminadas con statements
+ * compilados por conexión. Los perfiles de durabilidad son los de SQLite.PERFIL_DURABILIDAD_*.
+ *
+ * Si el esquema o las operaciones de AlmacenSQLite cambian, esta clase debe ser actualizada.
+ *
+ * Esta clase no es segura para ser usada desde varios hilos al mismo tiempo. Errores de SQLite son
+ * propagados como RuntimeException, como en AlmacenSQLite.
+ */
+final class AlmacenJDBC implements Almacen, AlmacenSesiones {
+    // Iguales a SQLite.PERFIL_DURABILIDAD_*, que no puede ser usado fuera de Android.
+    static final int PERFIL_DURABILIDAD_SEGURO = 0;
+    static final int PERFIL_DURABILIDAD_BALANCEADO = 1;
+    static final int PERFIL_DURABILIDAD_RENDIMIENTO = 2;
+
+    private static final String SQL_CREAR_TABLA_SESION =
+        "CREATE TABLE Sesion (" +
+            "id INTEGER NOT NULL PRIMARY KEY AUTOINCREMENT UNIQUE," +
+            "nombre VARCHAR(255) NOT NULL DEFAULT ''," +
+            "fecha_inicio INTEGER NOT NULL DEFAULT (CAST(strftime('%s', 'now') AS INTEGER) * 1000)," +
+            "fecha_fin INTEGER" +
+        ");";
+
+    private static final String SQL_CREAR_INDICE_SESION_FECHA_INICIO =
+        "CREATE INDEX indice_sesion_fecha_inicio ON Sesion (fecha_inicio);";
+
+    private static final String SQL_CREAR_TABLA_GEOLOCALIZACION =
+        "CREATE TABLE Geolocalizacion (" +
+            "id_sesion INTEGER NOT NULL," +
+            "secuencia INTEGER NOT NULL," +
+            "latitud INTEGER NOT NULL," +
+            "longitud INTEGER NOT NULL," +
+            "fecha INTEGER NOT NULL," +
+            "celda INTEGER NOT NULL DEFAULT 0," +
+            "PRIMARY KEY (id_sesion, secuencia)," +
+            "FOREIGN KEY (id_sesion) REFERENCES Sesion(id)" +
+        ") WITHOUT ROWID;";
+
+    private static final String SQL_CREAR_INDICE_GEOLOCALIZACION_SESION_FECHA =
+        "CREATE INDEX indice_geolocalizacion_sesion_fecha ON Geolocalizacion (id_sesion, fecha);";
+
+    private static final String SQL_CREAR_INDICE_GEOLOCALIZACION_CELDA =
+        "CREATE INDEX indice_geolocalizacion_celda ON Geolocalizacion (celda, latitud, longitud);";
+
+    /**
+     * AlmacenCapturas de este almacén; equivalente a BufferGeolocalizacionSQLite sin edad máxima.
+     */
+    private final class CapturasJDBC implements AlmacenCapturas {
+        private final PreparedStatement insertar;
+        private final PreparedStatement siguienteSecuencia;
+        private final PreparedStatement contar;
+        private final PreparedStatement seleccionar;
+        private final PreparedStatement seleccionarPagina;
+
+        private int cantidad;
+        private long sesionActual;
+        private long secuencia;
+
+        CapturasJDBC() throws SQLException {
+            insertar = conexion.prepareStatement("INSERT INTO Geolocalizacion (id_sesion, secuencia, latitud, longitud, fecha, celda) VALUES (?, ?, ?, ?, ?, ?);");
+            siguienteSecuencia = conexion.prepareStatement("SELECT COALESCE(MAX(secuencia), 0) + 1 FROM Geolocalizacion WHERE id_sesion = ?;");
+            contar = conexion.prepareStatement("SELECT COUNT(*) FROM Geolocalizacion WHERE id_sesion = ?;");
+            seleccionar = conexion.prepareStatement("SELECT secuencia, latitud, longitud, fecha FROM Geolocalizacion WHERE id_sesion = ? AND fecha BETWEEN ? AND ? ORDER BY fecha;");
+            seleccionarPagina = conexion.prepareStatement("SELECT secuencia, latitud, longitud, fecha FROM Geolocalizacion WHERE id_sesion = ? AND secuencia > ? ORDER BY secuencia LIMIT ?;");
+        }
+
+        @Override
+        public boolean agregar(long idSesion, double latitud, double longitud, long fecha) {
+            try {
+                if (idSesion != sesionActual) {
+                    vaciar();
+                    secuencia = consultarLong(siguienteSecuencia, idSesion);
+                    sesionActual = idSesion;
+                }
+
+                insertar.setLong(1, idSesion);
+                insertar.setLong(2, secuencia++);
+                int latitudCodificada = CodificacionCoordenadas.codificar(latitud);
+                int longitudCodificada = CodificacionCoordenadas.codificar(longitud);
+
+                insertar.setInt(3, latitudCodificada);
+                insertar.setInt(4, longitudCodificada);
+                insertar.setLong(5, fecha);
+                insertar.setLong(6, CeldasGeograficas.celda(latitudCodificada, longitudCodificada));
+                insertar.addBatch();
+            } catch (SQLException e) {
+                throw new RuntimeException(e);
+            }
+
+            if (++cantidad >= capacidadLote) {
+                // La captura ya fue aceptada: si el lote falla queda pendiente (ver AlmacenCapturas).
+                try {
+                    vaciar();
+                    return true;
+                } catch (RuntimeException e) {
+                    return false;
+                }
+            }
+
+            return false;
+        }
+
+        @Override
+        public long ultimaSecuencia() {
+            return sesionActual != 0 ? secuencia - 1 : 0;
+        }
+
+        /**
+         * Los ajustes a rutas no son parte de lo que se mide; son descartados.
+         */
+        @Override
+        public void ajustar(long idSesion, long secuencia, String ruta, int tramo, double recorrido) {
+        }
+
+        /**
+         * Inserta todas las capturas pendientes en una sola transacción.
+         */
+        @Override
+        public int vaciar() {
+            if (cantidad == 0) {
+                return 0;
+            }
+
+            try {
+                conexion.setAutoCommit(false);
+                try {
+                    insertar.executeBatch();
+                    conexion.commit();
+                } catch (SQLException e) {
+                    conexion.rollback();
+                    throw e;
+                } finally {
+                    conexion.setAutoCommit(true);
+                }
+            } catch (SQLException e) {
+                throw new RuntimeException(e);
+            }
+
+            int insertadas = cantidad;
+            cantidad = 0;
+
+            return insertadas;
+        }
+
+        @Override
+        public long tiempoParaVencer() {
+            return cantidad >= capacidadLote ? 0L : Long.MAX_VALUE;
+        }
+
+        @Override
+        public long contarCapturas(long idSesion) {
+            try {
+                return consultarLong(contar, idSesion);
+            } catch (SQLException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        @Override
+        public int leerCapturas(long idSesion, long desde, long hasta, LectorCapturas lector) {
+            try {
+                seleccionar.setLong(1, idSesion);
+                seleccionar.setLong(2, desde);
+                seleccionar.setLong(3, hasta);
+
+                return leer(seleccionar.executeQuery(), lector);
+            } catch (SQLException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        @Override
+        public int leerPagina(long idSesion, long despuesDe, int limite, LectorCapturas lector) {
+            try {
+                seleccionarPagina.setLong(1, idSesion);
+                seleccionarPagina.setLong(2, despuesDe);
+                seleccionarPagina.setInt(3, limite);
+
+                return leer(seleccionarPagina.executeQuery(), lector);
+            } catch (SQLException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        /**
+         * Entrega a "lector" cada fila de "capturas", y lo cierra.
+         */
+        private int leer(ResultSet capturas, LectorCapturas lector) throws SQLException {
+            int leidas = 0;
+
+            try {
+                while (capturas.next()) {
+                    lector.capturaLeida(
+                        capturas.getLong(1),
+                        CodificacionCoordenadas.decodificar(capturas.getInt(2)),
+                        CodificacionCoordenadas.decodificar(capturas.getInt(3)),
+                        capturas.getLong(4)
+                    );
+                    leidas++;
+                }
+            } finally {
+                capturas.close();
+            }
+
+            return leidas;
+        }
+
+        @Override
+        public int leerAjustes(long idSesion, LectorAjustes lector) {
+            return 0;
+        }
+
+        @Override
+        public void cerrar() {
+            try {
+                vaciar();
+            } finally {
+                try {
+                    insertar.close();
+                    siguienteSecuencia.close();
+                    contar.close();
+                    seleccionar.close();
+                    seleccionarPagina.close();
+                } catch (SQLException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        }
+    }
+
+    private final Connection conexion;
+    private final PreparedStatement insertarSesion;
+    private final PreparedStatement terminarSesion;
+    private final PreparedStatement seleccionarSesion;
+    private final PreparedStatement listarSesiones;
+    private final int capacidadLote;
+
+    // Sesiones iniciadas y aún no terminadas, como en SentenciasSesionSQLite.
+    private final Map<Long, RegistroSesion> sesionesAbiertas = new HashMap<>();
+
+    /**
+     * Crea una base de datos nueva en "archivo", reemplazando cualquier archivo existente.
+     *
+     * @param archivo Archivo de la base de datos.
+     * @param perfilDurabilidad Alguna de las constantes PERFIL_DURABILIDAD_*.
+     * @param capacidadLote Capturas acumuladas por cada AlmacenCapturas antes de insertarlas en un lote. Debe ser mayor que 0.
+     */
+    AlmacenJDBC(File archivo, int perfilDurabilidad, int capacidadLote) throws SQLException {
+        for (String sufijo : new String[] { "", "-journal", "-wal", "-shm" }) {
+            new File(archivo.getPath() + sufijo).delete();
+        }
+
+        this.capacidadLote = capacidadLote;
+
+        conexion = DriverManager.getConnection("jdbc:sqlite:" + archivo.getPath());
+
+        Statement configuracion = conexion.createStatement();
+        try {
+            configuracion.execute("PRAGMA foreign_keys = ON;");
+
+            switch (perfilDurabilidad) {
+                case PERFIL_DURABILIDAD_BALANCEADO:
+                    configuracion.execute("PRAGMA journal_mode = WAL;");
+                    configuracion.execute("PRAGMA synchronous = NORMAL;");
+                    break;
+                case PERFIL_DURABILIDAD_RENDIMIENTO:
+                    configuracion.execute("PRAGMA journal_mode = WAL;");
+                    configuracion.execute("PRAGMA synchronous = OFF;");
+                    break;
+                case PERFIL_DURABILIDAD_SEGURO:
+                default:
+                    configuracion.execute("PRAGMA journal_mode = DELETE;");
+                    configuracion.execute("PRAGMA synchronous = FULL;");
+                    break;
+            }
+
+            configuracion.execute(SQL_CREAR_TABLA_SESION);
+            configuracion.execute(SQL_CREAR_INDICE_SESION_FECHA_INICIO);
+            configuracion.execute(SQL_CREAR_TABLA_GEOLOCALIZACION);
+            configuracion.execute(SQL_CREAR_INDICE_GEOLOCALIZACION_SESION_FECHA);
+            configuracion.execute(SQL_CREAR_INDICE_GEOLOCALIZACION_CELDA);
+        } finally {
+            configuracion.close();
+        }
+
+        insertarSesion = conexion.prepareStatement("INSERT INTO Sesion (nombre, fecha_inicio) VALUES (?, ?);");
+        terminarSesion = conexion.prepareStatement("UPDATE Sesion SET fecha_fin = ? WHERE id = ? AND fecha_fin IS NULL;");
+        seleccionarSesion = conexion.prepareStatement("SELECT id, nombre, fecha_inicio, fecha_fin FROM Sesion WHERE id = ? LIMIT 1;");
+        listarSesiones = conexion.prepareStatement(
+            "SELECT id, nombre, fecha_inicio, fecha_fin FROM Sesion " +
+                "WHERE fecha_inicio >= ? AND fecha_inicio <= ? AND (fecha_inicio < ? OR id < ?) AND nombre LIKE ? ESCAPE '\\' " +
+                "ORDER BY fecha_inicio DESC, id DESC LIMIT ?;"
+        );
+    }
+
+    @Override
+    public AlmacenSesiones sesiones() {
+        return this;
+    }
+
+    @Override
+    public AlmacenCapturas abrirCapturas() {
+        try {
+            return new CapturasJDBC();
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public void cerrar() {
+        try {
+            insertarSesion.close();
+            terminarSesion.close();
+            seleccionarSesion.close();
+            listarSesiones.close();
+            conexion.close();
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public RegistroSesion iniciarSesion(String nombre) {
+        String n = nombre != null ? nombre.trim() : "";
+        long fechaInicio = System.currentTimeMillis();
+
+        try {
+            insertarSesion.setString(1, n);
+            insertarSesion.setLong(2, fechaInicio);
+            insertarSesion.executeUpdate();
+
+            ResultSet id = insertarSesion.getGeneratedKeys();
+            try {
+                if (!id.next()) {
+                    return null;
+                }
+
+                RegistroSesion sesion = new RegistroSesion(id.getLong(1), n, fechaInicio, RegistroSesion.SESION_SIN_FECHA_FIN);
+                sesionesAbiertas.put(sesion.id, sesion);
+
+                return sesion;
+            } finally {
+                id.close();
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public RegistroSesion terminarSesion(long id) {
+        long fechaFin = System.currentTimeMillis();
+        int actualizadas;
+
+        try {
+            terminarSesion.setLong(1, fechaFin);
+            terminarSesion.setLong(2, id);
+            actualizadas = terminarSesion.executeUpdate();
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+
+        RegistroSesion abierta = sesionesAbiertas.remove(id);
+
+        if (actualizadas != 1) {
+            return null;
+        }
+
+        if (abierta != null) {
+            return new RegistroSesion(id, abierta.nombre, abierta.fechaInicio, fechaFin);
+        }
+
+        return seleccionarSesion(id);
+    }
+
+    /**
+     * Igual que terminarSesion(id): este almacén no mantiene la tabla LatenciaSesion, y los
+     * benchmarks no miden latencias.
+     */
+    @Override
+    public RegistroSesion terminarSesion(long id, RegistroLatencias latencias) {
+        return terminarSesion(id);
+    }
+
+    @Override
+    public RegistroSesion seleccionarSesion(long id) {
+        try {
+            seleccionarSesion.setLong(1, id);
+
+            ResultSet sesion = seleccionarSesion.executeQuery();
+            try {
+                if (!sesion.next()) {
+                    return null;
+                }
+
+                return leerSesion(sesion);
+            } finally {
+                sesion.close();
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Igual que SesionSQLite.listarSesiones.
+     */
+    @Override
+    public List<RegistroSesion> listarSesiones(String nombre, long desde, long hasta, RegistroSesion anterior, int limite) {
+        long fechaAnterior = anterior != null ? anterior.fechaInicio : Long.MAX_VALUE;
+        String patron = "%";
+
+        if (nombre != null && nombre.trim().length() > 0) {
+            patron = "%" + nombre.trim().replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%";
+        }
+
+        try {
+            listarSesiones.setLong(1, desde);
+            listarSesiones.setLong(2, Math.min(hasta, fechaAnterior));
+            listarSesiones.setLong(3, fechaAnterior);
+            listarSesiones.setLong(4, anterior != null ? anterior.id : Long.MAX_VALUE);
+            listarSesiones.setString(5, patron);
+            listarSesiones.setInt(6, limite);
+
+            List<RegistroSesion> sesiones = new ArrayList<>(limite);
+            ResultSet pagina = listarSesiones.executeQuery();
+            try {
+                while (pagina.next()) {
+                    sesiones.add(leerSesion(pagina));
+                }
+            } finally {
+                pagina.close();
+            }
+
+            return sesiones;
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @param sesion ResultSet posicionado en una fila (id, nombre, fecha_inicio, fecha_fin).
+     */
+    private static RegistroSesion leerSesion(ResultSet sesion) throws SQLException {
+        long fechaFin = sesion.getLong(4);
+
+        return new RegistroSesion(sesion.getLong(1), sesion.getString(2), sesion.getLong(3), sesion.wasNull() ? RegistroSesion.SESION_SIN_FECHA_FIN : fechaFin);
+    }
+
+    /**
+     * Calculado leyendo las capturas de la sesión: este almacén no mantiene la tabla ResumenSesion,
+     * y los benchmarks no consultan resúmenes.
+     */
+    @Override
+    public RegistroResumen resumenSesion(long id) {
+        RegistroSesion sesion = seleccionarSesion(id);
+
+        if (sesion == null) {
+            return null;
+        }
+
+        RegistroResumen resumen = new RegistroResumen(id);
+
+        try {
+            PreparedStatement capturas = conexion.prepareStatement("SELECT latitud, longitud, fecha FROM Geolocalizacion WHERE id_sesion = ? ORDER BY secuencia;");
+
+            try {
+                capturas.setLong(1, id);
+
+                ResultSet resultado = capturas.executeQuery();
+                try {
+                    while (resultado.next()) {
+                        resumen.agregar(resultado.getInt(1), resultado.getInt(2), resultado.getLong(3));
+                    }
+                } finally {
+                    resultado.close();
+                }
+            } finally {
+                capturas.close();
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+
+        if (sesion.terminada()) {
+            resumen.terminar();
+        }
+
+        return resumen;
+    }
+
+    /**
+     * Siempre null. Ver: terminarSesion(long, RegistroLatencias)
+     */
+    @Override
+    public RegistroLatencias latenciasSesion(long id) {
+        return null;
+    }
+
+    private static long consultarLong(PreparedStatement consulta, long parametro) throws SQLException {
+        consulta.setLong(1, parametro);
+
+        ResultSet resultado = consulta.executeQuery();
+        try {
+            resultado.next();
+            return resultado.getLong(1);
+        } finally {
+            resultado.close();
+        }
+    }
+}
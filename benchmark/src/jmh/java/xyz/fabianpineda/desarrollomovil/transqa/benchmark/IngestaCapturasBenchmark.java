@@ -0,0 +1,78 @@
+package xyz.fabianpineda.desarrollomovil.transqa.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+import xyz.fabianpineda.desarrollomovil.transqa.db.Almacen;
+import xyz.fabianpineda.desarrollomovil.transqa.db.AlmacenCapturas;
+
+/**
+ * Ingesta de capturas: costo por captura agregada, incluyendo su parte del costo del lote, para
+ * cada motor (ver MotoresAlmacen), perfil de durabilidad y capacidad de lote. Capacidad 1 equivale
+ * a una transacción por captura, como antes de BufferGeolocalizacionSQLite.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class IngestaCapturasBenchmark {
+    // Capturas agregadas antes de reemplazar el almacén, para acotar la memoria de motores en
+    // memoria. El costo de reemplazarlo queda repartido entre todas estas capturas.
+    private static final int CAPTURAS_POR_ALMACEN = 1 << 20;
+
+    @Param({ MotoresAlmacen.MOTOR_SQLITE_JDBC, MotoresAlmacen.MOTOR_SEGMENTOS, MotoresAlmacen.MOTOR_MEMORIA })
+    public String motor;
+
+    @Param({ "0", "1", "2" })
+    public int perfilDurabilidad;
+
+    @Param({ "1", "32", "128" })
+    public int capacidad;
+
+    private File archivo;
+    private Almacen almacen;
+    private AlmacenCapturas capturas;
+    private long sesion;
+    private long fecha;
+    private int agregadas;
+
+    @Setup(Level.Trial)
+    public void abrir() throws IOException, SQLException {
+        archivo = File.createTempFile("ingesta", ".db");
+        almacen = MotoresAlmacen.abrir(motor, archivo, perfilDurabilidad, capacidad);
+        capturas = almacen.abrirCapturas();
+        sesion = almacen.sesiones().iniciarSesion("benchmark").id;
+        agregadas = 0;
+    }
+
+    @TearDown(Level.Trial)
+    public void cerrar() {
+        capturas.cerrar();
+        almacen.cerrar();
+        MotoresAlmacen.borrar(archivo);
+    }
+
+    @Benchmark
+    public boolean agregarCaptura() throws IOException, SQLException {
+        if (++agregadas > CAPTURAS_POR_ALMACEN) {
+            cerrar();
+            abrir();
+            agregadas = 1;
+        }
+
+        fecha += 5000L;
+        return capturas.agregar(sesion, 10.96 + (fecha & 1023) * 1e-6, -74.78 - (fecha & 511) * 1e-6, fecha);
+    }
+}
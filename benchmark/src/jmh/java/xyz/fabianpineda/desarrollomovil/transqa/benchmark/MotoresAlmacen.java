@@ -0,0 +1,74 @@
+package xyz.fabianpineda.desarrollomovil.transqa.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
+
+import xyz.fabianpineda.desarrollomovil.transqa.db.Almacen;
+import xyz.fabianpineda.desarrollomovil.transqa.db.AlmacenMemoria;
+import xyz.fabianpineda.desarrollomovil.transqa.db.AlmacenSegmentos;
+import xyz.fabianpineda.desarrollomovil.transqa.db.RegistroSegmentos;
+
+/**
+ * Motores de almacenamiento comparados por los benchmarks, seleccionados por nombre con @Param.
+ * Para medir un motor nuevo basta con implementar Almacen y agregarlo aquí.
+ */
+final class MotoresAlmacen {
+    static final String MOTOR_SQLITE_JDBC = "sqlite-jdbc";
+    static final String MOTOR_SEGMENTOS = "segmentos";
+    static final String MOTOR_MEMORIA = "memoria";
+
+    private static final String SUFIJO_DIRECTORIO_SEGMENTOS = ".segmentos";
+
+    private MotoresAlmacen() {
+    }
+
+    /**
+     * @param motor Alguna de las constantes MOTOR_*.
+     * @param archivo Archivo usado por motores persistentes. Es reemplazado.
+     * @param perfilDurabilidad Alguna de las constantes AlmacenJDBC.PERFIL_DURABILIDAD_*. Ignorado por motores no persistentes.
+     * @param capacidadLote Capturas por lote de inserción o por sincronización de segmentos. Ignorado por motores en memoria.
+     */
+    static Almacen abrir(String motor, File archivo, int perfilDurabilidad, int capacidadLote) throws IOException, SQLException {
+        if (MOTOR_SQLITE_JDBC.equals(motor)) {
+            return new AlmacenJDBC(archivo, perfilDurabilidad, capacidadLote);
+        }
+
+        if (MOTOR_SEGMENTOS.equals(motor)) {
+            File directorio = new File(archivo.getPath() + SUFIJO_DIRECTORIO_SEGMENTOS);
+            borrarDirectorio(directorio);
+
+            // Las sesiones terminadas son indexadas en SQLite, como en la aplicación.
+            return new AlmacenSegmentos(
+                new AlmacenJDBC(archivo, perfilDurabilidad, RegistroSegmentos.SINCRONIZACION_CAPTURAS_DEFAULT),
+                new RegistroSegmentos(directorio, RegistroSegmentos.SEGMENTO_CAPTURAS_DEFAULT, capacidadLote, RegistroSegmentos.SINCRONIZACION_INTERVALO_DEFAULT)
+            );
+        }
+
+        if (MOTOR_MEMORIA.equals(motor)) {
+            return new AlmacenMemoria();
+        }
+
+        throw new IllegalArgumentException("Motor desconocido: " + motor);
+    }
+
+    /**
+     * Borra los archivos creados por abrir() para "archivo". El almacén debe estar cerrado.
+     */
+    static void borrar(File archivo) {
+        archivo.delete();
+        borrarDirectorio(new File(archivo.getPath() + SUFIJO_DIRECTORIO_SEGMENTOS));
+    }
+
+    private static void borrarDirectorio(File directorio) {
+        File[] archivos = directorio.listFiles();
+
+        if (archivos != null) {
+            for (File archivo : archivos) {
+                archivo.delete();
+            }
+        }
+
+        directorio.delete();
+    }
+}
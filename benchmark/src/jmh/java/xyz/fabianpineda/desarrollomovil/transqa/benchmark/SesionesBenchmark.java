@@ -0,0 +1,58 @@
+package xyz.fabianpineda.desarrollomovil.transqa.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+import xyz.fabianpineda.desarrollomovil.transqa.db.Almacen;
+import xyz.fabianpineda.desarrollomovil.transqa.db.AlmacenSesiones;
+import xyz.fabianpineda.desarrollomovil.transqa.db.RegistroSesion;
+
+/**
+ * Inicio y fin de sesiones, como ocurre en cambios de turno: una sesión iniciada y terminada por
+ * operación, para cada motor (ver MotoresAlmacen) y perfil de durabilidad.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SesionesBenchmark {
+    @Param({ MotoresAlmacen.MOTOR_SQLITE_JDBC, MotoresAlmacen.MOTOR_SEGMENTOS, MotoresAlmacen.MOTOR_MEMORIA })
+    public String motor;
+
+    @Param({ "0", "1", "2" })
+    public int perfilDurabilidad;
+
+    private File archivo;
+    private Almacen almacen;
+    private AlmacenSesiones sesiones;
+
+    @Setup(Level.Trial)
+    public void abrir() throws IOException, SQLException {
+        archivo = File.createTempFile("sesiones", ".db");
+        almacen = MotoresAlmacen.abrir(motor, archivo, perfilDurabilidad, 1);
+        sesiones = almacen.sesiones();
+    }
+
+    @TearDown(Level.Trial)
+    public void cerrar() {
+        almacen.cerrar();
+        MotoresAlmacen.borrar(archivo);
+    }
+
+    @Benchmark
+    public RegistroSesion iniciarYTerminarSesion() {
+        return sesiones.terminarSesion(sesiones.iniciarSesion("turno").id);
+    }
+}
@@ -0,0 +1,42 @@
+package xyz.fabianpineda.desarrollomovil.transqa.geolocalizacion;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Costo de pasar una captura por ColaCapturas (ofrecer y drenar) en un solo hilo. No mide
+ * contención entre productor y consumidor; sólo el costo fijo por captura en el hilo principal.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ColaCapturasBenchmark {
+    private ColaCapturas cola;
+    private ColaCapturas.ConsumidorCapturas consumidor;
+    private long fecha;
+
+    @Setup
+    public void crear(final Blackhole agujero) {
+        cola = new ColaCapturas(256);
+        consumidor = new ColaCapturas.ConsumidorCapturas() {
+            @Override
+            public void capturaTomada(long idSesion, double latitud, double longitud, long fecha, long capturaNanos, long etapaNanos) {
+                agujero.consume(fecha);
+            }
+        };
+    }
+
+    @Benchmark
+    public int ofrecerYDrenar() {
+        cola.ofrecer(1, 10.96, -74.78, fecha, fecha, fecha++);
+        return cola.drenar(consumidor, 1);
+    }
+}
@@ -0,0 +1,96 @@
+package xyz.fabianpineda.desarrollomovil.transqa.geolocalizacion;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import xyz.fabianpineda.desarrollomovil.transqa.db.CodificacionCoordenadas;
+
+/**
+ * Código de geometría y codificación ejecutado por cada captura: simplificación de trayectoria,
+ * planificación de muestreo y codificación de coordenadas. Los resultados son por captura.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class GeometriaBenchmark {
+    private static final int CAPTURAS = 4096;
+    private static final double METRO = 1.0 / 111195.0;
+
+    private final double[] latitudes = new double[CAPTURAS];
+    private final double[] longitudes = new double[CAPTURAS];
+    private final long[] fechas = new long[CAPTURAS];
+
+    @Setup
+    public void crearTrayectoria() {
+        Random aleatorio = new Random(7);
+        double latitud = 10.96;
+        double longitud = -74.78;
+        double rumbo = 0;
+
+        // Recorrido urbano a ~10 m/s con giros y detenciones, una captura cada 5 s.
+        for (int i = 0; i < CAPTURAS; i++) {
+            double velocidad = (i / 200) % 4 == 3 ? 0 : 10;
+
+            rumbo += (aleatorio.nextDouble() - 0.5) * 0.5;
+            latitud += Math.cos(rumbo) * velocidad * 5 * METRO + aleatorio.nextGaussian() * METRO;
+            longitud += Math.sin(rumbo) * velocidad * 5 * METRO + aleatorio.nextGaussian() * METRO;
+
+            latitudes[i] = latitud;
+            longitudes[i] = longitud;
+            fechas[i] = i * 5000L;
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CAPTURAS)
+    public long simplificarTrayectoria(final Blackhole agujero) {
+        SimplificadorTrayectoria simplificador = new SimplificadorTrayectoria(5, SimplificadorTrayectoria.SIMPLIFICADOR_CAPACIDAD_VENTANA_DEFAULT);
+        ColaCapturas.ConsumidorCapturas salida = new ColaCapturas.ConsumidorCapturas() {
+            @Override
+            public void capturaTomada(long idSesion, double latitud, double longitud, long fecha, long capturaNanos, long etapaNanos) {
+                agujero.consume(fecha);
+            }
+        };
+
+        for (int i = 0; i < CAPTURAS; i++) {
+            simplificador.agregar(1, latitudes[i], longitudes[i], fechas[i], fechas[i], fechas[i], salida);
+        }
+        simplificador.vaciar(salida);
+
+        return simplificador.conservadas();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CAPTURAS)
+    public long planificarMuestreo() {
+        PlanificadorMuestreo planificador = new PlanificadorMuestreo();
+
+        for (int i = 0; i < CAPTURAS; i++) {
+            planificador.actualizar(latitudes[i], longitudes[i], fechas[i], false, 0, false, 0);
+        }
+
+        return planificador.cambios();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CAPTURAS)
+    public long codificarCoordenadas() {
+        long suma = 0;
+
+        for (int i = 0; i < CAPTURAS; i++) {
+            suma += CodificacionCoordenadas.codificar(latitudes[i]) ^ CodificacionCoordenadas.codificar(longitudes[i]);
+        }
+
+        return suma;
+    }
+}
@@ -0,0 +1,141 @@
+package xyz.fabianpineda.desarrollomovil.transqa.rutas;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ajuste de capturas a rutas de transporte, ejecutado por cada captura escrita: búsqueda de tramos
+ * candidatos en el índice y un paso del ajustador. Los resultados son por captura.
+ *
+ * Las rutas recorren una cuadrícula de calles con cuadras de 200 m, así que muchas comparten
+ * corredores, como en una ciudad; las capturas siguen una de ellas a ~10 m/s, una por segundo,
+ * con error de ~5 m.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class AjustadorRutasBenchmark {
+    private static final int CAPTURAS = 4096;
+    private static final int RUTAS = 60;
+    private static final int CUADRAS_POR_RUTA = 200;
+    private static final int CUADRAS_CUADRICULA = 50;
+    private static final double CUADRA = 200.0;
+    private static final double METRO = 1.0 / 111195.0;
+    private static final double LATITUD = 10.96;
+    private static final double LONGITUD = -74.78;
+
+    private final double[] latitudes = new double[CAPTURAS];
+    private final double[] longitudes = new double[CAPTURAS];
+    private final double[] xs = new double[CAPTURAS];
+    private final double[] ys = new double[CAPTURAS];
+
+    private FormasRutas formas;
+    private IndiceTramos indice;
+    private final CandidatosRuta candidatos = new CandidatosRuta(AjustadorRutas.AJUSTADOR_CANDIDATOS);
+
+    @Setup
+    public void crearRutas() throws IOException {
+        Random aleatorio = new Random(7);
+        double metroLongitud = METRO / Math.cos(Math.toRadians(LATITUD));
+        int[][] direcciones = { { 1, 0 }, { 0, 1 }, { -1, 0 }, { 0, -1 } };
+        StringBuilder csv = new StringBuilder("shape_id,shape_pt_lat,shape_pt_lon,shape_pt_sequence\n");
+        int[] columnas = new int[CUADRAS_POR_RUTA + 1];
+        int[] filas = new int[CUADRAS_POR_RUTA + 1];
+
+        for (int r = 0; r < RUTAS; r++) {
+            int columna = CUADRAS_CUADRICULA / 2;
+            int fila = CUADRAS_CUADRICULA / 2;
+            int direccion = aleatorio.nextInt(4);
+
+            for (int i = 0; i <= CUADRAS_POR_RUTA; i++) {
+                columnas[i] = columna;
+                filas[i] = fila;
+                csv.append("R").append(r).append(',')
+                    .append(LATITUD + fila * CUADRA * METRO).append(',')
+                    .append(LONGITUD + columna * CUADRA * metroLongitud).append(',')
+                    .append(i).append('\n');
+
+                // Sigue recto o gira; en el borde de la cuadrícula gira hasta poder seguir.
+                if (aleatorio.nextInt(3) == 0) {
+                    direccion = (direccion + (aleatorio.nextBoolean() ? 1 : 3)) % 4;
+                }
+
+                while (!dentro(columna + direcciones[direccion][0], fila + direcciones[direccion][1])) {
+                    direccion = (direccion + 1) % 4;
+                }
+
+                columna += direcciones[direccion][0];
+                fila += direcciones[direccion][1];
+            }
+
+            // Las capturas siguen la primera ruta.
+            if (r == 0) {
+                for (int k = 0; k < CAPTURAS; k++) {
+                    double avance = k * 10.0 / CUADRA;
+                    int i = Math.min((int) avance, CUADRAS_POR_RUTA - 1);
+                    double t = Math.min(avance - i, 1.0);
+                    double fila0 = filas[i] + (filas[i + 1] - filas[i]) * t;
+                    double columna0 = columnas[i] + (columnas[i + 1] - columnas[i]) * t;
+
+                    latitudes[k] = LATITUD + (fila0 * CUADRA + aleatorio.nextGaussian() * 5) * METRO;
+                    longitudes[k] = LONGITUD + (columna0 * CUADRA + aleatorio.nextGaussian() * 5) * metroLongitud;
+                }
+            }
+        }
+
+        formas = FormasRutas.cargar(new StringReader(csv.toString()));
+        indice = new IndiceTramos(formas);
+
+        for (int k = 0; k < CAPTURAS; k++) {
+            xs[k] = formas.x(longitudes[k]);
+            ys[k] = formas.y(latitudes[k]);
+        }
+    }
+
+    private static boolean dentro(int columna, int fila) {
+        return columna >= 0 && fila >= 0 && columna < CUADRAS_CUADRICULA && fila < CUADRAS_CUADRICULA;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CAPTURAS)
+    public long buscarTramos() {
+        long encontrados = 0;
+
+        for (int k = 0; k < CAPTURAS; k++) {
+            encontrados += indice.buscar(xs[k], ys[k], AjustadorRutas.AJUSTADOR_RADIO, candidatos);
+        }
+
+        return encontrados;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CAPTURAS)
+    public long ajustarCapturas(final Blackhole agujero) {
+        AjustadorRutas ajustador = new AjustadorRutas(indice);
+        AjustadorRutas.ConsumidorAjustes salida = new AjustadorRutas.ConsumidorAjustes() {
+            @Override
+            public void capturaAjustada(long idSesion, long secuencia, String ruta, int tramo, double recorrido) {
+                agujero.consume(secuencia);
+            }
+        };
+
+        for (int k = 0; k < CAPTURAS; k++) {
+            ajustador.agregar(1, k + 1, latitudes[k], longitudes[k], k * 1000L, salida);
+        }
+        ajustador.vaciar(salida);
+
+        return ajustador.ajustadas();
+    }
+}